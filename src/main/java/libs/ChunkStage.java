@@ -0,0 +1,115 @@
+package libs;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Voir {@link Flows#chunked} et {@link Flows#batchMapAsync}. Regroupe les éléments dans un tableau : le paquet est
+ * émis quand il est plein, ou quand son premier élément a attendu <code>maxDelay</code>. Un paquet plein que l'aval ne
+ * demande pas encore arrête la lecture de l'amont.
+ */
+class ChunkStage<T> extends GraphStage<FlowShape<T, Object[]>> {
+
+    public final Inlet<T> in = Inlet.create("Chunk.in");
+    public final Outlet<Object[]> out = Outlet.create("Chunk.out");
+
+    private final FlowShape<T, Object[]> shape = FlowShape.of(in, out);
+
+    private final int maxChunk;
+    private final Duration maxDelay;
+
+    ChunkStage(int maxChunk, Duration maxDelay) {
+        if (maxChunk < 1) {
+            throw new IllegalArgumentException("A chunk holds at least one element: " + maxChunk);
+        }
+        this.maxChunk = maxChunk;
+        this.maxDelay = maxDelay;
+    }
+
+    @Override
+    public FlowShape<T, Object[]> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        return new TimerGraphStageLogic(shape) {
+
+            private Object[] chunk = new Object[maxChunk];
+            private int size = 0;
+            private boolean expired = false;
+
+            @Override
+            public void preStart() {
+                pull(in);
+            }
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        chunk[size++] = grab(in);
+                        if (size == 1) {
+                            scheduleOnce("maxDelay", maxDelay);
+                        }
+                        if (size == maxChunk) {
+                            if (isAvailable(out)) {
+                                emitChunk();
+                            }
+                        } else {
+                            pull(in);
+                        }
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        if (size == 0) {
+                            completeStage();
+                        } else if (isAvailable(out)) {
+                            emitChunk();
+                        }
+                    }
+                });
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        if (size == maxChunk || (size > 0 && (expired || isClosed(in)))) {
+                            emitChunk();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onTimer(Object timerKey) {
+                expired = true;
+                if (isAvailable(out)) {
+                    emitChunk();
+                }
+            }
+
+            private void emitChunk() {
+                push(out, size == maxChunk ? chunk : Arrays.copyOf(chunk, size));
+                chunk = new Object[maxChunk];
+                size = 0;
+                expired = false;
+                cancelTimer("maxDelay");
+                if (isClosed(in)) {
+                    completeStage();
+                } else if (!hasBeenPulled(in)) {
+                    pull(in);
+                }
+            }
+        };
+    }
+}
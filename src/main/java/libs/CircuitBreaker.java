@@ -0,0 +1,190 @@
+package libs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Disjoncteur à utiliser avec {@link Flows#circuitBreaker}.
+ * <ul>
+ * <li>CLOSED : les appels passent. Le résultat des <code>windowSize</code> derniers appels est conservé ; si la part
+ * d'échecs ou d'appels lents dépasse son seuil (une fois <code>minimumCalls</code> appels observés), le disjoncteur s'ouvre.</li>
+ * <li>OPEN : plus aucun appel ne part pendant <code>openDuration</code>, le flow arrête de consommer (backpressure).</li>
+ * <li>HALF_OPEN : <code>probes</code> appels de test partent. S'ils réussissent tous, le disjoncteur se referme, sinon il se rouvre.</li>
+ * </ul>
+ * L'objet est partagé entre le stage et le code qui le surveille : les changements d'état et le temps passé dans chaque
+ * état peuvent être lus à tout moment.
+ */
+public class CircuitBreaker {
+
+    public static Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openNanos;
+    private final int probes;
+
+    // fenêtre glissante des derniers appels
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int next = 0;
+    private int calls = 0;
+    private int failureCount = 0;
+    private int slowCallCount = 0;
+
+    private State state = State.CLOSED;
+    private long stateSince = System.nanoTime();
+    private long openUntil = 0L;
+    private int probesStarted = 0;
+    private int probesSucceeded = 0;
+
+    private final Map<State, Long> entered = new EnumMap<>(State.class);
+    private final Map<State, Long> nanosIn = new EnumMap<>(State.class);
+
+    /**
+     * @param windowSize            nombre d'appels de la fenêtre glissante
+     * @param minimumCalls          nombre d'appels à observer avant de pouvoir ouvrir
+     * @param failureRateThreshold  part d'échecs (entre 0 et 1) au-delà de laquelle on ouvre
+     * @param slowCallDuration      durée au-delà de laquelle un appel est lent
+     * @param slowCallRateThreshold part d'appels lents (entre 0 et 1) au-delà de laquelle on ouvre
+     * @param openDuration          durée d'ouverture avant les appels de test
+     * @param probes                nombre d'appels de test qui doivent réussir pour refermer
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          Duration slowCallDuration, double slowCallRateThreshold, Duration openDuration, int probes) {
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.probes = probes;
+        this.failures = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+        for (State s : State.values()) {
+            entered.put(s, 0L);
+            nanosIn.put(s, 0L);
+        }
+        entered.put(State.CLOSED, 1L);
+    }
+
+    /**
+     * Un appel peut-il partir maintenant ? Si oui, donne l'état dans lequel il part, à repasser à {@link #record}.
+     * En HALF_OPEN, chaque appel autorisé consomme un appel de test.
+     */
+    synchronized State tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED || (state == State.HALF_OPEN && probesStarted < probes)) {
+            probesStarted += state == State.HALF_OPEN ? 1 : 0;
+            return state;
+        }
+        return null;
+    }
+
+    /**
+     * Temps restant avant les appels de test, zéro si le disjoncteur n'est pas ouvert.
+     */
+    synchronized Duration remainingOpen() {
+        return state == State.OPEN ? Duration.ofNanos(Math.max(0L, openUntil - System.nanoTime())) : Duration.ZERO;
+    }
+
+    /**
+     * Enregistre le résultat d'un appel parti quand le disjoncteur était dans l'état <code>startedIn</code>.
+     */
+    synchronized void record(State startedIn, boolean failure, long durationNanos) {
+        final boolean slow = durationNanos > slowCallNanos;
+        if (state == State.HALF_OPEN && startedIn == State.HALF_OPEN) {
+            if (failure || slow) {
+                open();
+            } else {
+                probesSucceeded += 1;
+                if (probesSucceeded >= probes) {
+                    transition(State.CLOSED);
+                }
+            }
+        } else if (state == State.CLOSED && startedIn == State.CLOSED) {
+            if (calls == windowSize) {
+                failureCount -= failures[next] ? 1 : 0;
+                slowCallCount -= slowCalls[next] ? 1 : 0;
+            } else {
+                calls += 1;
+            }
+            failures[next] = failure;
+            slowCalls[next] = slow;
+            failureCount += failure ? 1 : 0;
+            slowCallCount += slow ? 1 : 0;
+            next = (next + 1) % windowSize;
+
+            if (calls >= minimumCalls
+                    && (failureCount >= failureRateThreshold * calls || slowCallCount >= slowCallRateThreshold * calls)) {
+                open();
+            }
+        }
+        // les réponses des appels partis avant un changement d'état ne comptent pas
+    }
+
+    private void open() {
+        openUntil = System.nanoTime() + openNanos;
+        transition(State.OPEN);
+    }
+
+    private void transition(State to) {
+        final long now = System.nanoTime();
+        LOGGER.info("Circuit breaker {}: {} -> {} after {} ms (failures {}/{}, slow calls {}/{})",
+                name, state, to, (now - stateSince) / 1_000_000, failureCount, calls, slowCallCount, calls);
+        nanosIn.merge(state, now - stateSince, Long::sum);
+        entered.merge(to, 1L, Long::sum);
+        state = to;
+        stateSince = now;
+        probesStarted = 0;
+        probesSucceeded = 0;
+        if (to == State.CLOSED) {
+            java.util.Arrays.fill(failures, false);
+            java.util.Arrays.fill(slowCalls, false);
+            next = 0;
+            calls = 0;
+            failureCount = 0;
+            slowCallCount = 0;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Nombre de fois où le disjoncteur est entré dans l'état (l'état initial CLOSED compte pour un).
+     */
+    public synchronized long timesEntered(State s) {
+        return entered.get(s);
+    }
+
+    /**
+     * Temps total passé dans l'état, en comptant l'état courant.
+     */
+    public synchronized Duration timeIn(State s) {
+        final long current = s == state ? System.nanoTime() - stateSince : 0L;
+        return Duration.ofNanos(nanosIn.get(s) + current);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" + name + ", state=" + state
+                + ", opened=" + entered.get(State.OPEN)
+                + ", closed=" + timeIn(State.CLOSED).toMillis() + "ms"
+                + ", open=" + timeIn(State.OPEN).toMillis() + "ms"
+                + ", halfOpen=" + timeIn(State.HALF_OPEN).toMillis() + "ms}";
+    }
+}
@@ -0,0 +1,188 @@
+package libs;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.AsyncCallback;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Voir {@link Flows#circuitBreaker}.
+ */
+class CircuitBreakerStage<In, Out> extends GraphStage<FlowShape<In, Out>> {
+
+    public final Inlet<In> in = Inlet.create("CircuitBreaker.in");
+    public final Outlet<Out> out = Outlet.create("CircuitBreaker.out");
+
+    private final FlowShape<In, Out> shape = FlowShape.of(in, out);
+
+    private final CircuitBreaker breaker;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final Function<In, CompletionStage<Out>> call;
+    private final Predicate<Out> isFailure;
+
+    CircuitBreakerStage(CircuitBreaker breaker, int parallelism, int maxAttempts,
+                        Function<In, CompletionStage<Out>> call, Predicate<Out> isFailure) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+        }
+        this.breaker = breaker;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        this.call = call;
+        this.isFailure = isFailure;
+    }
+
+    @Override
+    public FlowShape<In, Out> shape() {
+        return shape;
+    }
+
+    /**
+     * La place d'un élément dans l'ordre d'arrivée, remplie par sa réponse.
+     */
+    private class Slot {
+        private Out value;
+        private boolean done = false;
+    }
+
+    private class Attempt {
+        private final In element;
+        private final Slot slot;
+        // appels déjà faits pour cet élément
+        private final int attempts;
+
+        private Attempt(In element, Slot slot, int attempts) {
+            this.element = element;
+            this.slot = slot;
+            this.attempts = attempts;
+        }
+    }
+
+    private class Result {
+        private final Attempt attempt;
+        private final CircuitBreaker.State startedIn;
+        private final long start;
+        private final Out value;
+        private final Throwable error;
+
+        private Result(Attempt attempt, CircuitBreaker.State startedIn, long start, Out value, Throwable error) {
+            this.attempt = attempt;
+            this.startedIn = startedIn;
+            this.start = start;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        return new TimerGraphStageLogic(shape) {
+
+            // éléments reçus en attente d'appel : ceux dont l'appel a échoué sont repris en premier
+            private final ArrayDeque<Attempt> parked = new ArrayDeque<>();
+            // un slot par élément reçu et pas encore émis, dans l'ordre d'arrivée, comme pour mapAsync
+            private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+            private int inFlight = 0;
+            private AsyncCallback<Result> onResult;
+
+            @Override
+            public void preStart() {
+                onResult = createAsyncCallback(this::handle);
+                pull(in);
+            }
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        final Slot slot = new Slot();
+                        slots.addLast(slot);
+                        parked.addLast(new Attempt(grab(in), slot, 0));
+                        run();
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        run();
+                    }
+                });
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        run();
+                    }
+                });
+            }
+
+            @Override
+            public void onTimer(Object timerKey) {
+                run();
+            }
+
+            private void handle(Result result) {
+                inFlight -= 1;
+                final boolean failure = result.error != null || isFailure.test(result.value);
+                breaker.record(result.startedIn, failure, System.nanoTime() - result.start);
+                if (result.error != null) {
+                    if (result.attempt.attempts >= maxAttempts) {
+                        failStage(new IllegalStateException("Call failed " + maxAttempts + " times for "
+                                + result.attempt.element, result.error));
+                        return;
+                    }
+                    // pas de réponse à transmettre : l'élément sera repris quand le disjoncteur le permettra
+                    parked.addFirst(result.attempt);
+                } else {
+                    result.attempt.slot.value = result.value;
+                    result.attempt.slot.done = true;
+                }
+                run();
+            }
+
+            private void run() {
+                if (!slots.isEmpty() && slots.peekFirst().done && isAvailable(out)) {
+                    push(out, slots.pollFirst().value);
+                }
+                while (!parked.isEmpty() && inFlight < parallelism) {
+                    final CircuitBreaker.State state = breaker.tryAcquire();
+                    if (state == null) {
+                        // ouvert, ou appels de test déjà partis : on attend la fin de l'ouverture ou les réponses
+                        final Duration remaining = breaker.remainingOpen();
+                        if (!remaining.isZero() && !isTimerActive("open")) {
+                            scheduleOnce("open", remaining);
+                        }
+                        break;
+                    }
+                    start(parked.pollFirst(), state);
+                }
+                if (isClosed(in)) {
+                    if (slots.isEmpty()) {
+                        completeStage();
+                    }
+                } else if (!hasBeenPulled(in) && slots.size() < parallelism) {
+                    pull(in);
+                }
+            }
+
+            private void start(Attempt previous, CircuitBreaker.State state) {
+                inFlight += 1;
+                final Attempt attempt = new Attempt(previous.element, previous.slot, previous.attempts + 1);
+                final long start = System.nanoTime();
+                call.apply(attempt.element).whenComplete((value, error) ->
+                        onResult.invoke(new Result(attempt, state, start, value, error)));
+            }
+        };
+    }
+}
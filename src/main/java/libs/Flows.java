@@ -8,13 +8,26 @@ import akka.stream.javadsl.*;
 import akka.stream.stage.*;
 import akka.util.ByteString;
 import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Try;
+import libs.buffer.AdaptiveBuffer;
+import libs.drain.DrainSwitch;
+import libs.latency.LatencyHistogram;
+import libs.latency.StageLatency;
+import libs.latency.Timestamped;
+import libs.metrics.FlowMetrics;
+import libs.substream.KeyedSubstreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.util.hashing.MurmurHash3$;
 
 import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 public class Flows {
 
@@ -59,6 +72,9 @@ public class Flows {
      *
      * L'utilisation de l'algorithme MurmurHash3 permet de s'assurer que les messages de type 'In' ayant le même id
      * seront traités séquentiellement par un même acteur.
+     *
+     * Avec l'attribut {@link AdaptiveBuffer#enabled}, chaque worker est précédé d'un buffer qui grandit en cas de
+     * rafales ; sans lui, les buffers restent ceux des frontières async.
      */
     public static <In, Out> Flow<In, Out, NotUsed> shard(Integer parallelism, Function<In, String> getId, Flow<In, Out, NotUsed> worker) {
         return Flow.fromGraph(
@@ -70,7 +86,10 @@ public class Flows {
                             UniformFanInShape<Out, Out> merge = b.add(Merge.create(parallelism));
 
                             for (int i = 0; i < parallelism; i++) {
-                                b.from(partitionStage.out(i)).via(b.add(worker.async())).toInlet(merge.in(i));
+                                b.from(partitionStage.out(i))
+                                        .via(b.add(AdaptiveBuffer.<In>create("shard-" + i)))
+                                        .via(b.add(worker.async()))
+                                        .toInlet(merge.in(i));
                             }
                             return FlowShape.of(partitionStage.in(), merge.out());
                         }));
@@ -78,10 +97,13 @@ public class Flows {
 
     @SafeVarargs
     public static <In, Out> Flow<In, Out, NotUsed> broadcast(Flow<In, Out, NotUsed>... allWorkers) {
+        return broadcast(List.of(allWorkers));
+    }
+
+    public static <In, Out> Flow<In, Out, NotUsed> broadcast(List<Flow<In, Out, NotUsed>> workers) {
         return Flow.fromGraph(
                 GraphDSL.create(
                         b -> {
-                            List<Flow<In, Out, NotUsed>> workers = List.of(allWorkers);
                             int parallelism = workers.size();
                             final UniformFanOutShape<In, In> partitionStage = b.add(Broadcast.create(parallelism));
                             UniformFanInShape<Out, Out> merge = b.add(Merge.create(parallelism));
@@ -89,12 +111,159 @@ public class Flows {
                             workers.zipWithIndex().forEach(t -> {
                                 Integer index = t._2;
                                 Flow<In, Out, NotUsed> worker = t._1;
-                                b.from(partitionStage.out(index)).via(b.add(worker.async())).toInlet(merge.in(index));
+                                b.from(partitionStage.out(index))
+                                        .via(b.add(AdaptiveBuffer.<In>create("broadcast-" + index)))
+                                        .via(b.add(worker.async()))
+                                        .toInlet(merge.in(index));
                             });
                             return FlowShape.of(partitionStage.in(), merge.out());
                         }));
     }
 
+    /**
+     * Un groupBy dont le nombre de sous-streams ouverts est borné par `maxLive` : le sous-stream d'une clé est fermé
+     * après `idleTimeout` d'inactivité ou, au-delà de `maxLive`, celui de la clé la moins récemment vue, et rouvert si
+     * la clé revient (voir {@link KeyedSubstreams}).
+     */
+    public static <In, K, Out> Flow<In, Out, KeyedSubstreams.Stats> groupByKey(int maxLive, Duration idleTimeout,
+                                                                             Function<In, K> key, Flow<In, Out, NotUsed> perKey) {
+        return KeyedSubstreams.create(maxLive, idleTimeout, key, perKey);
+    }
+
+    /**
+     * Appelle `call` pour chaque élément, avec au plus `parallelism` appels en cours, derrière un {@link CircuitBreaker}.
+     * Les réponses pour lesquelles `isFailure` est vrai comptent comme des échecs mais sont transmises telles quelles ;
+     * un appel dont le CompletionStage échoue n'a pas de réponse : son élément est repris quand le disjoncteur le permet,
+     * et le flow échoue avec la dernière erreur quand l'élément a épuisé ses `maxAttempts` appels.
+     * Tant que le disjoncteur est ouvert, les éléments sont gardés et le flow arrête de consommer, sans échouer.
+     * Les réponses sont émises dans l'ordre des éléments, comme avec mapAsync : un élément repris retient celles qui
+     * le suivent, au plus `parallelism` éléments étant gardés en tout.
+     */
+    public static <In, Out> Flow<In, Out, NotUsed> circuitBreaker(CircuitBreaker breaker, int parallelism, int maxAttempts,
+                                                                  Function<In, CompletionStage<Out>> call,
+                                                                  java.util.function.Predicate<Out> isFailure) {
+        return Flow.fromGraph(new CircuitBreakerStage<>(breaker, parallelism, maxAttempts, call, isFailure));
+    }
+
+    /**
+     * Le flow, avec en valeur matérialisée ses métriques ({@link FlowMetrics}), lisibles pendant que le stream tourne.
+     */
+    public static <In, Out> Flow<In, Out, FlowMetrics> instrumented(Flow<In, Out, NotUsed> flow) {
+        return instrumented(flow, out -> 0L);
+    }
+
+    /**
+     * Comme {@link #instrumented(Flow)}, en comptant aussi la taille en octets des éléments émis.
+     */
+    public static <In, Out> Flow<In, Out, FlowMetrics> instrumented(Flow<In, Out, NotUsed> flow, ToLongFunction<Out> sizeOf) {
+        return flow.viaMat(FlowMetrics.probe(sizeOf), Keep.right());
+    }
+
+    /**
+     * Le flow, avec en valeur matérialisée un {@link DrainSwitch} qui l'arrête en laissant finir les éléments en cours.
+     */
+    public static <In, Out> Flow<In, Out, DrainSwitch> drainable(Flow<In, Out, NotUsed> flow) {
+        return DrainSwitch.wrap(flow);
+    }
+
+    /**
+     * Enregistre dans `latency` le temps de traitement de chaque élément par `flow`, et le temps passé à attendre les
+     * éléments de l'amont (voir {@link StageLatency#timed}).
+     */
+    public static <In, Out> Flow<In, Out, NotUsed> timed(StageLatency latency, Flow<In, Out, NotUsed> flow) {
+        return latency.timed(flow);
+    }
+
+    /**
+     * Enveloppe chaque élément avec l'instant où il passe ce stage, à placer juste après le source.
+     */
+    public static <T> Flow<T, Timestamped<T>, NotUsed> stamp() {
+        return Flow.<T>create().map(Timestamped::now);
+    }
+
+    /**
+     * Enregistre dans `histogram` le temps écoulé depuis {@link #stamp()} et retire l'enveloppe, à placer juste avant le sink.
+     */
+    public static <T> Flow<Timestamped<T>, T, NotUsed> endToEnd(LatencyHistogram histogram) {
+        return Flow.<Timestamped<T>>create().map(t -> {
+            histogram.recordSince(t.emittedNanos);
+            return t.value;
+        });
+    }
+
+    /**
+     * Exécute `flow` dans son propre îlot async, en ne faisant passer les frontières qu'à des paquets d'au plus
+     * `maxChunk` éléments : avant l'îlot les éléments sont regroupés, dans l'îlot ils sont dépaquetés pour `flow`
+     * puis regroupés en sortie, et après l'îlot ils sont dépaquetés à nouveau. L'ordre est conservé et la contre-pression
+     * s'applique paquet par paquet. Un paquet incomplet part quand son premier élément a attendu `maxDelay`.
+     *
+     * Utile quand `flow` est peu coûteux par élément : le coût d'une frontière async (un message d'acteur par
+     * élément) est alors payé une fois par paquet.
+     */
+    @SuppressWarnings("unchecked")
+    public static <In, Out> Flow<In, Out, NotUsed> chunked(int maxChunk, Duration maxDelay, Flow<In, Out, NotUsed> flow) {
+        final Flow<Object[], Object[], NotUsed> island = Flow.<Object[]>create()
+                .mapConcat(chunk -> java.util.Arrays.asList((In[]) chunk))
+                .via(flow)
+                .via(new ChunkStage<>(maxChunk, maxDelay));
+        return Flow.<In>create()
+                .via(new ChunkStage<>(maxChunk, maxDelay))
+                .via(island.async())
+                .mapConcat(chunk -> java.util.Arrays.asList((Out[]) chunk));
+    }
+
+    /**
+     * Appelle `bulk` une fois par paquet d'au plus `maxBatch` éléments, avec au plus `parallelism` appels en cours, et
+     * émet le résultat de chaque élément dans l'ordre d'arrivée des éléments. Un paquet incomplet part quand son premier
+     * élément a attendu `maxDelay`.
+     *
+     * `bulk` renvoie un résultat par élément du paquet, dans le même ordre : un élément peut échouer sans les autres.
+     * Si l'appel entier échoue, ou ne renvoie pas autant de résultats que d'éléments, tous les éléments du paquet sont
+     * en échec ; le stream, lui, continue.
+     */
+    @SuppressWarnings("unchecked")
+    public static <In, Out> Flow<In, Try<Out>, NotUsed> batchMapAsync(int maxBatch, Duration maxDelay, int parallelism,
+                                                                       Function<List<In>, CompletionStage<List<Try<Out>>>> bulk) {
+        return Flow.<In>create()
+                .via(new ChunkStage<>(maxBatch, maxDelay))
+                .map(chunk -> List.of((In[]) chunk))
+                .mapAsync(parallelism, batch -> scatter(batch, bulk))
+                .mapConcat(results -> results);
+    }
+
+    /**
+     * Comme {@link #batchMapAsync(int, Duration, int, Function)}, pour une API qui renvoie ses résultats par clé :
+     * chaque élément reçoit le résultat de sa clé, ou un échec si `bulk` n'en a pas renvoyé.
+     */
+    public static <In, K, Out> Flow<In, Try<Out>, NotUsed> batchMapAsync(int maxBatch, Duration maxDelay, int parallelism,
+                                                                          Function<In, K> key,
+                                                                          Function<List<In>, CompletionStage<Map<K, Out>>> bulk) {
+        return batchMapAsync(maxBatch, maxDelay, parallelism, batch -> bulk.apply(batch).thenApply(results ->
+                batch.map(in -> results.get(key.apply(in))
+                        .toTry(() -> new NoSuchElementException("No result for the key " + key.apply(in))))));
+    }
+
+    private static <In, Out> CompletionStage<List<Try<Out>>> scatter(List<In> batch, Function<List<In>, CompletionStage<List<Try<Out>>>> bulk) {
+        CompletionStage<List<Try<Out>>> call;
+        try {
+            call = bulk.apply(batch);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.handle((results, e) -> {
+            if (e != null) {
+                final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                return batch.map(__ -> Try.failure(cause));
+            }
+            if (results == null || results.size() != batch.size()) {
+                final IllegalStateException mismatch = new IllegalStateException("Expected " + batch.size()
+                        + " results, got " + (results == null ? "none" : results.size()));
+                return batch.map(__ -> Try.failure(mismatch));
+            }
+            return results;
+        });
+    }
+
     public static Flow<ByteString, ByteString, NotUsed> discard() {
         return Flow.<ByteString>create().reduce((a, b) -> ByteString.empty());
     }
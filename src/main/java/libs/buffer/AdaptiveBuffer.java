@@ -0,0 +1,65 @@
+package libs.buffer;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.javadsl.Flow;
+
+import java.time.Duration;
+
+/**
+ * Buffer dont la capacité s'adapte au trafic, à placer devant une frontière async.
+ * <p>
+ * Les buffers d'entrée des frontières async ont une taille fixe, la même pour toutes. Un AdaptiveBuffer mesure, sur
+ * chaque intervalle, le temps passé plein (l'amont est bloqué) et le temps passé vide alors que l'aval attend (l'aval
+ * est affamé) :
+ * <ul>
+ * <li>les deux à la fois : le trafic arrive par rafales, la capacité double (dans la limite de <code>max</code> et
+ * du {@link BufferBudget})</li>
+ * <li>sinon, si moins de la moitié de la capacité a servi : un buffer plus grand ne changerait pas le débit, la
+ * capacité est divisée par deux (sans descendre sous <code>min</code>) pour rendre la mémoire</li>
+ * </ul>
+ * Un intervalle doit couvrir au moins une rafale et le creux qui la suit.
+ * Le mode est piloté par attribut : sans {@link #enabled} dans les attributs hérités, le stage laisse passer les
+ * éléments sans les bufferiser.
+ */
+public class AdaptiveBuffer {
+
+    /**
+     * Attribut qui active les AdaptiveBuffer du graphe auquel il est appliqué.
+     */
+    public static final class Bounds implements Attributes.Attribute {
+        public final int min;
+        public final int max;
+        public final Duration interval;
+        public final BufferBudget budget;
+
+        private Bounds(int min, int max, Duration interval, BufferBudget budget) {
+            if (min < 1 || max < min) {
+                throw new IllegalArgumentException("Invalid buffer bounds: " + min + ".." + max);
+            }
+            this.min = min;
+            this.max = max;
+            this.interval = interval;
+            this.budget = budget;
+        }
+    }
+
+    public static Attributes enabled(int min, int max, BufferBudget budget) {
+        return enabled(min, max, Duration.ofMillis(500), budget);
+    }
+
+    /**
+     * @param interval durée des intervalles de mesure, la capacité change au plus une fois par intervalle
+     */
+    public static Attributes enabled(int min, int max, Duration interval, BufferBudget budget) {
+        return Attributes.apply(new Bounds(min, max, interval, budget));
+    }
+
+    /**
+     * Le buffer, nommé <code>name</code> dans le {@link BufferBudget} ; chaque matérialisation y est suivie à part,
+     * sous un nom suffixé si <code>name</code> est déjà pris.
+     */
+    public static <T> Flow<T, T, NotUsed> create(String name) {
+        return Flow.fromGraph(new AdaptiveBufferStage<>(name));
+    }
+}
@@ -0,0 +1,187 @@
+package libs.buffer;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+
+import java.util.ArrayDeque;
+import java.util.Optional;
+
+/**
+ * Voir {@link AdaptiveBuffer}.
+ */
+class AdaptiveBufferStage<T> extends GraphStage<FlowShape<T, T>> {
+
+    private static final double burstThreshold = 0.05;
+    private static final String timer = "resize";
+
+    public final Inlet<T> in = Inlet.create("AdaptiveBuffer.in");
+    public final Outlet<T> out = Outlet.create("AdaptiveBuffer.out");
+
+    private final FlowShape<T, T> shape = FlowShape.of(in, out);
+
+    private final String name;
+
+    AdaptiveBufferStage(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public FlowShape<T, T> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        final Optional<AdaptiveBuffer.Bounds> bounds = inheritedAttributes.getAttribute(AdaptiveBuffer.Bounds.class);
+        return bounds.isPresent() ? new Adaptive(bounds.get()) : new PassThrough();
+    }
+
+    private class PassThrough extends GraphStageLogic {
+        PassThrough() {
+            super(shape);
+            setHandler(in, new AbstractInHandler() {
+                @Override
+                public void onPush() {
+                    push(out, grab(in));
+                }
+            });
+            setHandler(out, new AbstractOutHandler() {
+                @Override
+                public void onPull() {
+                    pull(in);
+                }
+            });
+        }
+    }
+
+    private class Adaptive extends TimerGraphStageLogic {
+        private final AdaptiveBuffer.Bounds bounds;
+        private final ArrayDeque<T> buffer = new ArrayDeque<>();
+        private int capacity = 0;
+        // nom unique dans le budget, pour cette matérialisation
+        private String key;
+
+        // mesures de l'intervalle en cours
+        private long intervalStart;
+        private long fullNanos = 0L;
+        private long fullSince = 0L;
+        private long starvedNanos = 0L;
+        private long starvedSince = 0L;
+        private int highWater = 0;
+
+        Adaptive(AdaptiveBuffer.Bounds bounds) {
+            super(shape);
+            this.bounds = bounds;
+
+            setHandler(in, new AbstractInHandler() {
+                @Override
+                public void onPush() {
+                    final T element = grab(in);
+                    if (isAvailable(out)) {
+                        push(out, element);
+                        endStarved();
+                    } else {
+                        buffer.add(element);
+                        highWater = Math.max(highWater, buffer.size());
+                    }
+                    pullIfRoom();
+                }
+
+                @Override
+                public void onUpstreamFinish() {
+                    if (buffer.isEmpty()) {
+                        completeStage();
+                    }
+                }
+            });
+            setHandler(out, new AbstractOutHandler() {
+                @Override
+                public void onPull() {
+                    if (buffer.isEmpty()) {
+                        starvedSince = System.nanoTime();
+                    } else {
+                        push(out, buffer.poll());
+                        if (isClosed(in) && buffer.isEmpty()) {
+                            completeStage();
+                            return;
+                        }
+                    }
+                    pullIfRoom();
+                }
+            });
+        }
+
+        @Override
+        public void preStart() {
+            key = bounds.budget.reserve(name, bounds.min);
+            capacity = bounds.min;
+            intervalStart = System.nanoTime();
+            schedulePeriodically(timer, bounds.interval);
+            pullIfRoom();
+        }
+
+        @Override
+        public void postStop() {
+            if (key != null) {
+                bounds.budget.release(key, capacity);
+            }
+        }
+
+        private void pullIfRoom() {
+            if (isClosed(in) || hasBeenPulled(in)) {
+                return;
+            }
+            if (buffer.size() < capacity) {
+                if (fullSince != 0L) {
+                    fullNanos += System.nanoTime() - fullSince;
+                    fullSince = 0L;
+                }
+                pull(in);
+            } else if (fullSince == 0L) {
+                fullSince = System.nanoTime();
+            }
+        }
+
+        private void endStarved() {
+            if (starvedSince != 0L) {
+                starvedNanos += System.nanoTime() - starvedSince;
+                starvedSince = 0L;
+            }
+        }
+
+        @Override
+        public void onTimer(Object timerKey) {
+            final long now = System.nanoTime();
+            final double elapsed = now - intervalStart;
+            final double full = (fullNanos + (fullSince == 0L ? 0 : now - fullSince)) / elapsed;
+            final double starved = (starvedNanos + (starvedSince == 0L ? 0 : now - starvedSince)) / elapsed;
+            fullNanos = 0L;
+            starvedNanos = 0L;
+            fullSince = fullSince == 0L ? 0L : now;
+            starvedSince = starvedSince == 0L ? 0L : now;
+            intervalStart = now;
+            final int used = highWater;
+            highWater = buffer.size();
+
+            final int target;
+            if (full > burstThreshold && starved > burstThreshold) {
+                target = Math.min(bounds.max, capacity * 2);
+            } else if (used < capacity / 2) {
+                target = Math.max(bounds.min, Math.max(used, capacity / 2));
+            } else {
+                target = capacity;
+            }
+            if (target != capacity) {
+                capacity = bounds.budget.resize(key, capacity, target);
+                pullIfRoom();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package libs.buffer;
+
+import io.vavr.collection.TreeMap;
+
+/**
+ * Plafond commun aux {@link AdaptiveBuffer} qui le partagent, en nombre d'éléments bufferisés : un buffer ne grandit
+ * que si le total des capacités reste sous le plafond. La capacité minimale d'un buffer lui est toujours accordée, le
+ * total peut donc dépasser le plafond quand trop de buffers le partagent. Permet aussi de lire la capacité choisie
+ * par chaque buffer.
+ */
+public class BufferBudget {
+
+    private final long maxElements;
+    private long reserved = 0L;
+    private long homonyms = 0L;
+    private TreeMap<String, Integer> capacities = TreeMap.empty();
+
+    private BufferBudget(long maxElements) {
+        this.maxElements = maxElements;
+    }
+
+    public static BufferBudget ofElements(long maxElements) {
+        return new BufferBudget(maxElements);
+    }
+
+    /**
+     * Plafond en octets, pour des éléments d'environ <code>bytesPerElement</code> octets.
+     */
+    public static BufferBudget ofBytes(long maxBytes, long bytesPerElement) {
+        return new BufferBudget(Math.max(1, maxBytes / Math.max(1, bytesPerElement)));
+    }
+
+    public static BufferBudget unlimited() {
+        return new BufferBudget(Long.MAX_VALUE);
+    }
+
+    /**
+     * Réserve la capacité minimale d'un buffer qui démarre, même au-delà du plafond : un buffer de capacité nulle ne
+     * lirait jamais son amont. Renvoie le nom sous lequel le buffer est suivi, <code>name</code> suffixé si un autre
+     * buffer en cours d'exécution porte déjà ce nom.
+     */
+    synchronized String reserve(String name, int min) {
+        final String key = capacities.containsKey(name) ? name + "#" + (++homonyms) : name;
+        reserved += min;
+        capacities = capacities.put(key, min);
+        return key;
+    }
+
+    /**
+     * Passe la capacité du buffer <code>name</code> de <code>from</code> à <code>to</code> si le plafond le permet
+     * (une réduction est toujours acceptée) ; renvoie la capacité retenue.
+     */
+    synchronized int resize(String name, int from, int to) {
+        final int granted = to <= from ? to : (int) Math.min(to, from + Math.max(0, maxElements - reserved));
+        reserved += granted - from;
+        capacities = capacities.put(name, granted);
+        return granted;
+    }
+
+    synchronized void release(String name, int capacity) {
+        reserved -= capacity;
+        capacities = capacities.remove(name);
+    }
+
+    public synchronized long getReserved() {
+        return reserved;
+    }
+
+    public long getMaxElements() {
+        return maxElements;
+    }
+
+    /**
+     * Capacité actuelle de chaque buffer en cours d'exécution.
+     */
+    public synchronized TreeMap<String, Integer> getCapacities() {
+        return capacities;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("BufferBudget{reserved=%d/%s, %s}", reserved,
+                maxElements == Long.MAX_VALUE ? "unlimited" : String.valueOf(maxElements),
+                capacities.map(t -> t._1 + "=" + t._2).mkString(", "));
+    }
+}
@@ -0,0 +1,78 @@
+package libs.codec;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.util.ByteString;
+
+import java.util.function.Supplier;
+
+/**
+ * Applique un {@link Codec} à chaque message. Le codec est créé à la matérialisation et fermé à l'arrêt du stage :
+ * son état (dictionnaire de compression, compteur de nonces) suit le stream.
+ */
+class CodecStage extends GraphStage<FlowShape<ByteString, ByteString>> {
+
+    /**
+     * La transformation d'un message, avec état. Une exception fait échouer le stream.
+     */
+    interface Codec {
+
+        ByteString apply(ByteString message) throws Exception;
+
+        default void close() {
+        }
+    }
+
+    public final Inlet<ByteString> in;
+    public final Outlet<ByteString> out;
+
+    private final FlowShape<ByteString, ByteString> shape;
+
+    private final Supplier<Codec> codec;
+
+    CodecStage(String name, Supplier<Codec> codec) {
+        this.in = Inlet.create(name + ".in");
+        this.out = Outlet.create(name + ".out");
+        this.shape = FlowShape.of(in, out);
+        this.codec = codec;
+    }
+
+    @Override
+    public FlowShape<ByteString, ByteString> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        return new GraphStageLogic(shape) {
+
+            private final Codec current = codec.get();
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() throws Exception {
+                        push(out, current.apply(grab(in)));
+                    }
+                });
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        pull(in);
+                    }
+                });
+            }
+
+            @Override
+            public void postStop() {
+                current.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package libs.codec;
+
+import akka.NotUsed;
+import akka.stream.javadsl.BidiFlow;
+import akka.stream.javadsl.Flow;
+import akka.util.ByteString;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+
+/**
+ * Des couches de protocole sur des {@link ByteString}, sous forme de {@link BidiFlow} : le haut
+ * (<code>in1 -&gt; out1</code>) encode les messages qui partent, le bas (<code>in2 -&gt; out2</code>) décode ceux qui
+ * arrivent. Les couches s'empilent avec <code>atop</code>, de la plus proche des messages à la plus proche du
+ * transport :
+ * <pre>
+ *   BidiFlow&lt;ByteString, ByteString, ByteString, ByteString, NotUsed&gt; protocol = Codecs.compression(Deflater.BEST_SPEED, 1 &lt;&lt; 20)
+ *           .atop(Codecs.encryption(key))
+ *           .atop(Codecs.framing(1 &lt;&lt; 20));
+ *   Flow&lt;ByteString, ByteString, ?&gt; client = protocol.join(Tcp.get(system).outgoingConnection(host, port));
+ * </pre>
+ * Les couches lisent les messages par leurs vues {@link java.nio.ByteBuffer}, sans les copier dans un tableau
+ * intermédiaire, et n'allouent que leur résultat ; les messages décodés par le framing sont des tranches des octets
+ * reçus.
+ * <p>
+ * La compression et le chiffrement ont un état par stream : les messages doivent être décodés dans l'ordre, par un
+ * seul stream, et un message altéré fait échouer le décodage.
+ */
+public class Codecs {
+
+    private Codecs() {
+    }
+
+    /**
+     * Chaque message est précédé de sa longueur sur 4 octets (big-endian) ; le décodage retrouve les messages dans un
+     * flux d'octets découpé n'importe comment et échoue sur un message de plus de <code>maxLength</code> octets.
+     */
+    public static BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> framing(int maxLength) {
+        final Flow<ByteString, ByteString, NotUsed> encoder = Flow.<ByteString>create().map(message -> {
+            if (message.size() > maxLength) {
+                throw new IllegalArgumentException("Message of " + message.size() + " bytes, larger than the maximum of " + maxLength);
+            }
+            final int length = message.size();
+            return ByteString.fromArrayUnsafe(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length})
+                    .concat(message);
+        });
+        return BidiFlow.fromFlows(encoder, Flow.fromGraph(new FrameDecoderStage(maxLength)));
+    }
+
+    /**
+     * Compression deflate de chaque message, sur un flux continu : les messages suivants profitent du dictionnaire
+     * des précédents.
+     *
+     * @param level     niveau de {@link Deflater}, de 1 (le plus rapide) à 9, 0 pour encadrer les messages sans les
+     *                  compresser ou -1 ({@link Deflater#DEFAULT_COMPRESSION}) pour le niveau par défaut
+     * @param maxLength taille maximum d'un message décompressé, au-delà de laquelle le décodage échoue
+     */
+    public static BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> compression(int level, int maxLength) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level, expected -1 to 9: " + level);
+        }
+        return BidiFlow.fromFlows(
+                Flow.fromGraph(new CodecStage("Deflate", () -> new DeflateCodecs.Compress(level))),
+                Flow.fromGraph(new CodecStage("Inflate", () -> new DeflateCodecs.Decompress(maxLength))));
+    }
+
+    /**
+     * Chiffrement authentifié AES-GCM de chaque message ; ajoute 28 octets par message.
+     */
+    public static BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> encryption(SecretKey key) {
+        if (!"AES".equals(key.getAlgorithm())) {
+            throw new IllegalArgumentException("An AES key is required: " + key.getAlgorithm());
+        }
+        return BidiFlow.fromFlows(
+                Flow.fromGraph(new CodecStage("Encrypt", () -> new GcmCodecs.Encrypt(key))),
+                Flow.fromGraph(new CodecStage("Decrypt", () -> new GcmCodecs.Decrypt(key))));
+    }
+
+    /**
+     * Une clé AES à partir de ses 16, 24 ou 32 octets.
+     */
+    public static SecretKey aesKey(byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("An AES key has 16, 24 or 32 bytes: " + key.length);
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * Une nouvelle clé AES-256 aléatoire.
+     */
+    public static SecretKey generateAesKey() {
+        try {
+            final KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            return generator.generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("AES is not available", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package libs.codec;
+
+import akka.util.ByteString;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * La compression de {@link Codecs#compression} : un seul flux deflate par stream, vidé (<code>SYNC_FLUSH</code>)
+ * à la fin de chaque message. Chaque message compressé se décompresse donc seul, dans l'ordre, et profite du
+ * dictionnaire des messages précédents.
+ * <p>
+ * Les messages sont lus par leurs vues {@link ByteBuffer}, sans les copier dans un tableau, et le résultat est
+ * enveloppé sans copie ; le tampon de sortie n'est recopié que s'il faut l'agrandir.
+ */
+class DeflateCodecs {
+
+    private DeflateCodecs() {
+    }
+
+    static class Compress implements CodecStage.Codec {
+
+        private final Deflater deflater;
+
+        Compress(int level) {
+            this.deflater = new Deflater(level, true);
+        }
+
+        @Override
+        public ByteString apply(ByteString message) {
+            ByteBuffer output = ByteBuffer.allocate(message.size() / 2 + 64);
+            for (ByteBuffer input : message.getByteBuffers()) {
+                deflater.setInput(input);
+                while (!deflater.needsInput()) {
+                    output = ensureRemaining(output, Integer.MAX_VALUE);
+                    deflater.deflate(output, Deflater.NO_FLUSH);
+                }
+            }
+            do {
+                output = ensureRemaining(output, Integer.MAX_VALUE);
+                deflater.deflate(output, Deflater.SYNC_FLUSH);
+            } while (!output.hasRemaining());
+            return ByteString.fromArrayUnsafe(output.array(), 0, output.position());
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+
+    static class Decompress implements CodecStage.Codec {
+
+        private final Inflater inflater = new Inflater(true);
+        // un octet de plus que le maximum : un message de maxLength octets tient sans agrandir le tampon
+        private final int limit;
+
+        Decompress(int maxLength) {
+            this.limit = (int) Math.min(Integer.MAX_VALUE, maxLength + 1L);
+        }
+
+        @Override
+        public ByteString apply(ByteString message) throws DataFormatException {
+            ByteBuffer output = ByteBuffer.allocate((int) Math.min(limit, Math.max(256L, message.size() * 4L)));
+            for (ByteBuffer input : message.getByteBuffers()) {
+                inflater.setInput(input);
+                while (true) {
+                    output = ensureRemaining(output, limit);
+                    if (inflater.inflate(output) == 0) {
+                        if (inflater.needsInput() || inflater.finished()) {
+                            break;
+                        }
+                        throw new DataFormatException("Unexpected state of the inflater: a dictionary is needed");
+                    }
+                }
+            }
+            return ByteString.fromArrayUnsafe(output.array(), 0, output.position());
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Le tampon, ou un tampon deux fois plus grand s'il est plein, d'au plus <code>limit</code> octets.
+     */
+    private static ByteBuffer ensureRemaining(ByteBuffer output, int limit) {
+        if (output.hasRemaining()) {
+            return output;
+        }
+        if (output.capacity() >= limit) {
+            throw new IllegalStateException("Message larger than " + (limit - 1) + " bytes");
+        }
+        final ByteBuffer grown = ByteBuffer.allocate((int) Math.min(limit, output.capacity() * 2L));
+        output.flip();
+        return grown.put(output);
+    }
+}
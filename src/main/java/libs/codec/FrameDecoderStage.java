@@ -0,0 +1,99 @@
+package libs.codec;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.util.ByteString;
+
+/**
+ * Le décodage de {@link Codecs#framing} : les octets reçus sont concaténés sans copie (un {@link ByteString} en
+ * corde) et chaque message émis est une tranche de ces octets. Un message n'est recopié que par les couches du
+ * dessus qui en ont besoin.
+ */
+class FrameDecoderStage extends GraphStage<FlowShape<ByteString, ByteString>> {
+
+    static final int HEADER_LENGTH = 4;
+
+    public final Inlet<ByteString> in = Inlet.create("FrameDecoder.in");
+    public final Outlet<ByteString> out = Outlet.create("FrameDecoder.out");
+
+    private final FlowShape<ByteString, ByteString> shape = FlowShape.of(in, out);
+
+    private final int maxLength;
+
+    FrameDecoderStage(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public FlowShape<ByteString, ByteString> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        return new GraphStageLogic(shape) {
+
+            private ByteString buffer = ByteString.empty();
+            // longueur du message en cours, -1 tant que son en-tête n'est pas lu
+            private int length = -1;
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        buffer = buffer.concat(grab(in));
+                        pushOrPull();
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        // un en-tête lu sans son message est une trame tronquée
+                        if (length < 0 && buffer.isEmpty()) {
+                            completeStage();
+                        } else if (isAvailable(out)) {
+                            pushOrPull();
+                        }
+                    }
+                });
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        pushOrPull();
+                    }
+                });
+            }
+
+            private void pushOrPull() {
+                if (length < 0 && buffer.size() >= HEADER_LENGTH) {
+                    length = (buffer.apply(0) & 0xFF) << 24 | (buffer.apply(1) & 0xFF) << 16
+                            | (buffer.apply(2) & 0xFF) << 8 | (buffer.apply(3) & 0xFF);
+                    if (length < 0 || length > maxLength) {
+                        failStage(new IllegalStateException("Frame of " + (length & 0xFFFFFFFFL)
+                                + " bytes, larger than the maximum of " + maxLength));
+                        return;
+                    }
+                    buffer = buffer.drop(HEADER_LENGTH);
+                }
+                if (length >= 0 && buffer.size() >= length) {
+                    final ByteString message = buffer.take(length);
+                    buffer = buffer.drop(length);
+                    length = -1;
+                    push(out, message);
+                    if (isClosed(in) && buffer.isEmpty()) {
+                        completeStage();
+                    }
+                } else if (isClosed(in)) {
+                    failStage(new IllegalStateException("Stream finished inside a frame: " + buffer.size() + " bytes left"));
+                } else if (!hasBeenPulled(in)) {
+                    pull(in);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package libs.codec;
+
+import akka.util.ByteString;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Le chiffrement de {@link Codecs#encryption} : chaque message est chiffré et authentifié seul en AES-GCM, sous la
+ * forme <code>nonce (12 octets) | chiffré | tag (16 octets)</code>.
+ * <p>
+ * Le nonce d'un message est un nonce aléatoire tiré à la matérialisation, augmenté du numéro du message : il n'est
+ * jamais réutilisé dans un stream, et deux streams ne se recouvrent qu'avec une probabilité négligeable. Le chiffre
+ * lit les vues {@link ByteBuffer} du message et écrit directement dans le tableau du résultat.
+ */
+class GcmCodecs {
+
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private GcmCodecs() {
+    }
+
+    static class Encrypt implements CodecStage.Codec {
+
+        private final SecretKey key;
+        private final Cipher cipher;
+        private final byte[] base = new byte[NONCE_LENGTH];
+        private long counter = 0L;
+
+        Encrypt(SecretKey key) {
+            this.key = key;
+            this.cipher = cipher();
+            new SecureRandom().nextBytes(base);
+        }
+
+        @Override
+        public ByteString apply(ByteString message) throws GeneralSecurityException {
+            final byte[] result = new byte[NONCE_LENGTH + message.size() + TAG_LENGTH];
+            final ByteBuffer nonce = ByteBuffer.wrap(result, 0, NONCE_LENGTH);
+            nonce.put(base, 0, 4).putLong(ByteBuffer.wrap(base, 4, 8).getLong() + counter++);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, result, 0, NONCE_LENGTH));
+            final ByteBuffer output = ByteBuffer.wrap(result, NONCE_LENGTH, result.length - NONCE_LENGTH);
+            for (ByteBuffer input : message.getByteBuffers()) {
+                cipher.update(input, output);
+            }
+            cipher.doFinal(ByteBuffer.allocate(0), output);
+            return ByteString.fromArrayUnsafe(result);
+        }
+    }
+
+    static class Decrypt implements CodecStage.Codec {
+
+        private final SecretKey key;
+        private final Cipher cipher;
+
+        Decrypt(SecretKey key) {
+            this.key = key;
+            this.cipher = cipher();
+        }
+
+        @Override
+        public ByteString apply(ByteString message) throws GeneralSecurityException {
+            if (message.size() < NONCE_LENGTH + TAG_LENGTH) {
+                throw new AEADBadTagException("Encrypted message too short: " + message.size() + " bytes");
+            }
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, message.take(NONCE_LENGTH).toArray()));
+            final byte[] result = new byte[message.size() - NONCE_LENGTH - TAG_LENGTH];
+            final ByteBuffer output = ByteBuffer.wrap(result);
+            for (ByteBuffer input : message.drop(NONCE_LENGTH).getByteBuffers()) {
+                cipher.update(input, output);
+            }
+            cipher.doFinal(ByteBuffer.allocate(0), output);
+            return ByteString.fromArrayUnsafe(result);
+        }
+    }
+
+    private static Cipher cipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(TRANSFORMATION + " is not available", e);
+        }
+    }
+}
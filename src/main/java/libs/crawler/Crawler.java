@@ -0,0 +1,362 @@
+package libs.crawler;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.stream.ActorAttributes;
+import akka.stream.ActorMaterializer;
+import akka.stream.ThrottleMode;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import libs.CircuitBreaker;
+import libs.Flows;
+import libs.drain.DrainSwitch;
+import libs.latency.LatencyHistogram;
+import libs.latency.LatencyReport;
+import libs.latency.StageLatency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Moteur de crawl : charge des clés, les fait passer par un throttle, appelle un service pour chacune, transforme
+ * les réponses et écrit le résultat, ligne par ligne, dans un fichier.
+ * <pre>
+ *   loader ~> throttle ~> fetch ~> parse ~> monitor ~> write
+ * </pre>
+ * Le loader, le fetch, le parse et le writer sont fournis par l'application ; le throttle et le monitor peuvent
+ * être remplacés. Tous les réglages de performance (parallélisme, buffers, dispatcher de chaque stage, écriture par
+ * paquets, fsync, disjoncteur) viennent de {@link CrawlerSettings}, donc de la configuration.
+ *
+ * @param <K> la clé à crawler (un code postal...)
+ * @param <R> la réponse du service
+ * @param <V> le résultat écrit
+ */
+public class Crawler<K, R, V> {
+
+    public static Logger LOGGER = LoggerFactory.getLogger(Crawler.class);
+
+    /**
+     * Les clés à traiter, et celles déjà traitées lors d'un précédent crawl.
+     */
+    public interface Loader<K> {
+        List<K> load();
+
+        default Set<K> alreadyDone() {
+            return Collections.emptySet();
+        }
+    }
+
+    public interface Fetcher<K, R> {
+        CompletionStage<R> fetch(K key);
+
+        /**
+         * Une réponse en échec compte pour le disjoncteur, mais est tout de même transmise au parser.
+         */
+        default boolean isFailure(R response) {
+            return false;
+        }
+    }
+
+    /**
+     * Transforme une réponse en résultat, ou l'écarte.
+     */
+    public interface Parser<K, R, V> {
+        Option<V> parse(K key, R response);
+    }
+
+    /**
+     * Une ligne du fichier de résultats, retour à la ligne compris.
+     */
+    public interface Writer<V> {
+        ByteString serialize(V value);
+    }
+
+    /**
+     * Compteurs et latences du crawl, mis à jour au fil de l'eau.
+     */
+    public static class Stats {
+        private final long start = System.nanoTime();
+        private final AtomicLong loaded = new AtomicLong();
+        private final AtomicLong fetched = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong parsed = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final StageLatency fetchLatency = new StageLatency("fetch");
+        private final StageLatency parseLatency = new StageLatency("parse");
+        private final StageLatency writeLatency = new StageLatency("write");
+
+        public long getLoaded() {
+            return loaded.get();
+        }
+
+        public long getFetched() {
+            return fetched.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getParsed() {
+            return parsed.get();
+        }
+
+        public long getWritten() {
+            return written.get();
+        }
+
+        public StageLatency getFetchLatency() {
+            return fetchLatency;
+        }
+
+        public StageLatency getParseLatency() {
+            return parseLatency;
+        }
+
+        /**
+         * Latence d'écriture d'un paquet de lignes.
+         */
+        public StageLatency getWriteLatency() {
+            return writeLatency;
+        }
+
+        public io.vavr.collection.List<LatencyHistogram> histograms() {
+            return fetchLatency.histograms().appendAll(parseLatency.histograms()).appendAll(writeLatency.histograms());
+        }
+
+        public double fetchedPerSecond() {
+            return fetched.get() / ((System.nanoTime() - start) / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats{loaded=%s, fetched=%s, failures=%s, parsed=%s, written=%s, %.1f fetched/s}",
+                    loaded.get(), fetched.get(), failures.get(), parsed.get(), written.get(), fetchedPerSecond());
+        }
+    }
+
+    private final CrawlerSettings settings;
+    private final Loader<K> loader;
+    private final Fetcher<K, R> fetcher;
+    private final Parser<K, R, V> parser;
+    private final Writer<V> writer;
+    private final Option<Flow<K, K, NotUsed>> throttle;
+    private final Consumer<Stats> monitor;
+    private final Option<DrainSwitch> drainSwitch;
+
+    private Crawler(CrawlerSettings settings, Loader<K> loader, Fetcher<K, R> fetcher, Parser<K, R, V> parser,
+                    Writer<V> writer, Option<Flow<K, K, NotUsed>> throttle, Consumer<Stats> monitor,
+                    Option<DrainSwitch> drainSwitch) {
+        this.settings = settings;
+        this.loader = loader;
+        this.fetcher = fetcher;
+        this.parser = parser;
+        this.writer = writer;
+        this.throttle = throttle;
+        this.monitor = monitor;
+        this.drainSwitch = drainSwitch;
+    }
+
+    public static <K, R, V> Crawler<K, R, V> create(CrawlerSettings settings, Loader<K> loader, Fetcher<K, R> fetcher,
+                                                    Parser<K, R, V> parser, Writer<V> writer) {
+        return new Crawler<>(settings, loader, fetcher, parser, writer, Option.none(),
+                stats -> LOGGER.info("{}", stats), Option.none());
+    }
+
+    /**
+     * Remplace le throttle construit à partir de la configuration.
+     */
+    public Crawler<K, R, V> withThrottle(Flow<K, K, NotUsed> throttle) {
+        return new Crawler<>(settings, loader, fetcher, parser, writer, Option.some(throttle), monitor, drainSwitch);
+    }
+
+    /**
+     * Remplace le log des compteurs, appelé tous les <code>monitor.log-every</code> éléments et à la fin du crawl.
+     */
+    public Crawler<K, R, V> withMonitor(Consumer<Stats> monitor) {
+        return new Crawler<>(settings, loader, fetcher, parser, writer, throttle, monitor, drainSwitch);
+    }
+
+    /**
+     * Arrêt en douceur du crawl par <code>drainSwitch</code> : plus aucune clé n'est chargée, les appels en cours vont
+     * à leur terme (dans la limite de <code>fetch.drain-deadline</code>), puis leurs résultats sont écrits. Le crawl
+     * ne peut alors être lancé qu'une fois.
+     */
+    public Crawler<K, R, V> withDrainSwitch(DrainSwitch drainSwitch) {
+        return new Crawler<>(settings, loader, fetcher, parser, writer, throttle, monitor, Option.some(drainSwitch));
+    }
+
+    /**
+     * Lance le crawl. Le résultat est complété avec les compteurs quand tout a été écrit.
+     */
+    public CompletionStage<Stats> run(ActorMaterializer mat) {
+        final Stats stats = new Stats();
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(settings.writePath, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            final CompletableFuture<Stats> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        final Option<Cancellable> latencyReport = settings.latencyReportInterval.isZero()
+                ? Option.none()
+                : Option.some(LatencyReport.schedule(mat.system(), settings.latencyReportInterval, stats.histograms()));
+
+        return source(stats)
+                .via(fetchFlow(stats))
+                .via(parseFlow(mat.system(), stats))
+                .via(monitorFlow(stats))
+                .toMat(writeSink(channel, stats), Keep.right())
+                .run(mat)
+                .whenComplete((done, throwable) -> {
+                    latencyReport.forEach(Cancellable::cancel);
+                    Try.run(channel::close);
+                    monitor.accept(stats);
+                })
+                .thenApply(done -> stats);
+    }
+
+    private Source<K, NotUsed> source(Stats stats) {
+        final Source<K, NotUsed> keys = Source.single(loader)
+                .mapConcat(l -> {
+                    final Set<K> done = l.alreadyDone();
+                    final List<K> remaining = l.load().stream().filter(key -> !done.contains(key)).collect(Collectors.toList());
+                    LOGGER.info("{} keys to crawl, {} already done", remaining.size(), done.size());
+                    return remaining;
+                })
+                .withAttributes(settings.loader.attributes())
+                .map(key -> {
+                    stats.loaded.incrementAndGet();
+                    return key;
+                });
+        final Source<K, NotUsed> limited = settings.take > 0 ? keys.take(settings.take) : keys;
+        final Source<K, NotUsed> loaded = settings.loader.async ? limited.async() : limited;
+
+        final Option<Flow<K, K, NotUsed>> throttleFlow = throttle.orElse(() -> settings.throttleEnabled
+                ? Option.some(Flow.<K>create().throttle(settings.throttleElements, settings.throttlePer,
+                settings.throttleMaximumBurst, ThrottleMode.shaping()))
+                : Option.none());
+        return throttleFlow
+                .map(flow -> loaded.via(stage(flow.withAttributes(settings.throttle.attributes()), settings.throttle)))
+                .getOrElse(loaded);
+    }
+
+    private Flow<K, Tuple2<K, R>, NotUsed> fetchFlow(Stats stats) {
+        // le disjoncteur rend les réponses dans le désordre et reprend les appels échoués : on mesure l'appel lui-même
+        final Function<K, CompletionStage<Tuple2<K, R>>> call = stats.fetchLatency.timed(
+                key -> fetcher.fetch(key).thenApply(response -> Tuple.of(key, response)));
+        final Flow<K, Tuple2<K, R>, NotUsed> fetch;
+        if (settings.circuitBreakerEnabled) {
+            final CircuitBreaker breaker = settings.circuitBreaker("fetch");
+            fetch = Flows.circuitBreaker(breaker, settings.fetch.parallelism, settings.maxAttempts, call,
+                    keyWithResponse -> fetcher.isFailure(keyWithResponse._2));
+        } else {
+            fetch = Flow.<K>create().mapAsync(settings.fetch.parallelism, call::apply);
+        }
+        final Flow<K, Tuple2<K, R>, NotUsed> fetchStage = stage(stats.fetchLatency.timedWait(fetch)
+                .map(keyWithResponse -> {
+                    stats.fetched.incrementAndGet();
+                    if (fetcher.isFailure(keyWithResponse._2)) {
+                        stats.failures.incrementAndGet();
+                    }
+                    return keyWithResponse;
+                })
+                .withAttributes(settings.fetch.attributes()), settings.fetch);
+        return drainSwitch
+                .map(drain -> drain.flow(fetchStage, keyWithResponse -> 1L).mapMaterializedValue(__ -> NotUsed.getInstance()))
+                .getOrElse(fetchStage);
+    }
+
+    private Flow<Tuple2<K, R>, V, NotUsed> parseFlow(ActorSystem system, Stats stats) {
+        final Flow<Tuple2<K, R>, Option<V>, NotUsed> parse;
+        if (settings.parse.parallelism > 1) {
+            final Executor executor = settings.parse.dispatcher.isEmpty()
+                    ? system.dispatcher()
+                    : system.dispatchers().lookup(settings.parse.dispatcher);
+            parse = Flow.<Tuple2<K, R>>create().mapAsync(settings.parse.parallelism,
+                    keyWithResponse -> CompletableFuture.supplyAsync(() -> parser.parse(keyWithResponse._1, keyWithResponse._2), executor));
+        } else {
+            parse = Flow.<Tuple2<K, R>>create().map(keyWithResponse -> parser.parse(keyWithResponse._1, keyWithResponse._2));
+        }
+        return stage(stats.parseLatency.timed(parse)
+                .filter(Option::isDefined)
+                .map(value -> {
+                    stats.parsed.incrementAndGet();
+                    return value.get();
+                })
+                .withAttributes(settings.parse.attributes()), settings.parse);
+    }
+
+    private Flow<V, V, NotUsed> monitorFlow(Stats stats) {
+        return stage(Flow.<V>create()
+                .map(value -> {
+                    if (settings.monitorLogEvery > 0 && stats.parsed.get() % settings.monitorLogEvery == 0) {
+                        monitor.accept(stats);
+                    }
+                    return value;
+                })
+                .withAttributes(settings.monitor.attributes()), settings.monitor);
+    }
+
+    /**
+     * Écrit les lignes par paquets, sur le dispatcher du stage write (les écritures sont bloquantes).
+     */
+    private Sink<V, CompletionStage<Done>> writeSink(FileChannel channel, Stats stats) {
+        final Flow<List<ByteString>, Integer, NotUsed> write = Flow.<List<ByteString>>create()
+                .map(lines -> {
+                    ByteString batch = ByteString.empty();
+                    for (ByteString line : lines) {
+                        batch = batch.concat(line);
+                    }
+                    final ByteBuffer buffer = batch.asByteBuffer();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    if (settings.fsync) {
+                        channel.force(false);
+                    }
+                    stats.written.addAndGet(lines.size());
+                    return lines.size();
+                });
+        return Flow.<V>create()
+                .map(writer::serialize)
+                .groupedWithin(settings.writeBatchSize, settings.writeBatchTimeout)
+                .via(stats.writeLatency.timed(write))
+                .withAttributes(settings.write.attributes().and(settings.write.dispatcher.isEmpty()
+                        ? ActorAttributes.dispatcher("akka.stream.default-blocking-io-dispatcher")
+                        : ActorAttributes.dispatcher(settings.write.dispatcher)))
+                .toMat(Sink.ignore(), Keep.right());
+    }
+
+    private static <A, B> Flow<A, B, NotUsed> stage(Flow<A, B, NotUsed> flow, CrawlerSettings.StageSettings stage) {
+        return stage.async ? flow.async() : flow;
+    }
+}
@@ -0,0 +1,128 @@
+package libs.crawler;
+
+import akka.stream.ActorAttributes;
+import akka.stream.Attributes;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import libs.CircuitBreaker;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Réglages du {@link Crawler}, lus dans la section <code>crawler</code> de la configuration (voir reference.conf).
+ */
+public class CrawlerSettings {
+
+    /**
+     * Réglages communs à tous les stages.
+     */
+    public static class StageSettings {
+        public final String name;
+        public final int bufferSize;
+        public final String dispatcher;
+        public final int parallelism;
+        public final boolean async;
+
+        private StageSettings(String name, Config config) {
+            this.name = name;
+            this.bufferSize = config.getInt("buffer-size");
+            this.dispatcher = config.getString("dispatcher");
+            this.parallelism = config.getInt("parallelism");
+            this.async = config.getBoolean("async");
+        }
+
+        /**
+         * Nom, taille des buffers et dispatcher du stage.
+         */
+        public Attributes attributes() {
+            final Attributes attributes = Attributes.name(name).and(Attributes.inputBuffer(bufferSize, bufferSize));
+            return dispatcher.isEmpty() ? attributes : attributes.and(ActorAttributes.dispatcher(dispatcher));
+        }
+    }
+
+    public final long take;
+
+    public final StageSettings loader;
+    public final StageSettings throttle;
+    public final StageSettings fetch;
+    public final StageSettings parse;
+    public final StageSettings write;
+    public final StageSettings monitor;
+
+    public final boolean throttleEnabled;
+    public final int throttleElements;
+    public final Duration throttlePer;
+    public final int throttleMaximumBurst;
+
+    public final Duration drainDeadline;
+
+    public final boolean circuitBreakerEnabled;
+    public final int maxAttempts;
+    private final Config circuitBreaker;
+
+    public final Path writePath;
+    public final int writeBatchSize;
+    public final Duration writeBatchTimeout;
+    public final boolean fsync;
+
+    public final long monitorLogEvery;
+    public final Duration latencyReportInterval;
+
+    private CrawlerSettings(Config config) {
+        this.take = config.getLong("take");
+        this.loader = new StageSettings("loader", config.getConfig("loader"));
+        this.throttle = new StageSettings("throttle", config.getConfig("throttle"));
+        this.fetch = new StageSettings("fetch", config.getConfig("fetch"));
+        this.parse = new StageSettings("parse", config.getConfig("parse"));
+        this.write = new StageSettings("write", config.getConfig("write"));
+        this.monitor = new StageSettings("monitor", config.getConfig("monitor"));
+
+        this.throttleEnabled = config.getBoolean("throttle.enabled");
+        this.throttleElements = config.getInt("throttle.elements");
+        this.throttlePer = config.getDuration("throttle.per");
+        this.throttleMaximumBurst = config.getInt("throttle.maximum-burst");
+
+        this.drainDeadline = config.getDuration("fetch.drain-deadline");
+        this.circuitBreakerEnabled = config.getBoolean("fetch.circuit-breaker.enabled");
+        this.circuitBreaker = config.getConfig("fetch.circuit-breaker");
+        this.maxAttempts = circuitBreaker.getInt("max-attempts");
+
+        this.writePath = Paths.get(config.getString("write.path"));
+        this.writeBatchSize = config.getInt("write.batch-size");
+        this.writeBatchTimeout = config.getDuration("write.batch-timeout");
+        this.fsync = config.getBoolean("write.fsync");
+
+        this.monitorLogEvery = config.getLong("monitor.log-every");
+        this.latencyReportInterval = config.getDuration("monitor.latency-report-interval");
+    }
+
+    /**
+     * Lit les réglages dans la section <code>crawler</code> de <code>config</code>.
+     */
+    public static CrawlerSettings create(Config config) {
+        return new CrawlerSettings(config.getConfig("crawler"));
+    }
+
+    /**
+     * Lit les réglages dans la configuration de l'application (application.conf, propriétés système).
+     */
+    public static CrawlerSettings load() {
+        return create(ConfigFactory.load());
+    }
+
+    /**
+     * Un nouveau disjoncteur pour le stage fetch, avec les réglages de <code>fetch.circuit-breaker</code>.
+     */
+    public CircuitBreaker circuitBreaker(String name) {
+        return new CircuitBreaker(name,
+                circuitBreaker.getInt("window-size"),
+                circuitBreaker.getInt("minimum-calls"),
+                circuitBreaker.getDouble("failure-rate-threshold"),
+                circuitBreaker.getDuration("slow-call-duration"),
+                circuitBreaker.getDouble("slow-call-rate-threshold"),
+                circuitBreaker.getDuration("open-duration"),
+                circuitBreaker.getInt("probes"));
+    }
+}
@@ -0,0 +1,102 @@
+package libs.dispatch;
+
+import akka.dispatch.Dispatcher;
+import akka.dispatch.DispatcherPrerequisites;
+import akka.dispatch.ExecutorServiceFactoryProvider;
+import akka.dispatch.MessageDispatcher;
+import akka.dispatch.MessageDispatcherConfigurator;
+import akka.dispatch.MonitorableThreadFactory;
+import com.typesafe.config.Config;
+import io.vavr.control.Try;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.duration.Duration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Dispatcher pour le code bloquant : chaque tâche s'exécute sur un thread virtuel quand la JVM le permet (Java 21+),
+ * sinon sur un pool borné de <code>virtual-thread-executor.fallback-pool-size</code> threads.
+ * <p>
+ * Les threads virtuels sont créés par réflexion, le projet restant compilé en Java 11.
+ * <p>
+ * Le dispatcher <code>virtual-thread-dispatcher</code> est déclaré dans reference.conf ; un stage l'utilise avec
+ * <code>ActorAttributes.dispatcher("virtual-thread-dispatcher")</code>, un mapAsync bloquant en passant
+ * <code>system.dispatchers().lookup("virtual-thread-dispatcher")</code> comme executor de ses futures.
+ */
+public class VirtualThreadDispatcherConfigurator extends MessageDispatcherConfigurator {
+
+    public static Logger LOGGER = LoggerFactory.getLogger(VirtualThreadDispatcherConfigurator.class);
+
+    /**
+     * Crée un executor un thread virtuel par tâche, dont les threads sont nommés avec le préfixe donné.
+     */
+    private static final Try<Function<String, ExecutorService>> virtualThreadExecutor = Try.of(() -> {
+        final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+        final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+        final Method name = builder.getMethod("name", String.class, long.class);
+        final Method factory = builder.getMethod("factory");
+        final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        // échoue ici, et non à la création du dispatcher, si les threads virtuels sont en preview et non activés
+        ofVirtual.invoke(null);
+        return prefix -> Try.of(() -> (ExecutorService) newThreadPerTaskExecutor.invoke(null,
+                factory.invoke(name.invoke(ofVirtual.invoke(null), prefix, 0L)))).get();
+    });
+
+    private final Dispatcher instance;
+
+    public VirtualThreadDispatcherConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+        final Config executor = config().getConfig("virtual-thread-executor");
+        final boolean virtualThreads = executor.getBoolean("virtual-threads") && virtualThreadsSupported();
+        final int fallbackPoolSize = executor.getInt("fallback-pool-size");
+        final long keepAlive = executor.getDuration("keep-alive-time", MILLISECONDS);
+
+        final ExecutorServiceFactoryProvider provider = (id, threadFactory) -> () -> {
+            final ThreadFactory named = threadFactory instanceof MonitorableThreadFactory
+                    ? ((MonitorableThreadFactory) threadFactory).withName(((MonitorableThreadFactory) threadFactory).name() + "-" + id)
+                    : threadFactory;
+            if (virtualThreads) {
+                LOGGER.debug("{}: virtual threads", id);
+                return virtualThreadExecutor.get().apply(threadName(named, id) + "-virtual-");
+            }
+            LOGGER.debug("{}: bounded pool of {} threads", id, fallbackPoolSize);
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(fallbackPoolSize, fallbackPoolSize,
+                    keepAlive, MILLISECONDS, new LinkedBlockingQueue<>(), named);
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        };
+
+        this.instance = new Dispatcher(this,
+                config().getString("id"),
+                config().getInt("throughput"),
+                Duration.create(config().getDuration("throughput-deadline-time", NANOSECONDS), NANOSECONDS),
+                provider,
+                Duration.create(config().getDuration("shutdown-timeout", MILLISECONDS), MILLISECONDS));
+    }
+
+    /**
+     * Vrai si la JVM courante sait créer des threads virtuels.
+     */
+    public static boolean virtualThreadsSupported() {
+        return virtualThreadExecutor.isSuccess();
+    }
+
+    @Override
+    public MessageDispatcher dispatcher() {
+        return instance;
+    }
+
+    private static String threadName(ThreadFactory threadFactory, String id) {
+        return threadFactory instanceof MonitorableThreadFactory ? ((MonitorableThreadFactory) threadFactory).name() : id;
+    }
+}
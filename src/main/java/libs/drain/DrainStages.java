@@ -0,0 +1,167 @@
+package libs.drain;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import akka.stream.stage.TimerGraphStageLogic;
+import scala.Tuple2;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Les deux bouts d'un flow contrôlé par un {@link DrainSwitch}.
+ */
+class DrainStages {
+
+    private DrainStages() {
+    }
+
+    /**
+     * L'entrée : compte les éléments, et au déclenchement annule l'amont et termine l'aval.
+     */
+    static class Entry<T> extends GraphStageWithMaterializedValue<FlowShape<T, T>, DrainSwitch> {
+
+        public final Inlet<T> in = Inlet.create("DrainSwitch.entry.in");
+        public final Outlet<T> out = Outlet.create("DrainSwitch.entry.out");
+
+        private final FlowShape<T, T> shape = FlowShape.of(in, out);
+
+        private final Supplier<DrainSwitch> switches;
+
+        Entry(Supplier<DrainSwitch> switches) {
+            this.switches = switches;
+        }
+
+        @Override
+        public FlowShape<T, T> shape() {
+            return shape;
+        }
+
+        @Override
+        public Tuple2<GraphStageLogic, DrainSwitch> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+            final DrainSwitch drainSwitch = switches.get();
+            final GraphStageLogic logic = new GraphStageLogic(shape) {
+
+                {
+                    setHandler(in, new AbstractInHandler() {
+                        @Override
+                        public void onPush() {
+                            drainSwitch.entered++;
+                            push(out, grab(in));
+                        }
+                    });
+                    setHandler(out, new AbstractOutHandler() {
+                        @Override
+                        public void onPull() {
+                            pull(in);
+                        }
+                    });
+                }
+
+                @Override
+                public void preStart() {
+                    drainSwitch.attachEntry(createAsyncCallback((Duration deadline) -> {
+                        completeStage();
+                        drainSwitch.entryStopped();
+                    }));
+                }
+            };
+            return new Tuple2<>(logic, drainSwitch);
+        }
+    }
+
+    /**
+     * La sortie : compte les éléments sortis du flow et, une fois l'entrée arrêtée, laisse le flow se vider jusqu'à
+     * l'échéance avant de l'arrêter.
+     */
+    static class Exit<T> extends GraphStageWithMaterializedValue<FlowShape<T, T>, AtomicReference<DrainSwitch>> {
+
+        public final Inlet<T> in = Inlet.create("DrainSwitch.exit.in");
+        public final Outlet<T> out = Outlet.create("DrainSwitch.exit.out");
+
+        private final FlowShape<T, T> shape = FlowShape.of(in, out);
+
+        private final ToLongFunction<T> weight;
+
+        Exit(ToLongFunction<T> weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public FlowShape<T, T> shape() {
+            return shape;
+        }
+
+        @Override
+        public Tuple2<GraphStageLogic, AtomicReference<DrainSwitch>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+            final AtomicReference<DrainSwitch> connected = new AtomicReference<>();
+            final GraphStageLogic logic = new TimerGraphStageLogic(shape) {
+
+                private DrainSwitch drainSwitch;
+                private boolean triggered = false;
+                private long inFlight = 0L;
+                private long exitedAtTrigger = 0L;
+                private boolean reported = false;
+
+                {
+                    setHandler(in, new AbstractInHandler() {
+                        @Override
+                        public void onPush() {
+                            final T element = grab(in);
+                            drainSwitch.exited += weight.applyAsLong(element);
+                            push(out, element);
+                        }
+
+                        @Override
+                        public void onUpstreamFailure(Throwable ex) {
+                            reported = true;
+                            drainSwitch.fail(ex);
+                            failStage(ex);
+                        }
+                    });
+                    setHandler(out, new AbstractOutHandler() {
+                        @Override
+                        public void onPull() {
+                            pull(in);
+                        }
+                    });
+                }
+
+                @Override
+                public void preStart() {
+                    drainSwitch = connected.get();
+                    drainSwitch.attachExit(createAsyncCallback(deadline -> {
+                        triggered = true;
+                        exitedAtTrigger = drainSwitch.exited;
+                        inFlight = drainSwitch.getInFlight();
+                        scheduleOnce("deadline", deadline);
+                    }));
+                }
+
+                @Override
+                public void onTimer(Object timerKey) {
+                    // l'échéance est passée : ce qui reste dans le flow est abandonné
+                    completeStage();
+                }
+
+                @Override
+                public void postStop() {
+                    if (!reported) {
+                        drainSwitch.complete(triggered
+                                ? new DrainSwitch.Report(true, inFlight, drainSwitch.exited - exitedAtTrigger, drainSwitch.getInFlight())
+                                : new DrainSwitch.Report(false, 0L, 0L, 0L));
+                    }
+                }
+            };
+            return new Tuple2<>(logic, connected);
+        }
+    }
+}
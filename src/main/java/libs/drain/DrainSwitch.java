@@ -0,0 +1,211 @@
+package libs.drain;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.stage.AsyncCallback;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Arrêt en douceur d'un flow dont les traitements en cours coûtent cher (appels d'API payants, paquets pas encore
+ * écrits), là où un {@link akka.stream.KillSwitch} les abandonne.
+ * <pre>
+ *   source
+ *       .viaMat(DrainSwitch.wrap(Flow.&lt;K&gt;create().mapAsync(4, call)), Keep.right())
+ *       .groupedWithin(100, Duration.ofSeconds(1))
+ *       .toMat(sink, Keep.both())
+ *   ...
+ *   drainSwitch.drain(Duration.ofSeconds(30))    // CompletionStage&lt;Report&gt;
+ * </pre>
+ * Au déclenchement, le flow cesse de demander des éléments (l'amont est annulé) et termine son aval : les appels en
+ * cours dans le flow enveloppé vont à leur terme, puis la fin se propage, les paquets partiels sont émis et le sink
+ * se termine normalement. Si tout n'est pas sorti du flow enveloppé avant <code>deadline</code>, ce qui reste est
+ * abandonné et le stream se termine quand même.
+ * <p>
+ * Le {@link Report} compte les éléments en cours au déclenchement, ceux qui sont sortis ensuite et ceux qui ont été
+ * abandonnés. Il est complété quand le flow enveloppé s'arrête, avant que le sink ait fini : attendre aussi la valeur
+ * matérialisée du sink pour savoir que tout est écrit.
+ */
+public class DrainSwitch {
+
+    private final CompletableFuture<Report> report = new CompletableFuture<>();
+    private boolean materialized = false;
+
+    // compteurs écrits chacun par un seul stage
+    volatile long entered = 0L;
+    volatile long exited = 0L;
+
+    private Duration deadline = null;
+    private AsyncCallback<Duration> entry = null;
+    private AsyncCallback<Duration> exit = null;
+    private boolean entryStopped = false;
+
+    /**
+     * Un switch à déclencher de l'extérieur du stream, à matérialiser une seule fois avec {@link #flow}.
+     */
+    public static DrainSwitch create() {
+        return new DrainSwitch();
+    }
+
+    /**
+     * Le flow, avec en valeur matérialisée un nouveau switch à chaque matérialisation.
+     */
+    public static <In, Out> Flow<In, Out, DrainSwitch> wrap(Flow<In, Out, NotUsed> flow) {
+        return wrap(flow, out -> 1L);
+    }
+
+    /**
+     * Comme {@link #wrap(Flow)}, pour un flow qui ne fait pas correspondre un élément de sortie à chaque élément
+     * d'entrée : <code>weight</code> donne le nombre d'éléments d'entrée dont un élément de sortie est fait (par
+     * exemple <code>List::size</code> après un <code>grouped</code>).
+     */
+    public static <In, Out> Flow<In, Out, DrainSwitch> wrap(Flow<In, Out, NotUsed> flow, ToLongFunction<Out> weight) {
+        return build(DrainSwitch::new, flow, weight);
+    }
+
+    /**
+     * Le flow, contrôlé par ce switch.
+     *
+     * @throws IllegalStateException à la deuxième matérialisation
+     */
+    public <In, Out> Flow<In, Out, DrainSwitch> flow(Flow<In, Out, NotUsed> flow, ToLongFunction<Out> weight) {
+        return build(this::claim, flow, weight);
+    }
+
+    private static <In, Out> Flow<In, Out, DrainSwitch> build(Supplier<DrainSwitch> switches,
+                                                              Flow<In, Out, NotUsed> flow, ToLongFunction<Out> weight) {
+        return Flow.fromGraph(new DrainStages.Entry<In>(switches))
+                .via(flow)
+                .viaMat(new DrainStages.Exit<>(weight), Keep.both())
+                .mapMaterializedValue(pair -> {
+                    // la sortie ne connaît son switch qu'une fois tout le flow matérialisé
+                    pair.second().set(pair.first());
+                    return pair.first();
+                });
+    }
+
+    private synchronized DrainSwitch claim() {
+        if (materialized) {
+            throw new IllegalStateException("A drain switch can only be materialized once");
+        }
+        materialized = true;
+        return this;
+    }
+
+    /**
+     * Déclenche l'arrêt. Les appels suivants ne font que rendre le même rapport.
+     *
+     * @param deadline temps laissé aux éléments en cours pour sortir du flow
+     */
+    public synchronized CompletionStage<Report> drain(Duration deadline) {
+        if (this.deadline == null) {
+            this.deadline = deadline;
+            if (entry != null) {
+                entry.invoke(deadline);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Le rapport, complété quand le flow s'arrête, qu'il ait été arrêté par {@link #drain} ou non.
+     */
+    public CompletionStage<Report> report() {
+        return report;
+    }
+
+    /**
+     * Nombre d'éléments entrés dans le flow et pas encore sortis.
+     */
+    public long getInFlight() {
+        return Math.max(0, entered - exited);
+    }
+
+    // côté stages
+
+    synchronized void attachEntry(AsyncCallback<Duration> entry) {
+        this.entry = entry;
+        if (deadline != null) {
+            entry.invoke(deadline);
+        }
+    }
+
+    synchronized void attachExit(AsyncCallback<Duration> exit) {
+        this.exit = exit;
+        if (entryStopped) {
+            exit.invoke(deadline);
+        }
+    }
+
+    synchronized void entryStopped() {
+        entryStopped = true;
+        if (exit != null) {
+            exit.invoke(deadline);
+        }
+    }
+
+    void complete(Report result) {
+        report.complete(result);
+    }
+
+    void fail(Throwable error) {
+        report.completeExceptionally(error);
+    }
+
+    /**
+     * Le bilan de l'arrêt.
+     */
+    public static class Report {
+        private final boolean triggered;
+        private final long inFlight;
+        private final long drained;
+        private final long abandoned;
+
+        Report(boolean triggered, long inFlight, long drained, long abandoned) {
+            this.triggered = triggered;
+            this.inFlight = inFlight;
+            this.drained = drained;
+            this.abandoned = abandoned;
+        }
+
+        /**
+         * Vrai si le flow a été arrêté par {@link DrainSwitch#drain}, faux s'il s'est terminé seul.
+         */
+        public boolean isTriggered() {
+            return triggered;
+        }
+
+        /**
+         * Nombre d'éléments dans le flow au déclenchement.
+         */
+        public long getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Nombre d'éléments sortis du flow après le déclenchement.
+         */
+        public long getDrained() {
+            return drained;
+        }
+
+        /**
+         * Nombre d'éléments encore dans le flow à l'échéance, perdus.
+         */
+        public long getAbandoned() {
+            return abandoned;
+        }
+
+        @Override
+        public String toString() {
+            return triggered
+                    ? String.format("Drain: %d in flight, %d drained, %d abandoned", inFlight, drained, abandoned)
+                    : "Not drained";
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package libs.fraud;
+
+/**
+ * L'activité récente d'un compte, comme émetteur ou comme destinataire, transaction en cours comprise.
+ * <p>
+ * Une seule instance est réutilisée pour toutes les transactions : les valeurs ne sont valables que pendant
+ * l'évaluation des règles.
+ */
+public class AccountActivity {
+
+    private final long windowMillis;
+
+    long count;
+    long sum;
+    long recentCount;
+    long recentSum;
+
+    AccountActivity(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Nombre de transactions sur la fenêtre glissante.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Somme des montants sur la fenêtre glissante.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Nombre de transactions dans la tranche la plus récente de la fenêtre.
+     */
+    public long getRecentCount() {
+        return recentCount;
+    }
+
+    /**
+     * Somme des montants dans la tranche la plus récente de la fenêtre.
+     */
+    public long getRecentSum() {
+        return recentSum;
+    }
+
+    /**
+     * Montant moyen sur la fenêtre.
+     */
+    public double getAverage() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Vélocité : montant par seconde sur la fenêtre.
+     */
+    public double getAmountPerSecond() {
+        return sum * 1000.0 / windowMillis;
+    }
+
+    /**
+     * Transactions par seconde sur la fenêtre.
+     */
+    public double getRatePerSecond() {
+        return count * 1000.0 / windowMillis;
+    }
+}
@@ -0,0 +1,169 @@
+package libs.fraud;
+
+import java.util.Arrays;
+
+/**
+ * Compteurs glissants par compte, dans des tableaux de primitifs : une table de hachage à adressage ouvert associe
+ * l'identifiant du compte à son numéro de slot, et chaque slot a <code>buckets</code> tranches de la fenêtre
+ * (nombre, somme, numéro de tranche). Une tranche dont le numéro est trop ancien est remise à zéro quand on la
+ * réutilise : la fenêtre glisse sans parcourir les comptes.
+ * <p>
+ * Les comptes sans transaction depuis une fenêtre entière sont oubliés lors d'un balayage, au plus une fois par
+ * fenêtre de temps d'événement, qui compacte les slots et reconstruit la table. Rien n'est alloué par transaction
+ * en dehors de ces balayages et des agrandissements.
+ */
+class AccountWindows {
+
+    private final int buckets;
+    private final long bucketMillis;
+    private final long windowMillis;
+
+    // table : numéro de slot + 1, 0 pour une case vide
+    private int[] table;
+    private int mask;
+
+    private int size = 0;
+    private long[] accounts;
+    private long[] lastSeen;
+    private long[] counts;
+    private long[] sums;
+    private long[] bucketNumbers;
+
+    private long nextSweep = Long.MIN_VALUE;
+
+    AccountWindows(long windowMillis, int buckets, int initialCapacity) {
+        this.buckets = buckets;
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.windowMillis = bucketMillis * buckets;
+        final int capacity = Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1;
+        this.table = new int[capacity * 2];
+        this.mask = table.length - 1;
+        this.accounts = new long[capacity];
+        this.lastSeen = new long[capacity];
+        this.counts = new long[capacity * buckets];
+        this.sums = new long[capacity * buckets];
+        this.bucketNumbers = new long[capacity * buckets];
+    }
+
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Nombre de comptes suivis.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Ajoute la transaction aux compteurs du compte, puis remplit <code>activity</code> avec ses compteurs sur la
+     * fenêtre qui se termine à <code>time</code>.
+     */
+    void record(long account, long amount, long time, AccountActivity activity) {
+        if (time >= nextSweep) {
+            sweep(time);
+        }
+        final int slot = slot(account);
+        lastSeen[slot] = Math.max(lastSeen[slot], time);
+        final long current = Math.floorDiv(time, bucketMillis);
+        final int base = slot * buckets;
+        final int index = base + (int) Math.floorMod(current, (long) buckets);
+        if (bucketNumbers[index] < current) {
+            bucketNumbers[index] = current;
+            counts[index] = 0;
+            sums[index] = 0;
+        }
+        if (bucketNumbers[index] == current) {
+            counts[index]++;
+            sums[index] += amount;
+        }
+        long count = 0;
+        long sum = 0;
+        for (int i = base; i < base + buckets; i++) {
+            if (bucketNumbers[i] > current - buckets && bucketNumbers[i] <= current) {
+                count += counts[i];
+                sum += sums[i];
+            }
+        }
+        activity.count = count;
+        activity.sum = sum;
+        activity.recentCount = bucketNumbers[index] == current ? counts[index] : 0;
+        activity.recentSum = bucketNumbers[index] == current ? sums[index] : 0;
+    }
+
+    private int slot(long account) {
+        int h = mix(account) & mask;
+        while (table[h] != 0) {
+            final int slot = table[h] - 1;
+            if (accounts[slot] == account) {
+                return slot;
+            }
+            h = (h + 1) & mask;
+        }
+        if (size == accounts.length) {
+            grow();
+            return slot(account);
+        }
+        final int slot = size++;
+        accounts[slot] = account;
+        lastSeen[slot] = Long.MIN_VALUE;
+        final int base = slot * buckets;
+        Arrays.fill(bucketNumbers, base, base + buckets, Long.MIN_VALUE);
+        table[h] = slot + 1;
+        return slot;
+    }
+
+    private static int mix(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        final int capacity = accounts.length * 2;
+        accounts = Arrays.copyOf(accounts, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        counts = Arrays.copyOf(counts, capacity * buckets);
+        sums = Arrays.copyOf(sums, capacity * buckets);
+        bucketNumbers = Arrays.copyOf(bucketNumbers, capacity * buckets);
+        table = new int[capacity * 2];
+        mask = table.length - 1;
+        rehash();
+    }
+
+    /**
+     * Oublie les comptes inactifs depuis une fenêtre, en gardant les slots vivants contigus.
+     */
+    private void sweep(long time) {
+        nextSweep = time + windowMillis;
+        final long expired = time - windowMillis;
+        int live = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (lastSeen[slot] > expired) {
+                if (live != slot) {
+                    accounts[live] = accounts[slot];
+                    lastSeen[live] = lastSeen[slot];
+                    System.arraycopy(counts, slot * buckets, counts, live * buckets, buckets);
+                    System.arraycopy(sums, slot * buckets, sums, live * buckets, buckets);
+                    System.arraycopy(bucketNumbers, slot * buckets, bucketNumbers, live * buckets, buckets);
+                }
+                live++;
+            }
+        }
+        if (live != size) {
+            size = live;
+            Arrays.fill(table, 0);
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        for (int slot = 0; slot < size; slot++) {
+            int h = mix(accounts[slot]) & mask;
+            while (table[h] != 0) {
+                h = (h + 1) & mask;
+            }
+            table[h] = slot + 1;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package libs.fraud;
+
+import io.vavr.collection.List;
+
+/**
+ * L'état d'un {@link FraudDetector} : les compteurs des émetteurs et des destinataires, et les deux vues réutilisées
+ * pour évaluer les règles. Pas thread-safe.
+ */
+public class FraudCheck<T> {
+
+    private final FraudDetector<T> detector;
+    private final FraudRule[] rules;
+    private final AccountWindows senders;
+    private final AccountWindows recipients;
+    private final AccountActivity sender;
+    private final AccountActivity recipient;
+
+    FraudCheck(FraudDetector<T> detector) {
+        this.detector = detector;
+        this.rules = detector.rules.toJavaList().toArray(new FraudRule[0]);
+        this.senders = new AccountWindows(detector.windowMillis, detector.buckets, 1024);
+        this.recipients = new AccountWindows(detector.windowMillis, detector.buckets, 1024);
+        this.sender = new AccountActivity(senders.getWindowMillis());
+        this.recipient = new AccountActivity(recipients.getWindowMillis());
+    }
+
+    /**
+     * Enregistre la transaction et évalue les règles.
+     *
+     * @return les règles déclenchées, un bit par règle dans l'ordre de leur déclaration ; 0 si aucune
+     */
+    public int check(T transaction) {
+        final long amount = detector.amount.applyAsLong(transaction);
+        final long time = detector.eventTime.applyAsLong(transaction);
+        senders.record(detector.sender.applyAsLong(transaction), amount, time, sender);
+        recipients.record(detector.recipient.applyAsLong(transaction), amount, time, recipient);
+        int triggered = 0;
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i].test(amount, sender, recipient)) {
+                triggered |= 1 << i;
+            }
+        }
+        return triggered;
+    }
+
+    /**
+     * Le signalement d'une transaction pour les règles <code>triggered</code> renvoyées par {@link #check}.
+     */
+    public Suspicious<T> suspicious(T transaction, int triggered) {
+        return new Suspicious<>(transaction, triggered, ruleNames(triggered));
+    }
+
+    public List<String> ruleNames(int triggered) {
+        return detector.names.zipWithIndex()
+                .filter(named -> (triggered & (1 << named._2)) != 0)
+                .map(named -> named._1);
+    }
+
+    /**
+     * Nombre de comptes suivis, émetteurs et destinataires.
+     */
+    public int getAccounts() {
+        return senders.size() + recipients.size();
+    }
+}
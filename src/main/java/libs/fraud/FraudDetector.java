@@ -0,0 +1,146 @@
+package libs.fraud;
+
+import akka.NotUsed;
+import akka.stream.FanOutShape2;
+import akka.stream.Graph;
+import akka.stream.javadsl.Flow;
+import io.vavr.collection.List;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.function.ToLongFunction;
+
+/**
+ * Détection de fraude en continu : pour chaque transaction, les compteurs glissants de l'émetteur et du destinataire
+ * sont mis à jour puis toutes les règles sont évaluées.
+ * <pre>
+ *   FraudDetector.create(Transaction::getSender, Transaction::getRecipient, Transaction::getAmount, Transaction::getTime)
+ *           .withWindow(Duration.ofMinutes(10), 10)
+ *           .rule("large", FraudRule.amountAbove(10_000))
+ *           .rule("burst", FraudRule.senderBurstAbove(20))
+ *           .graph()
+ * </pre>
+ * Le graphe a la forme de {@link FanOutShape2} : toutes les transactions sortent sur <code>out0</code>, les
+ * transactions suspectes sont en plus signalées sur <code>out1</code>. Les comptes sont identifiés par un
+ * <code>long</code> et les compteurs sont rangés dans des tableaux de primitifs ({@link AccountWindows}) : ni le
+ * suivi des comptes ni l'évaluation des règles n'allouent, seule une transaction signalée crée un {@link Suspicious}.
+ * <p>
+ * La fenêtre est découpée en <code>buckets</code> tranches et glisse d'une tranche à la fois, en temps de
+ * l'événement ; un compte sans transaction depuis une fenêtre est oublié.
+ */
+public class FraudDetector<T> {
+
+    public static final int MAX_RULES = 32;
+
+    final ToLongFunction<T> sender;
+    final ToLongFunction<T> recipient;
+    final ToLongFunction<T> amount;
+    final ToLongFunction<T> eventTime;
+    final long windowMillis;
+    final int buckets;
+    final List<String> names;
+    final List<FraudRule> rules;
+
+    private FraudDetector(ToLongFunction<T> sender, ToLongFunction<T> recipient, ToLongFunction<T> amount,
+                          ToLongFunction<T> eventTime, long windowMillis, int buckets,
+                          List<String> names, List<FraudRule> rules) {
+        this.sender = sender;
+        this.recipient = recipient;
+        this.amount = amount;
+        this.eventTime = eventTime;
+        this.windowMillis = windowMillis;
+        this.buckets = buckets;
+        this.names = names;
+        this.rules = rules;
+    }
+
+    /**
+     * Un détecteur sans règle, sur une fenêtre d'une minute en 12 tranches.
+     *
+     * @param eventTime le temps de la transaction, en ms
+     */
+    public static <T> FraudDetector<T> create(ToLongFunction<T> sender, ToLongFunction<T> recipient,
+                                              ToLongFunction<T> amount, ToLongFunction<T> eventTime) {
+        return new FraudDetector<>(sender, recipient, amount, eventTime, 60_000L, 12, List.empty(), List.empty());
+    }
+
+    public FraudDetector<T> withWindow(Duration window, int buckets) {
+        if (buckets < 1 || window.toMillis() < buckets) {
+            throw new IllegalArgumentException("A window must have at least one bucket of 1ms: " + window + ", " + buckets);
+        }
+        return new FraudDetector<>(sender, recipient, amount, eventTime, window.toMillis(), buckets, names, rules);
+    }
+
+    public FraudDetector<T> rule(String name, FraudRule rule) {
+        if (rules.size() == MAX_RULES) {
+            throw new IllegalArgumentException("At most " + MAX_RULES + " rules: " + name);
+        }
+        return new FraudDetector<>(sender, recipient, amount, eventTime, windowMillis, buckets,
+                names.append(name), rules.append(rule));
+    }
+
+    /**
+     * Un nouvel état de détection, pour évaluer les règles hors d'un stream ; à n'utiliser que depuis un thread.
+     */
+    public FraudCheck<T> newCheck() {
+        return new FraudCheck<>(this);
+    }
+
+    /**
+     * Le graphe de détection : <code>out0</code> reçoit toutes les transactions, <code>out1</code> les suspectes.
+     * Chaque matérialisation a ses propres compteurs.
+     */
+    public Graph<FanOutShape2<T, T, Suspicious<T>>, Stats> graph() {
+        return new FraudDetectorStage<>(this);
+    }
+
+    /**
+     * Les seules transactions suspectes.
+     */
+    public Flow<T, Suspicious<T>, NotUsed> suspicious() {
+        return Flow.<T>create().statefulMapConcat(() -> {
+            final FraudCheck<T> check = newCheck();
+            return transaction -> {
+                final int triggered = check.check(transaction);
+                return triggered == 0
+                        ? Collections.emptyList()
+                        : Collections.singletonList(check.suspicious(transaction, triggered));
+            };
+        });
+    }
+
+    /**
+     * Les compteurs d'une détection, lisibles pendant que le stream tourne.
+     */
+    public static class Stats {
+        volatile long checked = 0L;
+        volatile long suspicious = 0L;
+        volatile long accounts = 0L;
+
+        /**
+         * Nombre de transactions évaluées.
+         */
+        public long getChecked() {
+            return checked;
+        }
+
+        /**
+         * Nombre de transactions signalées.
+         */
+        public long getSuspicious() {
+            return suspicious;
+        }
+
+        /**
+         * Nombre de comptes suivis (émetteurs et destinataires).
+         */
+        public long getAccounts() {
+            return accounts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("FraudDetector: %d checked, %d suspicious, %d accounts", checked, suspicious, accounts);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package libs.fraud;
+
+import akka.stream.Attributes;
+import akka.stream.FanOutShape2;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import scala.Tuple2;
+
+/**
+ * Le stage de {@link FraudDetector#graph()}. Une transaction n'est lue que quand <code>out0</code> la demande ; un
+ * signalement attend que <code>out1</code> le demande, en retenant la transaction suivante. Le stage continue tant
+ * qu'une des deux sorties est ouverte.
+ */
+class FraudDetectorStage<T> extends GraphStageWithMaterializedValue<FanOutShape2<T, T, Suspicious<T>>, FraudDetector.Stats> {
+
+    public final Inlet<T> in = Inlet.create("FraudDetector.in");
+    public final Outlet<T> out0 = Outlet.create("FraudDetector.all");
+    public final Outlet<Suspicious<T>> out1 = Outlet.create("FraudDetector.suspicious");
+
+    private final FanOutShape2<T, T, Suspicious<T>> shape = new FanOutShape2<>(in, out0, out1);
+
+    private final FraudDetector<T> detector;
+
+    FraudDetectorStage(FraudDetector<T> detector) {
+        this.detector = detector;
+    }
+
+    @Override
+    public FanOutShape2<T, T, Suspicious<T>> shape() {
+        return shape;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, FraudDetector.Stats> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+        final FraudDetector.Stats stats = new FraudDetector.Stats();
+        final GraphStageLogic logic = new GraphStageLogic(shape) {
+
+            private final FraudCheck<T> check = detector.newCheck();
+            // transaction lue mais pas encore émise sur out0, quand seul out1 l'a demandée
+            private T pendingTransaction = null;
+            private Suspicious<T> pendingAlert = null;
+            private long checked = 0L;
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        final T transaction = grab(in);
+                        final int triggered = check.check(transaction);
+                        // les compteurs sont publiés par paquets pour ne pas payer une écriture volatile par élément
+                        if ((++checked & 1023) == 0) {
+                            publish();
+                        }
+                        if (triggered != 0) {
+                            stats.suspicious++;
+                            if (!isClosed(out1)) {
+                                pendingAlert = check.suspicious(transaction, triggered);
+                            }
+                        }
+                        if (isAvailable(out0)) {
+                            push(out0, transaction);
+                        } else if (!isClosed(out0)) {
+                            pendingTransaction = transaction;
+                        }
+                        flushAlert();
+                        pullIfReady();
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        if (pendingTransaction == null && pendingAlert == null) {
+                            completeStage();
+                        }
+                    }
+                });
+                setHandler(out0, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        if (pendingTransaction != null) {
+                            push(out0, pendingTransaction);
+                            pendingTransaction = null;
+                        }
+                        finishOrPull();
+                    }
+
+                    @Override
+                    public void onDownstreamFinish() {
+                        pendingTransaction = null;
+                        if (isClosed(out1)) {
+                            completeStage();
+                        } else {
+                            finishOrPull();
+                        }
+                    }
+                });
+                setHandler(out1, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        flushAlert();
+                        finishOrPull();
+                    }
+
+                    @Override
+                    public void onDownstreamFinish() {
+                        pendingAlert = null;
+                        if (isClosed(out0)) {
+                            completeStage();
+                        } else {
+                            finishOrPull();
+                        }
+                    }
+                });
+            }
+
+            private void flushAlert() {
+                if (pendingAlert != null && isAvailable(out1)) {
+                    push(out1, pendingAlert);
+                    pendingAlert = null;
+                }
+            }
+
+            private void finishOrPull() {
+                if (isClosed(in) && pendingTransaction == null && pendingAlert == null) {
+                    completeStage();
+                } else {
+                    pullIfReady();
+                }
+            }
+
+            /**
+             * Demande la transaction suivante quand rien n'est retenu et qu'une sortie ouverte la demande.
+             */
+            private void pullIfReady() {
+                if (pendingTransaction == null && pendingAlert == null && !hasBeenPulled(in) && !isClosed(in)
+                        && (isClosed(out0) ? isAvailable(out1) : isAvailable(out0))) {
+                    pull(in);
+                }
+            }
+
+            private void publish() {
+                stats.checked = checked;
+                stats.accounts = check.getAccounts();
+            }
+
+            @Override
+            public void postStop() {
+                publish();
+            }
+        };
+        return new Tuple2<>(logic, stats);
+    }
+}
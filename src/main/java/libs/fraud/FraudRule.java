@@ -0,0 +1,72 @@
+package libs.fraud;
+
+/**
+ * Une règle de détection : vraie si la transaction est suspecte.
+ * <p>
+ * Les règles sont évaluées pour chaque transaction, sur des vues réutilisées : elles ne doivent ni garder les vues ni
+ * allouer.
+ */
+@FunctionalInterface
+public interface FraudRule {
+
+    /**
+     * @param amount    le montant de la transaction
+     * @param sender    l'activité de l'émetteur sur la fenêtre, transaction comprise
+     * @param recipient l'activité du destinataire sur la fenêtre, transaction comprise
+     */
+    boolean test(long amount, AccountActivity sender, AccountActivity recipient);
+
+    static FraudRule amountAbove(long limit) {
+        return (amount, sender, recipient) -> amount > limit;
+    }
+
+    /**
+     * Plus de <code>limit</code> transactions émises sur la fenêtre.
+     */
+    static FraudRule senderCountAbove(long limit) {
+        return (amount, sender, recipient) -> sender.getCount() > limit;
+    }
+
+    /**
+     * Plus de <code>limit</code> envoyés sur la fenêtre.
+     */
+    static FraudRule senderSumAbove(long limit) {
+        return (amount, sender, recipient) -> sender.getSum() > limit;
+    }
+
+    /**
+     * Plus de <code>limit</code> transactions reçues sur la fenêtre : un compte qui collecte.
+     */
+    static FraudRule recipientCountAbove(long limit) {
+        return (amount, sender, recipient) -> recipient.getCount() > limit;
+    }
+
+    /**
+     * Plus de <code>limit</code> transactions émises dans la tranche la plus récente de la fenêtre : une rafale.
+     */
+    static FraudRule senderBurstAbove(long limit) {
+        return (amount, sender, recipient) -> sender.getRecentCount() > limit;
+    }
+
+    /**
+     * Un montant envoyé par seconde, en moyenne sur la fenêtre, supérieur à <code>limit</code>.
+     */
+    static FraudRule senderVelocityAbove(double limit) {
+        return (amount, sender, recipient) -> sender.getAmountPerSecond() > limit;
+    }
+
+    /**
+     * Un montant plus de <code>factor</code> fois supérieur à la moyenne des transactions précédentes de l'émetteur
+     * sur la fenêtre, s'il en a au moins <code>minCount</code>.
+     */
+    static FraudRule amountAboveSenderAverage(double factor, long minCount) {
+        return (amount, sender, recipient) -> {
+            final long previous = sender.getCount() - 1;
+            return previous >= minCount && amount > factor * (sender.getSum() - amount) / previous;
+        };
+    }
+
+    default FraudRule and(FraudRule other) {
+        return (amount, sender, recipient) -> test(amount, sender, recipient) && other.test(amount, sender, recipient);
+    }
+}
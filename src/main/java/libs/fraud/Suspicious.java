@@ -0,0 +1,42 @@
+package libs.fraud;
+
+import io.vavr.collection.List;
+
+/**
+ * Une transaction signalée, avec les règles qu'elle a déclenchées.
+ */
+public class Suspicious<T> {
+
+    private final T transaction;
+    private final int rules;
+    private final List<String> ruleNames;
+
+    Suspicious(T transaction, int rules, List<String> ruleNames) {
+        this.transaction = transaction;
+        this.rules = rules;
+        this.ruleNames = ruleNames;
+    }
+
+    public T getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * Les règles déclenchées, un bit par règle dans l'ordre de leur déclaration.
+     */
+    public int getRules() {
+        return rules;
+    }
+
+    /**
+     * Les noms des règles déclenchées.
+     */
+    public List<String> getRuleNames() {
+        return ruleNames;
+    }
+
+    @Override
+    public String toString() {
+        return "Suspicious(" + transaction + ", " + ruleNames.mkString(", ") + ")";
+    }
+}
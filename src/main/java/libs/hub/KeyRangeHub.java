@@ -0,0 +1,162 @@
+package libs.hub;
+
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+
+import java.util.function.Function;
+
+/**
+ * Diffusion d'un stream vivant à un nombre variable de consommateurs, chacun propriétaire d'un intervalle de clés.
+ * <pre>
+ *   final KeyRangeHub&lt;String, PostcodeRestaurants&gt; hub = crawl
+ *           .runWith(KeyRangeHub.sink(PostcodeRestaurants::getPostcode, 256, KeyRangeHub.Overflow.DROP_OLDEST), mat);
+ *
+ *   hub.consumer("east", "E", "F").runWith(sink, mat);  // les codes postaux de [E, F)
+ *   ...
+ *   hub.getSubscriptions()                              // le retard de chaque consommateur
+ * </pre>
+ * Les consommateurs s'abonnent (en matérialisant {@link #consumer}) et se désabonnent (en annulant leur stream ou par
+ * {@link Subscription#detach()}) pendant que le stream tourne. Chacun reçoit, à partir de son abonnement, les éléments
+ * dont la clé est dans son intervalle ; les intervalles peuvent se recouvrir. Un élément qui n'intéresse aucun
+ * consommateur est perdu et compté par {@link #getUnrouted()}.
+ * <p>
+ * Le hub ne ralentit jamais le stream : chaque consommateur a son propre buffer borné, et quand ce buffer est plein la
+ * politique {@link Overflow} ne s'applique qu'à lui, les autres continuent à leur rythme. La fin ou l'échec du stream
+ * est transmis à tous les consommateurs, après les éléments de leur buffer.
+ */
+public class KeyRangeHub<K extends Comparable<? super K>, T> {
+
+    /**
+     * Ce qui arrive à un consommateur dont le buffer est plein.
+     */
+    public enum Overflow {
+        /**
+         * L'élément le plus ancien du buffer est perdu : le consommateur reçoit les données les plus récentes.
+         */
+        DROP_OLDEST,
+        /**
+         * Le nouvel élément est perdu.
+         */
+        DROP_NEWEST,
+        /**
+         * Le consommateur est désabonné, son stream échoue avec une {@link akka.stream.BufferOverflowException}.
+         */
+        DISCONNECT
+    }
+
+    private final Function<T, K> key;
+    private final int bufferSize;
+    private final Overflow overflow;
+
+    // lu à chaque élément par le stage, remplacé à chaque abonnement ; trié par début d'intervalle
+    private volatile List<Subscription<K, T>> subscriptions = List.empty();
+    private volatile long unrouted = 0L;
+    private boolean completed = false;
+    private Throwable failure = null;
+
+    KeyRangeHub(Function<T, K> key, int bufferSize, Overflow overflow) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.key = key;
+        this.bufferSize = bufferSize;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Le point d'entrée du hub. Chaque matérialisation crée un nouveau hub, sans consommateur : les éléments reçus
+     * avant le premier abonnement sont perdus.
+     *
+     * @param key        la clé d'un élément, qui décide des consommateurs qui le reçoivent
+     * @param bufferSize taille du buffer de chaque consommateur
+     */
+    public static <K extends Comparable<? super K>, T> Sink<T, KeyRangeHub<K, T>> sink(Function<T, K> key, int bufferSize,
+                                                                                   Overflow overflow) {
+        return Sink.fromGraph(new KeyRangeHubStage<>(() -> new KeyRangeHub<>(key, bufferSize, overflow)));
+    }
+
+    /**
+     * Un consommateur des éléments dont la clé est dans <code>[from, to)</code>. L'abonnement a lieu à chaque
+     * matérialisation, qui donne ses métriques.
+     */
+    public Source<T, Subscription<K, T>> consumer(String name, K from, K to) {
+        if (from.compareTo(to) >= 0) {
+            throw new IllegalArgumentException("Empty key range for " + name + ": [" + from + ", " + to + ")");
+        }
+        return Source.fromGraph(new SubscriptionSource<>(this, () -> new Subscription<>(this, name, from, to, bufferSize, overflow)));
+    }
+
+    /**
+     * Les consommateurs abonnés, par début d'intervalle.
+     */
+    public List<Subscription<K, T>> getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Nombre d'éléments qui n'étaient dans l'intervalle d'aucun consommateur.
+     */
+    public long getUnrouted() {
+        return unrouted;
+    }
+
+    /**
+     * Vrai quand le stream est terminé, normalement ou en échec.
+     */
+    public synchronized boolean isTerminated() {
+        return completed || failure != null;
+    }
+
+    // appelé par le stage pour chaque élément
+    void route(T element) {
+        final K k = key.apply(element);
+        final long now = System.nanoTime();
+        boolean routed = false;
+        for (List<Subscription<K, T>> rest = subscriptions; !rest.isEmpty(); rest = rest.tail()) {
+            final Subscription<K, T> subscription = rest.head();
+            if (subscription.getFrom().compareTo(k) > 0) {
+                break;
+            }
+            if (subscription.getTo().compareTo(k) > 0) {
+                if (!subscription.offer(element, now)) {
+                    unregister(subscription);
+                }
+                routed = true;
+            }
+        }
+        if (!routed) {
+            unrouted++;
+        }
+    }
+
+    synchronized void register(Subscription<K, T> subscription) {
+        if (failure != null) {
+            subscription.fail(failure);
+        } else if (completed) {
+            subscription.complete();
+        } else {
+            subscriptions = subscriptions.append(subscription).sortBy(Subscription::getFrom);
+        }
+    }
+
+    synchronized void unregister(Subscription<K, T> subscription) {
+        subscriptions = subscriptions.filter(s -> s != subscription);
+    }
+
+    synchronized void complete() {
+        completed = true;
+        for (Subscription<K, T> subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions = List.empty();
+    }
+
+    synchronized void fail(Throwable error) {
+        failure = error;
+        for (Subscription<K, T> subscription : subscriptions) {
+            subscription.fail(error);
+        }
+        subscriptions = List.empty();
+    }
+}
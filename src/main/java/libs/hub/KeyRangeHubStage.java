@@ -0,0 +1,76 @@
+package libs.hub;
+
+import akka.stream.Attributes;
+import akka.stream.Inlet;
+import akka.stream.SinkShape;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import scala.Tuple2;
+
+import java.util.function.Supplier;
+
+/**
+ * Le sink d'un {@link KeyRangeHub} : il demande toujours l'élément suivant, et le dépose dans le buffer des
+ * consommateurs concernés.
+ */
+class KeyRangeHubStage<K extends Comparable<? super K>, T> extends GraphStageWithMaterializedValue<SinkShape<T>, KeyRangeHub<K, T>> {
+
+    public final Inlet<T> in = Inlet.create("KeyRangeHub.in");
+
+    private final SinkShape<T> shape = SinkShape.of(in);
+
+    private final Supplier<KeyRangeHub<K, T>> hubs;
+
+    KeyRangeHubStage(Supplier<KeyRangeHub<K, T>> hubs) {
+        this.hubs = hubs;
+    }
+
+    @Override
+    public SinkShape<T> shape() {
+        return shape;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, KeyRangeHub<K, T>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+        final KeyRangeHub<K, T> hub = hubs.get();
+        final GraphStageLogic logic = new GraphStageLogic(shape) {
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        hub.route(grab(in));
+                        pull(in);
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        hub.complete();
+                        completeStage();
+                    }
+
+                    @Override
+                    public void onUpstreamFailure(Throwable ex) {
+                        hub.fail(ex);
+                        failStage(ex);
+                    }
+                });
+            }
+
+            @Override
+            public void preStart() {
+                pull(in);
+            }
+
+            @Override
+            public void postStop() {
+                // arrêt du materializer : les consommateurs ne doivent pas attendre indéfiniment
+                if (!hub.isTerminated()) {
+                    hub.complete();
+                }
+            }
+        };
+        return new Tuple2<>(logic, hub);
+    }
+}
@@ -0,0 +1,222 @@
+package libs.hub;
+
+import akka.Done;
+import akka.stream.BufferOverflowException;
+import akka.stream.stage.AsyncCallback;
+
+import java.time.Duration;
+
+/**
+ * L'abonnement d'un consommateur à un {@link KeyRangeHub} : son buffer et ses métriques, lisibles à tout moment.
+ * <p>
+ * Le buffer est un tableau circulaire écrit par le stage du hub et lu par celui du consommateur ; chaque élément y
+ * est daté pour mesurer le retard du consommateur.
+ */
+public class Subscription<K extends Comparable<? super K>, T> {
+
+    private final KeyRangeHub<K, T> hub;
+    private final String name;
+    private final K from;
+    private final K to;
+    private final KeyRangeHub.Overflow overflow;
+
+    private final Object[] items;
+    private final long[] stamps;
+    private int head = 0;
+    private int size = 0;
+
+    private long received = 0L;
+    private long delivered = 0L;
+    private long dropped = 0L;
+    private boolean finished = false;
+    private boolean disconnected = false;
+    private Throwable failure = null;
+
+    // réveil du stage consommateur, quand il attend un élément
+    private AsyncCallback<Done> wakeup = null;
+    private boolean waiting = false;
+
+    Subscription(KeyRangeHub<K, T> hub, String name, K from, K to, int bufferSize, KeyRangeHub.Overflow overflow) {
+        this.hub = hub;
+        this.name = name;
+        this.from = from;
+        this.to = to;
+        this.overflow = overflow;
+        this.items = new Object[bufferSize];
+        this.stamps = new long[bufferSize];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Début de l'intervalle de clés, inclus.
+     */
+    public K getFrom() {
+        return from;
+    }
+
+    /**
+     * Fin de l'intervalle de clés, exclue.
+     */
+    public K getTo() {
+        return to;
+    }
+
+    /**
+     * Nombre d'éléments de l'intervalle reçus du hub depuis l'abonnement, perdus compris.
+     */
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    /**
+     * Nombre d'éléments émis par le stream du consommateur.
+     */
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Nombre d'éléments perdus parce que le buffer était plein.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Retard du consommateur, en éléments : ceux qui attendent dans son buffer.
+     */
+    public synchronized int getLag() {
+        return size;
+    }
+
+    /**
+     * Retard du consommateur, en temps : l'âge du plus ancien élément de son buffer.
+     */
+    public synchronized Duration getLagTime() {
+        return size == 0 ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - stamps[head]);
+    }
+
+    /**
+     * Vrai si le consommateur a été désabonné parce qu'il était trop lent (politique
+     * {@link KeyRangeHub.Overflow#DISCONNECT}).
+     */
+    public synchronized boolean isDisconnected() {
+        return disconnected;
+    }
+
+    /**
+     * Désabonne le consommateur : son stream se termine après les éléments déjà dans son buffer.
+     */
+    public void detach() {
+        hub.unregister(this);
+        complete();
+    }
+
+    // côté hub
+
+    /**
+     * Faux si le consommateur vient d'être déconnecté, et doit être désabonné.
+     */
+    synchronized boolean offer(T element, long now) {
+        if (finished) {
+            return true;
+        }
+        received++;
+        if (size == items.length) {
+            dropped++;
+            switch (overflow) {
+                case DROP_NEWEST:
+                    return true;
+                case DROP_OLDEST:
+                    head = (head + 1) % items.length;
+                    size--;
+                    break;
+                case DISCONNECT:
+                    disconnected = true;
+                    fail(new BufferOverflowException(String.format("Consumer %s is too slow: %d elements behind", name, items.length)));
+                    return false;
+            }
+        }
+        final int tail = (head + size) % items.length;
+        items[tail] = element;
+        stamps[tail] = now;
+        size++;
+        signal();
+        return true;
+    }
+
+    synchronized void complete() {
+        if (!finished) {
+            finished = true;
+            signal();
+        }
+    }
+
+    synchronized void fail(Throwable error) {
+        if (!finished) {
+            finished = true;
+            failure = error;
+            clear();
+            signal();
+        }
+    }
+
+    // côté consommateur
+
+    synchronized void attach(AsyncCallback<Done> wakeup) {
+        this.wakeup = wakeup;
+    }
+
+    /**
+     * L'élément suivant, ou null si le buffer est vide ; dans ce cas le consommateur sera réveillé au prochain
+     * élément ou à la fin de l'abonnement.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized T poll() {
+        if (size == 0) {
+            waiting = !finished;
+            return null;
+        }
+        final T element = (T) items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        size--;
+        delivered++;
+        return element;
+    }
+
+    synchronized boolean isFinished() {
+        return finished && size == 0;
+    }
+
+    synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    synchronized void close() {
+        finished = true;
+        clear();
+    }
+
+    private void clear() {
+        java.util.Arrays.fill(items, null);
+        head = 0;
+        size = 0;
+    }
+
+    private void signal() {
+        if (waiting && wakeup != null) {
+            waiting = false;
+            wakeup.invoke(Done.getInstance());
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s [%s, %s): received %d, delivered %d, dropped %d, lag %d%s",
+                name, from, to, received, delivered, dropped, size, disconnected ? " (disconnected)" : "");
+    }
+}
@@ -0,0 +1,83 @@
+package libs.hub;
+
+import akka.Done;
+import akka.stream.Attributes;
+import akka.stream.Outlet;
+import akka.stream.SourceShape;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import scala.Tuple2;
+
+import java.util.function.Supplier;
+
+/**
+ * Le source d'un consommateur de {@link KeyRangeHub} : il s'abonne au démarrage, émet le contenu de son buffer à la
+ * demande, et se désabonne à l'arrêt.
+ */
+class SubscriptionSource<K extends Comparable<? super K>, T> extends GraphStageWithMaterializedValue<SourceShape<T>, Subscription<K, T>> {
+
+    public final Outlet<T> out = Outlet.create("KeyRangeHub.consumer.out");
+
+    private final SourceShape<T> shape = SourceShape.of(out);
+
+    private final KeyRangeHub<K, T> hub;
+    private final Supplier<Subscription<K, T>> subscriptions;
+
+    SubscriptionSource(KeyRangeHub<K, T> hub, Supplier<Subscription<K, T>> subscriptions) {
+        this.hub = hub;
+        this.subscriptions = subscriptions;
+    }
+
+    @Override
+    public SourceShape<T> shape() {
+        return shape;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, Subscription<K, T>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+        final Subscription<K, T> subscription = subscriptions.get();
+        final GraphStageLogic logic = new GraphStageLogic(shape) {
+
+            {
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        deliver();
+                    }
+                });
+            }
+
+            @Override
+            public void preStart() {
+                subscription.attach(createAsyncCallback((Done __) -> {
+                    if (isAvailable(out)) {
+                        deliver();
+                    }
+                }));
+                hub.register(subscription);
+            }
+
+            private void deliver() {
+                final T element = subscription.poll();
+                if (element != null) {
+                    push(out, element);
+                } else if (subscription.isFinished()) {
+                    final Throwable failure = subscription.getFailure();
+                    if (failure != null) {
+                        failStage(failure);
+                    } else {
+                        completeStage();
+                    }
+                }
+            }
+
+            @Override
+            public void postStop() {
+                hub.unregister(subscription);
+                subscription.close();
+            }
+        };
+        return new Tuple2<>(logic, subscription);
+    }
+}
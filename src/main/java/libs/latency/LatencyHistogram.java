@@ -0,0 +1,190 @@
+package libs.latency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramme de latences, à la manière d'HdrHistogram : les valeurs (en nanosecondes) sont rangées dans des buckets
+ * log-linéaires, 64 sous-buckets par puissance de 2, soit une précision d'environ 1,5 % sur toute la plage.
+ * <p>
+ * L'enregistrement est sans verrou ni allocation (deux incréments atomiques), il peut donc rester actif en production
+ * et être appelé depuis plusieurs threads. La lecture se fait par {@link Snapshot} : {@link #snapshot()} depuis la
+ * création, {@link #intervalSnapshot()} depuis le précédent appel à cette méthode.
+ */
+public class LatencyHistogram {
+
+    private static final int subBucketBits = 7;
+    private static final int subBucketCount = 1 << subBucketBits;
+    private static final int subBucketHalfCount = subBucketCount / 2;
+    private static final int bucketCount = subBucketCount + (64 - subBucketBits) * subBucketHalfCount;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(bucketCount);
+    private final AtomicLong total = new AtomicLong();
+
+    // état de la dernière lecture par intervalle
+    private long[] previousCounts = new long[bucketCount];
+    private long previousTotal = 0L;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        total.addAndGet(value);
+    }
+
+    /**
+     * Enregistre le temps écoulé depuis <code>startNanos</code> (une valeur de {@link System#nanoTime()}).
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int index(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (subBucketBits - 1);
+        return subBucketCount + (shift - 1) * subBucketHalfCount + (int) (value >>> shift) - subBucketHalfCount;
+    }
+
+    /**
+     * Plus petite valeur du bucket.
+     */
+    static long lowestValue(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        final int shift = (index - subBucketCount) / subBucketHalfCount + 1;
+        return ((long) ((index - subBucketCount) % subBucketHalfCount + subBucketHalfCount)) << shift;
+    }
+
+    /**
+     * Plus grande valeur du bucket.
+     */
+    static long highestValue(int index) {
+        return index + 1 < bucketCount ? lowestValue(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Toutes les valeurs enregistrées depuis la création.
+     */
+    public Snapshot snapshot() {
+        final long[] current = new long[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            current[i] = counts.get(i);
+        }
+        return new Snapshot(name, current, total.get());
+    }
+
+    /**
+     * Les valeurs enregistrées depuis le précédent appel, pour un rapport périodique.
+     */
+    public synchronized Snapshot intervalSnapshot() {
+        final long[] current = new long[bucketCount];
+        final long[] delta = new long[bucketCount];
+        final long currentTotal = total.get();
+        for (int i = 0; i < bucketCount; i++) {
+            current[i] = counts.get(i);
+            delta[i] = current[i] - previousCounts[i];
+        }
+        final Snapshot snapshot = new Snapshot(name, delta, currentTotal - previousTotal);
+        previousCounts = current;
+        previousTotal = currentTotal;
+        return snapshot;
+    }
+
+    /**
+     * Lecture figée d'un {@link LatencyHistogram}.
+     */
+    public static class Snapshot {
+        private final String name;
+        private final long[] counts;
+        private final long count;
+        private final long total;
+
+        private Snapshot(String name, long[] counts, long total) {
+            this.name = name;
+            this.counts = counts;
+            this.total = total;
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.count = count;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        public long getMin() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return lowestValue(i);
+                }
+            }
+            return 0;
+        }
+
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return highestValue(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * La valeur sous laquelle se trouvent <code>percentile</code> % des valeurs (à la précision des buckets près).
+         */
+        public long valueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+            return getMax();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: count=%d mean=%s p50=%s p90=%s p99=%s p99.9=%s max=%s", name, count,
+                    format((long) getMean()), format(valueAtPercentile(50)), format(valueAtPercentile(90)),
+                    format(valueAtPercentile(99)), format(valueAtPercentile(99.9)), format(getMax()));
+        }
+
+        private static String format(long nanos) {
+            if (nanos < 10_000) {
+                return nanos + "ns";
+            } else if (nanos < 10_000_000) {
+                return String.format("%.1fµs", nanos / 1e3);
+            } else if (nanos < 10_000_000_000L) {
+                return String.format("%.1fms", nanos / 1e6);
+            }
+            return String.format("%.1fs", nanos / 1e9);
+        }
+    }
+}
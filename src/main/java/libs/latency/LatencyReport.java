@@ -0,0 +1,30 @@
+package libs.latency;
+
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import io.vavr.collection.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Lecture périodique d'histogrammes : toutes les <code>interval</code>, les latences enregistrées pendant l'intervalle
+ * sont transmises à <code>report</code> (par défaut, loggées).
+ */
+public class LatencyReport {
+
+    public static Logger LOGGER = LoggerFactory.getLogger(LatencyReport.class);
+
+    public static Cancellable schedule(ActorSystem system, Duration interval, List<LatencyHistogram> histograms) {
+        return schedule(system, interval, histograms, snapshots -> snapshots.forEach(s -> LOGGER.info("{}", s)));
+    }
+
+    public static Cancellable schedule(ActorSystem system, Duration interval, List<LatencyHistogram> histograms,
+                                       Consumer<List<LatencyHistogram.Snapshot>> report) {
+        return system.scheduler().schedule(interval, interval,
+                () -> report.accept(histograms.map(LatencyHistogram::intervalSnapshot)),
+                system.dispatcher());
+    }
+}
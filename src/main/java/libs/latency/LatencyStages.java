@@ -0,0 +1,157 @@
+package libs.latency;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import scala.Tuple2;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Les deux stages placés autour d'un flow par {@link StageLatency#timed} : l'entrée note l'instant d'arrivée de chaque
+ * élément, la sortie le reprend dans le même ordre. Chaque matérialisation a sa propre file d'instants, créée par
+ * l'entrée et passée à la sortie par les valeurs matérialisées, comme pour {@link libs.drain.DrainSwitch} ; la file
+ * est partagée entre les deux stages car le flow instrumenté peut contenir des frontières async.
+ */
+class LatencyStages {
+
+    private LatencyStages() {
+    }
+
+    /**
+     * Les instants d'entrée d'une matérialisation, dans un anneau de <code>long</code> qui double quand il est plein.
+     * Un seul stage y ajoute, un seul y reprend.
+     */
+    static final class Timestamps {
+        static final long NONE = Long.MIN_VALUE;
+
+        private long[] ring = new long[64];
+        private int head = 0;
+        private int size = 0;
+
+        synchronized void add(long nanos) {
+            if (size == ring.length) {
+                final long[] larger = new long[ring.length * 2];
+                for (int i = 0; i < size; i++) {
+                    larger[i] = ring[(head + i) & (ring.length - 1)];
+                }
+                ring = larger;
+                head = 0;
+            }
+            ring[(head + size) & (ring.length - 1)] = nanos;
+            size += 1;
+        }
+
+        /**
+         * Le plus ancien instant, ou {@link #NONE} si la file est vide.
+         */
+        synchronized long poll() {
+            if (size == 0) {
+                return NONE;
+            }
+            final long nanos = ring[head];
+            head = (head + 1) & (ring.length - 1);
+            size -= 1;
+            return nanos;
+        }
+    }
+
+    /**
+     * @param track noter l'arrivée des éléments pour {@link #exit} ; sinon seule l'attente est mesurée
+     */
+    static <T> GraphStageWithMaterializedValue<FlowShape<T, T>, Timestamps> enter(StageLatency latency, boolean track) {
+        return new Probe<T, Timestamps>(latency, "Enter") {
+            @Override
+            public Tuple2<GraphStageLogic, Timestamps> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+                final Timestamps entered = new Timestamps();
+                final GraphStageLogic logic = new GraphStageLogic(shape) {
+                    private long pulled = -1L;
+
+                    {
+                        setHandler(shape.in(), new AbstractInHandler() {
+                            @Override
+                            public void onPush() {
+                                final long now = System.nanoTime();
+                                if (pulled >= 0) {
+                                    latency.getWait().record(now - pulled);
+                                    pulled = -1L;
+                                }
+                                if (track) {
+                                    entered.add(now);
+                                }
+                                push(shape.out(), grab(shape.in()));
+                            }
+                        });
+                        setHandler(shape.out(), new AbstractOutHandler() {
+                            @Override
+                            public void onPull() {
+                                pulled = System.nanoTime();
+                                pull(shape.in());
+                            }
+                        });
+                    }
+                };
+                return new Tuple2<>(logic, entered);
+            }
+        };
+    }
+
+    /**
+     * La sortie, qui lit la file de l'entrée une fois qu'elle lui a été passée dans la valeur matérialisée.
+     */
+    static <T> GraphStageWithMaterializedValue<FlowShape<T, T>, AtomicReference<Timestamps>> exit(StageLatency latency) {
+        return new Probe<T, AtomicReference<Timestamps>>(latency, "Exit") {
+            @Override
+            public Tuple2<GraphStageLogic, AtomicReference<Timestamps>> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+                final AtomicReference<Timestamps> connected = new AtomicReference<>();
+                final GraphStageLogic logic = new GraphStageLogic(shape) {
+                    private Timestamps entered;
+
+                    {
+                        setHandler(shape.in(), new AbstractInHandler() {
+                            @Override
+                            public void onPush() {
+                                final long start = entered.poll();
+                                if (start != Timestamps.NONE) {
+                                    latency.getProcessing().recordSince(start);
+                                }
+                                push(shape.out(), grab(shape.in()));
+                            }
+                        });
+                        setHandler(shape.out(), new AbstractOutHandler() {
+                            @Override
+                            public void onPull() {
+                                pull(shape.in());
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void preStart() {
+                        entered = connected.get();
+                    }
+                };
+                return new Tuple2<>(logic, connected);
+            }
+        };
+    }
+
+    private abstract static class Probe<T, M> extends GraphStageWithMaterializedValue<FlowShape<T, T>, M> {
+        final FlowShape<T, T> shape;
+
+        Probe(StageLatency latency, String name) {
+            this.shape = FlowShape.of(Inlet.create(latency.getName() + "." + name + ".in"),
+                    Outlet.create(latency.getName() + "." + name + ".out"));
+        }
+
+        @Override
+        public FlowShape<T, T> shape() {
+            return shape;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package libs.latency;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import io.vavr.collection.List;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Latences d'un flow instrumenté par {@link #timed} (ou {@link libs.Flows#timed}) :
+ * <ul>
+ * <li>processing : temps entre l'entrée d'un élément dans le flow et la sortie de l'élément correspondant</li>
+ * <li>wait : temps pendant lequel le flow a attendu un élément après l'avoir demandé (flow en amont trop lent)</li>
+ * </ul>
+ * Pour un flow qui rend ses éléments dans le désordre ou en reprend certains (mapAsyncUnordered, disjoncteur), le
+ * traitement se mesure autour de l'appel avec {@link #timed(Function)} et l'attente avec {@link #timedWait}.
+ */
+public class StageLatency {
+
+    private final String name;
+    private final LatencyHistogram processing;
+    private final LatencyHistogram wait;
+
+    public StageLatency(String name) {
+        this.name = name;
+        this.processing = new LatencyHistogram(name + ".processing");
+        this.wait = new LatencyHistogram(name + ".wait");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getProcessing() {
+        return processing;
+    }
+
+    public LatencyHistogram getWait() {
+        return wait;
+    }
+
+    /**
+     * Le flow, instrumenté. Les latences de traitement ne sont justes que pour un flow qui émet un élément par élément
+     * reçu, dans l'ordre (map, mapAsync...). Le flow peut être matérialisé plusieurs fois, y compris en même temps :
+     * toutes les matérialisations alimentent les mêmes histogrammes.
+     */
+    public <In, Out> Flow<In, Out, NotUsed> timed(Flow<In, Out, NotUsed> flow) {
+        return Flow.fromGraph(LatencyStages.<In>enter(this, true))
+                .via(flow)
+                .viaMat(LatencyStages.<Out>exit(this), Keep.both())
+                .mapMaterializedValue(pair -> {
+                    // la sortie ne connaît la file de l'entrée qu'une fois tout le flow matérialisé
+                    pair.second().set(pair.first());
+                    return NotUsed.getInstance();
+                });
+    }
+
+    /**
+     * L'appel, dont la durée est enregistrée en temps de traitement, quel que soit l'ordre dans lequel le flow qui
+     * l'utilise rend les réponses ; chaque nouvel essai est un appel de plus.
+     */
+    public <In, Out> Function<In, CompletionStage<Out>> timed(Function<In, CompletionStage<Out>> call) {
+        return in -> {
+            final long start = System.nanoTime();
+            return call.apply(in).whenComplete((out, error) -> processing.recordSince(start));
+        };
+    }
+
+    /**
+     * Le flow, dont seule l'attente est mesurée.
+     */
+    public <In, Out> Flow<In, Out, NotUsed> timedWait(Flow<In, Out, NotUsed> flow) {
+        return Flow.fromGraph(LatencyStages.<In>enter(this, false)).via(flow).mapMaterializedValue(__ -> NotUsed.getInstance());
+    }
+
+    public List<LatencyHistogram> histograms() {
+        return List.of(processing, wait);
+    }
+
+    @Override
+    public String toString() {
+        return processing.snapshot() + "\n" + wait.snapshot();
+    }
+}
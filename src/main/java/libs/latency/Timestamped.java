@@ -0,0 +1,34 @@
+package libs.latency;
+
+import java.util.function.Function;
+
+/**
+ * Enveloppe d'un élément avec l'instant de son émission par le source, pour mesurer la latence de bout en bout
+ * (voir {@link libs.Flows#stamp()} et {@link libs.Flows#endToEnd}).
+ */
+public class Timestamped<T> {
+
+    public final T value;
+    public final long emittedNanos;
+
+    public Timestamped(T value, long emittedNanos) {
+        this.value = value;
+        this.emittedNanos = emittedNanos;
+    }
+
+    public static <T> Timestamped<T> now(T value) {
+        return new Timestamped<>(value, System.nanoTime());
+    }
+
+    /**
+     * Le nouvel élément garde l'instant d'émission de l'élément d'origine.
+     */
+    public <U> Timestamped<U> map(Function<T, U> f) {
+        return new Timestamped<>(f.apply(value), emittedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "Timestamped(" + value + ", " + emittedNanos + ")";
+    }
+}
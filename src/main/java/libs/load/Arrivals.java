@@ -0,0 +1,60 @@
+package libs.load;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * Les instants d'arrivée d'un {@link LoadGenerator}, en nanosecondes depuis son démarrage : la première arrivée est
+ * à 0, chaque arrivée suivante est calculée à partir de la précédente.
+ */
+@FunctionalInterface
+public interface Arrivals {
+
+    long next(long previousNanos, SplittableRandom random);
+
+    /**
+     * <code>perSecond</code> arrivées par seconde, régulièrement espacées.
+     */
+    static Arrivals constant(double perSecond) {
+        final double interval = interval(perSecond);
+        // l'arrivée n est à n * interval arrondi : les erreurs d'arrondi ne s'accumulent pas
+        return (previous, random) -> Math.round((Math.round(previous / interval) + 1) * interval);
+    }
+
+    /**
+     * <code>perSecond</code> arrivées par seconde en moyenne, indépendantes les unes des autres (processus de Poisson) :
+     * des rafales et des creux, comme des clients qui ne se concertent pas.
+     */
+    static Arrivals poisson(double perSecond) {
+        final double interval = interval(perSecond);
+        return (previous, random) -> previous + (long) (-Math.log(1 - random.nextDouble()) * interval);
+    }
+
+    /**
+     * <code>burstPerSecond</code> arrivées par seconde pendant les <code>burst</code> premiers de chaque
+     * <code>period</code>, <code>perSecond</code> le reste du temps.
+     */
+    static Arrivals bursty(double perSecond, double burstPerSecond, Duration burst, Duration period) {
+        final double interval = interval(perSecond);
+        final double burstInterval = interval(burstPerSecond);
+        final long burstNanos = burst.toNanos();
+        final long periodNanos = period.toNanos();
+        if (burstNanos <= 0 || burstNanos > periodNanos) {
+            throw new IllegalArgumentException("The burst must last between 1ns and the period: " + burst + ", " + period);
+        }
+        return (previous, random) -> {
+            final long phase = previous % periodNanos;
+            final long next = previous + (long) (phase < burstNanos ? burstInterval : interval);
+            final long periodStart = previous - phase;
+            // pas de saut par-dessus le début de la rafale suivante
+            return Math.min(next, periodStart + periodNanos);
+        };
+    }
+
+    static double interval(double perSecond) {
+        if (!(perSecond > 0) || perSecond > 1e9) {
+            throw new IllegalArgumentException("The rate must be between 0 and one per nanosecond: " + perSecond);
+        }
+        return 1e9 / perSecond;
+    }
+}
@@ -0,0 +1,164 @@
+package libs.load;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import libs.latency.LatencyHistogram;
+import libs.latency.Timestamped;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Un source de charge en modèle ouvert : les éléments arrivent selon un calendrier ({@link Arrivals}), que l'aval
+ * suive ou non. Un aval trop lent ne ralentit pas les arrivées, il les fait attendre dans le backlog du source
+ * (au-delà de <code>maxBacklog</code>, elles sont perdues et comptées), comme des clients qui n'attendent pas la
+ * réponse des autres pour envoyer leur requête.
+ * <pre>
+ *   LatencyHistogram latency = new LatencyHistogram("search");
+ *   LoadGenerator.of(Payload.postcodes())
+ *           .withArrivals(Arrivals.poisson(500))
+ *           .withDuration(Duration.ofMinutes(1))
+ *           .source()
+ *           .via(LoadGenerator.measure(searchFlow, latency))
+ *           .runWith(Sink.ignore(), mat);
+ * </pre>
+ * Chaque élément est daté de son instant d'arrivée prévu, pas de celui où l'aval l'a demandé : la latence mesurée
+ * depuis cet instant comprend l'attente dans le backlog, et n'est donc pas faussée par l'omission coordonnée (un
+ * système lent qui, en freinant le générateur, ferait disparaître de la mesure les requêtes qui l'auraient attendu).
+ * <p>
+ * Les arrivées dues sont générées à chaque demande de l'aval et à chaque tick (1 ms par défaut, arrondi au tick du
+ * scheduler d'Akka, <code>akka.scheduler.tick-duration</code>) : un élément peut partir jusqu'à un tick après son
+ * arrivée prévue, ce retard étant compté dans la latence.
+ * <p>
+ * Chaque matérialisation a son propre {@link java.util.SplittableRandom}, tiré de la graine si elle est donnée.
+ */
+public class LoadGenerator<T> {
+
+    final Payload<T> payload;
+    final Arrivals arrivals;
+    final long durationNanos;
+    final long limit;
+    final int maxBacklog;
+    final Duration tick;
+    final Long seed;
+
+    private LoadGenerator(Payload<T> payload, Arrivals arrivals, long durationNanos, long limit, int maxBacklog,
+                          Duration tick, Long seed) {
+        this.payload = payload;
+        this.arrivals = arrivals;
+        this.durationNanos = durationNanos;
+        this.limit = limit;
+        this.maxBacklog = maxBacklog;
+        this.tick = tick;
+        this.seed = seed;
+    }
+
+    /**
+     * Un générateur de 1000 éléments par seconde, sans fin, avec un backlog de 100 000 éléments.
+     */
+    public static <T> LoadGenerator<T> of(Payload<T> payload) {
+        return new LoadGenerator<>(payload, Arrivals.constant(1000), Long.MAX_VALUE, Long.MAX_VALUE, 100_000,
+                Duration.ofMillis(1), null);
+    }
+
+    public LoadGenerator<T> withArrivals(Arrivals arrivals) {
+        return new LoadGenerator<>(payload, arrivals, durationNanos, limit, maxBacklog, tick, seed);
+    }
+
+    /**
+     * Le source se termine après les arrivées prévues dans ce délai (et l'envoi de son backlog).
+     */
+    public LoadGenerator<T> withDuration(Duration duration) {
+        return new LoadGenerator<>(payload, arrivals, duration.toNanos(), limit, maxBacklog, tick, seed);
+    }
+
+    /**
+     * Le source se termine après <code>limit</code> arrivées.
+     */
+    public LoadGenerator<T> withLimit(long limit) {
+        return new LoadGenerator<>(payload, arrivals, durationNanos, limit, maxBacklog, tick, seed);
+    }
+
+    public LoadGenerator<T> withMaxBacklog(int maxBacklog) {
+        if (maxBacklog < 1) {
+            throw new IllegalArgumentException("The backlog must hold at least one element: " + maxBacklog);
+        }
+        return new LoadGenerator<>(payload, arrivals, durationNanos, limit, maxBacklog, tick, seed);
+    }
+
+    public LoadGenerator<T> withTick(Duration tick) {
+        return new LoadGenerator<>(payload, arrivals, durationNanos, limit, maxBacklog, tick, seed);
+    }
+
+    public LoadGenerator<T> withSeed(long seed) {
+        return new LoadGenerator<>(payload, arrivals, durationNanos, limit, maxBacklog, tick, seed);
+    }
+
+    /**
+     * Les éléments, datés de leur arrivée prévue, avec en valeur matérialisée les compteurs du générateur.
+     */
+    public Source<Timestamped<T>, Stats> source() {
+        return Source.fromGraph(new LoadGeneratorStage<>(this));
+    }
+
+    /**
+     * Le flow, qui enregistre dans <code>histogram</code> le temps entre l'arrivée prévue de chaque élément et la
+     * sortie de l'élément correspondant. Comme {@link libs.latency.StageLatency#timed}, ce n'est juste que pour un
+     * flow qui émet un élément par élément reçu, dans l'ordre, et le flow ne doit être matérialisé qu'une fois à la fois.
+     */
+    public static <In, Out> Flow<Timestamped<In>, Out, NotUsed> measure(Flow<In, Out, NotUsed> flow, LatencyHistogram histogram) {
+        final Queue<Long> arrivals = new ConcurrentLinkedQueue<>();
+        return Flow.<Timestamped<In>>create()
+                .map(t -> {
+                    arrivals.add(t.emittedNanos);
+                    return t.value;
+                })
+                .via(flow)
+                .map(out -> {
+                    histogram.recordSince(arrivals.remove());
+                    return out;
+                });
+    }
+
+    /**
+     * Les compteurs d'un générateur, lisibles pendant que le stream tourne.
+     */
+    public static class Stats {
+        volatile long arrived = 0L;
+        volatile long emitted = 0L;
+        volatile long dropped = 0L;
+        volatile long backlog = 0L;
+
+        /**
+         * Nombre d'arrivées passées, émises ou non.
+         */
+        public long getArrived() {
+            return arrived;
+        }
+
+        public long getEmitted() {
+            return emitted;
+        }
+
+        /**
+         * Nombre d'arrivées perdues, le backlog étant plein.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Nombre d'arrivées qui attendent que l'aval les demande.
+         */
+        public long getBacklog() {
+            return backlog;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("LoadGenerator: %d arrived, %d emitted, %d dropped, %d in backlog", arrived, emitted, dropped, backlog);
+        }
+    }
+}
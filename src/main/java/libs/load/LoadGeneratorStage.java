@@ -0,0 +1,115 @@
+package libs.load;
+
+import akka.stream.Attributes;
+import akka.stream.Outlet;
+import akka.stream.SourceShape;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import akka.stream.stage.TimerGraphStageLogic;
+import libs.latency.Timestamped;
+import scala.Tuple2;
+
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+
+/**
+ * Le stage de {@link LoadGenerator#source()} : le calendrier est suivi sur l'horloge monotone, les arrivées dues
+ * sont rattrapées d'un coup à chaque demande ou tick.
+ */
+class LoadGeneratorStage<T> extends GraphStageWithMaterializedValue<SourceShape<Timestamped<T>>, LoadGenerator.Stats> {
+
+    public final Outlet<Timestamped<T>> out = Outlet.create("LoadGenerator.out");
+
+    private final SourceShape<Timestamped<T>> shape = SourceShape.of(out);
+
+    private final LoadGenerator<T> generator;
+
+    LoadGeneratorStage(LoadGenerator<T> generator) {
+        this.generator = generator;
+    }
+
+    @Override
+    public SourceShape<Timestamped<T>> shape() {
+        return shape;
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, LoadGenerator.Stats> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+        final LoadGenerator.Stats stats = new LoadGenerator.Stats();
+        final GraphStageLogic logic = new TimerGraphStageLogic(shape) {
+
+            private final SplittableRandom random = generator.seed == null ? new SplittableRandom() : new SplittableRandom(generator.seed);
+            private final ArrayDeque<Timestamped<T>> backlog = new ArrayDeque<>();
+            private long start;
+            private long nextArrival = 0L;
+            private long arrived = 0L;
+            private long dropped = 0L;
+            private long emitted = 0L;
+            private boolean finished = false;
+
+            @Override
+            public void preStart() {
+                start = System.nanoTime();
+                schedulePeriodically("tick", generator.tick);
+            }
+
+            {
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        catchUp();
+                        emitIfPossible();
+                    }
+                });
+            }
+
+            @Override
+            public void onTimer(Object timerKey) {
+                catchUp();
+                if (isAvailable(out)) {
+                    emitIfPossible();
+                }
+                publish();
+            }
+
+            private void catchUp() {
+                final long now = System.nanoTime() - start;
+                while (!finished && nextArrival <= now) {
+                    if (backlog.size() < generator.maxBacklog) {
+                        backlog.add(new Timestamped<>(generator.payload.next(random), start + nextArrival));
+                    } else {
+                        dropped++;
+                    }
+                    arrived++;
+                    nextArrival = generator.arrivals.next(nextArrival, random);
+                    finished = arrived >= generator.limit || nextArrival >= generator.durationNanos;
+                }
+            }
+
+            private void emitIfPossible() {
+                if (!backlog.isEmpty()) {
+                    push(out, backlog.poll());
+                    emitted++;
+                }
+                if (finished && backlog.isEmpty()) {
+                    publish();
+                    completeStage();
+                }
+            }
+
+            private void publish() {
+                stats.arrived = arrived;
+                stats.emitted = emitted;
+                stats.dropped = dropped;
+                stats.backlog = backlog.size();
+            }
+
+            @Override
+            public void postStop() {
+                publish();
+            }
+        };
+        return new Tuple2<>(logic, stats);
+    }
+}
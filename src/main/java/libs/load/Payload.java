@@ -0,0 +1,87 @@
+package libs.load;
+
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+/**
+ * Le générateur des éléments d'un {@link LoadGenerator}. Il reçoit le {@link SplittableRandom} du stream : une même
+ * graine redonne les mêmes éléments, et deux streams ne partagent jamais de générateur aléatoire.
+ */
+@FunctionalInterface
+public interface Payload<T> {
+
+    T next(SplittableRandom random);
+
+    default <U> Payload<U> map(Function<T, U> f) {
+        return random -> f.apply(next(random));
+    }
+
+    /**
+     * Des entiers dans [0, <code>bound</code>[.
+     */
+    static Payload<Integer> ints(int bound) {
+        return random -> random.nextInt(bound);
+    }
+
+    /**
+     * Des codes postaux britanniques normalisés (en minuscules, sans espace, comme <code>Postcode.normalize</code>) :
+     * un code de zone de 1 ou 2 lettres et 1 ou 2 chiffres, puis un code de 3 caractères, par exemple "ab101al".
+     */
+    static Payload<String> postcodes() {
+        return random -> {
+            final StringBuilder postcode = new StringBuilder(8);
+            postcode.append(letter(random));
+            if (random.nextBoolean()) {
+                postcode.append(letter(random));
+            }
+            postcode.append(random.nextInt(1, 10));
+            if (random.nextBoolean()) {
+                postcode.append(random.nextInt(10));
+            }
+            return postcode.append(random.nextInt(10)).append(letter(random)).append(letter(random)).toString();
+        };
+    }
+
+    /**
+     * Des réponses synthétiques de la recherche Yelp (<code>{"businesses": [...], "total": n}</code>), avec
+     * <code>businesses</code> restaurants par réponse et les champs que lit <code>Restaurant</code>.
+     */
+    static Payload<String> yelpBusinesses(int businesses) {
+        final Payload<String> postcodes = postcodes();
+        final String[] categories = {"italian", "indpak", "chinese", "pubs", "cafes", "pizza", "sushi", "burgers"};
+        final String[] cities = {"London", "Aberdeen", "Manchester", "Leeds", "Glasgow", "Bristol"};
+        return random -> {
+            final StringBuilder body = new StringBuilder(businesses * 600).append("{\"businesses\":[");
+            for (int i = 0; i < businesses; i++) {
+                final String id = Long.toHexString(random.nextLong());
+                final String category = categories[random.nextInt(categories.length)];
+                final String city = cities[random.nextInt(cities.length)];
+                if (i > 0) {
+                    body.append(',');
+                }
+                body.append("{\"id\":\"").append(id)
+                        .append("\",\"alias\":\"").append(category).append('-').append(id, 0, 6)
+                        .append("\",\"name\":\"The ").append(category).append(' ').append(id, 0, 4)
+                        .append("\",\"image_url\":\"https://s3-media1.fl.yelpcdn.com/bphoto/").append(id).append("/o.jpg")
+                        .append("\",\"is_closed\":").append(random.nextInt(20) == 0)
+                        .append(",\"url\":\"https://www.yelp.com/biz/").append(category).append('-').append(id, 0, 6)
+                        .append("\",\"review_count\":").append(random.nextInt(2000))
+                        .append(",\"categories\":[{\"alias\":\"").append(category).append("\",\"title\":\"").append(category).append("\"}]")
+                        .append(",\"rating\":").append(random.nextInt(2, 11) / 2.0)
+                        .append(",\"coordinates\":{\"latitude\":").append(50 + random.nextDouble(8))
+                        .append(",\"longitude\":").append(-5 + random.nextDouble(6))
+                        .append("},\"transactions\":[\"delivery\"],\"price\":\"").append("££££", 0, random.nextInt(1, 5))
+                        .append("\",\"location\":{\"address1\":\"").append(random.nextInt(1, 300)).append(" High Street")
+                        .append("\",\"city\":\"").append(city)
+                        .append("\",\"zip_code\":\"").append(postcodes.next(random))
+                        .append("\",\"country\":\"GB\",\"state\":\"XGL\"}")
+                        .append(",\"distance\":").append(random.nextDouble(5000)).append('}');
+            }
+            return body.append("],\"total\":").append(businesses).append('}').toString();
+        };
+    }
+
+    static char letter(SplittableRandom random) {
+        return (char) ('a' + random.nextInt(26));
+    }
+}
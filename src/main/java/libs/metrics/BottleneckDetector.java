@@ -0,0 +1,261 @@
+package libs.metrics;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Recherche du goulot d'étranglement d'un pipeline linéaire.
+ * <pre>
+ *   source
+ *       .via(detector.probe("source"))
+ *       .via(detector.stage("fetch", fetch))
+ *       .via(detector.stage("parse", parse))
+ *       .to(sink)
+ *   ...
+ *   println(detector.report());
+ * </pre>
+ * Une sonde {@link FlowMetrics} est placée à la sortie de chaque stage, dans l'ordre des appels. Pour un stage,
+ * la sonde précédente dit pendant quelle part du temps son entrée est bloquée (il ne consomme pas), et la sienne
+ * pendant quelle part du temps l'aval attend sa sortie (il ne produit pas). Le goulot est le stage pour lequel les deux
+ * sont grands : son score est le produit de ces deux parts. Le sink, après la dernière sonde, est classé de la même
+ * manière en considérant que sa sortie attend toujours.
+ * <p>
+ * Le rapport peut être demandé à tout moment pendant que le stream tourne. Le stage à renforcer (parallélisme,
+ * frontière async) est le premier du classement ; une sonde souvent bloquée ET souvent en attente signale un débit
+ * irrégulier que des buffers plus grands entre les deux stages lisseraient.
+ */
+public class BottleneckDetector {
+
+    private static final String sink = "sink";
+    private static final double burstyThreshold = 0.2;
+
+    // sondes dans l'ordre du pipeline ; la sonde de la dernière matérialisation
+    private final Map<String, Option<FlowMetrics>> probes = new LinkedHashMap<>();
+
+    /**
+     * Sonde seule, sans stage : à placer après le source pour mesurer l'entrée du premier stage.
+     */
+    public <T> Flow<T, T, NotUsed> probe(String name) {
+        return stage(name, Flow.create());
+    }
+
+    /**
+     * Le stage, suivi de sa sonde.
+     */
+    public synchronized <In, Out> Flow<In, Out, NotUsed> stage(String name, Flow<In, Out, NotUsed> flow) {
+        if (probes.containsKey(name) || sink.equals(name)) {
+            throw new IllegalArgumentException("Stage already probed: " + name);
+        }
+        probes.put(name, Option.none());
+        return flow.viaMat(FlowMetrics.probe(out -> 0L), Keep.right())
+                .mapMaterializedValue(metrics -> {
+                    register(name, metrics);
+                    return NotUsed.getInstance();
+                });
+    }
+
+    private synchronized void register(String name, FlowMetrics metrics) {
+        probes.put(name, Option.some(metrics));
+    }
+
+    /**
+     * Classement des stages, du plus au moins probable goulot.
+     */
+    public synchronized Report report() {
+        final List<Measured> measured = List.ofAll(probes.entrySet())
+                .filter(e -> e.getValue().isDefined())
+                .map(e -> new Measured(e.getKey(), e.getValue().get()));
+        List<StageReport> stages = List.empty();
+        Option<FlowMetrics> previous = Option.none();
+        for (Measured probe : measured) {
+            stages = stages.append(new StageReport(probe.name,
+                    previous.map(BottleneckDetector::blocked).getOrElse(Double.NaN),
+                    starved(probe.metrics), probe.metrics));
+            previous = Option.some(probe.metrics);
+        }
+        if (previous.isDefined()) {
+            stages = stages.append(new StageReport(sink, blocked(previous.get()), 1.0, previous.get()));
+        }
+        return new Report(stages.sortBy(s -> -s.getScore()));
+    }
+
+    private static class Measured {
+        final String name;
+        final FlowMetrics metrics;
+
+        Measured(String name, FlowMetrics metrics) {
+            this.name = name;
+            this.metrics = metrics;
+        }
+    }
+
+    private static double blocked(FlowMetrics metrics) {
+        return ratio(metrics.getDownstreamBlocked().toNanos(), metrics);
+    }
+
+    private static double starved(FlowMetrics metrics) {
+        return ratio(metrics.getUpstreamWait().toNanos(), metrics);
+    }
+
+    private static double ratio(long nanos, FlowMetrics metrics) {
+        final long elapsed = metrics.getElapsed().toNanos();
+        return elapsed == 0 ? 0 : Math.min(1.0, (double) nanos / elapsed);
+    }
+
+    /**
+     * Mesures d'un stage.
+     */
+    public static class StageReport {
+        private final String name;
+        private final double inputBlocked;
+        private final double outputStarved;
+        private final double outputBlocked;
+        private final long count;
+        private final double rate;
+
+        private StageReport(String name, double inputBlocked, double outputStarved, FlowMetrics output) {
+            this.name = name;
+            this.inputBlocked = inputBlocked;
+            this.outputStarved = outputStarved;
+            this.outputBlocked = blocked(output);
+            this.count = output.getCount();
+            this.rate = output.getRate();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Part du temps où l'amont attend que le stage consomme, NaN si le stage n'a pas de sonde en amont.
+         */
+        public double getInputBlocked() {
+            return inputBlocked;
+        }
+
+        /**
+         * Part du temps où l'aval attend que le stage produise.
+         */
+        public double getOutputStarved() {
+            return outputStarved;
+        }
+
+        /**
+         * Part du temps où la sortie du stage attend la demande de l'aval.
+         */
+        public double getOutputBlocked() {
+            return outputBlocked;
+        }
+
+        /**
+         * Vrai si la sortie du stage attend souvent l'aval et souvent le stage : débit irrégulier.
+         */
+        public boolean isBursty() {
+            return outputBlocked >= burstyThreshold && outputStarved >= burstyThreshold && outputStarved < 1.0;
+        }
+
+        /**
+         * Probabilité que le stage soit le goulot, entre 0 et 1.
+         */
+        public double getScore() {
+            return (Double.isNaN(inputBlocked) ? 1.0 : inputBlocked) * outputStarved;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+    }
+
+    /**
+     * Le classement, en texte ({@link #toString()}) ou en JSON ({@link #toJson()}).
+     */
+    public static class Report {
+        private final List<StageReport> stages;
+
+        private Report(List<StageReport> stages) {
+            this.stages = stages;
+        }
+
+        public List<StageReport> getStages() {
+            return stages;
+        }
+
+        public Option<StageReport> getBottleneck() {
+            return stages.headOption().filter(s -> s.getScore() > 0);
+        }
+
+        public String getAdvice() {
+            final String buffers = stages.filter(StageReport::isBursty)
+                    .map(s -> String.format("; raise the buffer after '%s'", s.name))
+                    .mkString();
+            return getBottleneck()
+                    .map(s -> sink.equals(s.name)
+                            ? String.format("the sink is the bottleneck: its input is blocked %.0f%% of the time, "
+                            + "raise its parallelism or batch its writes", 100 * s.inputBlocked)
+                            : String.format("raise the parallelism of '%s' or put an async boundary around it: its input "
+                            + "is blocked %.0f%% of the time and its output starved %.0f%% of the time",
+                            s.name, 100 * (Double.isNaN(s.inputBlocked) ? 1.0 : s.inputBlocked), 100 * s.outputStarved))
+                    .getOrElse("no bottleneck measured yet") + buffers;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder text = new StringBuilder(String.format("%-20s %8s %8s %8s %12s %10s%n",
+                    "stage", "score", "blocked", "starved", "elements/s", "elements"));
+            stages.forEach(s -> text.append(String.format("%-20s %8.2f %8s %7.0f%% %12.1f %10d%n",
+                    s.name, s.getScore(), Double.isNaN(s.inputBlocked) ? "-" : String.format("%.0f%%", 100 * s.inputBlocked),
+                    100 * s.outputStarved, s.rate, s.count)));
+            return text.append(getAdvice()).toString();
+        }
+
+        public String toJson() {
+            final StringWriter json = new StringWriter();
+            try (JsonGenerator g = new JsonFactory().createGenerator(json)) {
+                g.writeStartObject();
+                g.writeArrayFieldStart("stages");
+                for (StageReport s : stages) {
+                    g.writeStartObject();
+                    g.writeStringField("name", s.name);
+                    g.writeNumberField("score", s.getScore());
+                    if (Double.isNaN(s.inputBlocked)) {
+                        g.writeNullField("inputBlocked");
+                    } else {
+                        g.writeNumberField("inputBlocked", s.inputBlocked);
+                    }
+                    g.writeNumberField("outputStarved", s.outputStarved);
+                    g.writeNumberField("outputBlocked", s.outputBlocked);
+                    g.writeBooleanField("bursty", s.isBursty());
+                    g.writeNumberField("rate", s.rate);
+                    g.writeNumberField("count", s.count);
+                    g.writeEndObject();
+                }
+                g.writeEndArray();
+                if (getBottleneck().isDefined()) {
+                    g.writeStringField("bottleneck", getBottleneck().get().name);
+                } else {
+                    g.writeNullField("bottleneck");
+                }
+                g.writeStringField("advice", getAdvice());
+                g.writeEndObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return json.toString();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package libs.metrics;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.javadsl.Flow;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import io.vavr.control.Option;
+import scala.Tuple2;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.ToLongFunction;
+
+/**
+ * Métriques d'un flow instrumenté par {@link libs.Flows#instrumented}, matérialisées à chaque exécution et lisibles à
+ * tout moment, depuis n'importe quel thread, pendant que le stream tourne :
+ * <ul>
+ * <li>nombre d'éléments émis, débit et, si une taille est fournie, nombre d'octets</li>
+ * <li>temps passé à attendre la demande de l'aval (aval trop lent) et à attendre un élément du flow (flow ou amont
+ * trop lent) ; la somme des deux est à peu près la durée du stream</li>
+ * <li>état : en cours, terminé, annulé par l'aval ou en échec</li>
+ * </ul>
+ * Les valeurs ne sont écrites que par le stage, les lectures n'ont pas de verrou.
+ */
+public class FlowMetrics {
+
+    public enum State {RUNNING, COMPLETED, CANCELLED, FAILED}
+
+    private final CompletableFuture<FlowMetrics> completion = new CompletableFuture<>();
+
+    private volatile long start = System.nanoTime();
+    private volatile long end = 0L;
+    private volatile long count = 0L;
+    private volatile long bytes = 0L;
+    private volatile long downstreamNanos = 0L;
+    private volatile long upstreamNanos = 0L;
+    // début de l'attente en cours, 0 si aucune
+    private volatile long downstreamSince = 0L;
+    private volatile long upstreamSince = 0L;
+    private volatile State state = State.RUNNING;
+    private volatile Throwable failure = null;
+
+    /**
+     * Le stage de mesure, à placer à la sortie du flow à instrumenter.
+     */
+    public static <T> Flow<T, T, FlowMetrics> probe(ToLongFunction<T> sizeOf) {
+        return Flow.fromGraph(new Probe<>(sizeOf));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos((end == 0L ? System.nanoTime() : end) - start);
+    }
+
+    /**
+     * Éléments par seconde depuis le début du stream.
+     */
+    public double getRate() {
+        final long elapsed = getElapsed().toNanos();
+        return elapsed == 0 ? 0 : count * 1e9 / elapsed;
+    }
+
+    /**
+     * Temps passé avec un élément émis et pas encore de nouvelle demande de l'aval.
+     */
+    public Duration getDownstreamBlocked() {
+        return Duration.ofNanos(downstreamNanos + ongoing(downstreamSince));
+    }
+
+    /**
+     * Temps passé à attendre un élément après l'avoir demandé.
+     */
+    public Duration getUpstreamWait() {
+        return Duration.ofNanos(upstreamNanos + ongoing(upstreamSince));
+    }
+
+    private long ongoing(long since) {
+        return since == 0L || end != 0L ? 0L : System.nanoTime() - since;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Option<Throwable> getFailure() {
+        return Option.of(failure);
+    }
+
+    /**
+     * Complété avec ces métriques quand le stream s'arrête, quelle qu'en soit la raison.
+     */
+    public CompletionStage<FlowMetrics> completion() {
+        return completion;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FlowMetrics{%s, count=%d, bytes=%d, %.1f elements/s, downstream blocked=%dms, upstream wait=%dms%s}",
+                state, count, bytes, getRate(), getDownstreamBlocked().toMillis(), getUpstreamWait().toMillis(),
+                failure == null ? "" : ", failure=" + failure);
+    }
+
+    private void stop(State state, Throwable failure) {
+        final long now = System.nanoTime();
+        if (downstreamSince != 0L) {
+            downstreamNanos += now - downstreamSince;
+        }
+        if (upstreamSince != 0L) {
+            upstreamNanos += now - upstreamSince;
+        }
+        this.failure = failure;
+        this.state = state;
+        this.end = now;
+        completion.complete(this);
+    }
+
+    private static class Probe<T> extends GraphStageWithMaterializedValue<FlowShape<T, T>, FlowMetrics> {
+
+        public final Inlet<T> in = Inlet.create("FlowMetrics.in");
+        public final Outlet<T> out = Outlet.create("FlowMetrics.out");
+
+        private final FlowShape<T, T> shape = FlowShape.of(in, out);
+
+        private final ToLongFunction<T> sizeOf;
+
+        private Probe(ToLongFunction<T> sizeOf) {
+            this.sizeOf = sizeOf;
+        }
+
+        @Override
+        public FlowShape<T, T> shape() {
+            return shape;
+        }
+
+        @Override
+        public Tuple2<GraphStageLogic, FlowMetrics> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+            final FlowMetrics metrics = new FlowMetrics();
+            final GraphStageLogic logic = new GraphStageLogic(shape) {
+
+                @Override
+                public void preStart() {
+                    metrics.start = System.nanoTime();
+                }
+
+                @Override
+                public void postStop() {
+                    // arrêt par le materializer, sans passer par les handlers
+                    if (metrics.state == State.RUNNING) {
+                        metrics.stop(State.CANCELLED, null);
+                    }
+                }
+
+                {
+                    setHandler(in, new AbstractInHandler() {
+                        @Override
+                        public void onPush() {
+                            final long now = System.nanoTime();
+                            final T element = grab(in);
+                            metrics.upstreamNanos += now - metrics.upstreamSince;
+                            metrics.upstreamSince = 0L;
+                            metrics.count++;
+                            metrics.bytes += sizeOf.applyAsLong(element);
+                            push(out, element);
+                            metrics.downstreamSince = now;
+                        }
+
+                        @Override
+                        public void onUpstreamFinish() {
+                            metrics.stop(State.COMPLETED, null);
+                            completeStage();
+                        }
+
+                        @Override
+                        public void onUpstreamFailure(Throwable ex) {
+                            metrics.stop(State.FAILED, ex);
+                            failStage(ex);
+                        }
+                    });
+                    setHandler(out, new AbstractOutHandler() {
+                        @Override
+                        public void onPull() {
+                            final long now = System.nanoTime();
+                            if (metrics.downstreamSince != 0L) {
+                                metrics.downstreamNanos += now - metrics.downstreamSince;
+                                metrics.downstreamSince = 0L;
+                            }
+                            metrics.upstreamSince = now;
+                            pull(in);
+                        }
+
+                        @Override
+                        public void onDownstreamFinish() {
+                            metrics.stop(State.CANCELLED, null);
+                            completeStage();
+                        }
+                    });
+                }
+            };
+            return new Tuple2<>(logic, metrics);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package libs.pipeline;
+
+import akka.NotUsed;
+import akka.stream.Attributes;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Pipeline linéaire de stages nommés, dont les frontières asynchrones sont placées à partir du coût mesuré de chaque
+ * stage plutôt qu'au jugé.
+ * <pre>
+ *   Pipeline.&lt;String&gt;create()
+ *           .via("parse", parse)
+ *           .via("enrich", enrich)
+ *           .via("serialize", serialize)
+ *           .plan(sample, mat)              // mesure le coût de chaque stage sur un échantillon
+ *           .thenApply(Pipeline.Plan::flow) // flow avec les frontières async choisies
+ * </pre>
+ * Après un préchauffage du pipeline complet, chaque stage traite seul, plusieurs fois de suite, les éléments produits par les stages
+ * précédents à partir de l'échantillon ; le temps retenu est le meilleur passage (JIT chaud), moins le coût du source
+ * et du sink seuls. Le coût d'une frontière async est mesuré de la même manière.
+ * <p>
+ * Le débit d'un flow découpé en îlots est celui de l'îlot le plus lent : on cherche le découpage en au plus
+ * <code>cores</code> îlots contigus qui minimise le coût de l'îlot le plus cher, chaque frontière ajoutant son coût
+ * à l'îlot qui la suit. Le découpage n'est retenu que s'il fait mieux que le flow fusionné.
+ */
+public class Pipeline<In, Out> {
+
+    public static Logger LOGGER = LoggerFactory.getLogger(Pipeline.class);
+
+    private static final int rounds = 3;
+
+    private static class Stage {
+        final String name;
+        final Flow<Object, Object, NotUsed> flow;
+
+        Stage(String name, Flow<Object, Object, NotUsed> flow) {
+            this.name = name;
+            this.flow = flow;
+        }
+    }
+
+    private final List<Stage> stages;
+    private final int cores;
+    private final int bufferSize;
+
+    private Pipeline(List<Stage> stages, int cores, int bufferSize) {
+        this.stages = stages;
+        this.cores = cores;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Pipeline vide, pour autant d'îlots que de processeurs disponibles, avec les buffers par défaut.
+     */
+    public static <T> Pipeline<T, T> create() {
+        return new Pipeline<>(List.empty(), Runtime.getRuntime().availableProcessors(), 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <Next> Pipeline<In, Next> via(String name, Flow<Out, Next, NotUsed> flow) {
+        return new Pipeline<>(stages.append(new Stage(name, (Flow<Object, Object, NotUsed>) (Flow<?, ?, NotUsed>) flow)),
+                cores, bufferSize);
+    }
+
+    /**
+     * Nombre maximum d'îlots, donc d'acteurs exécutés en parallèle.
+     */
+    public Pipeline<In, Out> withCores(int cores) {
+        return new Pipeline<>(stages, cores, bufferSize);
+    }
+
+    /**
+     * Taille des buffers d'entrée des îlots qui suivent une frontière async ; 0 pour garder celle du materializer.
+     */
+    public Pipeline<In, Out> withBoundaryBuffer(int bufferSize) {
+        return new Pipeline<>(stages, cores, bufferSize);
+    }
+
+    /**
+     * Tous les stages sur un même acteur.
+     */
+    public Flow<In, Out, NotUsed> fused() {
+        return build(List.empty());
+    }
+
+    /**
+     * Mesure le coût de chaque stage sur <code>sample</code> et choisit les frontières async.
+     */
+    @SuppressWarnings("unchecked")
+    public CompletionStage<Plan<In, Out>> plan(Iterable<In> sample, Materializer mat) {
+        final List<Object> inputs = List.ofAll(sample);
+        if (stages.isEmpty() || inputs.isEmpty()) {
+            return CompletableFuture.completedFuture(plan(stages.map(s -> 0.0), 0.0));
+        }
+        // préchauffage du pipeline complet avant toute mesure
+        return time(Source.from(inputs).via((Flow<Object, Object, NotUsed>) (Flow<?, ?, NotUsed>) fused()), mat)
+                .thenCompose(__ -> profile(stages, inputs, inputs.size(), List.empty(), mat))
+                .thenCompose(costs -> time(Source.from(inputs), mat).thenCompose(baseline ->
+                        time(Source.from(inputs).async(), mat).thenApply(boundary ->
+                                plan(costs, Math.max(0, boundary - baseline) / inputs.size()))));
+    }
+
+    /**
+     * Le plan pour des coûts déjà connus, en nanosecondes par élément de l'échantillon.
+     */
+    Plan<In, Out> plan(List<Double> costs, double boundaryCost) {
+        final List<Integer> boundaries = boundaries(costs, boundaryCost, cores);
+        final Plan<In, Out> plan = new Plan<>(this, costs, boundaryCost, boundaries);
+        LOGGER.info("{}", plan);
+        return plan;
+    }
+
+    private CompletionStage<List<Double>> profile(List<Stage> remaining, List<Object> inputs, int sampleSize,
+                                                  List<Double> costs, Materializer mat) {
+        if (remaining.isEmpty()) {
+            return CompletableFuture.completedFuture(costs);
+        }
+        final Stage stage = remaining.head();
+        return time(Source.from(inputs), mat).thenCompose(baseline ->
+                time(Source.from(inputs).via(stage.flow), mat).thenCompose(elapsed ->
+                        Source.from(inputs).via(stage.flow).runWith(Sink.seq(), mat).thenCompose(outputs ->
+                                profile(remaining.tail(), List.ofAll(outputs), sampleSize,
+                                        costs.append(Math.max(0, elapsed - baseline) / sampleSize), mat))));
+    }
+
+    /**
+     * Meilleur temps, en nanosecondes, sur {@link #rounds} exécutions.
+     */
+    private static CompletionStage<Double> time(Source<Object, NotUsed> source, Materializer mat) {
+        CompletionStage<Double> best = CompletableFuture.completedFuture(Double.MAX_VALUE);
+        for (int i = 0; i < rounds; i++) {
+            best = best.thenCompose(min -> {
+                final long start = System.nanoTime();
+                return source.runWith(Sink.seq(), mat).thenApply(__ -> Math.min(min, (double) (System.nanoTime() - start)));
+            });
+        }
+        return best;
+    }
+
+    /**
+     * Indices des stages précédés d'une frontière async : le découpage en au plus <code>cores</code> îlots contigus
+     * dont l'îlot le plus cher coûte le moins, s'il fait mieux que le flow fusionné.
+     */
+    static List<Integer> boundaries(List<Double> costs, double boundaryCost, int cores) {
+        final int n = costs.size();
+        final int maxIslands = Math.max(1, Math.min(cores, n));
+        final double[] prefix = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = prefix[i] + costs.get(i);
+        }
+        // best[m][j] : coût de l'îlot le plus cher pour les j premiers stages découpés en m îlots
+        final double[][] best = new double[maxIslands + 1][n + 1];
+        final int[][] start = new int[maxIslands + 1][n + 1];
+        for (double[] row : best) {
+            java.util.Arrays.fill(row, Double.MAX_VALUE);
+        }
+        best[0][0] = 0;
+        for (int m = 1; m <= maxIslands; m++) {
+            for (int j = 1; j <= n; j++) {
+                for (int a = m - 1; a < j; a++) {
+                    if (best[m - 1][a] == Double.MAX_VALUE) {
+                        continue;
+                    }
+                    final double island = prefix[j] - prefix[a] + (a > 0 ? boundaryCost : 0);
+                    final double bottleneck = Math.max(best[m - 1][a], island);
+                    if (bottleneck < best[m][j]) {
+                        best[m][j] = bottleneck;
+                        start[m][j] = a;
+                    }
+                }
+            }
+        }
+        int islands = 1;
+        for (int m = 2; m <= maxIslands; m++) {
+            if (best[m][n] < best[islands][n]) {
+                islands = m;
+            }
+        }
+        List<Integer> boundaries = List.empty();
+        for (int m = islands, j = n; m > 1; m--) {
+            j = start[m][j];
+            boundaries = boundaries.prepend(j);
+        }
+        return boundaries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Flow<In, Out, NotUsed> build(List<Integer> boundaries) {
+        Flow<Object, Object, NotUsed> flow = Flow.create();
+        for (int i = 0; i < stages.size(); i++) {
+            final Flow<Object, Object, NotUsed> stage = stages.get(i).flow;
+            if (boundaries.contains(i)) {
+                final Flow<Object, Object, NotUsed> island = bufferSize > 0
+                        ? stage.addAttributes(Attributes.inputBuffer(bufferSize, bufferSize))
+                        : stage;
+                flow = flow.async().via(island);
+            } else {
+                flow = flow.via(stage);
+            }
+        }
+        return (Flow<In, Out, NotUsed>) (Flow<?, ?, NotUsed>) flow;
+    }
+
+    /**
+     * Le résultat de la mesure : le coût de chaque stage, les frontières choisies et le débit estimé.
+     */
+    public static class Plan<In, Out> {
+        private final Pipeline<In, Out> pipeline;
+        private final List<Double> costs;
+        private final double boundaryCost;
+        private final List<Integer> boundaries;
+
+        private Plan(Pipeline<In, Out> pipeline, List<Double> costs, double boundaryCost, List<Integer> boundaries) {
+            this.pipeline = pipeline;
+            this.costs = costs;
+            this.boundaryCost = boundaryCost;
+            this.boundaries = boundaries;
+        }
+
+        /**
+         * Le flow avec les frontières async choisies.
+         */
+        public Flow<In, Out, NotUsed> flow() {
+            return pipeline.build(boundaries);
+        }
+
+        /**
+         * Les noms des stages précédés d'une frontière async.
+         */
+        public List<String> boundaries() {
+            return boundaries.map(i -> pipeline.stages.get(i).name);
+        }
+
+        /**
+         * Coût mesuré de chaque stage, en nanosecondes par élément de l'échantillon.
+         */
+        public List<Double> costs() {
+            return costs;
+        }
+
+        public double boundaryCost() {
+            return boundaryCost;
+        }
+
+        /**
+         * Débit estimé, en éléments par seconde : celui de l'îlot le plus cher.
+         */
+        public double estimatedThroughput() {
+            double bottleneck = 0;
+            double island = 0;
+            for (int i = 0; i < costs.size(); i++) {
+                if (boundaries.contains(i)) {
+                    bottleneck = Math.max(bottleneck, island);
+                    island = boundaryCost;
+                }
+                island += costs.get(i);
+            }
+            return throughput(Math.max(bottleneck, island));
+        }
+
+        /**
+         * Débit estimé du flow fusionné, en éléments par seconde.
+         */
+        public double fusedThroughput() {
+            return throughput(costs.sum().doubleValue());
+        }
+
+        private static double throughput(double nanos) {
+            return nanos > 0 ? 1e9 / nanos : Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder report = new StringBuilder(String.format(
+                    "Plan for %d cores: %d async boundaries, estimated %,.0f elements/s (fused: %,.0f elements/s, boundary: %.2f µs)",
+                    pipeline.cores, boundaries.size(), estimatedThroughput(), fusedThroughput(), boundaryCost / 1000));
+            for (int i = 0; i < costs.size(); i++) {
+                if (boundaries.contains(i)) {
+                    report.append("\n  --- async ---");
+                }
+                report.append(String.format("\n  %-20s %10.2f µs", pipeline.stages.get(i).name, costs.get(i) / 1000));
+            }
+            return report.toString();
+        }
+    }
+}
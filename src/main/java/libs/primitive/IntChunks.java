@@ -0,0 +1,185 @@
+package libs.primitive;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.Graph;
+import akka.stream.UniformFanInShape;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionStage;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Des streams d'entiers sans boxing : les éléments circulent par paquets, des <code>int[]</code>, et chaque stage
+ * traite un paquet entier dans une boucle sur le tableau.
+ * <pre>
+ *   IntChunks.range(1, 1_000_000)
+ *           .via(IntChunks.map(x -&gt; x * 2))
+ *           .via(IntChunks.filter(x -&gt; x % 3 == 0))
+ *           .runWith(IntChunks.sum(), mat)
+ * </pre>
+ * au lieu de <code>Source.range(...).map(...).filter(...).runWith(Sink.fold(0, Integer::sum), mat)</code>, qui
+ * alloue un <code>Integer</code> par élément et paie un passage dans l'interpréteur par élément et par stage.
+ * <p>
+ * Un paquet n'est jamais modifié une fois émis : chaque stage écrit dans un nouveau tableau, un paquet peut donc être
+ * diffusé à plusieurs consommateurs. Les paquets vides ne sont pas émis.
+ * Les adaptateurs {@link #chunk} et {@link #unchunk} font le lien avec les streams d'<code>Integer</code>.
+ */
+public class IntChunks {
+
+    public static final int DEFAULT_CHUNK = 1024;
+
+    private IntChunks() {
+    }
+
+    /**
+     * Les entiers de <code>start</code> à <code>end</code> inclus, comme {@link Source#range(int, int)}.
+     */
+    public static Source<int[], NotUsed> range(int start, int end) {
+        return range(start, end, DEFAULT_CHUNK);
+    }
+
+    public static Source<int[], NotUsed> range(int start, int end, int chunkSize) {
+        positive(chunkSize);
+        return Source.unfold((long) start, from -> {
+            if (from > end) {
+                return Optional.empty();
+            }
+            final long to = Math.min(end + 1L, from + chunkSize);
+            final int[] chunk = new int[(int) (to - from)];
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = (int) (from + i);
+            }
+            return Optional.of(Pair.create(to, chunk));
+        });
+    }
+
+    /**
+     * Une suite infinie d'entiers aléatoires dans [0, <code>bound</code>[, reproductible pour une même graine.
+     */
+    public static Source<int[], NotUsed> random(long seed, int bound, int chunkSize) {
+        positive(chunkSize);
+        return Source.repeat(NotUsed.getInstance()).statefulMapConcat(() -> {
+            final SplittableRandom random = new SplittableRandom(seed);
+            return __ -> {
+                final int[] chunk = new int[chunkSize];
+                for (int i = 0; i < chunkSize; i++) {
+                    chunk[i] = random.nextInt(bound);
+                }
+                return Collections.singletonList(chunk);
+            };
+        });
+    }
+
+    public static Flow<int[], int[], NotUsed> map(IntUnaryOperator f) {
+        return Flow.<int[]>create().map(chunk -> {
+            final int[] mapped = new int[chunk.length];
+            for (int i = 0; i < chunk.length; i++) {
+                mapped[i] = f.applyAsInt(chunk[i]);
+            }
+            return mapped;
+        });
+    }
+
+    public static Flow<int[], int[], NotUsed> filter(IntPredicate p) {
+        return Flow.<int[]>create().map(chunk -> {
+            final int[] kept = new int[chunk.length];
+            int size = 0;
+            for (int value : chunk) {
+                if (p.test(value)) {
+                    kept[size++] = value;
+                }
+            }
+            return size == chunk.length ? kept : Arrays.copyOf(kept, size);
+        }).filter(chunk -> chunk.length > 0);
+    }
+
+    /**
+     * Le résultat du fold, émis à la fin du stream, comme {@link Flow#fold}. L'accumulateur est boxé une fois par
+     * paquet.
+     */
+    public static Flow<int[], Integer, NotUsed> fold(int zero, IntBinaryOperator f) {
+        return Flow.<int[]>create()
+                .fold(zero, (acc, chunk) -> {
+                    int result = acc;
+                    for (int value : chunk) {
+                        result = f.applyAsInt(result, value);
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * La somme, sur un <code>long</code> pour ne pas déborder.
+     */
+    public static Sink<int[], CompletionStage<Long>> sum() {
+        return Flow.<int[]>create()
+                .fold(0L, (acc, chunk) -> {
+                    long sum = acc;
+                    for (int value : chunk) {
+                        sum += value;
+                    }
+                    return sum;
+                })
+                .toMat(Sink.head(), Keep.right());
+    }
+
+    /**
+     * Combine les entrées élément par élément, comme {@link akka.stream.javadsl.ZipWith} : le premier élément de la
+     * sortie est <code>f(f(a0, b0), c0)</code>... Les paquets des entrées n'ont pas à être de même taille. La sortie
+     * se termine avec la première entrée terminée.
+     */
+    public static Graph<UniformFanInShape<int[], int[]>, NotUsed> zipWith(int inputs, IntBinaryOperator f) {
+        return new ZipChunksStage(inputs, f);
+    }
+
+    /**
+     * Le maximum, élément par élément, de <code>inputs</code> entrées.
+     */
+    public static Graph<UniformFanInShape<int[], int[]>, NotUsed> max(int inputs) {
+        return zipWith(inputs, Math::max);
+    }
+
+    /**
+     * Regroupe un stream d'<code>Integer</code> en paquets d'au plus <code>chunkSize</code> éléments.
+     */
+    public static Flow<Integer, int[], NotUsed> chunk(int chunkSize) {
+        positive(chunkSize);
+        return Flow.<Integer>create()
+                .grouped(chunkSize)
+                .map(values -> values.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public static Flow<int[], Integer, NotUsed> unchunk() {
+        return Flow.<int[]>create().mapConcat(chunk -> () -> IntStream.of(chunk).iterator());
+    }
+
+    /**
+     * Élargit les paquets en <code>long[]</code>, pour continuer avec {@link LongChunks}.
+     */
+    public static Flow<int[], long[], NotUsed> asLongs() {
+        return Flow.<int[]>create().map(chunk -> {
+            final long[] widened = new long[chunk.length];
+            for (int i = 0; i < chunk.length; i++) {
+                widened[i] = chunk[i];
+            }
+            return widened;
+        });
+    }
+
+    static void positive(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("A chunk holds at least one element: " + chunkSize);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package libs.primitive;
+
+import akka.NotUsed;
+import akka.japi.Pair;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+
+/**
+ * Les mêmes stages que {@link IntChunks}, sur des paquets de <code>long[]</code>.
+ */
+public class LongChunks {
+
+    private LongChunks() {
+    }
+
+    /**
+     * Les entiers de <code>start</code> à <code>end</code> inclus.
+     */
+    public static Source<long[], NotUsed> range(long start, long end) {
+        return range(start, end, IntChunks.DEFAULT_CHUNK);
+    }
+
+    public static Source<long[], NotUsed> range(long start, long end, int chunkSize) {
+        IntChunks.positive(chunkSize);
+        return Source.unfold(Pair.create(start, start > end), state -> {
+            if (state.second()) {
+                return Optional.empty();
+            }
+            final long from = state.first();
+            // end - from + 1 peut déborder si l'intervalle couvre presque tous les long
+            final int size = end - from < chunkSize ? (int) (end - from + 1) : chunkSize;
+            final long[] chunk = new long[size];
+            for (int i = 0; i < size; i++) {
+                chunk[i] = from + i;
+            }
+            final long last = from + size - 1;
+            return Optional.of(Pair.create(Pair.create(last + 1, last == end), chunk));
+        });
+    }
+
+    public static Flow<long[], long[], NotUsed> map(LongUnaryOperator f) {
+        return Flow.<long[]>create().map(chunk -> {
+            final long[] mapped = new long[chunk.length];
+            for (int i = 0; i < chunk.length; i++) {
+                mapped[i] = f.applyAsLong(chunk[i]);
+            }
+            return mapped;
+        });
+    }
+
+    public static Flow<long[], long[], NotUsed> filter(LongPredicate p) {
+        return Flow.<long[]>create().map(chunk -> {
+            final long[] kept = new long[chunk.length];
+            int size = 0;
+            for (long value : chunk) {
+                if (p.test(value)) {
+                    kept[size++] = value;
+                }
+            }
+            return size == chunk.length ? kept : Arrays.copyOf(kept, size);
+        }).filter(chunk -> chunk.length > 0);
+    }
+
+    public static Flow<long[], Long, NotUsed> fold(long zero, LongBinaryOperator f) {
+        return Flow.<long[]>create()
+                .fold(zero, (acc, chunk) -> {
+                    long result = acc;
+                    for (long value : chunk) {
+                        result = f.applyAsLong(result, value);
+                    }
+                    return result;
+                });
+    }
+
+    public static Sink<long[], CompletionStage<Long>> sum() {
+        return fold(0L, Long::sum).toMat(Sink.head(), Keep.right());
+    }
+
+    public static Flow<Long, long[], NotUsed> chunk(int chunkSize) {
+        IntChunks.positive(chunkSize);
+        return Flow.<Long>create()
+                .grouped(chunkSize)
+                .map(values -> values.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    public static Flow<long[], Long, NotUsed> unchunk() {
+        return Flow.<long[]>create().mapConcat(chunk -> () -> LongStream.of(chunk).iterator());
+    }
+}
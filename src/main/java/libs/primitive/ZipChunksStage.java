@@ -0,0 +1,125 @@
+package libs.primitive;
+
+import akka.stream.Attributes;
+import akka.stream.Inlet;
+import akka.stream.UniformFanInShape;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Le stage de {@link IntChunks#zipWith} : chaque entrée garde son paquet courant et la position du prochain élément,
+ * un paquet de sortie couvre ce qui reste dans le plus petit des paquets courants.
+ */
+class ZipChunksStage extends GraphStage<UniformFanInShape<int[], int[]>> {
+
+    private final IntBinaryOperator f;
+    private final UniformFanInShape<int[], int[]> shape;
+
+    ZipChunksStage(int inputs, IntBinaryOperator f) {
+        if (inputs < 1) {
+            throw new IllegalArgumentException("At least one input: " + inputs);
+        }
+        this.f = f;
+        this.shape = new UniformFanInShape<>(inputs, "ZipChunks");
+    }
+
+    @Override
+    public UniformFanInShape<int[], int[]> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        final int inputs = shape.getInlets().size();
+        return new GraphStageLogic(shape) {
+
+            private final int[][] chunks = new int[inputs][];
+            private final int[] positions = new int[inputs];
+            private int ready = 0;
+
+            {
+                for (int i = 0; i < inputs; i++) {
+                    final int input = i;
+                    final Inlet<int[]> in = shape.in(i);
+                    setHandler(in, new AbstractInHandler() {
+                        @Override
+                        public void onPush() {
+                            final int[] chunk = grab(in);
+                            if (chunk.length == 0) {
+                                pull(in);
+                                return;
+                            }
+                            chunks[input] = chunk;
+                            positions[input] = 0;
+                            ready++;
+                            if (ready == inputs && isAvailable(shape.out())) {
+                                zip();
+                            }
+                        }
+
+                        @Override
+                        public void onUpstreamFinish() {
+                            if (chunks[input] == null) {
+                                completeStage();
+                            }
+                        }
+                    });
+                }
+                setHandler(shape.out(), new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        if (ready == inputs) {
+                            zip();
+                        } else {
+                            pullMissing();
+                        }
+                    }
+                });
+            }
+
+            private void zip() {
+                int size = Integer.MAX_VALUE;
+                for (int i = 0; i < inputs; i++) {
+                    size = Math.min(size, chunks[i].length - positions[i]);
+                }
+                final int[] zipped = new int[size];
+                System.arraycopy(chunks[0], positions[0], zipped, 0, size);
+                for (int i = 1; i < inputs; i++) {
+                    final int[] chunk = chunks[i];
+                    final int position = positions[i];
+                    for (int j = 0; j < size; j++) {
+                        zipped[j] = f.applyAsInt(zipped[j], chunk[position + j]);
+                    }
+                }
+                boolean finished = false;
+                for (int i = 0; i < inputs; i++) {
+                    positions[i] += size;
+                    if (positions[i] == chunks[i].length) {
+                        chunks[i] = null;
+                        ready--;
+                        finished |= isClosed(shape.in(i));
+                    }
+                }
+                push(shape.out(), zipped);
+                if (finished) {
+                    completeStage();
+                } else {
+                    pullMissing();
+                }
+            }
+
+            private void pullMissing() {
+                for (int i = 0; i < inputs; i++) {
+                    final Inlet<int[]> in = shape.in(i);
+                    if (chunks[i] == null && !hasBeenPulled(in)) {
+                        pull(in);
+                    }
+                }
+            }
+        };
+    }
+}
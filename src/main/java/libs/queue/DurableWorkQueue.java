@@ -0,0 +1,518 @@
+package libs.queue;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * File d'attente de travail persistante, stockée dans un répertoire local.
+ * <p>
+ * Chaque changement d'état (ajout, bail, acquittement, nouvel essai, lettre morte) est ajouté à un journal
+ * mappé en mémoire. Quand le journal est plein, l'état est compacté dans un fichier snapshot qui ne contient
+ * que le travail restant et les lettres mortes, puis le journal repart de zéro. Au redémarrage, le coût de
+ * relecture est donc proportionnel au travail restant, pas au travail déjà fait.
+ * <p>
+ * Un élément est distribué sous forme de bail ({@link Lease}) d'une durée limitée. S'il n'est pas acquitté
+ * avant l'expiration du bail, il est remis dans la file. Au bout de <code>maxAttempts</code> essais, il part
+ * en lettre morte. Les baux en cours au moment d'un crash sont remis dans la file au redémarrage.
+ */
+public class DurableWorkQueue implements Closeable {
+
+    public static Logger LOGGER = LoggerFactory.getLogger(DurableWorkQueue.class);
+
+    private static final byte ENQUEUE = 1;
+    private static final byte LEASE = 2;
+    private static final byte ACK = 3;
+    private static final byte RETRY = 4;
+    private static final byte DEAD = 5;
+
+    // type + longueur de l'élément + essais + crc
+    private static final int recordOverhead = 1 + 4 + 4 + 4;
+    private static final int headerSize = 8;
+
+    public static class Lease {
+        private final String item;
+        private final int attempt;
+
+        private Lease(String item, int attempt) {
+            this.item = item;
+            this.attempt = attempt;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        @Override
+        public String toString() {
+            return "Lease{" + item + ", attempt=" + attempt + '}';
+        }
+    }
+
+    public static class Stats {
+        public final int pending;
+        public final int leased;
+        public final int deadLetters;
+        public final long acked;
+        public final long retried;
+        public final long expired;
+
+        private Stats(int pending, int leased, int deadLetters, long acked, long retried, long expired) {
+            this.pending = pending;
+            this.leased = leased;
+            this.deadLetters = deadLetters;
+            this.acked = acked;
+            this.retried = retried;
+            this.expired = expired;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{pending=" + pending + ", leased=" + leased + ", deadLetters=" + deadLetters
+                    + ", acked=" + acked + ", retried=" + retried + ", expired=" + expired + '}';
+        }
+    }
+
+    private static class Entry {
+        private final String item;
+        private int attempts;
+        private boolean leased;
+        private long leaseDeadline;
+
+        private Entry(String item, int attempts) {
+            this.item = item;
+            this.attempts = attempts;
+        }
+    }
+
+    private final Path logPath;
+    private final Path snapshotPath;
+    private final Duration leaseTimeout;
+    private final int maxAttempts;
+    private final boolean syncOnWrite;
+
+    // le travail restant, dans l'ordre d'ajout
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    // les baux dans l'ordre d'expiration, la durée étant la même pour tous
+    private final ArrayDeque<Entry> leases = new ArrayDeque<>();
+    private final Map<String, Integer> deadLetters = new LinkedHashMap<>();
+
+    private long acked = 0L;
+    private long retried = 0L;
+    private long expired = 0L;
+
+    private long generation = 0L;
+    private long snapshotSize = 0L;
+    private FileChannel channel;
+    private MappedByteBuffer log;
+
+    private DurableWorkQueue(Path directory, Duration leaseTimeout, int maxAttempts, int logCapacity, boolean syncOnWrite) {
+        this.logPath = directory.resolve("queue.log");
+        this.snapshotPath = directory.resolve("queue.snapshot");
+        this.leaseTimeout = leaseTimeout;
+        this.maxAttempts = maxAttempts;
+        this.syncOnWrite = syncOnWrite;
+        try {
+            Files.createDirectories(directory);
+            this.channel = FileChannel.open(logPath, CREATE, READ, WRITE);
+            this.log = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(logCapacity, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Ouvre la file stockée dans <code>directory</code>. La fonction <code>seed</code> n'est appelée que si la
+     * file n'existe pas encore : au redémarrage, on reprend le travail restant sans le recalculer. Le seed est écrit
+     * d'un bloc : s'il est interrompu, il est refait en entier à l'ouverture suivante.
+     *
+     * @param leaseTimeout durée au bout de laquelle un élément non acquitté est redistribué
+     * @param maxAttempts  nombre d'essais avant de passer un élément en lettre morte
+     * @param logCapacity  taille du journal mappé en mémoire, en octets
+     * @param syncOnWrite  forcer l'écriture sur disque après chaque enregistrement (sinon seulement à la compaction)
+     */
+    public static DurableWorkQueue open(Path directory, Supplier<? extends Iterable<String>> seed,
+                                        Duration leaseTimeout, int maxAttempts, int logCapacity, boolean syncOnWrite) {
+        // le seed n'est acquis qu'une fois écrit dans le premier snapshot : sans snapshot, un journal ne peut venir
+        // que d'un seed interrompu, il est effacé et le seed refait
+        final boolean seeded = Files.exists(directory.resolve("queue.snapshot"));
+        if (!seeded) {
+            try {
+                Files.deleteIfExists(directory.resolve("queue.log"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        final DurableWorkQueue queue = new DurableWorkQueue(directory, leaseTimeout, maxAttempts, logCapacity, syncOnWrite);
+        if (seeded) {
+            queue.recover();
+        } else {
+            queue.log.putLong(0, 0L);
+            queue.log.position(headerSize);
+            seed.get().forEach(queue::add);
+            queue.compact();
+        }
+        return queue;
+    }
+
+    public static DurableWorkQueue open(Path directory, Supplier<? extends Iterable<String>> seed) {
+        return open(directory, seed, Duration.ofMinutes(5), 3, 16 * 1024 * 1024, false);
+    }
+
+    // -- opérations
+
+    public synchronized void enqueue(String item) {
+        if (add(item)) {
+            append(ENQUEUE, item, 0);
+        }
+    }
+
+    private boolean add(String item) {
+        if (entries.containsKey(item)) {
+            return false;
+        }
+        final Entry entry = new Entry(item, 0);
+        entries.put(item, entry);
+        pending.addLast(entry);
+        return true;
+    }
+
+    /**
+     * Donne un bail sur le prochain élément en attente, s'il y en a un. Les baux expirés sont d'abord remis dans la file.
+     */
+    public synchronized Option<Lease> lease() {
+        expireLeases();
+        final Entry entry = pending.pollFirst();
+        if (entry == null) {
+            return Option.none();
+        }
+        entry.attempts += 1;
+        entry.leased = true;
+        entry.leaseDeadline = System.nanoTime() + leaseTimeout.toNanos();
+        leases.addLast(entry);
+        append(LEASE, entry.item, entry.attempts);
+        return Option.some(new Lease(entry.item, entry.attempts));
+    }
+
+    /**
+     * Le travail est fait : l'élément sort définitivement de la file.
+     */
+    public synchronized void ack(Lease lease) {
+        final Entry entry = entries.remove(lease.item);
+        if (entry != null) {
+            if (!entry.leased) {
+                // acquittement tardif d'un bail expiré
+                pending.remove(entry);
+            }
+            entry.leased = false;
+            acked += 1;
+            append(ACK, lease.item, entry.attempts);
+        }
+    }
+
+    /**
+     * Le travail a échoué : l'élément est remis en fin de file, ou part en lettre morte s'il a épuisé ses essais.
+     */
+    public synchronized void nack(Lease lease) {
+        final Entry entry = entries.get(lease.item);
+        if (entry != null && entry.leased && entry.attempts == lease.attempt) {
+            release(entry);
+        }
+    }
+
+    /**
+     * Le travail n'a pas pu être tenté pour une raison qui ne tient pas à l'élément (limite de débit, service
+     * indisponible) : l'élément est remis en fin de file sans que cet essai compte.
+     */
+    public synchronized void postpone(Lease lease) {
+        final Entry entry = entries.get(lease.item);
+        if (entry != null && entry.leased && entry.attempts == lease.attempt) {
+            entry.leased = false;
+            entry.attempts -= 1;
+            pending.addLast(entry);
+            append(RETRY, entry.item, entry.attempts);
+        }
+    }
+
+    /**
+     * Vrai quand il n'y a plus rien en attente ni en cours.
+     */
+    public synchronized boolean isDrained() {
+        return entries.isEmpty();
+    }
+
+    public synchronized boolean hasPending() {
+        expireLeases();
+        return !pending.isEmpty();
+    }
+
+    public synchronized List<String> deadLetters() {
+        return List.ofAll(deadLetters.keySet());
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(pending.size(), entries.size() - pending.size(), deadLetters.size(), acked, retried, expired);
+    }
+
+    private void expireLeases() {
+        final long now = System.nanoTime();
+        while (!leases.isEmpty()) {
+            final Entry entry = leases.peekFirst();
+            if (!entry.leased || entries.get(entry.item) != entry) {
+                // acquitté ou relâché depuis
+                leases.pollFirst();
+            } else if (entry.leaseDeadline - now <= 0) {
+                leases.pollFirst();
+                expired += 1;
+                release(entry);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void release(Entry entry) {
+        entry.leased = false;
+        if (entry.attempts >= maxAttempts) {
+            entries.remove(entry.item);
+            deadLetters.put(entry.item, entry.attempts);
+            LOGGER.warn("{} moved to dead letters after {} attempts", entry.item, entry.attempts);
+            append(DEAD, entry.item, entry.attempts);
+        } else {
+            pending.addLast(entry);
+            retried += 1;
+            append(RETRY, entry.item, entry.attempts);
+        }
+    }
+
+    // -- stream
+
+    /**
+     * Source des baux. Elle se termine quand la file est vide et qu'aucun bail n'est en cours ; tant que des baux
+     * sont en cours, elle vérifie régulièrement leur expiration pour redistribuer les éléments.
+     */
+    public Source<Lease, NotUsed> source(Duration pollInterval) {
+        return Source.fromGraph(new WorkQueueSource(this, pollInterval));
+    }
+
+    public Source<Lease, NotUsed> source() {
+        return source(Duration.ofMillis(100));
+    }
+
+    /**
+     * Acquitte les baux qui lui parviennent : à placer après l'écriture du résultat.
+     */
+    public Sink<Lease, CompletionStage<Done>> ackSink() {
+        return Sink.foreach(this::ack);
+    }
+
+    // -- persistance
+
+    private void append(byte type, String item, int attempts) {
+        final byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+        final int size = recordOverhead + bytes.length;
+        if (log.remaining() < size + 1) {
+            compact();
+            // un journal plus petit que l'état compacté ferait compacter sans arrêt
+            if (log.remaining() < size + 1 || snapshotSize > log.capacity()) {
+                grow(size);
+            }
+        }
+        final int start = log.position();
+        log.put(type).putInt(bytes.length).put(bytes).putInt(attempts);
+        final CRC32 crc = new CRC32();
+        final ByteBuffer record = log.duplicate();
+        record.position(start).limit(log.position());
+        crc.update(record);
+        log.putInt((int) crc.getValue());
+        if (syncOnWrite) {
+            log.force();
+        }
+    }
+
+    /**
+     * Écrit l'état courant dans un nouveau snapshot, puis vide le journal.
+     * L'ordre des écritures garantit qu'un crash à n'importe quel moment laisse un état cohérent :
+     * le journal n'est relu que s'il porte la même génération que le snapshot.
+     */
+    public synchronized void compact() {
+        final long next = generation + 1;
+        final Path tmp = snapshotPath.resolveSibling("queue.snapshot.tmp");
+        try (FileChannel out = FileChannel.open(tmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            final ByteBuffer header = ByteBuffer.allocate(headerSize).putLong(0, next);
+            out.write(header);
+            for (Entry entry : entries.values()) {
+                out.write(record(ENQUEUE, entry.item, entry.attempts));
+            }
+            for (Map.Entry<String, Integer> dead : deadLetters.entrySet()) {
+                out.write(record(DEAD, dead.getKey(), dead.getValue()));
+            }
+            out.force(true);
+            snapshotSize = out.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(tmp, snapshotPath, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // on efface le journal avant de changer sa génération
+        final int end = log.position();
+        final byte[] zeros = new byte[Math.min(end, 64 * 1024)];
+        log.position(headerSize);
+        while (log.position() < end) {
+            log.put(zeros, 0, Math.min(zeros.length, end - log.position()));
+        }
+        log.putLong(0, next);
+        log.position(headerSize);
+        log.force();
+        generation = next;
+    }
+
+    private void grow(int recordSize) {
+        final int position = log.position();
+        final long capacity = Math.max(2L * log.capacity(), (long) position + recordSize + 1);
+        try {
+            log.force();
+            log = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            log.position(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ByteBuffer record(byte type, String item, int attempts) {
+        final byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(recordOverhead + bytes.length);
+        record.put(type).putInt(bytes.length).put(bytes).putInt(attempts);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private void recover() {
+        long snapshotGeneration = -1L;
+        if (Files.exists(snapshotPath)) {
+            try {
+                final ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+                snapshotGeneration = snapshot.getLong();
+                replay(snapshot);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        final long logGeneration = log.getLong(0);
+        log.position(headerSize);
+        if (snapshotGeneration < 0 || logGeneration == snapshotGeneration) {
+            replay(log);
+        }
+        generation = logGeneration;
+        if (snapshotGeneration >= 0 && logGeneration != snapshotGeneration) {
+            // crash pendant une compaction : le snapshot fait foi, le journal est périmé
+            log.position(log.capacity() - 1);
+            generation = snapshotGeneration - 1;
+            compact();
+        }
+        // les baux en cours au moment de l'arrêt sont perdus : tout ce qui reste est en attente
+        entries.values().forEach(entry -> {
+            entry.leased = false;
+            pending.addLast(entry);
+        });
+        LOGGER.info("Recovered work queue: {} pending, {} dead letters", entries.size(), deadLetters.size());
+    }
+
+    /**
+     * Rejoue les enregistrements jusqu'au premier enregistrement vide ou invalide (écriture interrompue).
+     */
+    private void replay(ByteBuffer buffer) {
+        while (buffer.remaining() >= recordOverhead) {
+            final int start = buffer.position();
+            final byte type = buffer.get();
+            final int length = buffer.getInt();
+            if (type < ENQUEUE || type > DEAD || length < 0 || buffer.remaining() < length + 8) {
+                buffer.position(start);
+                return;
+            }
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            final int attempts = buffer.getInt();
+            final CRC32 crc = new CRC32();
+            final ByteBuffer record = buffer.duplicate();
+            record.position(start).limit(buffer.position());
+            crc.update(record);
+            if (buffer.getInt() != (int) crc.getValue()) {
+                buffer.position(start);
+                return;
+            }
+            apply(type, new String(bytes, StandardCharsets.UTF_8), attempts);
+        }
+    }
+
+    private void apply(byte type, String item, int attempts) {
+        switch (type) {
+            case ENQUEUE:
+                entries.putIfAbsent(item, new Entry(item, attempts));
+                break;
+            case LEASE:
+            case RETRY:
+                final Entry entry = entries.get(item);
+                if (entry != null) {
+                    entry.attempts = attempts;
+                }
+                break;
+            case ACK:
+                entries.remove(item);
+                acked += 1;
+                break;
+            case DEAD:
+                entries.remove(item);
+                deadLetters.put(item, attempts);
+                break;
+            default:
+                throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compact();
+        channel.close();
+    }
+}
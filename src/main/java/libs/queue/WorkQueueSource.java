@@ -0,0 +1,69 @@
+package libs.queue;
+
+import akka.stream.Attributes;
+import akka.stream.Outlet;
+import akka.stream.SourceShape;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStage;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.TimerGraphStageLogic;
+import io.vavr.control.Option;
+
+import java.time.Duration;
+
+/**
+ * Distribue les baux d'une {@link DurableWorkQueue} à la demande.
+ * Quand la file est vide mais que des baux sont en cours, on attend leur acquittement ou leur expiration.
+ */
+class WorkQueueSource extends GraphStage<SourceShape<DurableWorkQueue.Lease>> {
+
+    public final Outlet<DurableWorkQueue.Lease> out = Outlet.create("WorkQueueSource.out");
+
+    private final SourceShape<DurableWorkQueue.Lease> shape = SourceShape.of(out);
+
+    private final DurableWorkQueue queue;
+    private final Duration pollInterval;
+
+    WorkQueueSource(DurableWorkQueue queue, Duration pollInterval) {
+        this.queue = queue;
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public SourceShape<DurableWorkQueue.Lease> shape() {
+        return shape;
+    }
+
+    @Override
+    public GraphStageLogic createLogic(Attributes inheritedAttributes) {
+        return new TimerGraphStageLogic(shape) {
+
+            {
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        tryPush();
+                    }
+                });
+            }
+
+            @Override
+            public void onTimer(Object timerKey) {
+                if (isAvailable(out)) {
+                    tryPush();
+                }
+            }
+
+            private void tryPush() {
+                final Option<DurableWorkQueue.Lease> lease = queue.lease();
+                if (lease.isDefined()) {
+                    push(out, lease.get());
+                } else if (queue.isDrained()) {
+                    completeStage();
+                } else {
+                    scheduleOnce("poll", pollInterval);
+                }
+            }
+        };
+    }
+}
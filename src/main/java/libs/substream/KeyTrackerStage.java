@@ -0,0 +1,142 @@
+package libs.substream;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import akka.stream.stage.TimerGraphStageLogic;
+import scala.Tuple2;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Attribue à chaque élément le sous-stream de sa clé, et émet l'ordre de fermer les sous-streams inactifs ou les
+ * moins récemment utilisés.
+ * <p>
+ * Les clés vivantes sont dans une LinkedHashMap en ordre d'accès : la tête est à la fois la moins récemment vue et
+ * la plus ancienne, ce qui sert aux deux évictions.
+ */
+class KeyTrackerStage<In, K> extends GraphStageWithMaterializedValue<FlowShape<In, KeyedSubstreams.Envelope<In>>, KeyedSubstreams.Stats> {
+
+    public final Inlet<In> in = Inlet.create("KeyedSubstreams.in");
+    public final Outlet<KeyedSubstreams.Envelope<In>> out = Outlet.create("KeyedSubstreams.out");
+
+    private final FlowShape<In, KeyedSubstreams.Envelope<In>> shape = FlowShape.of(in, out);
+
+    private final int maxLive;
+    private final Duration idleTimeout;
+    private final Function<In, K> key;
+
+    KeyTrackerStage(int maxLive, Duration idleTimeout, Function<In, K> key) {
+        this.maxLive = maxLive;
+        this.idleTimeout = idleTimeout;
+        this.key = key;
+    }
+
+    @Override
+    public FlowShape<In, KeyedSubstreams.Envelope<In>> shape() {
+        return shape;
+    }
+
+    private static class Live {
+        final long substream;
+        long lastSeen;
+
+        Live(long substream, long lastSeen) {
+            this.substream = substream;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    @Override
+    public Tuple2<GraphStageLogic, KeyedSubstreams.Stats> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+        final KeyedSubstreams.Stats stats = new KeyedSubstreams.Stats();
+        final GraphStageLogic logic = new TimerGraphStageLogic(shape) {
+
+            private final LinkedHashMap<K, Live> live = new LinkedHashMap<>(16, 0.75f, true);
+            private long nextSubstream = 0L;
+
+            {
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        final In element = grab(in);
+                        final K k = key.apply(element);
+                        final long now = System.nanoTime();
+                        Live substream = live.get(k);
+                        if (substream == null) {
+                            if (live.size() >= maxLive) {
+                                evictEldest();
+                                stats.evictedLru++;
+                            }
+                            substream = new Live(nextSubstream++, now);
+                            live.put(k, substream);
+                            stats.opened++;
+                            stats.live = live.size();
+                        }
+                        substream.lastSeen = now;
+                        emit(out, new KeyedSubstreams.Envelope<>(substream.substream, element), () -> {
+                            if (!hasBeenPulled(in) && !isClosed(in)) {
+                                pull(in);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        // les sous-streams se terminent avec le groupBy
+                        complete(out);
+                    }
+                });
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        if (!hasBeenPulled(in)) {
+                            pull(in);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void preStart() {
+                final Duration tick = idleTimeout.dividedBy(2).compareTo(Duration.ofSeconds(1)) < 0
+                        ? idleTimeout.dividedBy(2)
+                        : Duration.ofSeconds(1);
+                schedulePeriodically("idle", tick);
+            }
+
+            @Override
+            public void onTimer(Object timerKey) {
+                final long idleSince = System.nanoTime() - idleTimeout.toNanos();
+                final Iterator<Map.Entry<K, Live>> eldest = live.entrySet().iterator();
+                while (eldest.hasNext()) {
+                    final Live substream = eldest.next().getValue();
+                    if (substream.lastSeen > idleSince) {
+                        break;
+                    }
+                    eldest.remove();
+                    emit(out, KeyedSubstreams.Envelope.eviction(substream.substream));
+                    stats.evictedIdle++;
+                }
+                stats.live = live.size();
+            }
+
+            private void evictEldest() {
+                final Iterator<Map.Entry<K, Live>> eldest = live.entrySet().iterator();
+                final Live substream = eldest.next().getValue();
+                eldest.remove();
+                emit(out, KeyedSubstreams.Envelope.eviction(substream.substream));
+            }
+        };
+        return new Tuple2<>(logic, stats);
+    }
+}
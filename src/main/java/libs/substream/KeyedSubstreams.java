@@ -0,0 +1,118 @@
+package libs.substream;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Un <code>groupBy</code> pour un nombre de clés non borné (codes postaux, identifiants de commerces...) : le nombre
+ * de sous-streams vivants est borné, pas le nombre de clés.
+ * <pre>
+ *   source.viaMat(KeyedSubstreams.create(10_000, Duration.ofMinutes(5), Business::getId, perBusiness), Keep.right())
+ * </pre>
+ * Chaque clé a son sous-stream, dans lequel <code>perKey</code> traite ses éléments dans l'ordre. Un sous-stream est
+ * fermé quand sa clé n'a pas reçu d'élément depuis <code>idleTimeout</code>, ou quand une nouvelle clé arrive alors
+ * que <code>maxLive</code> sous-streams sont ouverts : c'est alors celui de la clé la moins récemment vue qui est fermé.
+ * Fermer un sous-stream termine son <code>perKey</code> normalement (un <code>grouped</code> émet son paquet partiel,
+ * un <code>fold</code> son résultat) ; si la clé revient, un nouveau sous-stream est ouvert pour elle.
+ * <p>
+ * Un sous-stream fermé et celui qui le remplace pour la même clé sont indépendants : l'ordre n'est garanti qu'à
+ * l'intérieur d'un sous-stream. Les compteurs ({@link Stats}) sont lisibles pendant que le stream tourne.
+ */
+public class KeyedSubstreams {
+
+    private KeyedSubstreams() {
+    }
+
+    /**
+     * @param maxLive     nombre maximum de sous-streams ouverts
+     * @param idleTimeout inactivité après laquelle le sous-stream d'une clé est fermé
+     * @param key         la clé d'un élément
+     * @param perKey      le traitement d'une clé, matérialisé à chaque ouverture de sous-stream
+     */
+    public static <In, K, Out> Flow<In, Out, Stats> create(int maxLive, Duration idleTimeout, Function<In, K> key,
+                                                           Flow<In, Out, NotUsed> perKey) {
+        if (maxLive < 1) {
+            throw new IllegalArgumentException("maxLive must be positive: " + maxLive);
+        }
+        // chaque ouverture a son numéro de sous-stream, jamais réutilisé : un élément ne peut pas aller dans un
+        // sous-stream en cours de fermeture, et groupBy n'a pas à se souvenir des sous-streams fermés
+        return Flow.fromGraph(new KeyTrackerStage<>(maxLive, idleTimeout, key))
+                .groupBy(Integer.MAX_VALUE, envelope -> envelope.substream, true)
+                .takeWhile(envelope -> !envelope.isEviction())
+                .map(envelope -> envelope.element)
+                .via(perKey)
+                .mergeSubstreams();
+    }
+
+    /**
+     * Les compteurs des sous-streams.
+     */
+    public static class Stats {
+        volatile int live = 0;
+        volatile long opened = 0L;
+        volatile long evictedIdle = 0L;
+        volatile long evictedLru = 0L;
+
+        /**
+         * Nombre de sous-streams ouverts.
+         */
+        public int getLive() {
+            return live;
+        }
+
+        /**
+         * Nombre de sous-streams ouverts depuis le début, réouvertures comprises.
+         */
+        public long getOpened() {
+            return opened;
+        }
+
+        /**
+         * Nombre de sous-streams fermés pour inactivité.
+         */
+        public long getEvictedIdle() {
+            return evictedIdle;
+        }
+
+        /**
+         * Nombre de sous-streams fermés pour faire de la place à une nouvelle clé.
+         */
+        public long getEvictedLru() {
+            return evictedLru;
+        }
+
+        public long getEvicted() {
+            return evictedIdle + evictedLru;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Substreams: %d live, %d opened, %d evicted (%d idle, %d LRU)",
+                    live, opened, getEvicted(), evictedIdle, evictedLru);
+        }
+    }
+
+    /**
+     * Un élément, ou l'ordre de fermer un sous-stream.
+     */
+    static class Envelope<T> {
+        final long substream;
+        final T element;
+
+        Envelope(long substream, T element) {
+            this.substream = substream;
+            this.element = element;
+        }
+
+        static <T> Envelope<T> eviction(long substream) {
+            return new Envelope<>(substream, null);
+        }
+
+        boolean isEviction() {
+            return element == null;
+        }
+    }
+}
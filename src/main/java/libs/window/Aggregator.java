@@ -0,0 +1,85 @@
+package libs.window;
+
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Agrégat incrémental d'une fenêtre : seul l'accumulateur est gardé, pas les éléments.
+ * <p>
+ * <code>add</code> peut modifier l'accumulateur et le rendre, pour ne rien allouer par élément ; <code>merge</code>
+ * n'est utilisé que par les fenêtres de session, quand deux sessions se rejoignent.
+ *
+ * @param <T> l'élément
+ * @param <A> l'accumulateur
+ * @param <R> le résultat
+ */
+public interface Aggregator<T, A, R> {
+
+    A zero();
+
+    A add(A accumulator, T element);
+
+    A merge(A left, A right);
+
+    R result(A accumulator);
+
+    static <T, A, R> Aggregator<T, A, R> of(Supplier<A> zero, BiFunction<A, T, A> add, BinaryOperator<A> merge,
+                                            Function<A, R> result) {
+        return new Aggregator<T, A, R>() {
+            @Override
+            public A zero() {
+                return zero.get();
+            }
+
+            @Override
+            public A add(A accumulator, T element) {
+                return add.apply(accumulator, element);
+            }
+
+            @Override
+            public A merge(A left, A right) {
+                return merge.apply(left, right);
+            }
+
+            @Override
+            public R result(A accumulator) {
+                return result.apply(accumulator);
+            }
+        };
+    }
+
+    /**
+     * Nombre d'éléments.
+     */
+    static <T> Aggregator<T, long[], Long> count() {
+        return of(() -> new long[1],
+                (acc, element) -> {
+                    acc[0]++;
+                    return acc;
+                },
+                (left, right) -> {
+                    left[0] += right[0];
+                    return left;
+                },
+                acc -> acc[0]);
+    }
+
+    /**
+     * Somme de <code>value</code>.
+     */
+    static <T> Aggregator<T, double[], Double> sum(ToDoubleFunction<T> value) {
+        return of(() -> new double[1],
+                (acc, element) -> {
+                    acc[0] += value.applyAsDouble(element);
+                    return acc;
+                },
+                (left, right) -> {
+                    left[0] += right[0];
+                    return left;
+                },
+                acc -> acc[0]);
+    }
+}
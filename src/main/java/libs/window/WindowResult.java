@@ -0,0 +1,72 @@
+package libs.window;
+
+import java.util.Objects;
+
+/**
+ * Le résultat d'une fenêtre <code>[start, end)</code> pour une clé, les bornes en temps de l'événement (ms).
+ * <p>
+ * Une fenêtre émet son résultat quand le watermark passe sa fin ; un élément en retard, mais dans le retard
+ * accepté, fait réémettre le résultat mis à jour, avec {@link #isLate()} vrai.
+ */
+public class WindowResult<K, R> {
+
+    private final K key;
+    private final long start;
+    private final long end;
+    private final R result;
+    private final boolean late;
+
+    WindowResult(K key, long start, long end, R result, boolean late) {
+        this.key = key;
+        this.start = start;
+        this.end = end;
+        this.result = result;
+        this.late = late;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public R getResult() {
+        return result;
+    }
+
+    /**
+     * Vrai pour la mise à jour d'un résultat déjà émis, après un élément en retard.
+     */
+    public boolean isLate() {
+        return late;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WindowResult)) {
+            return false;
+        }
+        final WindowResult<?, ?> that = (WindowResult<?, ?>) o;
+        return start == that.start && end == that.end && late == that.late
+                && Objects.equals(key, that.key) && Objects.equals(result, that.result);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, start, end, result, late);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%d, %d): %s%s", key, start, end, result, late ? " (late)" : "");
+    }
+}
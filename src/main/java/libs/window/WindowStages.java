@@ -0,0 +1,336 @@
+package libs.window;
+
+import akka.stream.Attributes;
+import akka.stream.FlowShape;
+import akka.stream.Inlet;
+import akka.stream.Outlet;
+import akka.stream.stage.AbstractInHandler;
+import akka.stream.stage.AbstractOutHandler;
+import akka.stream.stage.GraphStageLogic;
+import akka.stream.stage.GraphStageWithMaterializedValue;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Les stages de {@link Windows} : la gestion du watermark et des émissions est commune, l'affectation des éléments
+ * aux fenêtres est propre aux fenêtres alignées (tumbling, sliding) et aux sessions.
+ */
+class WindowStages {
+
+    private WindowStages() {
+    }
+
+    private abstract static class WindowStage<T, K, A, R>
+            extends GraphStageWithMaterializedValue<FlowShape<T, WindowResult<K, R>>, Windows.Stats> {
+
+        public final Inlet<T> in = Inlet.create("Windows.in");
+        public final Outlet<WindowResult<K, R>> out = Outlet.create("Windows.out");
+
+        private final FlowShape<T, WindowResult<K, R>> shape = FlowShape.of(in, out);
+
+        final Windows windows;
+        final Function<T, K> key;
+        final ToLongFunction<T> eventTime;
+        final Aggregator<T, A, R> aggregator;
+
+        WindowStage(Windows windows, Function<T, K> key, ToLongFunction<T> eventTime, Aggregator<T, A, R> aggregator) {
+            this.windows = windows;
+            this.key = key;
+            this.eventTime = eventTime;
+            this.aggregator = aggregator;
+        }
+
+        @Override
+        public FlowShape<T, WindowResult<K, R>> shape() {
+            return shape;
+        }
+
+        abstract class WindowLogic extends GraphStageLogic {
+
+            final Windows.Stats stats;
+            long watermark = Long.MIN_VALUE;
+            private long maxEventTime = Long.MIN_VALUE;
+            // résultats à émettre pour l'élément en cours
+            private List<WindowResult<K, R>> results = new ArrayList<>();
+
+            WindowLogic(Windows.Stats stats) {
+                super(shape);
+                this.stats = stats;
+                setHandler(in, new AbstractInHandler() {
+                    @Override
+                    public void onPush() {
+                        final T element = grab(in);
+                        final long time = eventTime.applyAsLong(element);
+                        add(key.apply(element), element, time);
+                        if (time > maxEventTime) {
+                            maxEventTime = time;
+                            final long next = time - windows.watermarkDelay;
+                            if (next > watermark) {
+                                watermark = next;
+                                stats.watermark = next;
+                                advance();
+                            }
+                        }
+                        flush();
+                    }
+
+                    @Override
+                    public void onUpstreamFinish() {
+                        watermark = Long.MAX_VALUE;
+                        stats.watermark = Long.MAX_VALUE;
+                        advance();
+                        if (!results.isEmpty()) {
+                            emitMultiple(out, results.iterator());
+                        }
+                        complete(out);
+                    }
+                });
+                setHandler(out, new AbstractOutHandler() {
+                    @Override
+                    public void onPull() {
+                        pullIfNeeded();
+                    }
+                });
+            }
+
+            /**
+             * Ajoute l'élément aux fenêtres qui le contiennent.
+             */
+            abstract void add(K k, T element, long time);
+
+            /**
+             * Émet les fenêtres que le watermark a passées et oublie celles dont le retard accepté est écoulé.
+             */
+            abstract void advance();
+
+            void fire(K k, long start, long end, A accumulator, boolean late) {
+                results.add(new WindowResult<>(k, start, end, aggregator.result(accumulator), late));
+                if (late) {
+                    stats.lateUpdates++;
+                } else {
+                    stats.fired++;
+                }
+            }
+
+            private void flush() {
+                if (results.isEmpty()) {
+                    pullIfNeeded();
+                } else {
+                    final List<WindowResult<K, R>> emitted = results;
+                    results = new ArrayList<>();
+                    emitMultiple(out, emitted.iterator(), this::pullIfNeeded);
+                }
+            }
+
+            private void pullIfNeeded() {
+                if (!hasBeenPulled(in) && !isClosed(in)) {
+                    pull(in);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fenêtres alignées sur l'epoch : toutes les clés partagent les mêmes bornes, les accumulateurs sont rangés par
+     * début de fenêtre puis par clé.
+     */
+    static class Aligned<T, K, A, R> extends WindowStage<T, K, A, R> {
+
+        Aligned(Windows windows, Function<T, K> key, ToLongFunction<T> eventTime, Aggregator<T, A, R> aggregator) {
+            super(windows, key, eventTime, aggregator);
+        }
+
+        private class Pane {
+            final long start;
+            final Map<K, A> accumulators = new HashMap<>();
+            boolean fired = false;
+
+            Pane(long start) {
+                this.start = start;
+            }
+        }
+
+        @Override
+        public Tuple2<GraphStageLogic, Windows.Stats> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+            final Windows.Stats stats = new Windows.Stats();
+            final long size = windows.size;
+            final long slide = windows.slide;
+            final long lateness = windows.allowedLateness;
+            final GraphStageLogic logic = new WindowLogic(stats) {
+
+                private final TreeMap<Long, Pane> panes = new TreeMap<>();
+
+                @Override
+                void add(K k, T element, long time) {
+                    boolean accepted = false;
+                    for (long start = time - Math.floorMod(time, slide); start > time - size; start -= slide) {
+                        if (watermark != Long.MIN_VALUE && start + size + lateness <= watermark) {
+                            continue;
+                        }
+                        Pane pane = panes.get(start);
+                        if (pane == null) {
+                            pane = new Pane(start);
+                            // fenêtre déjà passée, ouverte par un élément en retard
+                            pane.fired = watermark != Long.MIN_VALUE && start + size <= watermark;
+                            panes.put(start, pane);
+                        }
+                        A accumulator = pane.accumulators.get(k);
+                        if (accumulator == null) {
+                            accumulator = aggregator.zero();
+                            stats.live++;
+                        }
+                        accumulator = aggregator.add(accumulator, element);
+                        pane.accumulators.put(k, accumulator);
+                        if (pane.fired) {
+                            fire(k, start, start + size, accumulator, true);
+                        }
+                        accepted = true;
+                    }
+                    if (!accepted) {
+                        stats.dropped++;
+                    }
+                }
+
+                @Override
+                void advance() {
+                    final Iterator<Pane> passed = panes.headMap(watermark - size, true).values().iterator();
+                    while (passed.hasNext()) {
+                        final Pane pane = passed.next();
+                        if (!pane.fired) {
+                            pane.accumulators.forEach((k, accumulator) -> fire(k, pane.start, pane.start + size, accumulator, false));
+                            pane.fired = true;
+                        }
+                        if (pane.start + size + lateness <= watermark) {
+                            stats.live -= pane.accumulators.size();
+                            passed.remove();
+                        }
+                    }
+                }
+            };
+            return new Tuple2<>(logic, stats);
+        }
+    }
+
+    /**
+     * Fenêtres de session : par clé, des sessions triées par début et sans recouvrement ; toutes clés confondues, deux
+     * index triés par fin servent à émettre et à oublier les sessions.
+     */
+    static class Sessions<T, K, A, R> extends WindowStage<T, K, A, R> {
+
+        Sessions(Windows windows, Function<T, K> key, ToLongFunction<T> eventTime, Aggregator<T, A, R> aggregator) {
+            super(windows, key, eventTime, aggregator);
+        }
+
+        private class Session {
+            final long id;
+            final K key;
+            long start;
+            long end;
+            A accumulator;
+            boolean emitted = false;
+
+            Session(long id, K key, long start, long end, A accumulator) {
+                this.id = id;
+                this.key = key;
+                this.start = start;
+                this.end = end;
+                this.accumulator = accumulator;
+            }
+        }
+
+        @Override
+        public Tuple2<GraphStageLogic, Windows.Stats> createLogicAndMaterializedValue(Attributes inheritedAttributes) {
+            final Windows.Stats stats = new Windows.Stats();
+            final long gap = windows.size;
+            final long lateness = windows.allowedLateness;
+            final Comparator<Session> byEnd = Comparator.<Session>comparingLong(s -> s.end).thenComparingLong(s -> s.id);
+            final GraphStageLogic logic = new WindowLogic(stats) {
+
+                private final Map<K, TreeMap<Long, Session>> sessions = new HashMap<>();
+                private final TreeSet<Session> toFire = new TreeSet<>(byEnd);
+                private final TreeSet<Session> toForget = new TreeSet<>(byEnd);
+                private long nextId = 0L;
+
+                @Override
+                void add(K k, T element, long time) {
+                    final long start = time;
+                    final long end = time + gap;
+                    final TreeMap<Long, Session> keySessions = sessions.computeIfAbsent(k, __ -> new TreeMap<>());
+                    // les sessions de la clé qui recouvrent [start, end), de la plus récente à la plus ancienne
+                    Session merged = null;
+                    final Iterator<Session> overlapping = keySessions.headMap(end, false).descendingMap().values().iterator();
+                    while (overlapping.hasNext()) {
+                        final Session session = overlapping.next();
+                        if (session.end <= start) {
+                            break;
+                        }
+                        overlapping.remove();
+                        toFire.remove(session);
+                        toForget.remove(session);
+                        if (merged == null) {
+                            merged = session;
+                        } else {
+                            merged.accumulator = aggregator.merge(session.accumulator, merged.accumulator);
+                            merged.start = session.start;
+                            merged.emitted |= session.emitted;
+                            stats.live--;
+                        }
+                    }
+                    if (merged == null) {
+                        if (watermark != Long.MIN_VALUE && end + lateness <= watermark) {
+                            stats.dropped++;
+                            if (keySessions.isEmpty()) {
+                                sessions.remove(k);
+                            }
+                            return;
+                        }
+                        merged = new Session(nextId++, k, start, end, aggregator.zero());
+                        stats.live++;
+                    } else {
+                        merged.start = Math.min(merged.start, start);
+                        merged.end = Math.max(merged.end, end);
+                    }
+                    merged.accumulator = aggregator.add(merged.accumulator, element);
+                    keySessions.put(merged.start, merged);
+                    toForget.add(merged);
+                    if (watermark != Long.MIN_VALUE && merged.end <= watermark) {
+                        // session déjà passée : mise à jour immédiate
+                        fire(k, merged.start, merged.end, merged.accumulator, true);
+                        merged.emitted = true;
+                    } else {
+                        toFire.add(merged);
+                    }
+                }
+
+                @Override
+                void advance() {
+                    while (!toFire.isEmpty() && toFire.first().end <= watermark) {
+                        final Session session = toFire.pollFirst();
+                        fire(session.key, session.start, session.end, session.accumulator, session.emitted);
+                        session.emitted = true;
+                    }
+                    while (!toForget.isEmpty() && toForget.first().end + lateness <= watermark) {
+                        final Session session = toForget.pollFirst();
+                        final TreeMap<Long, Session> keySessions = sessions.get(session.key);
+                        keySessions.remove(session.start);
+                        if (keySessions.isEmpty()) {
+                            sessions.remove(session.key);
+                        }
+                        stats.live--;
+                    }
+                }
+            };
+            return new Tuple2<>(logic, stats);
+        }
+    }
+}
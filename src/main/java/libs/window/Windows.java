@@ -0,0 +1,157 @@
+package libs.window;
+
+import akka.stream.javadsl.Flow;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Agrégation par fenêtres en temps de l'événement, par clé, pour des éléments qui arrivent dans le désordre.
+ * <pre>
+ *   transactions.viaMat(Windows.sliding(Duration.ofMinutes(10), Duration.ofMinutes(1))
+ *           .withWatermarkDelay(Duration.ofSeconds(5))
+ *           .withAllowedLateness(Duration.ofMinutes(1))
+ *           .aggregate(Transaction::getSender, Transaction::getTime, Aggregator.sum(Transaction::getAmount)), Keep.right())
+ * </pre>
+ * Trois sortes de fenêtres :
+ * <ul>
+ * <li>{@link #tumbling} : des fenêtres de même taille, alignées sur l'epoch, qui se suivent sans se recouvrir</li>
+ * <li>{@link #sliding} : des fenêtres de même taille qui commencent tous les <code>slide</code>, un élément est
+ * compté dans chacune de celles qui le contiennent</li>
+ * <li>{@link #session} : par clé, une fenêtre par rafale d'éléments séparés de moins de <code>gap</code> ; deux
+ * sessions qu'un élément relie sont fusionnées</li>
+ * </ul>
+ * Le watermark est le plus grand temps d'événement vu, moins <code>watermarkDelay</code> : on considère qu'aucun
+ * élément plus ancien n'arrivera. Une fenêtre émet son résultat quand le watermark passe sa fin, puis est gardée
+ * pendant <code>allowedLateness</code> : un élément en retard dans ce délai met son agrégat à jour et le fait
+ * réémettre ({@link WindowResult#isLate()}). Au-delà, l'élément est perdu et compté dans {@link Stats#getDropped()}.
+ * Le watermark n'avance qu'avec les éléments ; à la fin du stream, toutes les fenêtres émettent leur résultat.
+ * <p>
+ * Chaque fenêtre ne garde que son accumulateur ({@link Aggregator}), jamais ses éléments.
+ */
+public class Windows {
+
+    enum Kind {TUMBLING, SLIDING, SESSION}
+
+    final Kind kind;
+    final long size;
+    final long slide;
+    final long watermarkDelay;
+    final long allowedLateness;
+
+    private Windows(Kind kind, long size, long slide, long watermarkDelay, long allowedLateness) {
+        this.kind = kind;
+        this.size = size;
+        this.slide = slide;
+        this.watermarkDelay = watermarkDelay;
+        this.allowedLateness = allowedLateness;
+    }
+
+    public static Windows tumbling(Duration size) {
+        return new Windows(Kind.TUMBLING, positive("size", size), positive("size", size), 0L, 0L);
+    }
+
+    /**
+     * @param slide intervalle entre le début de deux fenêtres, qui doit diviser <code>size</code>
+     */
+    public static Windows sliding(Duration size, Duration slide) {
+        if (positive("size", size) % positive("slide", slide) != 0) {
+            throw new IllegalArgumentException("The slide must divide the window size: " + size + ", " + slide);
+        }
+        return new Windows(Kind.SLIDING, size.toMillis(), slide.toMillis(), 0L, 0L);
+    }
+
+    /**
+     * @param gap inactivité, en temps de l'événement, qui termine la session d'une clé
+     */
+    public static Windows session(Duration gap) {
+        return new Windows(Kind.SESSION, positive("gap", gap), 0L, 0L, 0L);
+    }
+
+    /**
+     * Retard maximum attendu d'un élément sur le plus récent ; les fenêtres attendent d'autant avant d'émettre.
+     */
+    public Windows withWatermarkDelay(Duration delay) {
+        return new Windows(kind, size, slide, delay.toMillis(), allowedLateness);
+    }
+
+    /**
+     * Temps pendant lequel une fenêtre émise accepte encore les éléments en retard.
+     */
+    public Windows withAllowedLateness(Duration lateness) {
+        return new Windows(kind, size, slide, watermarkDelay, lateness.toMillis());
+    }
+
+    /**
+     * Le flow d'agrégation, avec ses compteurs en valeur matérialisée.
+     *
+     * @param key       la clé d'un élément
+     * @param eventTime le temps de l'événement d'un élément, en ms
+     */
+    public <T, K, A, R> Flow<T, WindowResult<K, R>, Stats> aggregate(Function<T, K> key, ToLongFunction<T> eventTime,
+                                                                      Aggregator<T, A, R> aggregator) {
+        return Flow.fromGraph(kind == Kind.SESSION
+                ? new WindowStages.Sessions<>(this, key, eventTime, aggregator)
+                : new WindowStages.Aligned<>(this, key, eventTime, aggregator));
+    }
+
+    private static long positive(String name, Duration duration) {
+        if (duration.toMillis() <= 0) {
+            throw new IllegalArgumentException("The " + name + " must be at least 1ms: " + duration);
+        }
+        return duration.toMillis();
+    }
+
+    /**
+     * Les compteurs d'une agrégation, lisibles pendant que le stream tourne.
+     */
+    public static class Stats {
+        volatile long watermark = Long.MIN_VALUE;
+        volatile long live = 0L;
+        volatile long fired = 0L;
+        volatile long lateUpdates = 0L;
+        volatile long dropped = 0L;
+
+        /**
+         * Le watermark courant, en ms ; <code>Long.MIN_VALUE</code> avant le premier élément.
+         */
+        public long getWatermark() {
+            return watermark;
+        }
+
+        /**
+         * Nombre d'accumulateurs gardés (une fenêtre pour une clé).
+         */
+        public long getLive() {
+            return live;
+        }
+
+        /**
+         * Nombre de résultats émis à la fin d'une fenêtre.
+         */
+        public long getFired() {
+            return fired;
+        }
+
+        /**
+         * Nombre de résultats réémis après un élément en retard.
+         */
+        public long getLateUpdates() {
+            return lateUpdates;
+        }
+
+        /**
+         * Nombre d'éléments arrivés après le retard accepté.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Windows: watermark %d, %d live, %d fired, %d late updates, %d dropped",
+                    watermark, live, fired, lateUpdates, dropped);
+        }
+    }
+}
@@ -8,8 +8,15 @@ import akka.stream.Materializer;
 import akka.stream.javadsl.Flow;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
+import akka.stream.javadsl.Keep;
 import akka.testkit.javadsl.TestKit;
+import akka.util.ByteString;
 import io.vavr.collection.List;
+import io.vavr.control.Try;
+import libs.latency.LatencyHistogram;
+import libs.latency.StageLatency;
+import libs.latency.Timestamped;
+import libs.metrics.FlowMetrics;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -19,6 +26,10 @@ import org.junit.Test;
 
 import java.time.Duration;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.vavr.API.List;
 import static io.vavr.API.println;
@@ -26,6 +37,7 @@ import static java.lang.Thread.currentThread;
 import static java.time.temporal.ChronoUnit.MILLIS;
 import static libs.Await.await;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class FlowsTest {
 
@@ -125,6 +137,319 @@ public class FlowsTest {
                         });
     }
 
+    @Test
+    public void circuitBreakerOpensThenClosesAfterProbes() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 10, 4, 0.5,
+                Duration.ofSeconds(1), 1.0, Duration.ofMillis(200), 2);
+        final AtomicInteger calls = new AtomicInteger();
+
+        // the 4 first calls fail, the service is back afterwards
+        final java.util.List<Integer> res = Source.from(List.range(0, 20))
+                .via(Flows.circuitBreaker(breaker, 1, 3,
+                        i -> CompletableFuture.completedFuture(calls.incrementAndGet() <= 4 ? -1 : i),
+                        i -> i < 0))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(res).hasSize(20);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.timesEntered(CircuitBreaker.State.OPEN)).isEqualTo(1);
+        assertThat(breaker.timesEntered(CircuitBreaker.State.HALF_OPEN)).isEqualTo(1);
+        assertThat(breaker.timeIn(CircuitBreaker.State.OPEN)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    public void circuitBreakerRetriesFailedCallsInsteadOfFailing() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 4, 2, 0.5,
+                Duration.ofSeconds(1), 1.0, Duration.ofMillis(50), 1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final java.util.List<Integer> res = Source.from(List.range(0, 10))
+                .via(Flows.circuitBreaker(breaker, 2, 3,
+                        i -> {
+                            final CompletableFuture<Integer> future = new CompletableFuture<>();
+                            if (calls.incrementAndGet() % 3 == 0) {
+                                future.completeExceptionally(new IllegalStateException("upstream blip"));
+                            } else {
+                                future.complete(i);
+                            }
+                            return future;
+                        },
+                        i -> false))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(res).isEqualTo(List.range(0, 10).toJavaList());
+    }
+
+    @Test
+    public void circuitBreakerKeepsTheOrderOfTheElements() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 1.0,
+                Duration.ofSeconds(1), 1.0, Duration.ofMillis(50), 1);
+
+        final java.util.List<Integer> res = Source.from(List.range(0, 8))
+                .via(Flows.circuitBreaker(breaker, 4, 3,
+                        i -> CompletableFuture.supplyAsync(() -> {
+                            await(10 * (8 - i), MILLIS);
+                            return i;
+                        }),
+                        i -> false))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(res).isEqualTo(List.range(0, 8).toJavaList());
+    }
+
+    @Test
+    public void circuitBreakerFailsWhenAnElementExhaustsItsAttempts() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 4, 2, 0.5,
+                Duration.ofSeconds(1), 1.0, Duration.ofMillis(20), 1);
+        final AtomicInteger poisonCalls = new AtomicInteger();
+
+        final CompletableFuture<java.util.List<Integer>> res = Source.from(List.range(0, 10))
+                .via(Flows.circuitBreaker(breaker, 2, 3,
+                        i -> {
+                            if (i == 5) {
+                                poisonCalls.incrementAndGet();
+                                final CompletableFuture<Integer> future = new CompletableFuture<>();
+                                future.completeExceptionally(new IllegalStateException("permanent failure"));
+                                return future;
+                            }
+                            return CompletableFuture.completedFuture(i);
+                        },
+                        i -> false))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture();
+
+        assertThatThrownBy(() -> res.get(5, TimeUnit.SECONDS))
+                .hasMessageContaining("Call failed 3 times for 5")
+                .hasRootCauseInstanceOf(IllegalStateException.class);
+        assertThat(poisonCalls.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void circuitBreakerOpensOnSlowCalls() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 1.0,
+                Duration.ofMillis(20), 0.5, Duration.ofMillis(50), 1);
+
+        Source.from(List.range(0, 8))
+                .via(Flows.circuitBreaker(breaker, 4, 3,
+                        i -> CompletableFuture.supplyAsync(() -> {
+                            await(i < 4 ? 50 : 0, MILLIS);
+                            return i;
+                        }),
+                        i -> false))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(breaker.timesEntered(CircuitBreaker.State.OPEN)).isEqualTo(1);
+    }
+
+    @Test
+    public void timedRecordsProcessingAndEndToEndLatencies() {
+        final StageLatency slow = new StageLatency("slow");
+        final LatencyHistogram endToEnd = new LatencyHistogram("endToEnd");
+
+        final java.util.List<Integer> res = Source.from(List.range(0, 20))
+                .via(Flows.stamp())
+                .via(Flows.timed(slow, Flow.<Timestamped<Integer>>create()
+                        .mapAsync(4, t -> CompletableFuture.supplyAsync(() -> {
+                            await(20, MILLIS);
+                            return t.map(i -> i * 2);
+                        }))))
+                .via(Flows.endToEnd(endToEnd))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(res).isEqualTo(List.range(0, 20).map(i -> i * 2).toJavaList());
+        assertThat(slow.getProcessing().snapshot().getCount()).isEqualTo(20);
+        assertThat(slow.getProcessing().snapshot().getMin()).isGreaterThanOrEqualTo(19_000_000);
+        assertThat(slow.getWait().snapshot().getCount()).isBetween(1L, 20L);
+        assertThat(endToEnd.snapshot().getCount()).isEqualTo(20);
+        assertThat(endToEnd.snapshot().getMin()).isGreaterThanOrEqualTo(slow.getProcessing().snapshot().getMin() / 2);
+    }
+
+    @Test
+    public void timedFlowsCanBeMaterializedSeveralTimes() throws InterruptedException {
+        final StageLatency latency = new StageLatency("reused");
+        final Flow<Integer, Integer, NotUsed> timed = Flows.timed(latency, Flow.<Integer>create()
+                .mapAsync(4, i -> CompletableFuture.supplyAsync(() -> {
+                    await(50, MILLIS);
+                    return i;
+                })));
+
+        // cancelled with elements still inside the flow
+        Source.from(List.range(0, 100)).via(timed).take(1).runWith(Sink.ignore(), mat).toCompletableFuture().join();
+        Thread.sleep(300);
+        Source.from(List.range(0, 8)).via(timed).runWith(Sink.ignore(), mat).toCompletableFuture().join();
+
+        // the second run does not pick up the start times left over by the first one
+        assertThat(latency.getProcessing().snapshot().getCount()).isEqualTo(9);
+        assertThat(latency.getProcessing().snapshot().getMax()).isLessThan(250_000_000);
+    }
+
+    @Test
+    public void timedCallsKeepTheirDurationWhenResponsesAreReordered() {
+        final StageLatency calls = new StageLatency("calls");
+        final java.util.function.Function<Integer, CompletionStage<Integer>> call = calls.timed(i ->
+                CompletableFuture.supplyAsync(() -> {
+                    await(i == 0 ? 200 : 0, MILLIS);
+                    return i;
+                }));
+
+        Source.from(List.range(0, 10))
+                .via(calls.timedWait(Flow.<Integer>create().mapAsyncUnordered(10, call::apply)))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        // only the first call was slow, even though its response came out last
+        assertThat(calls.getProcessing().snapshot().getCount()).isEqualTo(10);
+        assertThat(calls.getProcessing().snapshot().getMax()).isGreaterThanOrEqualTo(190_000_000);
+        assertThat(calls.getProcessing().snapshot().valueAtPercentile(80)).isLessThan(100_000_000);
+    }
+
+    @Test
+    public void instrumentedMeasuresASlowUpstream() {
+        final FlowMetrics metrics = Source.from(List.range(0, 10))
+                .throttle(1, Duration.ofMillis(20))
+                .viaMat(Flows.instrumented(Flow.<Integer>create().map(i -> i + 1)), Keep.right())
+                .to(Sink.ignore())
+                .run(mat);
+
+        metrics.completion().toCompletableFuture().join();
+        assertThat(metrics.getState()).isEqualTo(FlowMetrics.State.COMPLETED);
+        assertThat(metrics.getCount()).isEqualTo(10);
+        assertThat(metrics.getUpstreamWait()).isGreaterThan(Duration.ofMillis(100));
+        assertThat(metrics.getUpstreamWait()).isGreaterThan(metrics.getDownstreamBlocked());
+    }
+
+    @Test
+    public void instrumentedIsReadableWhileRunning() {
+        final FlowMetrics metrics = Source.repeat(ByteString.fromString("abcd"))
+                .take(20)
+                .viaMat(Flows.instrumented(Flow.<ByteString>create(), ByteString::size), Keep.right())
+                .mapAsync(1, b -> CompletableFuture.supplyAsync(() -> {
+                    await(10, MILLIS);
+                    return b;
+                }))
+                .to(Sink.ignore())
+                .run(mat);
+
+        await(100, MILLIS);
+        assertThat(metrics.getState()).isEqualTo(FlowMetrics.State.RUNNING);
+        assertThat(metrics.getCount()).isBetween(1L, 19L);
+
+        metrics.completion().toCompletableFuture().join();
+        assertThat(metrics.getCount()).isEqualTo(20);
+        assertThat(metrics.getBytes()).isEqualTo(80);
+        assertThat(metrics.getRate()).isGreaterThan(0);
+        assertThat(metrics.getDownstreamBlocked()).isGreaterThan(metrics.getUpstreamWait());
+    }
+
+    @Test
+    public void instrumentedReportsFailures() {
+        final FlowMetrics metrics = Source.from(List.range(0, 10))
+                .map(i -> {
+                    if (i == 3) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return i;
+                })
+                .viaMat(Flows.instrumented(Flow.<Integer>create()), Keep.right())
+                .to(Sink.ignore())
+                .run(mat);
+
+        metrics.completion().toCompletableFuture().join();
+        assertThat(metrics.getState()).isEqualTo(FlowMetrics.State.FAILED);
+        assertThat(metrics.getCount()).isEqualTo(3);
+        assertThat(metrics.getFailure().map(Throwable::getMessage)).containsExactly("boom");
+        assertThat(metrics.toString()).contains("FAILED", "boom");
+    }
+
+    @Test
+    public void chunkedKeepsTheOrderOfAFlowThatChangesTheNumberOfElements() {
+        final Flow<Integer, String, NotUsed> flow = Flow.<Integer>create()
+                .filter(i -> i % 3 != 0)
+                .mapConcat(i -> List(i + "a", i + "b"));
+
+        final java.util.List<String> chunked = Source.range(1, 10_000)
+                .via(Flows.chunked(64, Duration.ofMillis(5), flow))
+                .runWith(Sink.seq(), mat).toCompletableFuture().join();
+
+        assertThat(chunked).isEqualTo(Source.range(1, 10_000).via(flow).runWith(Sink.seq(), mat).toCompletableFuture().join());
+    }
+
+    @Test
+    public void chunkedSendsAnIncompleteChunkAfterTheDelay() {
+        final java.util.List<Integer> first = Source.range(1, 3)
+                .concat(Source.<Integer>maybe())
+                .via(Flows.chunked(100, Duration.ofMillis(50), Flow.<Integer>create().map(i -> i * 10)))
+                .take(3)
+                .completionTimeout(Duration.ofSeconds(2))
+                .runWith(Sink.seq(), mat).toCompletableFuture().join();
+
+        assertThat(first).containsExactly(10, 20, 30);
+    }
+
+    @Test
+    public void chunkedStopsReadingWhenDownstreamIsSlow() {
+        final AtomicInteger read = new AtomicInteger();
+        Source.repeat(1)
+                .map(i -> read.incrementAndGet())
+                .via(Flows.chunked(10, Duration.ofMillis(5), Flow.<Integer>create()))
+                .throttle(1, Duration.ofMillis(10))
+                .take(20)
+                .runWith(Sink.ignore(), mat).toCompletableFuture().join();
+
+        // the chunk being built, the full one waiting at each stage, and the buffers of the async boundary
+        assertThat(read.get()).isLessThan(20 + 10 * 40);
+    }
+
+    @Test
+    public void batchMapAsyncKeepsTheOrderAndFailsElementsOneByOne() {
+        final java.util.List<Integer> batchSizes = new java.util.concurrent.CopyOnWriteArrayList<>();
+        // later batches answer first; odd elements fail
+        final java.util.List<Try<String>> results = Source.range(0, 99)
+                .via(Flows.batchMapAsync(10, Duration.ofMillis(50), 4, (List<Integer> batch) -> {
+                    batchSizes.add(batch.size());
+                    return CompletableFuture.supplyAsync(() -> {
+                        await(40 - batch.head() / 4, MILLIS);
+                        return batch.map(i -> i % 2 == 0 ? Try.success("ok " + i) : Try.<String>failure(new IllegalArgumentException("odd " + i)));
+                    });
+                }))
+                .runWith(Sink.seq(), mat).toCompletableFuture().join();
+
+        assertThat(batchSizes).hasSize(10).allMatch(size -> size == 10);
+        assertThat(List.ofAll(results).map(r -> r.recover(Throwable::getMessage).get()))
+                .isEqualTo(List.range(0, 100).map(i -> (i % 2 == 0 ? "ok " : "odd ") + i));
+    }
+
+    @Test
+    public void batchMapAsyncFailsTheElementsOfAFailedCallOnly() {
+        final java.util.List<Try<Integer>> results = Source.range(1, 6)
+                .via(Flows.batchMapAsync(2, Duration.ofMillis(50), 1, (List<Integer> batch) -> batch.contains(3)
+                        ? CompletableFuture.<List<Try<Integer>>>failedFuture(new IllegalStateException("backend down"))
+                        : CompletableFuture.completedFuture(batch.map(i -> Try.success(i * 10)))))
+                .runWith(Sink.seq(), mat).toCompletableFuture().join();
+
+        assertThat(List.ofAll(results).map(r -> r.map(String::valueOf).recover(Throwable::getMessage).get()))
+                .containsExactly("10", "20", "backend down", "backend down", "50", "60");
+    }
+
+    @Test
+    public void batchMapAsyncScattersResultsByKeyAndSendsIncompleteBatchesAfterTheDelay() {
+        final java.util.List<Try<String>> results = Source.from(List("a", "b", "missing"))
+                .concat(Source.maybe())
+                .via(Flows.batchMapAsync(100, Duration.ofMillis(50), 1, (String s) -> s,
+                        batch -> CompletableFuture.completedFuture(batch.filter(s -> !s.equals("missing")).toMap(s -> s, String::toUpperCase))))
+                .take(3)
+                .completionTimeout(Duration.ofSeconds(2))
+                .runWith(Sink.seq(), mat).toCompletableFuture().join();
+
+        assertThat(List.ofAll(results).take(2).map(Try::get)).containsExactly("A", "B");
+        assertThat(results.get(2).getCause()).isInstanceOf(java.util.NoSuchElementException.class).hasMessageContaining("missing");
+    }
+
     @AfterClass
     public static void afterAll() {
         TestKit.shutdownActorSystem(system);
@@ -0,0 +1,161 @@
+package libs.buffer;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Attributes;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.collection.List;
+import libs.Flows;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveBufferTest {
+
+    private static final ActorSystem system = ActorSystem.create("AdaptiveBufferTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    // bursts of 100 elements every 100 ms
+    private static Source<Integer, NotUsed> bursts(int count) {
+        return Source.from(List.range(0, count))
+                .grouped(100)
+                .throttle(1, Duration.ofMillis(100))
+                .mapConcat(burst -> burst);
+    }
+
+    private static <T> Flow<T, T, NotUsed> slow(long micros) {
+        return Flow.<T>create().map(t -> {
+            final long until = System.nanoTime() + micros * 1000;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            return t;
+        });
+    }
+
+    @Test
+    public void growsWhenTheTrafficIsBursty() {
+        final BufferBudget budget = BufferBudget.unlimited();
+        final AtomicInteger largest = new AtomicInteger();
+
+        final java.util.List<Integer> res = bursts(2000)
+                .via(AdaptiveBuffer.<Integer>create("burst")
+                        .withAttributes(AdaptiveBuffer.enabled(1, 256, Duration.ofMillis(200), budget)))
+                .async()
+                .via(slow(300))
+                .map(i -> {
+                    largest.accumulateAndGet(budget.getCapacities().get("burst").getOrElse(0), Math::max);
+                    return i;
+                })
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(res).containsExactlyElementsOf(List.range(0, 2000));
+        assertThat(largest.get()).isGreaterThan(16);
+        assertThat(budget.getReserved()).isZero();
+    }
+
+    @Test
+    public void staysSmallWhenTheTrafficIsSteady() {
+        final BufferBudget budget = BufferBudget.unlimited();
+        final AtomicInteger largest = new AtomicInteger();
+
+        Source.from(List.range(0, 300))
+                .via(AdaptiveBuffer.<Integer>create("steady")
+                        .withAttributes(AdaptiveBuffer.enabled(4, 256, Duration.ofMillis(20), budget)))
+                .async()
+                .via(slow(500))
+                .map(i -> {
+                    largest.accumulateAndGet(budget.getCapacities().get("steady").getOrElse(0), Math::max);
+                    return i;
+                })
+                .runWith(Sink.ignore(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(largest.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void shardBuffersShareTheBudget() {
+        final BufferBudget budget = BufferBudget.ofElements(40);
+        final AtomicLong reserved = new AtomicLong();
+
+        final java.util.List<Integer> res = bursts(1000)
+                .via(Flows.shard(4, String::valueOf, AdaptiveBufferTest.<Integer>slow(300))
+                        .withAttributes(AdaptiveBuffer.enabled(1, 1024, Duration.ofMillis(200), budget)))
+                .map(i -> {
+                    reserved.accumulateAndGet(budget.getReserved(), Math::max);
+                    return i;
+                })
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(res).containsExactlyInAnyOrderElementsOf(List.range(0, 1000));
+        assertThat(reserved.get()).isBetween(5L, 40L);
+    }
+
+    @Test
+    public void buffersStillGetTheirMinimumWhenTheBudgetIsUsedUp() {
+        final BufferBudget budget = BufferBudget.ofElements(4);
+        final Attributes enabled = AdaptiveBuffer.enabled(4, 64, Duration.ofMillis(50), budget);
+
+        // holds the whole budget until it is completed
+        final CompletableFuture<Optional<Integer>> first = Source.<Integer>maybe()
+                .via(AdaptiveBuffer.<Integer>create("first").withAttributes(enabled))
+                .to(Sink.ignore())
+                .run(mat);
+
+        final java.util.List<Integer> res = Source.from(List.range(0, 100))
+                .via(AdaptiveBuffer.<Integer>create("second").withAttributes(enabled))
+                .map(i -> {
+                    assertThat(budget.getCapacities().get("second").getOrElse(0)).isEqualTo(4);
+                    return i;
+                })
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertThat(res).containsExactlyElementsOf(List.range(0, 100));
+        first.complete(Optional.empty());
+    }
+
+    @Test
+    public void buffersWithTheSameNameAreTrackedSeparately() throws InterruptedException {
+        final BufferBudget budget = BufferBudget.ofElements(100);
+        final Flow<Integer, Integer, NotUsed> sharded = Flows.shard(2, String::valueOf, Flow.<Integer>create())
+                .withAttributes(AdaptiveBuffer.enabled(3, 64, Duration.ofMillis(50), budget));
+
+        final CompletableFuture<Optional<Integer>> first = Source.<Integer>maybe().via(sharded).to(Sink.ignore()).run(mat);
+        final CompletableFuture<Optional<Integer>> second = Source.<Integer>maybe().via(sharded).to(Sink.ignore()).run(mat);
+        for (int i = 0; i < 100 && budget.getCapacities().size() < 4; i++) {
+            Thread.sleep(10);
+        }
+
+        assertThat(budget.getCapacities().keySet()).hasSize(4).contains("shard-0", "shard-1");
+        assertThat(budget.getReserved()).isEqualTo(12);
+
+        first.complete(Optional.empty());
+        second.complete(Optional.empty());
+        for (int i = 0; i < 100 && budget.getReserved() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(budget.getReserved()).isZero();
+        assertThat(budget.getCapacities()).isEmpty();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,123 @@
+package libs.codec;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.BidiFlow;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import akka.util.ByteString;
+import io.vavr.collection.List;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.util.concurrent.CompletionException;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class CodecsTest {
+
+    private static final ActorSystem system = ActorSystem.create("CodecsTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    private static final List<ByteString> MESSAGES = List.range(0, 200)
+            .map(i -> ByteString.fromString("{\"id\":" + i + ",\"name\":\"restaurant " + i + "\",\"postcode\":\"750" + (i % 20) + "\"}"))
+            .append(ByteString.empty())
+            .append(ByteString.fromArray(new byte[100_000]));
+
+    private static java.util.List<ByteString> run(Source<ByteString, ?> source) {
+        return source.runWith(Sink.seq(), mat).toCompletableFuture().join();
+    }
+
+    private static BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> stack() {
+        return Codecs.compression(Deflater.BEST_SPEED, 1 << 20)
+                .atop(Codecs.encryption(Codecs.aesKey(new byte[32])))
+                .atop(Codecs.framing(1 << 20));
+    }
+
+    // the transport splits and merges the frames arbitrarily
+    private static Flow<ByteString, ByteString, NotUsed> rechunk(int size) {
+        return Flow.<ByteString>create()
+                .mapConcat(bytes -> List.rangeBy(0, bytes.size(), size).map(i -> bytes.slice(i, i + size)).toJavaList());
+    }
+
+    @Test
+    public void everyLayerAndTheStackGiveBackTheMessages() {
+        final List<BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed>> layers = List.of(
+                Codecs.framing(1 << 20), Codecs.compression(Deflater.DEFAULT_COMPRESSION, 1 << 20),
+                Codecs.encryption(Codecs.generateAesKey()), stack());
+
+        for (BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> layer : layers) {
+            assertThat(run(Source.from(MESSAGES).via(layer.join(Flow.create())))).containsExactlyElementsOf(MESSAGES);
+        }
+    }
+
+    @Test
+    public void framesAreFoundInAnArbitrarilySplitByteStream() {
+        final java.util.List<ByteString> messages = run(Source.from(MESSAGES.take(50))
+                .via(stack().join(Flow.<ByteString>create().via(rechunk(7)))));
+
+        assertThat(messages).containsExactlyElementsOf(MESSAGES.take(50));
+    }
+
+    @Test
+    public void compressionUsesTheHistoryOfTheStream() {
+        final ByteString message = MESSAGES.get(10);
+
+        final List<Integer> sizes = List.ofAll(run(Source.from(List.fill(10, () -> message))
+                .via(Flow.fromGraph(new CodecStage("Deflate", () -> new DeflateCodecs.Compress(Deflater.BEST_SPEED))))))
+                .map(ByteString::size);
+
+        // the first message is compressed on its own, the next ones refer to it
+        assertThat(sizes.head()).isGreaterThan(sizes.last() * 3);
+    }
+
+    @Test
+    public void anAlteredMessageFailsTheDecryption() {
+        final Flow<ByteString, ByteString, NotUsed> tampering = Flow.<ByteString>create()
+                .map(bytes -> bytes.take(20).concat(ByteString.fromArray(new byte[]{(byte) ~bytes.apply(20)})).concat(bytes.drop(21)));
+
+        final Throwable failure = catchThrowable(() -> run(Source.from(MESSAGES.take(3))
+                .via(Codecs.encryption(Codecs.generateAesKey()).join(tampering))));
+
+        assertThat(failure).isInstanceOf(CompletionException.class).hasCauseInstanceOf(AEADBadTagException.class);
+    }
+
+    @Test
+    public void anOversizedMessageFailsTheDecompression() {
+        final Throwable failure = catchThrowable(() -> run(Source.single(ByteString.fromArray(new byte[10_001]))
+                .via(Codecs.compression(Deflater.BEST_SPEED, 10_000).join(Flow.create()))));
+
+        assertThat(failure).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(run(Source.single(ByteString.fromArray(new byte[10_000]))
+                .via(Codecs.compression(Deflater.BEST_SPEED, 10_000).join(Flow.create())))).hasSize(1);
+    }
+
+    @Test
+    public void anOversizedFrameFailsTheDecoding() {
+        final Throwable failure = catchThrowable(() -> run(Source.single(ByteString.fromArray(new byte[]{0, 1, 0, 0, 42}))
+                .via(Flow.fromGraph(new FrameDecoderStage(1000)))));
+
+        assertThat(failure).hasCauseInstanceOf(IllegalStateException.class).hasMessageContaining("65536 bytes");
+    }
+
+    @Test
+    public void aStreamCutAfterAHeaderFailsTheDecoding() {
+        // a complete frame, then the header of a 10 bytes frame and nothing else
+        final Throwable failure = catchThrowable(() -> run(Source.from(List.of(
+                ByteString.fromArray(new byte[]{0, 0, 0, 1, 42}), ByteString.fromArray(new byte[]{0, 0, 0, 10})))
+                .via(Flow.fromGraph(new FrameDecoderStage(1000)))));
+
+        assertThat(failure).hasCauseInstanceOf(IllegalStateException.class).hasMessageContaining("inside a frame");
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,115 @@
+package libs.crawler;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.testkit.javadsl.TestKit;
+import akka.util.ByteString;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import libs.Await;
+import libs.drain.DrainSwitch;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CrawlerTest {
+
+    private static final ActorSystem system = ActorSystem.create("CrawlerTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    private static CrawlerSettings settings(Path output, String overrides) {
+        return CrawlerSettings.create(ConfigFactory.parseString(overrides)
+                .withFallback(ConfigFactory.parseString("crawler.write.path = \"" + output.toString().replace("\\", "/") + "\""))
+                .withFallback(ConfigFactory.load()));
+    }
+
+    private static Crawler<Integer, Integer, String> crawler(CrawlerSettings settings) {
+        return Crawler.create(settings,
+                new Crawler.Loader<Integer>() {
+                    @Override
+                    public java.util.List<Integer> load() {
+                        return List.range(0, 100).toJavaList();
+                    }
+
+                    @Override
+                    public Set<Integer> alreadyDone() {
+                        return List.range(0, 10).toJavaSet();
+                    }
+                },
+                key -> CompletableFuture.completedFuture(key % 7 == 0 ? -1 : key * 2),
+                (key, response) -> response < 0 ? Option.none() : Option.some(key + ":" + response),
+                value -> ByteString.fromString(value + "\n"));
+    }
+
+    @Test
+    public void crawlsTheKeysNotDoneYet() throws IOException {
+        final Path output = Files.createTempFile("crawl", ".json");
+
+        final Crawler.Stats stats = crawler(settings(output, "crawler.write.batch-size = 10, crawler.write.fsync = true"))
+                .run(mat).toCompletableFuture().join();
+
+        final java.util.List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(stats.getLoaded()).isEqualTo(90);
+        assertThat(stats.getFetched()).isEqualTo(90);
+        // 14, 21, ..., 98 are dropped by the parser
+        assertThat(stats.getWritten()).isEqualTo(77);
+        assertThat(lines).hasSize(77).contains("10:20", "99:198").doesNotContain("14:28");
+    }
+
+    @Test
+    public void tuningComesFromTheConfiguration() throws IOException {
+        final Path output = Files.createTempFile("crawl", ".json");
+
+        final Crawler.Stats stats = crawler(settings(output, String.join("\n",
+                "crawler.take = 20",
+                "crawler.fetch.parallelism = 8",
+                "crawler.fetch.circuit-breaker.enabled = false",
+                "crawler.parse.parallelism = 4",
+                "crawler.parse.dispatcher = dedicated-dispatcher",
+                "crawler.throttle.enabled = true",
+                "crawler.throttle.elements = 100",
+                "crawler.throttle.per = 100ms")))
+                .run(mat).toCompletableFuture().join();
+
+        assertThat(stats.getFetched()).isEqualTo(20);
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8)).hasSize((int) stats.getWritten());
+    }
+
+    @Test
+    public void aDrainedCrawlWritesWhatWasFetched() throws IOException {
+        final Path output = Files.createTempFile("crawl", ".json");
+        final DrainSwitch drainSwitch = DrainSwitch.create();
+
+        final CompletionStage<Crawler.Stats> crawl = crawler(settings(output, String.join("\n",
+                "crawler.write.batch-size = 50",
+                "crawler.throttle.enabled = true",
+                "crawler.throttle.elements = 10",
+                "crawler.throttle.per = 100ms")))
+                .withDrainSwitch(drainSwitch)
+                .run(mat);
+        Await.await(300, ChronoUnit.MILLIS);
+        final DrainSwitch.Report report = drainSwitch.drain(Duration.ofSeconds(5)).toCompletableFuture().join();
+        final Crawler.Stats stats = crawl.toCompletableFuture().join();
+
+        assertThat(report.getAbandoned()).isZero();
+        assertThat(stats.getFetched()).isBetween(1L, 89L);
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8)).hasSize((int) stats.getWritten());
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
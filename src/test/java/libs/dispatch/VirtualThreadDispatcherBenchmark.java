@@ -0,0 +1,67 @@
+package libs.dispatch;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static io.vavr.API.List;
+import static io.vavr.API.printf;
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static libs.Await.await;
+
+/**
+ * Throughput of a mapAsync stage whose futures block for 20 ms, at a parallelism of 10k, depending on the executor:
+ * - dedicated-dispatcher, the fixed pool of 5 threads from application.conf
+ * - virtual-thread-dispatcher forced to its bounded pool of 64 threads
+ * - virtual-thread-dispatcher, on virtual threads when the JVM supports them (run it with Java 21 to see them)
+ */
+public class VirtualThreadDispatcherBenchmark {
+
+    private static final int parallelism = 10_000;
+
+    public static void main(String[] args) {
+        final ActorSystem system = ActorSystem.create("VirtualThreadDispatcherBenchmark",
+                ConfigFactory.parseString(String.join("\n",
+                        "bounded-dispatcher = ${virtual-thread-dispatcher}",
+                        "bounded-dispatcher.virtual-thread-executor.virtual-threads = off"))
+                        .withFallback(ConfigFactory.load())
+                        .resolve());
+        final Materializer mat = ActorMaterializer.create(system);
+
+        printf("Java %s, virtual threads supported: %s\n",
+                System.getProperty("java.version"), VirtualThreadDispatcherConfigurator.virtualThreadsSupported());
+
+        final List<Tuple2<String, Integer>> runs = List(
+                Tuple.of("dedicated-dispatcher", 1_000),
+                Tuple.of("bounded-dispatcher", 20_000),
+                Tuple.of("virtual-thread-dispatcher",
+                        VirtualThreadDispatcherConfigurator.virtualThreadsSupported() ? 200_000 : 20_000));
+
+        for (Tuple2<String, Integer> run : runs) {
+            final Executor executor = system.dispatchers().lookup(run._1);
+            for (int i = 0; i < 2; i++) {
+                final long start = System.nanoTime();
+                Source.range(1, run._2)
+                        .mapAsync(parallelism, n -> CompletableFuture.supplyAsync(() -> {
+                            await(20, MILLIS);
+                            return n;
+                        }, executor))
+                        .runWith(Sink.ignore(), mat)
+                        .toCompletableFuture().join();
+                final double seconds = (System.nanoTime() - start) / 1e9;
+                printf("%-26s %,8d elements in %5.2fs: %,10.0f elements/s\n", run._1, run._2, seconds, run._2 / seconds);
+            }
+        }
+
+        system.terminate();
+    }
+}
@@ -0,0 +1,81 @@
+package libs.dispatch;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorAttributes;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.collection.List;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static libs.Await.await;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualThreadDispatcherConfiguratorTest {
+
+    private static final ActorSystem system = ActorSystem.create("VirtualThreadDispatcherConfiguratorTest",
+            ConfigFactory.parseString(String.join("\n",
+                    "bounded-dispatcher = ${virtual-thread-dispatcher}",
+                    "bounded-dispatcher.virtual-thread-executor.virtual-threads = off",
+                    "bounded-dispatcher.virtual-thread-executor.fallback-pool-size = 4"))
+                    .withFallback(ConfigFactory.load())
+                    .resolve());
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    @Test
+    public void stagesOptInWithTheDispatcherAttribute() {
+        final String thread = Source.single(1)
+                .map(i -> Thread.currentThread().getName())
+                .withAttributes(ActorAttributes.dispatcher("virtual-thread-dispatcher"))
+                .runWith(Sink.head(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(thread).contains("virtual-thread-dispatcher");
+    }
+
+    @Test
+    public void blockingFuturesRunConcurrently() {
+        final Executor executor = system.dispatchers().lookup("virtual-thread-dispatcher");
+
+        final long start = System.nanoTime();
+        final java.util.List<Integer> result = Source.from(List.range(0, 500))
+                .mapAsync(500, i -> CompletableFuture.supplyAsync(() -> {
+                    await(100, MILLIS);
+                    return i;
+                }, executor))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(result).containsExactlyElementsOf(List.range(0, 500));
+        // at least 64 threads, so at most 8 waves of 100 ms
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(3000);
+    }
+
+    @Test
+    public void fallsBackToABoundedPool() {
+        final Executor executor = system.dispatchers().lookup("bounded-dispatcher");
+
+        final java.util.List<String> threads = Source.from(List.range(0, 40))
+                .mapAsync(40, i -> CompletableFuture.supplyAsync(() -> {
+                    await(20, MILLIS);
+                    return Thread.currentThread().getName();
+                }, executor))
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join();
+
+        assertThat(List.ofAll(threads).distinct().size()).isLessThanOrEqualTo(4);
+        assertThat(threads).allMatch(name -> name.contains("bounded-dispatcher"));
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
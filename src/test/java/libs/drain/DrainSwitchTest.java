@@ -0,0 +1,89 @@
+package libs.drain;
+
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.collection.List;
+import io.vavr.collection.Stream;
+import libs.Await;
+import libs.Flows;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DrainSwitchTest {
+
+    private static final ActorSystem system = ActorSystem.create("DrainSwitchTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    private static CompletionStage<Integer> call(int i, long millis) {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        system.scheduler().scheduleOnce(Duration.ofMillis(millis), () -> result.complete(i), system.dispatcher());
+        return result;
+    }
+
+    @Test
+    public void inFlightCallsAndPartialBatchesAreFlushed() {
+        final Pair<DrainSwitch, CompletionStage<java.util.List<java.util.List<Integer>>>> running = Source.from(Stream.from(0))
+                .viaMat(Flows.drainable(Flow.<Integer>create().mapAsync(4, i -> call(i, 50))), Keep.right())
+                .groupedWithin(100, Duration.ofSeconds(10))
+                .toMat(Sink.seq(), Keep.both())
+                .run(mat);
+        Await.await(300, ChronoUnit.MILLIS);
+
+        final DrainSwitch.Report report = running.first().drain(Duration.ofSeconds(5)).toCompletableFuture().join();
+        final List<Integer> written = List.ofAll(running.second().toCompletableFuture().join()).flatMap(batch -> batch);
+
+        assertThat(report.isTriggered()).isTrue();
+        assertThat(report.getInFlight()).isBetween(1L, 4L);
+        assertThat(report.getDrained()).isEqualTo(report.getInFlight());
+        assertThat(report.getAbandoned()).isZero();
+        // nothing lost: the partial batch is written too
+        assertThat(written).isNotEmpty().containsExactlyElementsOf(List.range(0, written.size()));
+    }
+
+    @Test
+    public void callsStillRunningAtTheDeadlineAreAbandoned() {
+        final Pair<DrainSwitch, CompletionStage<java.util.List<Integer>>> running = Source.from(Stream.from(0))
+                .viaMat(DrainSwitch.wrap(Flow.<Integer>create().mapAsync(4, i -> call(i, i < 10 ? 10 : 10_000))), Keep.right())
+                .toMat(Sink.seq(), Keep.both())
+                .run(mat);
+        Await.await(300, ChronoUnit.MILLIS);
+
+        final DrainSwitch.Report report = running.first().drain(Duration.ofMillis(200)).toCompletableFuture().join();
+
+        assertThat(report.getInFlight()).isEqualTo(4);
+        assertThat(report.getDrained()).isZero();
+        assertThat(report.getAbandoned()).isEqualTo(4);
+        assertThat(running.second().toCompletableFuture().join()).containsExactlyElementsOf(List.range(0, 10));
+    }
+
+    @Test
+    public void aSharedSwitchCountsBatchesByWeight() {
+        final DrainSwitch drainSwitch = DrainSwitch.create();
+        final CompletionStage<java.util.List<java.util.List<Integer>>> result = Source.from(List.range(0, 95))
+                .via(drainSwitch.flow(Flow.<Integer>create().grouped(10), java.util.List::size))
+                .runWith(Sink.seq(), mat);
+
+        assertThat(result.toCompletableFuture().join()).hasSize(10);
+        final DrainSwitch.Report report = drainSwitch.report().toCompletableFuture().join();
+        assertThat(report.isTriggered()).isFalse();
+        assertThat(drainSwitch.getInFlight()).isZero();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,125 @@
+package libs.fraud;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.ClosedShape;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.RunnableGraph;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.Tuple;
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FraudDetectorTest {
+
+    private static final ActorSystem system = ActorSystem.create("FraudDetectorTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    // sender, recipient, amount; one transaction every 100 ms
+    private static final class Txn {
+        final long sender;
+        final long recipient;
+        final long amount;
+        final long time;
+
+        Txn(long sender, long recipient, long amount, long time) {
+            this.sender = sender;
+            this.recipient = recipient;
+            this.amount = amount;
+            this.time = time;
+        }
+
+        @Override
+        public String toString() {
+            return sender + "->" + recipient + ":" + amount + "@" + time;
+        }
+    }
+
+    private static FraudDetector<Txn> detector() {
+        return FraudDetector.<Txn>create(t -> t.sender, t -> t.recipient, t -> t.amount, t -> t.time)
+                .withWindow(Duration.ofSeconds(1), 10)
+                .rule("large", FraudRule.amountAbove(10_000))
+                .rule("burst", FraudRule.senderCountAbove(3))
+                .rule("mule", FraudRule.recipientCountAbove(2))
+                .rule("spike", FraudRule.amountAboveSenderAverage(10, 2));
+    }
+
+    @Test
+    public void theRulesSeeTheSlidingCountersOfBothAccounts() {
+        final FraudCheck<Txn> check = detector().newCheck();
+
+        assertThat(check.check(new Txn(1, 2, 20_000, 0))).isEqualTo(0b0001);
+        assertThat(check.check(new Txn(1, 3, 100, 100))).isZero();
+        assertThat(check.check(new Txn(1, 4, 100, 200))).isZero();
+        // fourth transaction of the sender within a second, average of the previous ones far below
+        final int triggered = check.check(new Txn(1, 5, 100_000, 300));
+        assertThat(check.ruleNames(triggered)).containsExactly("large", "burst", "spike");
+        // the first ones have left the window
+        assertThat(check.check(new Txn(1, 6, 100, 1250))).isZero();
+        // three payments to the same account from different senders
+        check.check(new Txn(7, 9, 10, 1300));
+        check.check(new Txn(8, 9, 10, 1400));
+        assertThat(check.ruleNames(check.check(new Txn(10, 9, 10, 1500)))).containsExactly("mule");
+    }
+
+    @Test
+    public void inactiveAccountsAreForgotten() {
+        final FraudCheck<Txn> check = detector().newCheck();
+        for (int account = 0; account < 10_000; account++) {
+            check.check(new Txn(account, account + 1, 10, account / 100));
+        }
+        assertThat(check.getAccounts()).isEqualTo(20_000);
+
+        check.check(new Txn(1, 2, 10, 5_000));
+        assertThat(check.getAccounts()).isEqualTo(2);
+        assertThat(check.check(new Txn(1, 3, 10, 5_010))).isZero();
+    }
+
+    @Test
+    public void everyTransactionGoesThroughAndTheSuspiciousOnesAreReported() {
+        final List<Txn> transactions = List.range(0, 1000).map(i -> new Txn(i % 10, 100 + i % 50, i % 100 == 0 ? 50_000 : 10, i * 100L));
+
+        final RunnableGraph<Tuple3<FraudDetector.Stats, CompletionStage<java.util.List<Txn>>, CompletionStage<java.util.List<Suspicious<Txn>>>>> graph =
+                RunnableGraph.fromGraph(GraphDSL.create3(detector().graph(), Sink.<Txn>seq(), Sink.<Suspicious<Txn>>seq(), Tuple::of,
+                        (builder, detector, all, suspicious) -> {
+                            builder.from(builder.add(Source.from(transactions))).toInlet(detector.in());
+                            builder.from(detector.out0()).to(all);
+                            builder.from(detector.out1()).to(suspicious);
+                            return ClosedShape.getInstance();
+                        }));
+        final Tuple3<FraudDetector.Stats, CompletionStage<java.util.List<Txn>>, CompletionStage<java.util.List<Suspicious<Txn>>>> result = graph.run(mat);
+
+        assertThat(result._2.toCompletableFuture().join()).containsExactlyElementsOf(transactions);
+        final List<Suspicious<Txn>> suspicious = List.ofAll(result._3.toCompletableFuture().join());
+        assertThat(suspicious.map(Suspicious::getTransaction)).containsExactlyElementsOf(transactions.filter(t -> t.amount == 50_000));
+        assertThat(suspicious.map(Suspicious::getRuleNames)).allMatch(names -> names.contains("large"));
+        assertThat(result._1.getChecked()).isEqualTo(1000);
+        assertThat(result._1.getSuspicious()).isEqualTo(10);
+    }
+
+    @Test
+    public void theDetectorKeepsRunningWhenOnlyTheAlertsAreConsumed() {
+        final List<Txn> transactions = List.range(0, 100).map(i -> new Txn(i, i + 1, i % 10 == 0 ? 50_000 : 10, i));
+
+        final List<Suspicious<Txn>> suspicious = List.ofAll(Source.from(transactions)
+                .via(detector().suspicious())
+                .runWith(Sink.seq(), mat)
+                .toCompletableFuture().join());
+
+        assertThat(suspicious).hasSize(10);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,123 @@
+package libs.hub;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.BufferOverflowException;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.collection.List;
+import libs.Await;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class KeyRangeHubTest {
+
+    private static final ActorSystem system = ActorSystem.create("KeyRangeHubTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    // the source only starts once the gate is open, so that the consumers can subscribe first
+    private static KeyRangeHub<Integer, Integer> hub(CompletableFuture<Done> gate, Source<Integer, NotUsed> source,
+                                                     int bufferSize, KeyRangeHub.Overflow overflow) {
+        return Source.fromCompletionStage(gate)
+                .flatMapConcat(__ -> source)
+                .runWith(KeyRangeHub.sink(i -> i, bufferSize, overflow), mat);
+    }
+
+    private static void open(CompletableFuture<Done> gate, KeyRangeHub<?, ?> hub, int subscriptions) {
+        while (hub.getSubscriptions().size() < subscriptions) {
+            Await.await(1, ChronoUnit.MILLIS);
+        }
+        gate.complete(Done.getInstance());
+    }
+
+    private static Source<Integer, NotUsed> throttled(int count) {
+        return Source.from(List.range(0, count)).throttle(1, Duration.ofMillis(1));
+    }
+
+    @Test
+    public void eachConsumerReceivesItsKeyRange() {
+        final CompletableFuture<Done> gate = new CompletableFuture<>();
+        final KeyRangeHub<Integer, Integer> hub = hub(gate, Source.from(List.range(0, 1100)), 2000, KeyRangeHub.Overflow.DISCONNECT);
+
+        final CompletionStage<java.util.List<Integer>> low = hub.consumer("low", 0, 500).runWith(Sink.seq(), mat);
+        final CompletionStage<java.util.List<Integer>> high = hub.consumer("high", 250, 1000).runWith(Sink.seq(), mat);
+        open(gate, hub, 2);
+
+        assertThat(low.toCompletableFuture().join()).containsExactlyElementsOf(List.range(0, 500));
+        assertThat(high.toCompletableFuture().join()).containsExactlyElementsOf(List.range(250, 1000));
+        assertThat(hub.getUnrouted()).isEqualTo(100);
+        assertThat(hub.getSubscriptions()).isEmpty();
+    }
+
+    @Test
+    public void aSlowConsumerDoesNotSlowTheOthers() {
+        final CompletableFuture<Done> gate = new CompletableFuture<>();
+        final KeyRangeHub<Integer, Integer> hub = hub(gate, throttled(1000), 256, KeyRangeHub.Overflow.DROP_OLDEST);
+
+        final CompletionStage<java.util.List<Integer>> fast = hub.consumer("fast", 0, 1000).runWith(Sink.seq(), mat);
+        final Subscription<Integer, Integer> slowSubscription = hub.consumer("slow", 0, 1000)
+                .throttle(10, Duration.ofMillis(100))
+                .toMat(Sink.ignore(), Keep.left())
+                .run(mat);
+        open(gate, hub, 2);
+
+        assertThat(fast.toCompletableFuture().join()).containsExactlyElementsOf(List.range(0, 1000));
+        assertThat(slowSubscription.getReceived()).isEqualTo(1000);
+        assertThat(slowSubscription.getDropped()).isGreaterThan(0);
+        assertThat(slowSubscription.getLag()).isLessThanOrEqualTo(256);
+    }
+
+    @Test
+    public void aSlowConsumerCanBeDisconnected() {
+        final CompletableFuture<Done> gate = new CompletableFuture<>();
+        final KeyRangeHub<Integer, Integer> hub = hub(gate, throttled(500), 256, KeyRangeHub.Overflow.DISCONNECT);
+
+        final CompletionStage<java.util.List<Integer>> fast = hub.consumer("fast", 0, 500).runWith(Sink.seq(), mat);
+        final CompletionStage<Done> slow = hub.consumer("slow", 0, 500)
+                .throttle(10, Duration.ofMillis(100))
+                .runWith(Sink.ignore(), mat);
+        open(gate, hub, 2);
+
+        assertThat(fast.toCompletableFuture().join()).hasSize(500);
+        assertThat(catchThrowable(() -> slow.toCompletableFuture().join()))
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(BufferOverflowException.class);
+    }
+
+    @Test
+    public void consumersAttachAndDetachAtRuntime() {
+        final CompletableFuture<Done> gate = new CompletableFuture<>();
+        final KeyRangeHub<Integer, Integer> hub = hub(gate, throttled(1000), 1000, KeyRangeHub.Overflow.DROP_NEWEST);
+
+        final CompletionStage<java.util.List<Integer>> first = hub.consumer("first", 0, 1000).runWith(Sink.seq(), mat);
+        open(gate, hub, 1);
+        Await.await(300, ChronoUnit.MILLIS);
+        final Subscription<Integer, Integer> second = hub.consumer("second", 0, 1000)
+                .toMat(Sink.ignore(), Keep.left())
+                .run(mat);
+        Await.await(300, ChronoUnit.MILLIS);
+        second.detach();
+
+        assertThat(first.toCompletableFuture().join()).containsExactlyElementsOf(List.range(0, 1000));
+        assertThat(second.getReceived()).isBetween(1L, 999L);
+        assertThat(second.getDelivered()).isEqualTo(second.getReceived());
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
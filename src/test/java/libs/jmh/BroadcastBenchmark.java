@@ -0,0 +1,29 @@
+package libs.jmh;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import libs.Flows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link Flows#broadcast}: every element goes through every worker, each on its own actor.
+ */
+@State(Scope.Benchmark)
+public class BroadcastBenchmark extends StreamBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer broadcast() {
+        final List<Flow<Integer, Integer, NotUsed>> flows = List.fill(workers, ShardBenchmark::worker);
+        return run(Source.from(List.range(0, ELEMENTS)).via(Flows.broadcast(flows)));
+    }
+}
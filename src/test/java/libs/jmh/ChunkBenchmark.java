@@ -0,0 +1,69 @@
+package libs.jmh;
+
+import akka.stream.FanInShape2;
+import akka.stream.FlowShape;
+import akka.stream.UniformFanInShape;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.stream.javadsl.ZipWith;
+import libs.primitive.IntChunks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link IntChunks} against the boxed streams they replace, over {@link #NUMBERS} integers: a map/filter/sum
+ * pipeline, and the Max3 graph of <code>MoreOpenGraphs</code> (two ZipWith(Math::max) against one chunked max).
+ */
+@State(Scope.Benchmark)
+public class ChunkBenchmark extends StreamBenchmark {
+
+    public static final int NUMBERS = 1_000_000;
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBERS)
+    public long boxedPipeline() {
+        return Source.range(1, NUMBERS)
+                .map(x -> x * 3)
+                .filter(x -> x % 2 == 0)
+                .runWith(Sink.fold(0L, (acc, x) -> acc + x), mat).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBERS)
+    public long chunkedPipeline() {
+        return IntChunks.range(1, NUMBERS)
+                .via(IntChunks.map(x -> x * 3))
+                .via(IntChunks.filter(x -> x % 2 == 0))
+                .runWith(IntChunks.sum(), mat).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBERS)
+    public Integer boxedMax3() {
+        final Flow<Integer, Integer, ?> max3 = Flow.fromGraph(GraphDSL.create(builder -> {
+            final FanInShape2<Integer, Integer, Integer> max1 = builder.add(ZipWith.create(Math::max));
+            final FanInShape2<Integer, Integer, Integer> max2 = builder.add(ZipWith.create(Math::max));
+            builder.from(builder.add(Source.range(1, NUMBERS).map(x -> 5))).toInlet(max1.in1());
+            builder.from(builder.add(Source.range(1, NUMBERS).map(x -> NUMBERS - x))).toInlet(max2.in1());
+            builder.from(max1.out()).toInlet(max2.in0());
+            return FlowShape.of(max1.in0(), max2.out());
+        }));
+        return run(Source.range(1, NUMBERS).via(max3));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBERS)
+    public int[] chunkedMax3() {
+        final Flow<int[], int[], ?> max3 = Flow.fromGraph(GraphDSL.create(builder -> {
+            final UniformFanInShape<int[], int[]> max = builder.add(IntChunks.max(3));
+            builder.from(builder.add(IntChunks.range(1, NUMBERS).via(IntChunks.map(x -> 5)))).toInlet(max.in(1));
+            builder.from(builder.add(IntChunks.range(1, NUMBERS).via(IntChunks.map(x -> NUMBERS - x)))).toInlet(max.in(2));
+            return FlowShape.of(max.in(0), max.out());
+        }));
+        return run(IntChunks.range(1, NUMBERS).via(max3));
+    }
+}
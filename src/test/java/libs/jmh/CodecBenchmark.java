@@ -0,0 +1,112 @@
+package libs.jmh;
+
+import akka.NotUsed;
+import akka.stream.FlowShape;
+import akka.stream.javadsl.BidiFlow;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import libs.codec.Codecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.zip.Deflater;
+
+/**
+ * {@link Codecs}: {@link #MESSAGES} messages of {@link #MESSAGE_SIZE} bytes of JSON-like text through each layer and
+ * the whole stack, encoded (<code>encode</code>) or decoded (<code>decode</code>). Scores are in messages/ms, so
+ * that the throughput in MB/s is the score times {@link #MESSAGE_SIZE} / 1000.
+ */
+@State(Scope.Benchmark)
+public class CodecBenchmark extends StreamBenchmark {
+
+    public static final int MESSAGES = 1000;
+    public static final int MESSAGE_SIZE = 16 * 1024;
+
+    @Param({"framing", "compression", "encryption", "stack"})
+    public String layer;
+
+    private BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> codec;
+    private List<ByteString> messages;
+    private List<ByteString> encoded;
+
+    @Setup
+    public void messages() {
+        final BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> framing = Codecs.framing(1 << 20);
+        final BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> compression = Codecs.compression(Deflater.BEST_SPEED, 1 << 20);
+        final BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> encryption = Codecs.encryption(Codecs.generateAesKey());
+        switch (layer) {
+            case "framing":
+                codec = framing;
+                break;
+            case "compression":
+                codec = compression;
+                break;
+            case "encryption":
+                codec = encryption;
+                break;
+            default:
+                codec = compression.atop(encryption).atop(framing);
+        }
+        final SplittableRandom random = new SplittableRandom(42);
+        messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            final StringBuilder json = new StringBuilder();
+            while (json.length() < MESSAGE_SIZE) {
+                json.append("{\"id\":").append(random.nextInt(1_000_000))
+                        .append(",\"name\":\"restaurant ").append(random.nextInt(10_000))
+                        .append("\",\"postcode\":\"75").append(random.nextInt(100, 200))
+                        .append("\",\"rating\":").append(random.nextInt(50) / 10.0).append("},");
+            }
+            messages.add(ByteString.fromString(json.substring(0, MESSAGE_SIZE)));
+        }
+    }
+
+    // once the actor system of the trial is started
+    @Setup(Level.Iteration)
+    public void encoded() {
+        if (encoded == null) {
+            encoded = Source.from(messages).via(top()).runWith(Sink.seq(), mat).toCompletableFuture().join();
+        }
+    }
+
+    private Flow<ByteString, ByteString, NotUsed> top() {
+        return Flow.fromGraph(GraphDSL.create(builder -> {
+            final akka.stream.BidiShape<ByteString, ByteString, ByteString, ByteString> shape = builder.add(codec);
+            builder.from(builder.add(Source.<ByteString>empty())).toInlet(shape.in2());
+            builder.from(shape.out2()).to(builder.add(Sink.<ByteString>ignore()));
+            return FlowShape.of(shape.in1(), shape.out1());
+        }));
+    }
+
+    private Flow<ByteString, ByteString, NotUsed> bottom() {
+        return Flow.fromGraph(GraphDSL.create(builder -> {
+            final akka.stream.BidiShape<ByteString, ByteString, ByteString, ByteString> shape = builder.add(codec);
+            builder.from(builder.add(Source.<ByteString>empty())).toInlet(shape.in1());
+            builder.from(shape.out1()).to(builder.add(Sink.<ByteString>ignore()));
+            return FlowShape.of(shape.in2(), shape.out2());
+        }));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public ByteString encode() {
+        return run(Source.from(messages).via(top()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public ByteString decode() {
+        return run(Source.from(encoded).via(bottom()));
+    }
+}
@@ -0,0 +1,94 @@
+package libs.jmh;
+
+import akka.stream.FlowShape;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import libs.fraud.FraudCheck;
+import libs.fraud.FraudDetector;
+import libs.fraud.FraudRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * {@link FraudDetector}: {@link #TRANSACTIONS} transactions over 100 s of event time between <code>accounts</code>
+ * accounts, checked against 6 rules on a 10 s window of 10 buckets.
+ * <p>
+ * <code>check</code> measures the detector alone (run with <code>-prof gc</code>: it allocates nothing per
+ * transaction once the account tables have grown), <code>graph</code> the FanOutShape2 stage in a stream.
+ */
+@State(Scope.Benchmark)
+public class FraudBenchmark extends StreamBenchmark {
+
+    public static final int TRANSACTIONS = 1_000_000;
+
+    @Param({"1000", "100000"})
+    public int accounts;
+
+    private Transaction[] transactions;
+    private FraudDetector<Transaction> detector;
+
+    public static class Transaction {
+        final long sender;
+        final long recipient;
+        final long amount;
+        final long time;
+
+        Transaction(long sender, long recipient, long amount, long time) {
+            this.sender = sender;
+            this.recipient = recipient;
+            this.amount = amount;
+            this.time = time;
+        }
+    }
+
+    @Setup
+    public void transactions() {
+        final SplittableRandom random = new SplittableRandom(42);
+        transactions = new Transaction[TRANSACTIONS];
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            final long amount = random.nextInt(1000) == 0 ? 50_000 : random.nextInt(1, 500);
+            transactions[i] = new Transaction(random.nextInt(accounts), random.nextInt(accounts), amount, i / 10);
+        }
+        detector = FraudDetector.create((Transaction t) -> t.sender, t -> t.recipient, t -> t.amount, t -> t.time)
+                .withWindow(Duration.ofSeconds(10), 10)
+                .rule("large", FraudRule.amountAbove(10_000))
+                .rule("busy", FraudRule.senderCountAbove(200))
+                .rule("burst", FraudRule.senderBurstAbove(50))
+                .rule("mule", FraudRule.recipientCountAbove(200))
+                .rule("velocity", FraudRule.senderVelocityAbove(20_000))
+                .rule("spike", FraudRule.amountAboveSenderAverage(20, 5));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSACTIONS)
+    public int check() {
+        final FraudCheck<Transaction> check = detector.newCheck();
+        int flagged = 0;
+        for (Transaction transaction : transactions) {
+            if (check.check(transaction) != 0) {
+                flagged++;
+            }
+        }
+        return flagged;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSACTIONS)
+    public Transaction graph() {
+        final Flow<Transaction, Transaction, ?> detected = Flow.fromGraph(GraphDSL.create(detector.graph(), (builder, shape) -> {
+            builder.from(shape.out1()).to(builder.add(Sink.ignore()));
+            return FlowShape.of(shape.in(), shape.out0());
+        }));
+        return run(Source.from(Arrays.asList(transactions)).via(detected));
+    }
+}
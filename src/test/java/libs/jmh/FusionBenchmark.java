@@ -0,0 +1,61 @@
+package libs.jmh;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import libs.Flows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Duration;
+
+/**
+ * The pipeline of rockthejvm.part2_primer.OperatorFusion, three map stages, fused on one actor or separated by
+ * async boundaries: the boundaries only pay off once the stages cost more than passing the elements between actors.
+ * <code>chunked</code> runs the last two stages each in its own island through {@link Flows#chunked}, so that
+ * only chunks of {@link #CHUNK} elements cross the boundaries.
+ */
+@State(Scope.Benchmark)
+public class FusionBenchmark extends StreamBenchmark {
+
+    public static final int CHUNK = 256;
+
+    @Param({"0", "100", "1000"})
+    public long work;
+
+    private Flow<Integer, Integer, NotUsed> stage() {
+        return Flow.<Integer>create().map(x -> {
+            Blackhole.consumeCPU(work);
+            return x + 1;
+        });
+    }
+
+    private Source<Integer, NotUsed> source() {
+        return Source.from(List.range(0, ELEMENTS));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer fused() {
+        return run(source().via(stage()).via(stage()).via(stage()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer async() {
+        return run(source().via(stage()).async().via(stage()).async().via(stage()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer chunked() {
+        return run(source().via(stage())
+                .via(Flows.chunked(CHUNK, Duration.ofMillis(1), stage()))
+                .via(Flows.chunked(CHUNK, Duration.ofMillis(1), stage())));
+    }
+}
@@ -0,0 +1,38 @@
+package libs.jmh;
+
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import libs.Flows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+
+/**
+ * {@link Flows#groupedTimeout}, a custom stage with a timer, against {@link Flows#groupFlow}, the built-in grouped.
+ */
+@State(Scope.Benchmark)
+public class GroupingBenchmark extends StreamBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private Source<Integer, ?> source() {
+        return Source.from(List.range(0, ELEMENTS));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public List<Integer> groupedTimeout() {
+        return run(source().via(Flows.groupedTimeout(size, Duration.ofMillis(10))));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public List<Integer> groupFlow() {
+        return run(source().via(Flows.groupFlow(size)));
+    }
+}
@@ -0,0 +1,62 @@
+package libs.jmh;
+
+import akka.Done;
+import akka.NotUsed;
+import akka.stream.javadsl.PartitionHub;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import libs.hub.KeyRangeHub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link KeyRangeHub}: one stream split between 1 to 64 consumers, each owning an equal range of keys, against Akka's
+ * {@link PartitionHub} doing the same split. The consumer buffers hold their whole range, so nothing is dropped.
+ */
+@State(Scope.Benchmark)
+public class HubBenchmark extends StreamBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    public int consumers;
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public int keyRangeHub() {
+        final CompletableFuture<Done> gate = new CompletableFuture<>();
+        final int range = ELEMENTS / consumers;
+        final KeyRangeHub<Integer, Integer> hub = Source.fromCompletionStage(gate)
+                .flatMapConcat(__ -> Source.from(List.range(0, ELEMENTS)))
+                .runWith(KeyRangeHub.sink(i -> i, range + consumers, KeyRangeHub.Overflow.DROP_NEWEST), mat);
+        final CompletableFuture<?>[] done = new CompletableFuture<?>[consumers];
+        for (int i = 0; i < consumers; i++) {
+            done[i] = hub.consumer("consumer-" + i, i * range, i == consumers - 1 ? ELEMENTS : (i + 1) * range)
+                    .runWith(Sink.ignore(), mat)
+                    .toCompletableFuture();
+        }
+        while (hub.getSubscriptions().size() < consumers) {
+            Thread.onSpinWait();
+        }
+        gate.complete(Done.getInstance());
+        CompletableFuture.allOf(done).join();
+        return done.length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public int partitionHub() {
+        final Source<Integer, NotUsed> hub = Source.from(List.range(0, ELEMENTS))
+                .runWith(PartitionHub.of(Integer.class, (size, i) -> (int) ((long) i * size / ELEMENTS), consumers, 256), mat);
+        final CompletableFuture<?>[] done = new CompletableFuture<?>[consumers];
+        for (int i = 0; i < consumers; i++) {
+            done[i] = hub.runWith(Sink.ignore(), mat).toCompletableFuture();
+        }
+        CompletableFuture.allOf(done).join();
+        return done.length;
+    }
+}
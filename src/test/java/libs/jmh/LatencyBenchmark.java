@@ -0,0 +1,54 @@
+package libs.jmh;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import libs.Flows;
+import libs.latency.LatencyHistogram;
+import libs.latency.StageLatency;
+import libs.latency.Timestamped;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of the latency instrumentation: a map stage alone, wrapped by {@link Flows#timed}, and with the end-to-end
+ * timestamp envelope on top.
+ */
+@State(Scope.Benchmark)
+public class LatencyBenchmark extends StreamBenchmark {
+
+    private final StageLatency latency = new StageLatency("map");
+    private final LatencyHistogram endToEnd = new LatencyHistogram("endToEnd");
+
+    private static Flow<Integer, Integer, NotUsed> stage() {
+        return Flow.<Integer>create().map(x -> x + 1);
+    }
+
+    private Source<Integer, NotUsed> source() {
+        return Source.from(List.range(0, ELEMENTS));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer plain() {
+        return run(source().via(stage()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer timed() {
+        return run(source().via(Flows.timed(latency, stage())));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer timedEndToEnd() {
+        return run(source()
+                .via(Flows.stamp())
+                .via(Flows.timed(latency, Flow.<Timestamped<Integer>>create().map(t -> t.map(x -> x + 1))))
+                .via(Flows.endToEnd(endToEnd)));
+    }
+}
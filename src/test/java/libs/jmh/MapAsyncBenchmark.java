@@ -0,0 +1,45 @@
+package libs.jmh;
+
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * mapAsync and mapAsyncUnordered against their parallelism, the futures burning <code>work</code> JMH tokens on the
+ * default dispatcher.
+ */
+@State(Scope.Benchmark)
+public class MapAsyncBenchmark extends StreamBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    public int parallelism;
+
+    @Param({"100", "1000"})
+    public long work;
+
+    private CompletableFuture<Integer> call(Integer x) {
+        return CompletableFuture.supplyAsync(() -> {
+            Blackhole.consumeCPU(work);
+            return x;
+        }, system.dispatcher());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer mapAsync() {
+        return run(Source.from(List.range(0, ELEMENTS)).mapAsync(parallelism, this::call));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer mapAsyncUnordered() {
+        return run(Source.from(List.range(0, ELEMENTS)).mapAsyncUnordered(parallelism, this::call));
+    }
+}
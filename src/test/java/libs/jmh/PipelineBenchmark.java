@@ -0,0 +1,65 @@
+package libs.jmh;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import libs.pipeline.Pipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The pipeline of rockthejvm.part2_primer.OperatorFusion with stages of uneven cost: the flow planned by
+ * {@link Pipeline#plan} from the measured costs against the fused one, for the cores of this machine.
+ */
+@State(Scope.Benchmark)
+public class PipelineBenchmark extends StreamBenchmark {
+
+    public static final int SAMPLE = 500;
+
+    private final Pipeline<Integer, Integer> pipeline = Pipeline.<Integer>create()
+            .via("parse", stage(500))
+            .via("validate", stage(50))
+            .via("enrich", stage(2_000))
+            .via("score", stage(1_000))
+            .via("serialize", stage(500))
+            .withBoundaryBuffer(8);
+
+    private Flow<Integer, Integer, NotUsed> planned;
+
+    private static Flow<Integer, Integer, NotUsed> stage(long work) {
+        return Flow.<Integer>create().map(x -> {
+            Blackhole.consumeCPU(work);
+            return x + 1;
+        });
+    }
+
+    // once the actor system of the trial is started
+    @Setup(Level.Iteration)
+    public void plan() {
+        if (planned == null) {
+            planned = pipeline.plan(List.range(0, SAMPLE), mat).toCompletableFuture().join().flow();
+        }
+    }
+
+    private Source<Integer, NotUsed> source() {
+        return Source.from(List.range(0, ELEMENTS));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer fused() {
+        return run(source().via(pipeline.fused()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public Integer planned() {
+        return run(source().via(planned));
+    }
+}
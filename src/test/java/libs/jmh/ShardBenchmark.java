@@ -0,0 +1,56 @@
+package libs.jmh;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Source;
+import io.vavr.collection.List;
+import libs.Flows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+
+/**
+ * {@link Flows#shard}: <code>hotKeyShare</code> of the elements have the same key, the others are spread over 1000
+ * keys. With a hot key one worker gets most of the elements, whatever the parallelism.
+ */
+@State(Scope.Benchmark)
+public class ShardBenchmark extends StreamBenchmark {
+
+    /**
+     * JMH tokens burnt per element by a worker, so that the benchmark measures the fan-out and not only the stages.
+     */
+    static final long WORK = 100;
+
+    @Param({"1", "4", "16"})
+    public int parallelism;
+
+    @Param({"0.0", "0.5", "0.9"})
+    public double hotKeyShare;
+
+    private List<String> keys;
+
+    @Setup
+    public void keys() {
+        final SplittableRandom random = new SplittableRandom(42);
+        keys = List.fill(ELEMENTS, () -> random.nextDouble() < hotKeyShare ? "hot" : "key" + random.nextInt(1000));
+    }
+
+    static <T> Flow<T, T, NotUsed> worker() {
+        return Flow.<T>create().map(t -> {
+            Blackhole.consumeCPU(WORK);
+            return t;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public String shard() {
+        return run(Source.from(keys).via(Flows.shard(parallelism, key -> key, worker())));
+    }
+}
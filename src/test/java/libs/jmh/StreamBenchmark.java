@@ -0,0 +1,60 @@
+package libs.jmh;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base of the stream benchmarks: one actor system per trial, and every benchmark method runs a whole stream of
+ * {@link #ELEMENTS} elements, so that with <code>@OperationsPerInvocation(ELEMENTS)</code> the scores are per element.
+ * <p>
+ * Throughput is reported in elements/ms, latency (sample mode) as the distribution of the time per element, and
+ * the allocation rate by the GC profiler that the <code>jmh</code> Maven profile enables:
+ * <pre>
+ *   mvn -Pjmh test -Djmh.args="ShardBenchmark"      # results in target/jmh-result.json
+ * </pre>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dakka.loglevel=WARNING", "-Dakka.stdout-loglevel=WARNING"})
+public abstract class StreamBenchmark {
+
+    public static final int ELEMENTS = 10_000;
+
+    protected ActorSystem system;
+    protected ActorMaterializer mat;
+
+    @Setup
+    public void startSystem() {
+        system = ActorSystem.create(getClass().getSimpleName(), ConfigFactory.load());
+        mat = ActorMaterializer.create(system);
+    }
+
+    @TearDown
+    public void stopSystem() {
+        mat.shutdown();
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+    }
+
+    /**
+     * Runs the stream to completion, returning its last element (to be consumed by the benchmark).
+     */
+    protected <T> T run(Source<T, ?> source) {
+        return source.runWith(Sink.last(), mat).toCompletableFuture().join();
+    }
+}
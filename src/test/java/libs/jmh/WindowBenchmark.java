@@ -0,0 +1,81 @@
+package libs.jmh;
+
+import akka.stream.javadsl.Source;
+import libs.window.Aggregator;
+import libs.window.WindowResult;
+import libs.window.Windows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * {@link Windows}: {@link #EVENTS} events over 10 s of event time, up to 100 ms out of order, spread over
+ * <code>keys</code> keys, so that with 100k keys every window holds 100k live accumulators.
+ */
+@State(Scope.Benchmark)
+public class WindowBenchmark extends StreamBenchmark {
+
+    public static final int EVENTS = 1_000_000;
+
+    @Param({"1000", "100000"})
+    public int keys;
+
+    private java.util.List<Event> events;
+
+    public static class Event {
+        final Integer key;
+        final long time;
+        final double amount;
+
+        Event(Integer key, long time, double amount) {
+            this.key = key;
+            this.time = time;
+            this.amount = amount;
+        }
+    }
+
+    @Setup
+    public void events() {
+        final SplittableRandom random = new SplittableRandom(42);
+        final Integer[] boxed = new Integer[keys];
+        for (int k = 0; k < keys; k++) {
+            boxed[k] = k;
+        }
+        final Event[] generated = new Event[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            generated[i] = new Event(boxed[random.nextInt(keys)], i / 100 + random.nextInt(100), random.nextDouble(100));
+        }
+        events = Arrays.asList(generated);
+    }
+
+    private WindowResult<Integer, Double> run(Windows windows) {
+        return run(Source.from(events)
+                .via(windows.withWatermarkDelay(Duration.ofMillis(100))
+                        .aggregate((Event e) -> e.key, e -> e.time, Aggregator.sum((Event e) -> e.amount))));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public WindowResult<Integer, Double> tumbling() {
+        return run(Windows.tumbling(Duration.ofSeconds(1)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public WindowResult<Integer, Double> sliding() {
+        return run(Windows.sliding(Duration.ofSeconds(1), Duration.ofMillis(250)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public WindowResult<Integer, Double> session() {
+        return run(Windows.session(Duration.ofSeconds(2)));
+    }
+}
@@ -0,0 +1,54 @@
+package libs.latency;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsKeepAboutTwoSignificantDigits() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 255, 256, 1_000, 123_456_789, Long.MAX_VALUE / 3}) {
+            final int index = LatencyHistogram.index(value);
+            assertThat(LatencyHistogram.lowestValue(index)).isLessThanOrEqualTo(value);
+            assertThat(LatencyHistogram.highestValue(index)).isGreaterThanOrEqualTo(value);
+            assertThat((double) LatencyHistogram.highestValue(index) - LatencyHistogram.lowestValue(index))
+                    .isLessThanOrEqualTo(value / 64.0);
+        }
+    }
+
+    @Test
+    public void percentilesOfAUniformDistribution() {
+        final LatencyHistogram histogram = new LatencyHistogram("uniform");
+        final SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(1_000 + random.nextLong(1_000_000));
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(100_000);
+        assertThat(snapshot.getMean()).isCloseTo(501_000, within(5_000.0));
+        assertThat((double) snapshot.valueAtPercentile(50)).isCloseTo(501_000, within(10_000.0));
+        assertThat((double) snapshot.valueAtPercentile(99)).isCloseTo(991_000, within(20_000.0));
+        assertThat(snapshot.getMin()).isLessThanOrEqualTo(1_000 + 100);
+        assertThat(snapshot.getMax()).isGreaterThanOrEqualTo(1_000_000);
+    }
+
+    @Test
+    public void intervalSnapshotsOnlySeeTheNewValues() {
+        final LatencyHistogram histogram = new LatencyHistogram("interval");
+        histogram.record(10);
+        histogram.record(20);
+        assertThat(histogram.intervalSnapshot().getCount()).isEqualTo(2);
+
+        histogram.record(1_000_000);
+        final LatencyHistogram.Snapshot interval = histogram.intervalSnapshot();
+        assertThat(interval.getCount()).isEqualTo(1);
+        assertThat(interval.getMin()).isGreaterThan(990_000);
+        assertThat(histogram.intervalSnapshot().getCount()).isZero();
+        assertThat(histogram.snapshot().getCount()).isEqualTo(3);
+    }
+}
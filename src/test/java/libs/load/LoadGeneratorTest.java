@@ -0,0 +1,121 @@
+package libs.load;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.vavr.collection.List;
+import libs.latency.LatencyHistogram;
+import libs.latency.Timestamped;
+import org.junit.AfterClass;
+import org.junit.Test;
+import play.libs.Json;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadGeneratorTest {
+
+    private static final ActorSystem system = ActorSystem.create("LoadGeneratorTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    private static List<Long> arrivals(Arrivals arrivals, long untilNanos) {
+        final SplittableRandom random = new SplittableRandom(42);
+        return io.vavr.collection.Stream.iterate(0L, previous -> arrivals.next(previous, random)).takeWhile(t -> t < untilNanos).toList();
+    }
+
+    @Test
+    public void arrivalsFollowTheirRate() {
+        final long second = Duration.ofSeconds(1).toNanos();
+
+        assertThat(arrivals(Arrivals.constant(3), second)).containsExactly(0L, 333_333_333L, 666_666_667L);
+        assertThat(arrivals(Arrivals.constant(100_000), second)).hasSize(100_000);
+        assertThat(arrivals(Arrivals.poisson(10_000), second).size()).isBetween(9_700, 10_300);
+        // 100 arrivals during the first 100 ms of the second, then 10 per second
+        assertThat(arrivals(Arrivals.bursty(10, 1000, Duration.ofMillis(100), Duration.ofSeconds(1)), second).size())
+                .isBetween(108, 110);
+    }
+
+    @Test
+    public void arrivalsAreStampedWithTheirIntendedTime() {
+        final Pair<LoadGenerator.Stats, CompletionStage<java.util.List<Timestamped<Integer>>>> result = LoadGenerator.of(Payload.ints(10))
+                .withArrivals(Arrivals.constant(200))
+                .withDuration(Duration.ofMillis(500))
+                .source()
+                .toMat(Sink.seq(), Keep.both())
+                .run(mat);
+
+        final List<Timestamped<Integer>> elements = List.ofAll(result.second().toCompletableFuture().join());
+        assertThat(elements).hasSize(100);
+        assertThat(elements.sliding(2).map(pair -> pair.get(1).emittedNanos - pair.get(0).emittedNanos).toList().distinct())
+                .containsExactly(5_000_000L);
+        assertThat(result.first().getEmitted()).isEqualTo(100);
+    }
+
+    @Test
+    public void aSlowFlowDoesNotSlowTheArrivalsDown() {
+        final LatencyHistogram latency = new LatencyHistogram("slow");
+        // 100 arrivals within 100 ms, served one every 10 ms
+        final Pair<LoadGenerator.Stats, CompletionStage<Done>> result = LoadGenerator.of(Payload.ints(10))
+                .withArrivals(Arrivals.constant(1000))
+                .withLimit(100)
+                .source()
+                .via(LoadGenerator.measure(Flow.<Integer>create().throttle(1, Duration.ofMillis(10)), latency))
+                .toMat(Sink.ignore(), Keep.both())
+                .run(mat);
+        result.second().toCompletableFuture().join();
+        final LoadGenerator.Stats stats = result.first();
+
+        assertThat(stats.getEmitted()).isEqualTo(100);
+        assertThat(stats.getDropped()).isZero();
+        // the last request waited for the 99 others, as it would against a real server
+        assertThat(latency.snapshot().getMax()).isGreaterThan(Duration.ofMillis(700).toNanos());
+    }
+
+    @Test
+    public void arrivalsBeyondTheBacklogAreDropped() {
+        final Pair<LoadGenerator.Stats, CompletionStage<java.util.List<Timestamped<Integer>>>> result = LoadGenerator.of(Payload.ints(10))
+                .withArrivals(Arrivals.constant(1000))
+                .withLimit(100)
+                .withMaxBacklog(10)
+                .source()
+                .throttle(1, Duration.ofMillis(50))
+                .toMat(Sink.seq(), Keep.both())
+                .run(mat);
+
+        final int received = result.second().toCompletableFuture().join().size();
+        assertThat(result.first().getDropped()).isGreaterThan(50);
+        assertThat(received + result.first().getDropped()).isEqualTo(100);
+    }
+
+    @Test
+    public void payloadsAreReproducibleForASeed() {
+        final java.util.List<Timestamped<String>> first = Source.from(List.range(0, 2))
+                .flatMapConcat(__ -> LoadGenerator.of(Payload.postcodes()).withArrivals(Arrivals.constant(1_000_000))
+                        .withLimit(50).withSeed(7).source())
+                .runWith(Sink.seq(), mat).toCompletableFuture().join();
+
+        final List<String> postcodes = List.ofAll(first).map(t -> t.value);
+        assertThat(postcodes.take(50)).isEqualTo(postcodes.drop(50));
+        assertThat(postcodes).allMatch(p -> p.matches("[a-z]{1,2}[0-9]{1,2}[0-9][a-z]{2}"));
+
+        final JsonNode body = Json.parse(Payload.yelpBusinesses(3).next(new SplittableRandom(1)));
+        assertThat(body.path("businesses").size()).isEqualTo(3);
+        assertThat(body.path("businesses").get(0).path("location").path("zip_code").asText()).isNotEmpty();
+        assertThat(body.path("total").asInt()).isEqualTo(3);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,71 @@
+package libs.metrics;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.collection.List;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static libs.Await.await;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BottleneckDetectorTest {
+
+    private static final ActorSystem system = ActorSystem.create("BottleneckDetectorTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    private static Flow<Integer, Integer, ?> sleeping(long millis) {
+        return Flow.<Integer>create().map(i -> {
+            await(millis, MILLIS);
+            return i;
+        });
+    }
+
+    @Test
+    public void findsTheSlowStage() {
+        final BottleneckDetector detector = new BottleneckDetector();
+
+        Source.from(List.range(0, 50))
+                .via(detector.probe("source"))
+                .via(detector.stage("parse", Flow.<Integer>create().map(i -> i + 1)))
+                .async()
+                .via(detector.stage("enrich", Flow.<Integer>create().map(i -> i * 2).via(sleeping(5))))
+                .async()
+                .via(detector.stage("serialize", Flow.<Integer>create().map(String::valueOf)))
+                .runWith(Sink.ignore(), mat)
+                .toCompletableFuture().join();
+
+        final BottleneckDetector.Report report = detector.report();
+        assertThat(report.getBottleneck().map(BottleneckDetector.StageReport::getName)).containsExactly("enrich");
+        assertThat(report.getStages().map(BottleneckDetector.StageReport::getName))
+                .containsExactlyInAnyOrder("source", "parse", "enrich", "serialize", "sink");
+        assertThat(report.toString()).contains("raise the parallelism of 'enrich'");
+        assertThat(report.toJson()).contains("\"bottleneck\":\"enrich\"");
+    }
+
+    @Test
+    public void findsASlowSinkWhileTheStreamRuns() {
+        final BottleneckDetector detector = new BottleneckDetector();
+
+        Source.from(List.range(0, 100))
+                .via(detector.probe("source"))
+                .via(detector.stage("parse", Flow.<Integer>create().map(i -> i + 1)))
+                .async()
+                .runWith(Sink.foreach(i -> await(5, MILLIS)), mat);
+
+        await(200, MILLIS);
+        final BottleneckDetector.Report report = detector.report();
+        assertThat(report.getBottleneck().map(BottleneckDetector.StageReport::getName)).containsExactly("sink");
+        assertThat(report.getStages().find(s -> s.getName().equals("parse")).get().getCount()).isBetween(1L, 99L);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,69 @@
+package libs.pipeline;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.collection.List;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import static io.vavr.API.List;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PipelineTest {
+
+    private static final ActorSystem system = ActorSystem.create("PipelineTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    private static Flow<Integer, Integer, NotUsed> spinning(long micros) {
+        return Flow.<Integer>create().map(i -> {
+            final long until = System.nanoTime() + micros * 1000;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+            return i + 1;
+        });
+    }
+
+    @Test
+    public void splitsTheExpensiveStagesOverTheCores() {
+        assertThat(Pipeline.boundaries(List(1.0, 10.0, 10.0, 1.0), 0.5, 2)).containsExactly(2);
+        assertThat(Pipeline.boundaries(List(1.0, 10.0, 10.0, 1.0), 0.5, 4)).containsExactly(1, 2, 3);
+        assertThat(Pipeline.boundaries(List(10.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0), 0.0, 2)).containsExactly(1);
+    }
+
+    @Test
+    public void keepsCheapStagesFused() {
+        assertThat(Pipeline.boundaries(List(1.0, 1.0, 1.0), 5.0, 4)).isEmpty();
+        assertThat(Pipeline.boundaries(List(10.0, 10.0), 5.0, 1)).isEmpty();
+        assertThat(Pipeline.boundaries(List.empty(), 5.0, 4)).isEmpty();
+    }
+
+    @Test
+    public void placesTheBoundariesFromTheMeasuredCosts() {
+        final Pipeline<Integer, Integer> pipeline = Pipeline.<Integer>create()
+                .via("cheap", Flow.<Integer>create().map(i -> i + 1))
+                .via("expensive", spinning(200))
+                .via("also expensive", spinning(200))
+                .via("also cheap", Flow.<Integer>create().map(i -> i - 1))
+                .withCores(2)
+                .withBoundaryBuffer(4);
+
+        final Pipeline.Plan<Integer, Integer> plan = pipeline.plan(List.range(0, 200), mat).toCompletableFuture().join();
+
+        assertThat(plan.boundaries()).containsExactly("also expensive");
+        assertThat(plan.estimatedThroughput()).isGreaterThan(plan.fusedThroughput());
+        assertThat(plan.toString()).contains("--- async ---");
+        assertThat(Source.from(List.range(0, 100)).via(plan.flow()).runWith(Sink.seq(), mat).toCompletableFuture().join())
+                .containsExactlyElementsOf(List.range(2, 102));
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
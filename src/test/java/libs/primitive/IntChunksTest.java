@@ -0,0 +1,98 @@
+package libs.primitive;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.ClosedShape;
+import akka.stream.UniformFanInShape;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.RunnableGraph;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.collection.List;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntChunksTest {
+
+    private static final ActorSystem system = ActorSystem.create("IntChunksTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    private static <T> java.util.List<T> run(Source<T, ?> source) {
+        return source.runWith(Sink.seq(), mat).toCompletableFuture().join();
+    }
+
+    @Test
+    public void chunkedPipelinesGiveTheSameResultsAsBoxedOnes() {
+        final long chunked = IntChunks.range(1, 100_000, 1000)
+                .via(IntChunks.map(x -> x * 3))
+                .via(IntChunks.filter(x -> x % 2 == 0))
+                .runWith(IntChunks.sum(), mat).toCompletableFuture().join();
+        final long boxed = Source.range(1, 100_000)
+                .map(x -> x * 3)
+                .filter(x -> x % 2 == 0)
+                .runWith(Sink.fold(0L, (acc, x) -> acc + x), mat).toCompletableFuture().join();
+
+        assertThat(chunked).isEqualTo(boxed);
+        assertThat(run(IntChunks.range(1, 10, 4).via(IntChunks.fold(0, Integer::sum)))).containsExactly(55);
+        assertThat(run(LongChunks.range(1, 10, 4).via(LongChunks.filter(x -> x > 8)).via(LongChunks.unchunk())))
+                .containsExactly(9L, 10L);
+    }
+
+    @Test
+    public void foldsStartFromZeroAtEachMaterialization() {
+        final Sink<int[], CompletionStage<Long>> sum = IntChunks.sum();
+        final Flow<int[], Integer, NotUsed> fold = IntChunks.fold(0, Integer::sum);
+        final Flow<long[], Long, NotUsed> longFold = LongChunks.fold(0L, Long::sum);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(IntChunks.range(1, 10, 4).runWith(sum, mat).toCompletableFuture().join()).isEqualTo(55L);
+            assertThat(run(IntChunks.range(1, 10, 4).via(fold))).containsExactly(55);
+            assertThat(IntChunks.range(1, 10, 4).via(IntChunks.asLongs()).via(longFold)
+                    .runWith(Sink.head(), mat).toCompletableFuture().join()).isEqualTo(55L);
+        }
+    }
+
+    @Test
+    public void rangesAndAdaptersKeepEveryElementInOrder() {
+        assertThat(List.ofAll(run(IntChunks.range(1, 10, 4))).map(chunk -> chunk.length)).containsExactly(4, 4, 2);
+        assertThat(run(IntChunks.range(5, 4))).isEmpty();
+        assertThat(run(IntChunks.range(Integer.MAX_VALUE - 2, Integer.MAX_VALUE).via(IntChunks.unchunk())))
+                .containsExactly(Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1, Integer.MAX_VALUE);
+        assertThat(run(LongChunks.range(Long.MAX_VALUE - 1, Long.MAX_VALUE).via(LongChunks.unchunk())))
+                .containsExactly(Long.MAX_VALUE - 1, Long.MAX_VALUE);
+        assertThat(run(Source.range(1, 7).via(IntChunks.chunk(3)).via(IntChunks.asLongs()).via(LongChunks.unchunk())))
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+        assertThat(run(IntChunks.random(42, 10, 100).take(3).via(IntChunks.unchunk())))
+                .hasSize(300)
+                .allMatch(x -> x >= 0 && x < 10)
+                .isEqualTo(run(IntChunks.random(42, 10, 100).take(3).via(IntChunks.unchunk())));
+    }
+
+    @Test
+    public void maxRealignsChunksOfDifferentSizes() {
+        // the Max3 example of MoreOpenGraphs, with chunks of 3, 4 and 10 elements
+        final RunnableGraph<CompletionStage<java.util.List<Integer>>> max3 = RunnableGraph.fromGraph(
+                GraphDSL.create(IntChunks.unchunk().toMat(Sink.seq(), (a, b) -> b), (builder, out) -> {
+                    final UniformFanInShape<int[], int[]> max = builder.add(IntChunks.max(3));
+                    builder.from(builder.add(IntChunks.range(1, 10, 3))).viaFanIn(max);
+                    builder.from(builder.add(IntChunks.range(1, 10, 4).via(IntChunks.map(x -> 5)))).viaFanIn(max);
+                    builder.from(builder.add(IntChunks.range(1, 12, 10).via(IntChunks.map(x -> 11 - x)))).viaFanIn(max);
+                    builder.from(max.out()).toInlet(out.in());
+                    return ClosedShape.getInstance();
+                }));
+
+        assertThat(max3.run(mat).toCompletableFuture().join()).containsExactly(10, 9, 8, 7, 6, 6, 7, 8, 9, 10);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
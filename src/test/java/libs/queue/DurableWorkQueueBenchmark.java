@@ -0,0 +1,62 @@
+package libs.queue;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import io.vavr.collection.List;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static io.vavr.API.List;
+import static io.vavr.API.printf;
+
+/**
+ * Throughput of the {@link DurableWorkQueue}:
+ * - seeding the queue
+ * - leasing and acknowledging every item through the stream, with and without a sync per write
+ * - recovery time, which depends on the work left and not on the work done
+ */
+public class DurableWorkQueueBenchmark {
+
+    private static final int items = 200_000;
+
+    public static void main(String[] args) throws IOException {
+        final ActorSystem system = ActorSystem.create("DurableWorkQueueBenchmark");
+        final Materializer mat = ActorMaterializer.create(system);
+        final List<String> postcodes = List.range(0, items).map(i -> String.format("ab%02d%dxy", i % 100, i));
+
+        for (boolean syncOnWrite : List(false, true)) {
+            final int count = syncOnWrite ? items / 100 : items;
+            final Path dir = Files.createTempDirectory("queue");
+
+            long start = System.nanoTime();
+            final DurableWorkQueue queue = DurableWorkQueue.open(dir, () -> postcodes.take(count),
+                    Duration.ofMinutes(1), 3, 4 * 1024 * 1024, syncOnWrite);
+            printf("syncOnWrite=%s: enqueue %.0f items/s\n", syncOnWrite, count / seconds(start));
+
+            start = System.nanoTime();
+            queue.source().take(count / 2).runWith(queue.ackSink(), mat).toCompletableFuture().join();
+            printf("syncOnWrite=%s: lease + ack %.0f items/s\n", syncOnWrite, count / 2 / seconds(start));
+
+            start = System.nanoTime();
+            final DurableWorkQueue recovered = DurableWorkQueue.open(dir, List::empty);
+            printf("syncOnWrite=%s: recovered %s pending items in %.1f ms\n",
+                    syncOnWrite, recovered.stats().pending, seconds(start) * 1000);
+
+            start = System.nanoTime();
+            recovered.compact();
+            final DurableWorkQueue compacted = DurableWorkQueue.open(dir, List::empty);
+            printf("syncOnWrite=%s: after compaction, recovered %s pending items in %.1f ms\n",
+                    syncOnWrite, compacted.stats().pending, seconds(start) * 1000);
+            compacted.close();
+        }
+        system.terminate();
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
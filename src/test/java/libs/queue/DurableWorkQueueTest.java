@@ -0,0 +1,140 @@
+package libs.queue;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.collection.List;
+import io.vavr.collection.Stream;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static io.vavr.API.List;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class DurableWorkQueueTest {
+
+    private static final ActorSystem system = ActorSystem.create("DurableWorkQueueTest");
+    private static final Materializer mat = ActorMaterializer.create(system);
+
+    private static DurableWorkQueue open(Path dir, List<String> seed, Duration leaseTimeout, int logCapacity) {
+        return DurableWorkQueue.open(dir, () -> seed, leaseTimeout, 2, logCapacity, false);
+    }
+
+    @Test
+    public void sourceCompletesOnceEverythingIsAcked() throws IOException {
+        final Path dir = Files.createTempDirectory("queue");
+        try (DurableWorkQueue queue = open(dir, List.range(0, 100).map(String::valueOf), Duration.ofMinutes(1), 4096)) {
+            queue.source().runWith(queue.ackSink(), mat).toCompletableFuture().join();
+
+            assertThat(queue.isDrained()).isTrue();
+            assertThat(queue.stats().acked).isEqualTo(100);
+        }
+    }
+
+    @Test
+    public void restartResumesUnackedWorkOnly() throws IOException {
+        final Path dir = Files.createTempDirectory("queue");
+        final DurableWorkQueue queue = open(dir, List("a", "b", "c", "d"), Duration.ofMinutes(1), 4096);
+        queue.ack(queue.lease().get());
+        // leased but never acked: the worker crashed
+        queue.lease().get();
+        // no close: the process crashed, the seed must not be used again
+        final DurableWorkQueue recovered = open(dir, List("x"), Duration.ofMinutes(1), 4096);
+
+        final List<String> items = List.ofAll(recovered.source()
+                .map(lease -> {
+                    recovered.ack(lease);
+                    return lease.getItem();
+                })
+                .runWith(Sink.seq(), mat).toCompletableFuture().join());
+        recovered.close();
+
+        assertThat(items).containsExactly("b", "c", "d");
+    }
+
+    @Test
+    public void anInterruptedSeedIsDoneAgain() throws IOException {
+        final Path dir = Files.createTempDirectory("queue");
+        // the seed is lazy: the crash happens after half of it has been enqueued
+        final Throwable crash = catchThrowable(() -> DurableWorkQueue.open(dir, () -> Stream.range(0, 100).map(i -> {
+            if (i == 50) {
+                throw new IllegalStateException("crash while seeding");
+            }
+            return String.valueOf(i);
+        }), Duration.ofMinutes(1), 2, 4096, false));
+        assertThat(crash).hasMessage("crash while seeding");
+
+        try (DurableWorkQueue queue = open(dir, List.range(0, 100).map(String::valueOf), Duration.ofMinutes(1), 4096)) {
+            assertThat(queue.stats().pending).isEqualTo(100);
+        }
+        try (DurableWorkQueue queue = open(dir, List(), Duration.ofMinutes(1), 4096)) {
+            assertThat(queue.stats().pending).isEqualTo(100);
+        }
+    }
+
+    @Test
+    public void expiredLeasesAreRetriedThenDeadLettered() throws IOException, InterruptedException {
+        final Path dir = Files.createTempDirectory("queue");
+        try (DurableWorkQueue queue = open(dir, List("a"), Duration.ofMillis(10), 4096)) {
+            assertThat(queue.lease().get().getAttempt()).isEqualTo(1);
+            Thread.sleep(20);
+            final DurableWorkQueue.Lease second = queue.lease().get();
+            assertThat(second.getAttempt()).isEqualTo(2);
+            queue.nack(second);
+
+            assertThat(queue.isDrained()).isTrue();
+            assertThat(queue.deadLetters()).containsExactly("a");
+            assertThat(queue.stats().expired).isEqualTo(1);
+        }
+        try (DurableWorkQueue queue = open(dir, List(), Duration.ofMillis(10), 4096)) {
+            assertThat(queue.deadLetters()).containsExactly("a");
+        }
+    }
+
+    @Test
+    public void postponedLeasesDoNotUseAnAttempt() throws IOException {
+        final Path dir = Files.createTempDirectory("queue");
+        try (DurableWorkQueue queue = open(dir, List("a", "b"), Duration.ofMinutes(1), 4096)) {
+            // rate limited many more times than the 2 allowed attempts
+            for (int i = 0; i < 5; i++) {
+                final DurableWorkQueue.Lease lease = queue.lease().get();
+                assertThat(lease.getAttempt()).isEqualTo(1);
+                queue.postpone(lease);
+            }
+
+            assertThat(queue.deadLetters()).isEmpty();
+            assertThat(queue.stats().pending).isEqualTo(2);
+        }
+        try (DurableWorkQueue queue = open(dir, List(), Duration.ofMinutes(1), 4096)) {
+            assertThat(queue.lease().get().getAttempt()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void compactionKeepsOnlyRemainingWork() throws IOException {
+        final Path dir = Files.createTempDirectory("queue");
+        // a small log forces several compactions
+        final DurableWorkQueue queue = open(dir, List.range(0, 1000).map(String::valueOf), Duration.ofMinutes(1), 512);
+        for (int i = 0; i < 990; i++) {
+            queue.ack(queue.lease().get());
+        }
+        final DurableWorkQueue recovered = open(dir, List(), Duration.ofMinutes(1), 512);
+
+        assertThat(recovered.stats().pending).isEqualTo(10);
+        assertThat(recovered.lease().get().getItem()).isEqualTo("990");
+        recovered.close();
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,76 @@
+package libs.substream;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import libs.Flows;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyedSubstreamsTest {
+
+    private static final ActorSystem system = ActorSystem.create("KeyedSubstreamsTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    // one (key, count) per substream, emitted when the substream is closed
+    private static Flow<Tuple2<String, Integer>, Tuple2<String, Integer>, NotUsed> countPerKey() {
+        return Flow.<Tuple2<String, Integer>>create()
+                .fold(Tuple.of("", 0), (acc, element) -> Tuple.of(element._1, acc._2 + 1));
+    }
+
+    @Test
+    public void theLiveSubstreamsAreCappedAndRecreatedWhenTheirKeyReturns() {
+        final Pair<KeyedSubstreams.Stats, CompletionStage<java.util.List<Tuple2<String, Integer>>>> result =
+                Source.from(List.range(0, 10_000).map(i -> Tuple.of("key-" + (i / 10) % 500, i)))
+                        .viaMat(Flows.groupByKey(100, Duration.ofHours(1), Tuple2::_1, countPerKey()), Keep.right())
+                        .toMat(Sink.seq(), Keep.both())
+                        .run(mat);
+
+        final List<Tuple2<String, Integer>> counts = List.ofAll(result.second().toCompletableFuture().join());
+        final KeyedSubstreams.Stats stats = result.first();
+
+        // nothing is lost: every element went through a substream
+        assertThat(counts.map(Tuple2::_2).sum().intValue()).isEqualTo(10_000);
+        // keys come back after 500 others, so each run of 10 elements opens a new substream
+        assertThat(stats.getOpened()).isEqualTo(1000).isEqualTo(counts.size());
+        assertThat(stats.getLive()).isEqualTo(100);
+        assertThat(stats.getEvictedLru()).isEqualTo(900);
+        assertThat(counts.map(Tuple2::_1).distinct()).hasSize(500);
+    }
+
+    @Test
+    public void idleSubstreamsAreClosed() {
+        final Source<Tuple2<String, Integer>, NotUsed> source = Source.from(List.of(Tuple.of("a", 1), Tuple.of("a", 2), Tuple.of("b", 3)))
+                .concat(Source.single(Tuple.of("a", 4)).initialDelay(Duration.ofMillis(500)));
+
+        final Pair<KeyedSubstreams.Stats, CompletionStage<java.util.List<Tuple2<String, Integer>>>> result = source
+                .viaMat(KeyedSubstreams.create(10, Duration.ofMillis(100), Tuple2::_1, countPerKey()), Keep.right())
+                .toMat(Sink.seq(), Keep.both())
+                .run(mat);
+
+        assertThat(result.second().toCompletableFuture().join())
+                .containsExactly(Tuple.of("a", 2), Tuple.of("b", 1), Tuple.of("a", 1));
+        assertThat(result.first().getEvictedIdle()).isEqualTo(2);
+        assertThat(result.first().getEvictedLru()).isZero();
+        assertThat(result.first().getOpened()).isEqualTo(3);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
@@ -0,0 +1,94 @@
+package libs.window;
+
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.testkit.javadsl.TestKit;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WindowsTest {
+
+    private static final ActorSystem system = ActorSystem.create("WindowsTest");
+    private static final ActorMaterializer mat = ActorMaterializer.create(system);
+
+    // (key, event time in ms)
+    private static Pair<Windows.Stats, List<WindowResult<String, Long>>> count(Windows windows, List<Tuple2<String, Long>> events) {
+        final Flow<Tuple2<String, Long>, WindowResult<String, Long>, Windows.Stats> flow =
+                windows.aggregate(Tuple2::_1, Tuple2::_2, Aggregator.count());
+        final Pair<Windows.Stats, java.util.concurrent.CompletionStage<java.util.List<WindowResult<String, Long>>>> result =
+                Source.from(events).viaMat(flow, Keep.right()).toMat(Sink.seq(), Keep.both()).run(mat);
+        return Pair.create(result.first(), List.ofAll(result.second().toCompletableFuture().join()));
+    }
+
+    private static WindowResult<String, Long> result(String key, long start, long end, long count) {
+        return new WindowResult<>(key, start, end, count, false);
+    }
+
+    private static WindowResult<String, Long> late(String key, long start, long end, long count) {
+        return new WindowResult<>(key, start, end, count, true);
+    }
+
+    @Test
+    public void tumblingWindowsWaitForOutOfOrderElements() {
+        final Pair<Windows.Stats, List<WindowResult<String, Long>>> result = count(
+                Windows.tumbling(Duration.ofSeconds(1)).withWatermarkDelay(Duration.ofMillis(500)),
+                List.of(Tuple.of("a", 0L), Tuple.of("a", 500L), Tuple.of("b", 900L), Tuple.of("a", 1100L),
+                        Tuple.of("a", 300L), Tuple.of("a", 2600L)));
+
+        assertThat(result.second().take(3)).containsExactlyInAnyOrder(
+                result("a", 0, 1000, 3), result("b", 0, 1000, 1), result("a", 1000, 2000, 1));
+        assertThat(result.second().drop(3)).containsExactly(result("a", 2000, 3000, 1));
+        assertThat(result.first().getDropped()).isZero();
+        assertThat(result.first().getLive()).isZero();
+    }
+
+    @Test
+    public void lateElementsUpdateTheResultUntilTheAllowedLateness() {
+        final Pair<Windows.Stats, List<WindowResult<String, Long>>> result = count(
+                Windows.tumbling(Duration.ofSeconds(1)).withAllowedLateness(Duration.ofSeconds(1)),
+                List.of(Tuple.of("a", 0L), Tuple.of("a", 1500L), Tuple.of("a", 200L), Tuple.of("a", 2600L), Tuple.of("a", 100L)));
+
+        assertThat(result.second()).containsExactly(
+                result("a", 0, 1000, 1), late("a", 0, 1000, 2), result("a", 1000, 2000, 1), result("a", 2000, 3000, 1));
+        assertThat(result.first().getLateUpdates()).isEqualTo(1);
+        assertThat(result.first().getDropped()).isEqualTo(1);
+    }
+
+    @Test
+    public void slidingWindowsCountAnElementInEveryWindowContainingIt() {
+        final Pair<Windows.Stats, List<WindowResult<String, Long>>> result = count(
+                Windows.sliding(Duration.ofSeconds(1), Duration.ofMillis(500)),
+                List.of(Tuple.of("a", 700L), Tuple.of("a", 1200L)));
+
+        assertThat(result.second()).containsExactly(
+                result("a", 0, 1000, 1), result("a", 500, 1500, 2), result("a", 1000, 2000, 1));
+    }
+
+    @Test
+    public void sessionsAreMergedWhenAnElementBridgesThem() {
+        final Pair<Windows.Stats, List<WindowResult<String, Long>>> result = count(
+                Windows.session(Duration.ofMillis(200)).withWatermarkDelay(Duration.ofSeconds(1)),
+                List.of(Tuple.of("a", 0L), Tuple.of("b", 10L), Tuple.of("a", 300L), Tuple.of("a", 150L), Tuple.of("a", 900L)));
+
+        assertThat(result.second()).containsExactly(
+                result("b", 10, 210, 1), result("a", 0, 500, 3), result("a", 900, 1100, 1));
+        assertThat(result.first().getFired()).isEqualTo(3);
+    }
+
+    @AfterClass
+    public static void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+}
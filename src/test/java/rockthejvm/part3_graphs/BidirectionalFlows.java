@@ -5,7 +5,11 @@ import akka.actor.ActorSystem;
 import akka.japi.function.Function;
 import akka.stream.*;
 import akka.stream.javadsl.*;
+import akka.util.ByteString;
 import io.vavr.collection.List;
+import libs.codec.Codecs;
+
+import java.util.zip.Deflater;
 
 import static io.vavr.API.List;
 import static io.vavr.API.printf;
@@ -52,6 +56,21 @@ public class BidirectionalFlows {
                 )
         );
         cryptoBidiGraph.run(mat);
+
+        /*
+          The same idea over bytes with libs.codec: compression, AES-GCM and framing stacked with atop,
+          joined here with a loopback instead of a TCP connection
+        */
+        final BidiFlow<ByteString, ByteString, ByteString, ByteString, NotUsed> protocol = Codecs.compression(Deflater.BEST_SPEED, 1 << 20)
+                .atop(Codecs.encryption(Codecs.generateAesKey()))
+                .atop(Codecs.framing(1 << 20));
+
+        Source.from(unencryptedStrings.map(ByteString::fromString))
+                .via(protocol.join(Flow.<ByteString>create().map(frame -> {
+                    printf("On the wire: %d bytes\n", frame.size());
+                    return frame;
+                })))
+                .runWith(Sink.foreach(bytes -> printf("Decoded: %s\n", bytes.utf8String())), mat);
     }
 
     private static Function<Integer, Function<String, String>> encrypt = n -> string -> encrypt(n, string);
@@ -6,12 +6,19 @@ import akka.actor.ActorSystem;
 import akka.stream.*;
 import akka.stream.javadsl.*;
 import io.vavr.API;
+import libs.fraud.FraudDetector;
+import libs.fraud.FraudRule;
+import libs.fraud.Suspicious;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
 
+import java.time.Duration;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletionStage;
+import java.util.function.ToLongFunction;
 
 import static io.vavr.API.List;
 import static io.vavr.API.printf;
@@ -122,6 +129,35 @@ public class MoreOpenGraphs {
         );
 
         suspiciousTxnRunnableGraph.run(mat);
+
+        /*
+          The same FanOutShape2 with libs.fraud: sliding per-account counters instead of a single amount check
+          - accounts are identified by a long, interned here from the names
+          - output2: the suspicious txns with the rules they triggered
+        */
+        final Map<String, Long> accountIds = new HashMap<>();
+        final ToLongFunction<String> accountId = name -> accountIds.computeIfAbsent(name, __ -> (long) accountIds.size());
+
+        final Graph<FanOutShape2<Transaction, Transaction, Suspicious<Transaction>>, FraudDetector.Stats> fraudDetectorGraph =
+                FraudDetector.<Transaction>create(txn -> accountId.applyAsLong(txn.source), txn -> accountId.applyAsLong(txn.recipient),
+                        txn -> txn.amount, txn -> txn.date.getTime())
+                        .withWindow(Duration.ofMinutes(10), 10)
+                        .rule("large amount", FraudRule.amountAbove(10000))
+                        .rule("collecting account", FraudRule.recipientCountAbove(1))
+                        .graph();
+
+        final RunnableGraph<FraudDetector.Stats> fraudDetectorRunnableGraph = RunnableGraph.fromGraph(
+                GraphDSL.create(fraudDetectorGraph,
+                        (builder, detectorShape) -> {
+                            builder.from(builder.add(transactionSource)).toInlet(detectorShape.in());
+                            builder.from(detectorShape.out0()).to(builder.add(bankProcessor));
+                            builder.from(detectorShape.out1()).to(builder.add(Sink.<Suspicious<Transaction>>foreach(API::println)));
+                            return ClosedShape.getInstance();
+                        }
+                )
+        );
+
+        fraudDetectorRunnableGraph.run(mat);
     }
 
 }
\ No newline at end of file
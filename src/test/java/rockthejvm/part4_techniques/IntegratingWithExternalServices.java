@@ -9,6 +9,7 @@ import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
 import io.vavr.collection.List;
 import io.vavr.collection.Map;
+import io.vavr.control.Try;
 import libs.Await;
 import libs.Flows;
 import lombok.AllArgsConstructor;
@@ -16,6 +17,7 @@ import lombok.ToString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Date;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -50,9 +52,7 @@ public class IntegratingWithExternalServices {
 
         public CompletableFuture<String> processEvent(PagerEvent pagerEvent) {
             return ofSupplier(() -> {
-                final Long engineerIndex = (pagerEvent.date.toInstant().getEpochSecond() / (24 * 3600)) % engineers.length();
-                final String engineer = engineers.get(engineerIndex.intValue());
-                final String engineerEmail = emails.get(engineer).getOrNull();
+                final String engineerEmail = engineerEmail(pagerEvent);
 
                 LOGGER.debug("Sending " + engineerEmail + " a high priority notification: " + pagerEvent);
 
@@ -60,6 +60,22 @@ public class IntegratingWithExternalServices {
                 return engineerEmail;
             }).toCompletableFuture();
         }
+
+        // bulk variant: one call for a whole batch of events, one result per event
+        public CompletableFuture<List<Try<String>>> processEvents(List<PagerEvent> pagerEvents) {
+            return ofSupplier(() -> {
+                LOGGER.debug("Sending " + pagerEvents.size() + " high priority notifications at once");
+
+                await(1000, MILLIS);
+                return pagerEvents.map(pagerEvent -> Try.of(() -> engineerEmail(pagerEvent)));
+            }).toCompletableFuture();
+        }
+
+        private String engineerEmail(PagerEvent pagerEvent) {
+            final Long engineerIndex = (pagerEvent.date.toInstant().getEpochSecond() / (24 * 3600)) % engineers.length();
+            final String engineer = engineers.get(engineerIndex.intValue());
+            return emails.get(engineer).getOrNull();
+        }
     }
 
     static final Source<PagerEvent, NotUsed> eventSource = Source.from(List(
@@ -85,6 +101,12 @@ public class IntegratingWithExternalServices {
 
         pagedEngineersEmails.to(pagedEmailsSink).run(mat);
 
+        // the same events, one call per batch of up to 10 events or 100 ms, the results coming back in order
+        final Source<Try<String>, NotUsed> batchedEmails = infraEvents
+                .via(Flows.batchMapAsync(10, Duration.ofMillis(100), 2, pagerService::processEvents));
+
+        batchedEmails.to(Sink.foreach(email -> LOGGER.debug("Batched notification: " + email))).run(mat);
+
         Await.await(2000, MILLIS);
         system.terminate();
     }
@@ -10,7 +10,11 @@ import akka.stream.stage.GraphStageLogic;
 import akka.stream.stage.InHandler;
 import akka.stream.stage.OutHandler;
 import io.vavr.collection.List;
+import libs.load.Arrivals;
+import libs.load.LoadGenerator;
+import libs.load.Payload;
 
+import java.time.Duration;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Random;
@@ -29,6 +33,20 @@ public class CustomOperators {
 
         final Sink<Integer, NotUsed> batcherSink = Sink.fromGraph(new Batcher(10));
         randomGeneratorSource.to(batcherSink).run(materializer);
+
+        //openModelRandomNumbers(batcherSink);
+    }
+
+    // the open-model alternative (libs.load): 100 random numbers per second for 10 seconds, whatever the pace of
+    // the sink, from a SplittableRandom of its own; the stats tell how many numbers the sink was too slow to take
+    static LoadGenerator.Stats openModelRandomNumbers(Sink<Integer, NotUsed> sink) {
+        return LoadGenerator.of(Payload.ints(100))
+                .withArrivals(Arrivals.constant(100))
+                .withDuration(Duration.ofSeconds(10))
+                .source()
+                .map(t -> t.value)
+                .to(sink)
+                .run(materializer);
     }
 
     // 1 - a custom source which emits random numbers until canceled
@@ -0,0 +1,266 @@
+package yelp.scraping;
+
+import akka.stream.ActorAttributes;
+import akka.stream.IOResult;
+import akka.stream.javadsl.*;
+import akka.util.ByteString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vavr.Tuple;
+import io.vavr.collection.List;
+import io.vavr.control.Try;
+import org.apache.commons.collections4.IteratorUtils;
+import play.libs.Json;
+import scala.collection.JavaConverters;
+import scala.io.Codec;
+import scala.util.hashing.MurmurHash3$;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import static io.vavr.API.Set;
+import static io.vavr.API.printf;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The same Yelp business (same <code>id</code>) comes back for many neighbouring postcodes. Instead of
+ * writing a full copy of the business with every postcode record, we keep each business body once,
+ * keyed by its id along with a hash of its content.
+ * <p>
+ * Postcode records only reference the businesses by id (plus the <code>distance</code>, which depends on
+ * the postcode we queried), and a business is appended to the businesses file only when it is first seen
+ * or when its content changed. The businesses file is an append-only log: when loading it, the last line
+ * for a given id wins.
+ */
+public class BusinessStore {
+
+    private static final int maxLineLength = 1024 * 1024;
+    private static final String hashField = "content_hash";
+
+    private static final Set<StandardOpenOption> options = Set(CREATE, WRITE, APPEND).toJavaSet();
+
+    private final Map<String, StoredBusiness> businesses = new HashMap<>();
+
+    private long duplicatesAvoided = 0L;
+    private long updated = 0L;
+    private long unreadableLines = 0L;
+
+    private static class StoredBusiness {
+        private final int hash;
+        private final Restaurant body;
+
+        private StoredBusiness(int hash, Restaurant body) {
+            this.hash = hash;
+            this.body = body;
+        }
+    }
+
+    /**
+     * The serialized postcode record along with the businesses which have to be appended to the businesses file.
+     */
+    public static class Registration {
+        private final ObjectNode postcodeRecord;
+        private final List<String> newBusinesses;
+
+        private Registration(ObjectNode postcodeRecord, List<String> newBusinesses) {
+            this.postcodeRecord = postcodeRecord;
+            this.newBusinesses = newBusinesses;
+        }
+
+        public ObjectNode getPostcodeRecord() {
+            return postcodeRecord;
+        }
+
+        public List<String> getNewBusinesses() {
+            return newBusinesses;
+        }
+    }
+
+    /**
+     * Loads a store from a businesses file previously written by {@link #serializer(Path, Path)}.
+     * A missing file gives an empty store; lines which cannot be parsed are skipped and counted in
+     * {@link #getUnreadableLines()}.
+     */
+    public static BusinessStore load(Path businessesPath) {
+        final BusinessStore store = new BusinessStore();
+        Try.of(() -> scala.io.Source.fromFile(businessesPath.toFile(), Codec.defaultCharsetCodec()))
+                .map(source -> IteratorUtils.toList(JavaConverters.asJavaIterator(source.getLines())))
+                .getOrElse(java.util.Collections::emptyList)
+                // a crash can leave a truncated last line: it is skipped, the other lines are kept
+                .forEach(line -> Try.run(() -> {
+                    final JsonNode json = Json.parse(line);
+                    final Restaurant body = Restaurant.fromJson(json.path("business"));
+                    store.businesses.put(body.getId(), new StoredBusiness(json.path(hashField).asInt(), body));
+                }).onFailure(__ -> store.unreadableLines += 1));
+        return store;
+    }
+
+    public synchronized Registration register(PostcodeRestaurants postcodeRestaurants) {
+        final ArrayNode references = Json.newArray();
+        List<String> newBusinesses = List.empty();
+
+        for (Restaurant restaurant : postcodeRestaurants.getRestaurants()) {
+            final String id = restaurant.getId();
+            // the distance is relative to the postcode we queried, it belongs to the postcode record
+            final Restaurant body = restaurant.withoutDistance();
+            final String json = body.toJsonString();
+            final int hash = MurmurHash3$.MODULE$.stringHash(json);
+
+            final StoredBusiness existing = businesses.get(id);
+            if (existing != null && existing.hash == hash) {
+                duplicatesAvoided += 1;
+            } else {
+                if (existing != null) {
+                    updated += 1;
+                }
+                businesses.put(id, new StoredBusiness(hash, body));
+                newBusinesses = newBusinesses.append("{\"" + hashField + "\":" + hash + ",\"business\":" + json + "}");
+            }
+
+            final ObjectNode reference = references.addObject().put("id", id);
+            if (restaurant.hasIntegralDistance()) {
+                reference.put("distance", (int) restaurant.getDistance());
+            } else if (restaurant.hasDistance()) {
+                reference.put("distance", restaurant.getDistance());
+            }
+        }
+
+        final ObjectNode postcodeRecord = Json.newObject();
+        postcodeRecord.put("postcode", postcodeRestaurants.getPostcode());
+        postcodeRecord.put("fetch_time", LocalDateTime.now().toString());
+        postcodeRecord.set("businesses", references);
+
+        return new Registration(postcodeRecord, newBusinesses);
+    }
+
+    /**
+     * Rebuilds the full postcode record from a record which references its businesses by id.
+     */
+    public synchronized PostcodeRestaurants reassemble(JsonNode postcodeRecord) {
+        final java.util.List<Restaurant> restaurants = new java.util.ArrayList<>();
+        for (JsonNode reference : postcodeRecord.path("businesses")) {
+            final StoredBusiness stored = businesses.get(reference.path("id").asText());
+            if (stored == null) {
+                // the serializer writes the businesses before their record: the files do not match
+                throw new IllegalStateException("Unknown business " + reference.path("id").asText()
+                        + " referenced by postcode " + postcodeRecord.path("postcode").asText());
+            }
+            final JsonNode distance = reference.get("distance");
+            if (distance == null) {
+                restaurants.add(stored.body);
+            } else if (distance.isInt()) {
+                restaurants.add(stored.body.withDistance(distance.intValue()));
+            } else {
+                restaurants.add(stored.body.withDistance(distance.asDouble()));
+            }
+        }
+        return new PostcodeRestaurants(postcodeRecord.path("postcode").asText(), restaurants);
+    }
+
+    /**
+     * Writes the postcode records to <code>recordsPath</code> and the new or changed businesses to
+     * <code>businessesPath</code>, through a single writer: the businesses of a record are written before it, so a
+     * crash can never leave a record referencing a business which is not on disk. Materializes the IO result of the
+     * postcode records file.
+     */
+    public Sink<PostcodeRestaurants, CompletionStage<IOResult>> serializer(Path recordsPath, Path businessesPath) {
+        final Sink<PostcodeRestaurants, CompletionStage<CompletionStage<IOResult>>> writer = Sink.setup((mat, attributes) -> {
+            final FileChannel records;
+            final FileChannel businesses;
+            try {
+                records = FileChannel.open(recordsPath, options);
+                businesses = FileChannel.open(businessesPath, options);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return Flow.<PostcodeRestaurants>create()
+                    .map(this::register)
+                    .mapConcat(registration -> registration.getNewBusinesses()
+                            .map(business -> Tuple.of(businesses, ByteString.fromString(business + '\n')))
+                            .append(Tuple.of(records, ByteString.fromString(registration.getPostcodeRecord().toString() + '\n'))))
+                    .map(line -> {
+                        final ByteBuffer buffer = line._2.asByteBuffer();
+                        while (buffer.hasRemaining()) {
+                            line._1.write(buffer);
+                        }
+                        return line._1 == records ? (long) line._2.size() : 0L;
+                    })
+                    .withAttributes(ActorAttributes.dispatcher("akka.stream.default-blocking-io-dispatcher"))
+                    .watchTermination((notUsed, done) -> done.whenComplete((__, ___) -> {
+                        Try.run(records::close);
+                        Try.run(businesses::close);
+                    }))
+                    .toMat(Sink.fold(0L, Long::sum), Keep.right())
+                    .mapMaterializedValue(count -> count.thenApply(IOResult::createSuccessful));
+        });
+        return writer.mapMaterializedValue(result -> result.thenCompose(ioResult -> ioResult));
+    }
+
+    /**
+     * Reads back the postcode records written by {@link #serializer(Path, Path)}, reassembled with their full businesses.
+     */
+    public Source<PostcodeRestaurants, CompletionStage<IOResult>> records(Path recordsPath) {
+        return FileIO.fromPath(recordsPath)
+                .via(Framing.delimiter(ByteString.fromString("\n"), maxLineLength, FramingTruncation.ALLOW))
+                .map(ByteString::utf8String)
+                .map(Json::parse)
+                .map(this::reassemble);
+    }
+
+    public synchronized long getDuplicatesAvoided() {
+        return duplicatesAvoided;
+    }
+
+    public synchronized long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Lines of the businesses file which could not be parsed by {@link #load(Path)}.
+     */
+    public synchronized long getUnreadableLines() {
+        return unreadableLines;
+    }
+
+    public synchronized int size() {
+        return businesses.size();
+    }
+
+    /**
+     * Replays an existing (non deduplicated) results file through a store to see how much would be saved.
+     */
+    public static void main(String[] args) {
+        final Path path = Paths.get("postcode_restaurants.json");
+        final BusinessStore store = new BusinessStore();
+
+        final List<String> records = Try.of(() -> scala.io.Source.fromFile(path.toFile(), Codec.defaultCharsetCodec()))
+                .map(source -> List.ofAll(IteratorUtils.toList(JavaConverters.asJavaIterator(source.getLines()))))
+                .getOrElse(List.empty());
+
+        long before = 0L;
+        long after = 0L;
+        for (String record : records) {
+            final Registration registration = store.register(PostcodeRestaurants.parse(record));
+            before += record.length();
+            after += registration.getPostcodeRecord().toString().length()
+                    + registration.getNewBusinesses().map(String::length).sum().longValue();
+        }
+
+        printf("%s records, %s unique businesses, %s duplicates avoided, %s updated\n",
+                records.size(), store.size(), store.getDuplicatesAvoided(), store.getUpdated());
+        printf("Output size: %s chars before, %s chars after\n", before, after);
+    }
+}
@@ -0,0 +1,125 @@
+package yelp.scraping;
+
+import io.vavr.Tuple;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static yelp.scraping.Postcode.normalize;
+import static yelp.scraping.Postcode.outward;
+
+/**
+ * The postcode loader gives us both outward codes ("ab10") and full postcodes ("ab101al", "ab101aw", ...),
+ * and a lot of areas have no restaurant at all. Since the daily number of requests is limited, we query the
+ * coarse code of each area first, and use its response to plan the full postcodes of that area:
+ * <ul>
+ * <li>areas where the coarse query found businesses located in the area come first, starting with the
+ * postcodes those businesses are in</li>
+ * <li>areas we know nothing about (coarse query failed) come next, in their original order</li>
+ * <li>areas where the coarse query found nothing, or only businesses outside the area, are skipped
+ * (or put last when pruning is disabled)</li>
+ * </ul>
+ * An area which has several full postcodes but no outward code in the list gets a coarse query of its own,
+ * since one request may save many.
+ */
+public class CrawlPlanner {
+
+    private enum Status {UNKNOWN, EMPTY, HITS}
+
+    private static class Area {
+        private final String outward;
+        private final boolean listed;
+        private final List<String> postcodes;
+        private Status status = Status.UNKNOWN;
+        private int businessesInArea = 0;
+        private final Set<String> hitPostcodes = new HashSet<>();
+
+        private Area(String outward, boolean listed, List<String> postcodes) {
+            this.outward = outward;
+            this.listed = listed;
+            this.postcodes = postcodes;
+        }
+
+        private boolean queriedCoarse() {
+            return listed || postcodes.size() > 1;
+        }
+    }
+
+    private final Map<String, Area> areas;
+    private final boolean prune;
+
+    /**
+     * @param postcodes normalized postcodes, outward codes and full postcodes mixed
+     * @param prune     skip the postcodes of the areas found empty, instead of putting them at the end
+     */
+    public CrawlPlanner(java.util.List<String> postcodes, boolean prune) {
+        final List<String> all = List.ofAll(postcodes);
+        final Map<String, List<String>> byArea = all.groupBy(Postcode::outward);
+        // areas keep the order in which they first appear
+        this.areas = all.map(Postcode::outward).distinct().toLinkedMap(outward -> {
+            final List<String> codes = byArea.apply(outward);
+            return Tuple.of(outward, new Area(outward, codes.exists(Postcode::isOutward), codes.filter(code -> !Postcode.isOutward(code))));
+        });
+        this.prune = prune;
+    }
+
+    /**
+     * The coarse codes to query first.
+     */
+    public List<String> coarse() {
+        return areas.values().filter(Area::queriedCoarse).map(area -> area.outward).toList();
+    }
+
+    /**
+     * Records the businesses returned for a coarse code (all of them, not only those in the area).
+     */
+    public synchronized void recordCoarse(String outwardCode, java.util.List<Restaurant> businesses) {
+        areas.get(outwardCode).forEach(area -> {
+            for (Restaurant business : businesses) {
+                final String zipCode = normalize(business.getZipCode());
+                if (!zipCode.isEmpty() && outward(zipCode).equals(area.outward)) {
+                    area.businessesInArea += 1;
+                    area.hitPostcodes.add(zipCode);
+                }
+            }
+            area.status = area.businessesInArea > 0 ? Status.HITS : Status.EMPTY;
+        });
+    }
+
+    /**
+     * The full postcodes to query once the coarse codes are done, most promising first.
+     */
+    public synchronized List<String> fine() {
+        final List<Area> hits = areas.values().filter(area -> area.status == Status.HITS).toList()
+                .sortBy(area -> -area.businessesInArea);
+        final List<Area> unknown = areas.values().filter(area -> area.status == Status.UNKNOWN).toList();
+        final List<Area> empty = areas.values().filter(area -> area.status == Status.EMPTY).toList();
+
+        return hits.flatMap(area -> area.postcodes.filter(area.hitPostcodes::contains))
+                .appendAll(hits.flatMap(area -> area.postcodes.filter(postcode -> !area.hitPostcodes.contains(postcode))))
+                .appendAll(unknown.flatMap(area -> area.postcodes))
+                .appendAll(prune ? List.empty() : empty.flatMap(area -> area.postcodes));
+    }
+
+    /**
+     * Requests saved per area: the full postcodes skipped, minus the coarse query we added for the area.
+     */
+    public synchronized Map<String, Integer> requestsSavedPerArea() {
+        return areas.filter((outward, area) -> area.status == Status.EMPTY && prune)
+                .mapValues(area -> area.postcodes.size() - (area.listed ? 0 : 1));
+    }
+
+    public synchronized String report() {
+        final Map<String, Integer> saved = requestsSavedPerArea();
+        final StringBuilder report = new StringBuilder();
+        areas.values().forEach(area -> report.append(String.format("%s: %s postcodes, %s, %s requests saved%n",
+                area.outward,
+                area.postcodes.size(),
+                area.status == Status.UNKNOWN ? "unknown" : area.businessesInArea + " businesses in area",
+                saved.get(area.outward).getOrElse(0))));
+        report.append(String.format("Total: %s requests saved%n", saved.values().sum()));
+        return report.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package yelp.scraping;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
+import akka.stream.IOResult;
+import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.Tuple2;
+import io.vavr.control.Try;
+import play.libs.ws.WSResponse;
+import play.libs.ws.ahc.AhcWSClient;
+import play.libs.ws.ahc.AhcWSClientConfigFactory;
+import play.libs.ws.ahc.StandaloneAhcWSClient;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import static io.vavr.API.Set;
+import static io.vavr.API.Tuple;
+import static io.vavr.API.printf;
+import static io.vavr.API.println;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Crawl in two passes under a fixed request quota: the coarse codes of every area first, then the full
+ * postcodes in the order given by the {@link CrawlPlanner}, skipping the areas found empty.
+ */
+public class HierarchicalCrawl {
+
+    private static final String name = "HierarchicalCrawl";
+    private static final ActorSystem system = ActorSystem.create(name);
+    private static final ActorMaterializerSettings settings = ActorMaterializerSettings.create(system);
+    private static final ActorMaterializer mat = ActorMaterializer.create(settings, system, name);
+
+    private static final Path outputPath = Paths.get("postcode_restaurants.json");
+    private static final Integer parallelismLevel = 2; // Number of concurrent threads to use to query the Yelp API
+    private static final Integer dailyQuota = 5000; // Number of requests we can make today
+
+    private static final Set<StandardOpenOption> options = Set(CREATE, WRITE, APPEND).toJavaSet();
+
+    public static void main(String[] args) {
+
+        AhcWSClient ws = new AhcWSClient(
+                StandaloneAhcWSClient.create(
+                        AhcWSClientConfigFactory.forConfig(ConfigFactory.load(), system.getClass().getClassLoader()),
+                        mat),
+                mat);
+
+        final Flow<String, Tuple2<String, WSResponse>, NotUsed> apiQuerier = Flow.<String>create()
+                .mapAsync(parallelismLevel,
+                        postcode -> YelpApi.fetchPostcode(ws, postcode)
+                                .map(response -> Tuple(postcode, response))
+                                .toCompletableFuture())
+                .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200);
+
+        final Sink<PostcodeRestaurants, CompletionStage<IOResult>> postcodeResponseSerializer =
+                Flow.<PostcodeRestaurants>create()
+                        .map(PostcodeRestaurants::serialize)
+                        .toMat(FileIO.toPath(outputPath, options), Keep.right());
+
+        // Load the list of postcodes to query, and the ones we have already processed
+        List<String> allPostcodes = PostcodeLoader.load();
+        Set<String> donePostcodes = ExistingPostcodes.load(outputPath);
+        List<String> remainingPostcodes = allPostcodes.stream().filter(postcode -> !donePostcodes.contains(postcode)).collect(toList());
+        printf("There are %s postcodes still to do.\n", remainingPostcodes.size());
+
+        final CrawlPlanner planner = new CrawlPlanner(remainingPostcodes, true);
+        final io.vavr.collection.List<String> coarse = planner.coarse().take(dailyQuota);
+        printf("First pass: %s coarse codes.\n", coarse.size());
+
+        Source.from(coarse)
+                .via(apiQuerier)
+                .map(successfulResp -> {
+                    final List<Restaurant> businesses = YelpApi.parseBusinesses(successfulResp._2);
+                    planner.recordCoarse(successfulResp._1, businesses);
+                    return new PostcodeRestaurants(successfulResp._1, YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2));
+                })
+                .runWith(postcodeResponseSerializer, mat)
+                .thenCompose(coarseResult -> {
+                    final io.vavr.collection.List<String> fine = planner.fine().take(dailyQuota - coarse.size());
+                    printf("Second pass: %s postcodes.\n", fine.size());
+                    return Source.from(fine)
+                            .via(apiQuerier)
+                            .map(successfulResp -> new PostcodeRestaurants(successfulResp._1,
+                                    YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2)))
+                            .runWith(postcodeResponseSerializer, mat);
+                })
+                .whenComplete((ioResult, throwable) -> {
+                    println(planner.report());
+                    Try.run(ws::close);
+                    mat.shutdown();
+                    system.terminate();
+                });
+    }
+}
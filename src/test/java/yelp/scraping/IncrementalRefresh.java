@@ -0,0 +1,98 @@
+package yelp.scraping;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
+import akka.stream.SourceShape;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.GraphDSL;
+import akka.stream.javadsl.MergePreferred;
+import akka.stream.javadsl.Source;
+import akka.stream.scaladsl.MergePreferred.MergePreferredShape;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.Tuple2;
+import io.vavr.control.Try;
+import play.libs.ws.WSResponse;
+import play.libs.ws.ahc.AhcWSClient;
+import play.libs.ws.ahc.AhcWSClientConfigFactory;
+import play.libs.ws.ahc.StandaloneAhcWSClient;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static io.vavr.API.Tuple;
+import static io.vavr.API.printf;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keeps the results file fresh without a full re-crawl: the postcodes never fetched go first, and the spare
+ * requests of the daily quota are used to fetch again the records older than <code>maxAge</code> (oldest first).
+ * A refreshed record is only appended to the results file when its restaurants changed.
+ * <p>
+ * Usage: IncrementalRefresh [maxAgeInDays]
+ */
+public class IncrementalRefresh {
+
+    private static final String name = "IncrementalRefresh";
+    private static final ActorSystem system = ActorSystem.create(name);
+    private static final ActorMaterializerSettings settings = ActorMaterializerSettings.create(system);
+    private static final ActorMaterializer mat = ActorMaterializer.create(settings, system, name);
+
+    private static final Path outputPath = Paths.get("postcode_restaurants.json");
+    private static final Path checksPath = Paths.get("postcode_checks.json");
+    private static final Integer parallelismLevel = 2; // Number of concurrent threads to use to query the Yelp API
+    private static final Integer dailyQuota = 5000; // Number of requests we can make today
+
+    public static void main(String[] args) {
+        final Duration maxAge = Duration.ofDays(args.length > 0 ? Long.parseLong(args[0]) : 30);
+
+        AhcWSClient ws = new AhcWSClient(
+                StandaloneAhcWSClient.create(
+                        AhcWSClientConfigFactory.forConfig(ConfigFactory.load(), system.getClass().getClassLoader()),
+                        mat),
+                mat);
+
+        final Flow<String, Tuple2<String, WSResponse>, NotUsed> apiQuerier = Flow.<String>create()
+                .mapAsync(parallelismLevel,
+                        postcode -> YelpApi.fetchPostcode(ws, postcode)
+                                .map(response -> Tuple(postcode, response))
+                                .toCompletableFuture())
+                .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200);
+
+        final RefreshIndex index = RefreshIndex.load(outputPath, checksPath);
+
+        List<String> allPostcodes = PostcodeLoader.load();
+        Set<String> donePostcodes = ExistingPostcodes.load(outputPath);
+        List<String> newPostcodes = allPostcodes.stream().filter(postcode -> !donePostcodes.contains(postcode)).collect(toList());
+        List<String> stalePostcodes = index.stale(maxAge, LocalDateTime.now());
+        printf("There are %s new postcodes, and %s records older than %s days.\n",
+                newPostcodes.size(), stalePostcodes.size(), maxAge.toDays());
+
+        // refreshes only get the requests the new postcodes leave
+        final Source<String, NotUsed> postcodes = Source.fromGraph(GraphDSL.create(builder -> {
+            final MergePreferredShape<String> merge = builder.add(MergePreferred.create(1));
+            builder.from(builder.add(Source.from(newPostcodes))).toInlet(merge.preferred());
+            builder.from(builder.add(Source.from(stalePostcodes))).toInlet(merge.in(0));
+            return SourceShape.of(merge.out());
+        }));
+
+        postcodes
+                .take(dailyQuota)
+                .via(apiQuerier)
+                .map(successfulResp -> new PostcodeRestaurants(successfulResp._1,
+                        YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2)))
+                .runWith(index.serializer(outputPath, checksPath), mat)
+                .whenComplete((ioResult, throwable) -> {
+                    printf("%s records written, %s unchanged records skipped.\n",
+                            index.getChangedWrites(), index.getSkippedWrites());
+                    Try.run(ws::close);
+                    mat.shutdown();
+                    system.terminate();
+                });
+    }
+}
@@ -5,4 +5,16 @@ public class Postcode {
     public static String normalize(String postcode) {
         return postcode.toLowerCase().replace(" ", "");
     }
+
+    /**
+     * A full UK postcode ends with a 3 characters inward code ("ab10 1al"), the rest being the outward code
+     * which identifies the area ("ab10"). Works on normalized postcodes, and gives back outward codes as is.
+     */
+    public static String outward(String postcode) {
+        return isOutward(postcode) ? postcode : postcode.substring(0, postcode.length() - 3);
+    }
+
+    public static boolean isOutward(String postcode) {
+        return postcode.length() <= 4;
+    }
 }
@@ -1,16 +1,40 @@
 package yelp.scraping;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import io.vavr.collection.List;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import play.libs.Json;
+import scala.util.hashing.MurmurHash3$;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class PostcodeRestaurants {
 
+    private static final JsonFactory factory = Json.mapper().getFactory();
+
     private String postcode;
-    private List<JsonNode> restaurants;
+    private List<Restaurant> restaurants;
+    // only known for records read back from the results file
+    private LocalDateTime fetchTime;
 
-    public PostcodeRestaurants(String postcode, java.util.List<JsonNode> restaurants) {
+    public PostcodeRestaurants(String postcode, List<Restaurant> restaurants) {
         this.postcode = postcode;
-        this.restaurants = List.ofAll(restaurants);
+        this.restaurants = Collections.unmodifiableList(restaurants);
+    }
+
+    private PostcodeRestaurants(String postcode, List<Restaurant> restaurants, LocalDateTime fetchTime) {
+        this(postcode, restaurants);
+        this.fetchTime = fetchTime;
     }
 
     public String getPostcode() {
@@ -21,12 +45,92 @@ public class PostcodeRestaurants {
         this.postcode = postcode;
     }
 
-    public List<JsonNode> getRestaurants() {
+    public List<Restaurant> getRestaurants() {
         return restaurants;
     }
 
-    public void setRestaurants(List<JsonNode> restaurants) {
-        this.restaurants = restaurants;
+    public void setRestaurants(List<Restaurant> restaurants) {
+        this.restaurants = Collections.unmodifiableList(restaurants);
+    }
+
+    public LocalDateTime getFetchTime() {
+        return fetchTime;
+    }
+
+    /**
+     * Hash of the restaurants, regardless of their order and of their distance to the postcode, so that two
+     * fetches of the same postcode have the same hash unless a business was added, removed or changed.
+     */
+    public int contentHash() {
+        final int[] hashes = new int[restaurants.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = MurmurHash3$.MODULE$.stringHash(restaurants.get(i).withoutDistance().toJsonString());
+        }
+        Arrays.sort(hashes);
+        int hash = MurmurHash3$.MODULE$.seqSeed();
+        for (int h : hashes) {
+            hash = MurmurHash3$.MODULE$.mix(hash, h);
+        }
+        return MurmurHash3$.MODULE$.finalizeHash(hash, hashes.length);
+    }
+
+    /**
+     * Serializes the postcode as one line of the results file, streaming the restaurants straight to the output.
+     */
+    public ByteString serialize() {
+        final ByteStringBuilder builder = ByteString.createBuilder();
+        try (JsonGenerator g = factory.createGenerator(builder.asOutputStream())) {
+            g.writeStartObject();
+            g.writeStringField("postcode", postcode);
+            g.writeStringField("fetch_time", LocalDateTime.now().toString());
+            g.writeArrayFieldStart("data");
+            for (Restaurant restaurant : restaurants) {
+                restaurant.write(g);
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.putByte((byte) '\n').result();
+    }
+
+    /**
+     * Reads back one line of the results file.
+     */
+    public static PostcodeRestaurants parse(String line) {
+        try (JsonParser p = factory.createParser(line)) {
+            String postcode = null;
+            LocalDateTime fetchTime = null;
+            final List<Restaurant> restaurants = new ArrayList<>();
+            p.nextToken();
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = p.getCurrentName();
+                p.nextToken();
+                if (field.equals("postcode")) {
+                    postcode = p.getValueAsString();
+                } else if (field.equals("fetch_time")) {
+                    fetchTime = parseFetchTime(p.getValueAsString());
+                } else if (field.equals("data") && p.currentToken() == JsonToken.START_ARRAY) {
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        restaurants.add(Restaurant.read(p));
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+            return new PostcodeRestaurants(postcode, restaurants, fetchTime);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static LocalDateTime parseFetchTime(String fetchTime) {
+        try {
+            return fetchTime == null ? null : LocalDateTime.parse(fetchTime);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
     }
 
     @Override
@@ -0,0 +1,106 @@
+package yelp.scraping;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.control.Try;
+import libs.queue.DurableWorkQueue;
+import play.libs.ws.ahc.AhcWSClient;
+import play.libs.ws.ahc.AhcWSClientConfigFactory;
+import play.libs.ws.ahc.StandaloneAhcWSClient;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Set;
+
+import static akka.pattern.PatternsCS.ask;
+import static io.vavr.API.Set;
+import static io.vavr.API.printf;
+import static io.vavr.API.println;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Crawl driven by a {@link DurableWorkQueue}: the postcodes are loaded once into the queue, and a postcode
+ * leaves the queue only when its record has been written to the results file. If the crawl is killed, the
+ * next run picks up where it stopped, without diffing the postcode list against the results file.
+ * Postcodes which keep failing end up in the dead letters instead of blocking the crawl. Rate limited (429) and
+ * unavailable (503) responses say nothing about the postcode: it is put back in the queue without using an attempt,
+ * and the {@link Throttler} holds every call for a minute.
+ */
+public class QueuedCrawl {
+
+    private static final String name = "QueuedCrawl";
+    private static final ActorSystem system = ActorSystem.create(name);
+    private static final ActorMaterializerSettings settings = ActorMaterializerSettings.create(system);
+    private static final ActorMaterializer mat = ActorMaterializer.create(settings, system, name);
+
+    private static final Path outputPath = Paths.get("postcode_restaurants.json");
+    private static final Path queuePath = Paths.get("postcode_queue");
+    private static final Integer parallelismLevel = 2; // Number of concurrent threads to use to query the Yelp API
+
+    private static final Set<StandardOpenOption> options = Set(CREATE, WRITE, APPEND).toJavaSet();
+
+    public static void main(String[] args) throws IOException {
+
+        AhcWSClient ws = new AhcWSClient(
+                StandaloneAhcWSClient.create(
+                        AhcWSClientConfigFactory.forConfig(ConfigFactory.load(), system.getClass().getClassLoader()),
+                        mat),
+                mat);
+
+        // The seed is only used the first time: afterwards the queue knows what is left to do
+        final DurableWorkQueue queue = DurableWorkQueue.open(queuePath, PostcodeLoader::load,
+                Duration.ofMinutes(2), 3, 16 * 1024 * 1024, false);
+        printf("There are %s postcodes still to do.\n", queue.stats().pending);
+
+        final FileChannel output = FileChannel.open(outputPath, options);
+        final ActorRef throttler = system.actorOf(Throttler.props());
+
+        queue.source()
+                .mapAsyncUnordered(parallelismLevel,
+                        lease -> ask(throttler, Throttler.WantToPass.class, Duration.ofHours(2)).thenCompose(mayPass ->
+                                    YelpApi.fetchPostcode(ws, lease.getItem())
+                                        .map(response -> {
+                                            if (response.getStatus() == 429 || response.getStatus() == 503) {
+                                                println("Throttled for postcode " + lease.getItem() + ": [status: " + response.getStatus() + "]");
+                                                throttler.tell(Throttler.RequestLimitExceeded.class, ActorRef.noSender());
+                                                queue.postpone(lease);
+                                                return Try.<DurableWorkQueue.Lease>failure(new IllegalStateException());
+                                            }
+                                            if (response.getStatus() != 200) {
+                                                println("Non 200 response for postcode " + lease.getItem() + ": [status: " + response.getStatus() + "]");
+                                                queue.nack(lease);
+                                                return Try.<DurableWorkQueue.Lease>failure(new IllegalStateException());
+                                            }
+                                            // the record is written before the lease is acknowledged
+                                            final PostcodeRestaurants restaurants = new PostcodeRestaurants(lease.getItem(),
+                                                    YelpApi.parseSuccessfulResponse(lease.getItem(), response));
+                                            return Try.run(() -> output.write(restaurants.serialize().asByteBuffer())).map(__ -> lease);
+                                        })
+                                        .recover(throwable -> {
+                                            queue.nack(lease);
+                                            return Try.failure(throwable);
+                                        })
+                                        .toCompletableFuture()))
+                .filter(Try::isSuccess)
+                .map(Try::get)
+                .runWith(queue.ackSink(), mat)
+                .whenComplete((done, throwable) -> {
+                    println(queue.stats());
+                    printf("Dead letters: %s\n", queue.deadLetters().mkString(", "));
+                    Try.run(queue::close);
+                    Try.run(output::close);
+                    Try.run(ws::close);
+                    mat.shutdown();
+                    system.terminate();
+                });
+    }
+}
@@ -0,0 +1,148 @@
+package yelp.scraping;
+
+import akka.stream.IOResult;
+import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.util.ByteString;
+import io.vavr.control.Try;
+import play.libs.Json;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import static io.vavr.API.Set;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * What we know of the records already in the results file: when each postcode was last fetched, and the
+ * content hash of its restaurants. The results file is append-only, so the last record of a postcode wins.
+ * <p>
+ * It gives the postcodes whose record is older than a given age, and, once they have been fetched again,
+ * writes only the records whose restaurants changed. An unchanged record is counted as a skipped write and its
+ * previous line in the results file stays valid; only the time of the check is appended to a small checks file,
+ * so that the postcode is not considered stale again on the next run.
+ */
+public class RefreshIndex {
+
+    private static final Set<StandardOpenOption> options = Set(CREATE, WRITE, APPEND).toJavaSet();
+
+    private static class Entry {
+        private final LocalDateTime fetchTime;
+        private final int contentHash;
+
+        private Entry(LocalDateTime fetchTime, int contentHash) {
+            this.fetchTime = fetchTime;
+            this.contentHash = contentHash;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private long skippedWrites = 0L;
+    private long changedWrites = 0L;
+
+    /**
+     * Loads the index from a results file and its checks file. Missing files give an empty index.
+     */
+    public static RefreshIndex load(Path resultsPath, Path checksPath) {
+        final RefreshIndex index = new RefreshIndex();
+        readLines(resultsPath).forEach(line -> {
+            final PostcodeRestaurants record = PostcodeRestaurants.parse(line);
+            index.entries.put(record.getPostcode(), new Entry(record.getFetchTime(), record.contentHash()));
+        });
+        readLines(checksPath).forEach(line -> {
+            final PostcodeRestaurants check = PostcodeRestaurants.parse(line);
+            final Entry entry = index.entries.get(check.getPostcode());
+            if (entry != null && check.getFetchTime() != null
+                    && (entry.fetchTime == null || entry.fetchTime.isBefore(check.getFetchTime()))) {
+                index.entries.put(check.getPostcode(), new Entry(check.getFetchTime(), entry.contentHash));
+            }
+        });
+        return index;
+    }
+
+    private static List<String> readLines(Path path) {
+        return Try.of(() -> Files.readAllLines(path, StandardCharsets.UTF_8)).getOrElse(ArrayList::new);
+    }
+
+    /**
+     * The postcodes fetched more than <code>maxAge</code> before <code>now</code>, oldest first.
+     * Records without a readable fetch time are the oldest of all.
+     */
+    public synchronized List<String> stale(Duration maxAge, LocalDateTime now) {
+        final LocalDateTime limit = now.minus(maxAge);
+        final Comparator<Map.Entry<String, Entry>> oldestFirst = Comparator.comparing(
+                entry -> entry.getValue().fetchTime,
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+        return entries.entrySet().stream()
+                .filter(entry -> entry.getValue().fetchTime == null || entry.getValue().fetchTime.isBefore(limit))
+                .sorted(oldestFirst.thenComparing(Map.Entry::getKey))
+                .map(Map.Entry::getKey)
+                .collect(toList());
+    }
+
+    /**
+     * Records a fresh fetch of a postcode, and tells whether it has to be written: the postcode is new, or its
+     * restaurants changed since the last record.
+     */
+    public synchronized boolean changed(PostcodeRestaurants fresh) {
+        final int hash = fresh.contentHash();
+        final Entry previous = entries.put(fresh.getPostcode(), new Entry(LocalDateTime.now(), hash));
+        if (previous != null && previous.contentHash == hash) {
+            skippedWrites += 1;
+            return false;
+        }
+        changedWrites += 1;
+        return true;
+    }
+
+    /**
+     * Appends the records which have to be written (see {@link #changed(PostcodeRestaurants)}) to
+     * <code>resultsPath</code>, and the time of the check of the others to <code>checksPath</code>.
+     * Materializes the IO result of the results file.
+     */
+    public Sink<PostcodeRestaurants, CompletionStage<IOResult>> serializer(Path resultsPath, Path checksPath) {
+        final Sink<PostcodeRestaurants, CompletionStage<IOResult>> checksSink = Flow.<PostcodeRestaurants>create()
+                .map(unchanged -> {
+                    final String check = Json.newObject()
+                            .put("postcode", unchanged.getPostcode())
+                            .put("fetch_time", LocalDateTime.now().toString())
+                            .toString();
+                    return ByteString.fromString(check + '\n');
+                })
+                .toMat(FileIO.toPath(checksPath, options), Keep.right());
+
+        return Flow.<PostcodeRestaurants>create()
+                .divertTo(checksSink, fresh -> !changed(fresh))
+                .map(PostcodeRestaurants::serialize)
+                .toMat(FileIO.toPath(resultsPath, options), Keep.right());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getSkippedWrites() {
+        return skippedWrites;
+    }
+
+    public synchronized long getChangedWrites() {
+        return changedWrites;
+    }
+}
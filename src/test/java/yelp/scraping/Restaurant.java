@@ -0,0 +1,586 @@
+package yelp.scraping;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import play.libs.Json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A compact, typed view of a Yelp business as returned by the search API.
+ * <p>
+ * Rating, review count, coordinates and distance are kept as primitives, and the strings which are repeated
+ * across businesses (category aliases and titles, transactions, city, state, country) are interned. Reading
+ * and writing go straight through a Jackson {@link JsonParser}/{@link JsonGenerator}, without building a
+ * <code>JsonNode</code> tree for the whole business.
+ * <p>
+ * The model is lossless: a field we do not know about, or a known field whose value does not have the
+ * expected JSON type, is kept as is in an <code>extra</code> node and written back unchanged. The presence of
+ * every typed field is tracked in a bit mask, so an absent field and a <code>null</code> one are told apart.
+ */
+public final class Restaurant {
+
+    private static final ObjectMapper mapper = Json.mapper();
+
+    private static final int ID = 1;
+    private static final int ALIAS = 1 << 1;
+    private static final int NAME = 1 << 2;
+    private static final int IMAGE_URL = 1 << 3;
+    private static final int IS_CLOSED = 1 << 4;
+    private static final int URL = 1 << 5;
+    private static final int REVIEW_COUNT = 1 << 6;
+    private static final int CATEGORIES = 1 << 7;
+    private static final int RATING = 1 << 8;
+    private static final int COORDINATES = 1 << 9;
+    private static final int LATITUDE = 1 << 10;
+    private static final int LONGITUDE = 1 << 11;
+    private static final int TRANSACTIONS = 1 << 12;
+    private static final int PRICE = 1 << 13;
+    private static final int LOCATION = 1 << 14;
+    private static final int ADDRESS1 = 1 << 15;
+    private static final int ADDRESS2 = 1 << 16;
+    private static final int ADDRESS3 = 1 << 17;
+    private static final int CITY = 1 << 18;
+    private static final int ZIP_CODE = 1 << 19;
+    private static final int COUNTRY = 1 << 20;
+    private static final int STATE = 1 << 21;
+    private static final int DISPLAY_ADDRESS = 1 << 22;
+    private static final int PHONE = 1 << 23;
+    private static final int DISPLAY_PHONE = 1 << 24;
+    private static final int DISTANCE = 1 << 25;
+    // the distance was given as a JSON integer, and is written back as one
+    private static final int INTEGRAL_DISTANCE = 1 << 26;
+
+    private int present;
+
+    private String id;
+    private String alias;
+    private String name;
+    private String imageUrl;
+    private boolean isClosed;
+    private String url;
+    private int reviewCount;
+    private String[] categoryAliases;
+    private String[] categoryTitles;
+    private float rating;
+    private double latitude;
+    private double longitude;
+    private String[] transactions;
+    private String price;
+    private String address1;
+    private String address2;
+    private String address3;
+    private String city;
+    private String zipCode;
+    private String country;
+    private String state;
+    private String[] displayAddress;
+    private String phone;
+    private String displayPhone;
+    private double distance;
+
+    // escape hatch for whatever the typed fields cannot hold, null most of the time
+    private ObjectNode extra;
+    private ObjectNode coordinatesExtra;
+    private ObjectNode locationExtra;
+
+    private Restaurant() {
+    }
+
+    private Restaurant(Restaurant other) {
+        this.present = other.present;
+        this.id = other.id;
+        this.alias = other.alias;
+        this.name = other.name;
+        this.imageUrl = other.imageUrl;
+        this.isClosed = other.isClosed;
+        this.url = other.url;
+        this.reviewCount = other.reviewCount;
+        this.categoryAliases = other.categoryAliases;
+        this.categoryTitles = other.categoryTitles;
+        this.rating = other.rating;
+        this.latitude = other.latitude;
+        this.longitude = other.longitude;
+        this.transactions = other.transactions;
+        this.price = other.price;
+        this.address1 = other.address1;
+        this.address2 = other.address2;
+        this.address3 = other.address3;
+        this.city = other.city;
+        this.zipCode = other.zipCode;
+        this.country = other.country;
+        this.state = other.state;
+        this.displayAddress = other.displayAddress;
+        this.phone = other.phone;
+        this.displayPhone = other.displayPhone;
+        this.distance = other.distance;
+        this.extra = other.extra;
+        this.coordinatesExtra = other.coordinatesExtra;
+        this.locationExtra = other.locationExtra;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public float getRating() {
+        return rating;
+    }
+
+    public boolean hasCoordinates() {
+        return has(LATITUDE) && has(LONGITUDE);
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    /**
+     * The zip code of the business as text: an empty string when Yelp did not give one, and <code>"null"</code>
+     * when it gave a <code>null</code> one.
+     */
+    public String getZipCode() {
+        if (!has(ZIP_CODE)) {
+            return "";
+        }
+        return zipCode != null ? zipCode : "null";
+    }
+
+    public String[] getCategoryAliases() {
+        return has(CATEGORIES) ? categoryAliases.clone() : new String[0];
+    }
+
+    public boolean hasDistance() {
+        return has(DISTANCE);
+    }
+
+    /**
+     * True when the distance was given as a JSON integer.
+     */
+    public boolean hasIntegralDistance() {
+        return has(INTEGRAL_DISTANCE);
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * The distance is relative to the postcode we queried, not to the business itself.
+     */
+    public Restaurant withoutDistance() {
+        final Restaurant copy = new Restaurant(this);
+        copy.present &= ~(DISTANCE | INTEGRAL_DISTANCE);
+        copy.distance = 0d;
+        return copy;
+    }
+
+    public Restaurant withDistance(double distance) {
+        final Restaurant copy = new Restaurant(this);
+        copy.present = (copy.present | DISTANCE) & ~INTEGRAL_DISTANCE;
+        copy.distance = distance;
+        return copy;
+    }
+
+    public Restaurant withDistance(int distance) {
+        final Restaurant copy = new Restaurant(this);
+        copy.present |= DISTANCE | INTEGRAL_DISTANCE;
+        copy.distance = distance;
+        return copy;
+    }
+
+    private boolean has(int field) {
+        return (present & field) != 0;
+    }
+
+    // -- reading
+
+    /**
+     * Reads a business from a parser positioned either before or on the <code>START_OBJECT</code> token.
+     * The parser is left on the matching <code>END_OBJECT</code>.
+     */
+    public static Restaurant read(JsonParser p) throws IOException {
+        if (p.currentToken() == null) {
+            p.nextToken();
+        }
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(p, "Expected a business object but got " + p.currentToken());
+        }
+        final Restaurant r = new Restaurant();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.getCurrentName();
+            final JsonToken t = p.nextToken();
+            if (!r.readField(field, t, p)) {
+                r.extra = putExtra(r.extra, field, mapper.readTree(p));
+            }
+        }
+        return r;
+    }
+
+    public static Restaurant fromJson(JsonNode node) {
+        try (JsonParser p = node.traverse(mapper)) {
+            return read(p);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean readField(String field, JsonToken t, JsonParser p) throws IOException {
+        switch (field) {
+            case "id":
+                if (!isText(t)) return false;
+                id = p.getValueAsString();
+                present |= ID;
+                return true;
+            case "alias":
+                if (!isText(t)) return false;
+                alias = p.getValueAsString();
+                present |= ALIAS;
+                return true;
+            case "name":
+                if (!isText(t)) return false;
+                name = p.getValueAsString();
+                present |= NAME;
+                return true;
+            case "image_url":
+                if (!isText(t)) return false;
+                imageUrl = p.getValueAsString();
+                present |= IMAGE_URL;
+                return true;
+            case "is_closed":
+                if (t != JsonToken.VALUE_TRUE && t != JsonToken.VALUE_FALSE) return false;
+                isClosed = t == JsonToken.VALUE_TRUE;
+                present |= IS_CLOSED;
+                return true;
+            case "url":
+                if (!isText(t)) return false;
+                url = p.getValueAsString();
+                present |= URL;
+                return true;
+            case "review_count":
+                if (t != JsonToken.VALUE_NUMBER_INT || p.getNumberType() != JsonParser.NumberType.INT) return false;
+                reviewCount = p.getIntValue();
+                present |= REVIEW_COUNT;
+                return true;
+            case "categories":
+                return t == JsonToken.START_ARRAY && readCategories(p);
+            case "rating":
+                if (t != JsonToken.VALUE_NUMBER_FLOAT) return false;
+                final double value = p.getDoubleValue();
+                // ratings go by half stars, a float holds them exactly
+                if (Double.parseDouble(Float.toString((float) value)) != value) {
+                    return false;
+                }
+                rating = (float) value;
+                present |= RATING;
+                return true;
+            case "coordinates":
+                if (t != JsonToken.START_OBJECT) return false;
+                readCoordinates(p);
+                return true;
+            case "transactions":
+                if (t != JsonToken.START_ARRAY) return false;
+                final JsonNode transactionsNode = mapper.readTree(p);
+                transactions = strings(transactionsNode);
+                if (transactions == null) {
+                    extra = putExtra(extra, field, transactionsNode);
+                } else {
+                    present |= TRANSACTIONS;
+                }
+                return true;
+            case "price":
+                if (!isText(t)) return false;
+                price = internOrNull(p.getValueAsString());
+                present |= PRICE;
+                return true;
+            case "location":
+                if (t != JsonToken.START_OBJECT) return false;
+                readLocation(p);
+                return true;
+            case "phone":
+                if (!isText(t)) return false;
+                phone = p.getValueAsString();
+                present |= PHONE;
+                return true;
+            case "display_phone":
+                if (!isText(t)) return false;
+                displayPhone = p.getValueAsString();
+                present |= DISPLAY_PHONE;
+                return true;
+            case "distance":
+                if (t == JsonToken.VALUE_NUMBER_FLOAT) {
+                    distance = p.getDoubleValue();
+                    present |= DISTANCE;
+                    return true;
+                }
+                if (t != JsonToken.VALUE_NUMBER_INT || p.getNumberType() != JsonParser.NumberType.INT) return false;
+                distance = p.getIntValue();
+                present |= DISTANCE | INTEGRAL_DISTANCE;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readCoordinates(JsonParser p) throws IOException {
+        present |= COORDINATES;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.getCurrentName();
+            final JsonToken t = p.nextToken();
+            if (field.equals("latitude") && t == JsonToken.VALUE_NUMBER_FLOAT) {
+                latitude = p.getDoubleValue();
+                present |= LATITUDE;
+            } else if (field.equals("longitude") && t == JsonToken.VALUE_NUMBER_FLOAT) {
+                longitude = p.getDoubleValue();
+                present |= LONGITUDE;
+            } else {
+                coordinatesExtra = putExtra(coordinatesExtra, field, mapper.readTree(p));
+            }
+        }
+    }
+
+    private void readLocation(JsonParser p) throws IOException {
+        present |= LOCATION;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.getCurrentName();
+            final JsonToken t = p.nextToken();
+            if (!readLocationField(field, t, p)) {
+                locationExtra = putExtra(locationExtra, field, mapper.readTree(p));
+            }
+        }
+    }
+
+    private boolean readLocationField(String field, JsonToken t, JsonParser p) throws IOException {
+        if (field.equals("display_address")) {
+            if (t != JsonToken.START_ARRAY) return false;
+            final JsonNode displayAddressNode = mapper.readTree(p);
+            displayAddress = strings(displayAddressNode);
+            if (displayAddress == null) {
+                locationExtra = putExtra(locationExtra, field, displayAddressNode);
+            } else {
+                present |= DISPLAY_ADDRESS;
+            }
+            return true;
+        }
+        if (!isText(t)) {
+            return false;
+        }
+        switch (field) {
+            case "address1":
+                address1 = p.getValueAsString();
+                present |= ADDRESS1;
+                return true;
+            case "address2":
+                address2 = p.getValueAsString();
+                present |= ADDRESS2;
+                return true;
+            case "address3":
+                address3 = p.getValueAsString();
+                present |= ADDRESS3;
+                return true;
+            case "city":
+                city = internOrNull(p.getValueAsString());
+                present |= CITY;
+                return true;
+            case "zip_code":
+                zipCode = p.getValueAsString();
+                present |= ZIP_CODE;
+                return true;
+            case "country":
+                country = internOrNull(p.getValueAsString());
+                present |= COUNTRY;
+                return true;
+            case "state":
+                state = internOrNull(p.getValueAsString());
+                present |= STATE;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Categories are a small array of <code>{alias, title}</code> objects. Anything shaped differently goes
+     * to the escape hatch as a whole.
+     */
+    private boolean readCategories(JsonParser p) throws IOException {
+        final JsonNode categories = mapper.readTree(p);
+        final int size = categories.size();
+        final String[] aliases = new String[size];
+        final String[] titles = new String[size];
+        for (int i = 0; i < size; i++) {
+            final JsonNode category = categories.get(i);
+            if (!category.isObject() || category.size() != 2
+                    || !category.path("alias").isTextual() || !category.path("title").isTextual()) {
+                extra = putExtra(extra, "categories", categories);
+                return true;
+            }
+            aliases[i] = category.get("alias").asText().intern();
+            titles[i] = category.get("title").asText().intern();
+        }
+        categoryAliases = aliases;
+        categoryTitles = titles;
+        present |= CATEGORIES;
+        return true;
+    }
+
+    private static ObjectNode putExtra(ObjectNode extra, String field, JsonNode value) {
+        final ObjectNode node = extra == null ? mapper.createObjectNode() : extra;
+        node.set(field, value);
+        return node;
+    }
+
+    /**
+     * The elements of an array of strings, or null if one of them is not a string.
+     */
+    private static String[] strings(JsonNode array) {
+        final String[] strings = new String[array.size()];
+        for (int i = 0; i < strings.length; i++) {
+            if (!array.get(i).isTextual()) {
+                return null;
+            }
+            strings[i] = array.get(i).asText().intern();
+        }
+        return strings;
+    }
+
+    private static boolean isText(JsonToken t) {
+        return t == JsonToken.VALUE_STRING || t == JsonToken.VALUE_NULL;
+    }
+
+    private static String internOrNull(String s) {
+        return s == null ? null : s.intern();
+    }
+
+    // -- writing
+
+    public void write(JsonGenerator g) throws IOException {
+        g.writeStartObject();
+        if (has(ID)) g.writeStringField("id", id);
+        if (has(ALIAS)) g.writeStringField("alias", alias);
+        if (has(NAME)) g.writeStringField("name", name);
+        if (has(IMAGE_URL)) g.writeStringField("image_url", imageUrl);
+        if (has(IS_CLOSED)) g.writeBooleanField("is_closed", isClosed);
+        if (has(URL)) g.writeStringField("url", url);
+        if (has(REVIEW_COUNT)) g.writeNumberField("review_count", reviewCount);
+        if (has(CATEGORIES)) {
+            g.writeArrayFieldStart("categories");
+            for (int i = 0; i < categoryAliases.length; i++) {
+                g.writeStartObject();
+                g.writeStringField("alias", categoryAliases[i]);
+                g.writeStringField("title", categoryTitles[i]);
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
+        if (has(RATING)) g.writeNumberField("rating", rating);
+        if (has(COORDINATES)) {
+            g.writeObjectFieldStart("coordinates");
+            if (has(LATITUDE)) g.writeNumberField("latitude", latitude);
+            if (has(LONGITUDE)) g.writeNumberField("longitude", longitude);
+            writeExtra(g, coordinatesExtra);
+            g.writeEndObject();
+        }
+        if (has(TRANSACTIONS)) writeStrings(g, "transactions", transactions);
+        if (has(PRICE)) g.writeStringField("price", price);
+        if (has(LOCATION)) {
+            g.writeObjectFieldStart("location");
+            if (has(ADDRESS1)) g.writeStringField("address1", address1);
+            if (has(ADDRESS2)) g.writeStringField("address2", address2);
+            if (has(ADDRESS3)) g.writeStringField("address3", address3);
+            if (has(CITY)) g.writeStringField("city", city);
+            if (has(ZIP_CODE)) g.writeStringField("zip_code", zipCode);
+            if (has(COUNTRY)) g.writeStringField("country", country);
+            if (has(STATE)) g.writeStringField("state", state);
+            if (has(DISPLAY_ADDRESS)) writeStrings(g, "display_address", displayAddress);
+            writeExtra(g, locationExtra);
+            g.writeEndObject();
+        }
+        if (has(PHONE)) g.writeStringField("phone", phone);
+        if (has(DISPLAY_PHONE)) g.writeStringField("display_phone", displayPhone);
+        if (has(INTEGRAL_DISTANCE)) {
+            g.writeNumberField("distance", (int) distance);
+        } else if (has(DISTANCE)) {
+            g.writeNumberField("distance", distance);
+        }
+        writeExtra(g, extra);
+        g.writeEndObject();
+    }
+
+    private static void writeStrings(JsonGenerator g, String field, String[] strings) throws IOException {
+        g.writeArrayFieldStart(field);
+        for (String s : strings) {
+            g.writeString(s);
+        }
+        g.writeEndArray();
+    }
+
+    private static void writeExtra(JsonGenerator g, ObjectNode extra) throws IOException {
+        if (extra == null) {
+            return;
+        }
+        final Iterator<Map.Entry<String, JsonNode>> fields = extra.fields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            g.writeFieldName(field.getKey());
+            mapper.writeTree(g, field.getValue());
+        }
+    }
+
+    public JsonNode toJson() {
+        try {
+            final TokenBuffer buffer = new TokenBuffer(mapper, false);
+            write(buffer);
+            return mapper.readTree(buffer.asParser());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String toJsonString() {
+        try {
+            final StringWriter writer = new StringWriter();
+            try (JsonGenerator g = mapper.getFactory().createGenerator(writer)) {
+                write(g);
+            }
+            return writer.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toJsonString();
+    }
+}
@@ -0,0 +1,115 @@
+package yelp.scraping;
+
+import akka.util.ByteString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vavr.collection.List;
+import org.apache.commons.collections4.IteratorUtils;
+import play.libs.Json;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+import static io.vavr.API.printf;
+
+/**
+ * Compares the generic Jackson tree model (what <code>PostcodeRestaurants</code> used to hold) with the typed
+ * {@link Restaurant} model, on the records of <code>postcode_restaurants.json</code>:
+ * - retained heap per restaurant
+ * - serialization throughput of a postcode record
+ */
+public class RestaurantModelBenchmark {
+
+    private static final int copies = 50;
+    private static final int iterations = 20;
+
+    public static void main(String[] args) throws IOException {
+        final Path path = Paths.get(args.length > 0 ? args[0] : "postcode_restaurants.json");
+        final java.util.List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        final ObjectMapper objectMapper = new ObjectMapper();
+
+        final long restaurantCount = List.ofAll(lines).map(PostcodeRestaurants::parse).map(pr -> pr.getRestaurants().size()).sum().longValue();
+        printf("%s records, %s restaurants\n", lines.size(), restaurantCount);
+
+        // heap
+        final long treeBytes = retainedBytes(() -> {
+            final java.util.List<java.util.List<JsonNode>> all = new ArrayList<>();
+            for (int i = 0; i < copies; i++) {
+                lines.forEach(line -> all.add(IteratorUtils.toList(Json.parse(line).path("data").elements())));
+            }
+            return all;
+        });
+        final long typedBytes = retainedBytes(() -> {
+            final java.util.List<PostcodeRestaurants> all = new ArrayList<>();
+            for (int i = 0; i < copies; i++) {
+                lines.forEach(line -> all.add(PostcodeRestaurants.parse(line)));
+            }
+            return all;
+        });
+        printf("Heap per restaurant: JsonNode %s bytes, Restaurant %s bytes\n",
+                treeBytes / (restaurantCount * copies), typedBytes / (restaurantCount * copies));
+
+        // serialization
+        final java.util.List<java.util.List<JsonNode>> trees = new ArrayList<>();
+        lines.forEach(line -> trees.add(IteratorUtils.toList(Json.parse(line).path("data").elements())));
+        final java.util.List<PostcodeRestaurants> typed = new ArrayList<>();
+        lines.forEach(line -> typed.add(PostcodeRestaurants.parse(line)));
+
+        final double treeRate = recordsPerSecond(lines.size(), () -> {
+            long size = 0;
+            for (int r = 0; r < trees.size(); r++) {
+                final ObjectNode objectNode = objectMapper.createObjectNode();
+                objectNode.put("postcode", typed.get(r).getPostcode());
+                objectNode.put("fetch_time", LocalDateTime.now().toString());
+                objectNode.set("data", objectMapper.valueToTree(trees.get(r)));
+                size += ByteString.fromString(objectNode.toString() + '\n').size();
+            }
+            return size;
+        });
+        final double typedRate = recordsPerSecond(lines.size(), () -> {
+            long size = 0;
+            for (PostcodeRestaurants postcodeRestaurants : typed) {
+                size += postcodeRestaurants.serialize().size();
+            }
+            return size;
+        });
+        printf("Serialization: JsonNode %.0f records/s, Restaurant %.0f records/s\n", treeRate, typedRate);
+    }
+
+    private static long retainedBytes(Supplier<Object> allocate) {
+        final long before = usedHeap();
+        final Object retained = allocate.get();
+        final long after = usedHeap();
+        // keep the data reachable until the measurement is done
+        printf("(retained %s)\n", retained.getClass().getSimpleName());
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double recordsPerSecond(int records, Supplier<Long> run) {
+        // warm up
+        for (int i = 0; i < iterations; i++) {
+            run.get();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            run.get();
+        }
+        final long elapsed = System.nanoTime() - start;
+        return records * iterations / (elapsed / 1e9);
+    }
+}
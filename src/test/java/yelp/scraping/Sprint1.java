@@ -4,7 +4,6 @@ import akka.actor.ActorSystem;
 import akka.stream.ActorMaterializer;
 import akka.stream.ActorMaterializerSettings;
 import akka.stream.javadsl.Source;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.typesafe.config.ConfigFactory;
 import play.libs.ws.ahc.AhcWSClient;
 import play.libs.ws.ahc.AhcWSClientConfigFactory;
@@ -56,7 +55,7 @@ public class Sprint1 {
                 .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200)
                 .map(successfulResp -> {
                     String postcode = successfulResp._1;
-                    final List<JsonNode> restaurants = YelpApi.parseSuccessfulResponse(postcode, successfulResp._2);
+                    final List<Restaurant> restaurants = YelpApi.parseSuccessfulResponse(postcode, successfulResp._2);
                     return new PostcodeRestaurants(postcode, restaurants);
                 })
                 .runForeach(pR -> println(pR.getRestaurants()), mat)
@@ -9,10 +9,6 @@ import akka.stream.javadsl.Flow;
 import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
-import akka.util.ByteString;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.typesafe.config.ConfigFactory;
 import play.libs.ws.ahc.AhcWSClient;
 import play.libs.ws.ahc.AhcWSClientConfigFactory;
@@ -25,14 +21,12 @@ import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletionStage;
-import java.util.function.Function;
 
 import static io.vavr.API.Set;
 import static io.vavr.API.Tuple;
 import static io.vavr.API.println;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.WRITE;
-import static java.time.LocalDateTime.now;
 
 /**
  * Sprint 2 – serializing results
@@ -61,19 +55,9 @@ public class Sprint2 {
      */
     public static void main(String[] args) throws InterruptedException, IOException {
 
-        final Function<PostcodeRestaurants, ObjectNode> serializePostcodeRestaurant = postcodeRestaurants -> {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ObjectNode objNode = objectMapper.createObjectNode();
-            objNode.put("postcode", postcodeRestaurants.getPostcode());
-            objNode.put("fetch_time", now().toString());
-            objNode.put("data", objectMapper.valueToTree(postcodeRestaurants.getRestaurants().toJavaList()));
-            return objNode;
-        };
-
         final Sink<PostcodeRestaurants, CompletionStage<IOResult>> postcodeResponseSerializer =
                 Flow.<PostcodeRestaurants>create()
-                        .map(serializePostcodeRestaurant::apply)
-                        .map(objNode -> ByteString.fromString(objNode.toString() + '\n'))
+                        .map(PostcodeRestaurants::serialize)
                         .toMat(FileIO.toPath(outputPath, options), Keep.right());
 
         List<String> postcodes = PostcodeLoader.load(); // Load the list of postcodes to query
@@ -87,7 +71,7 @@ public class Sprint2 {
                                         .map(response -> Tuple(postcode, response)).toCompletableFuture())
                 .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200)
                 .map(successfulResp -> {
-                    final List<JsonNode> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
+                    final List<Restaurant> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
                     return new PostcodeRestaurants(successfulResp._1, restaurants);
                 })
                 .runWith(postcodeResponseSerializer, mat);
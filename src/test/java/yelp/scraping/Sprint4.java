@@ -9,10 +9,6 @@ import akka.stream.javadsl.Flow;
 import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
-import akka.util.ByteString;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.typesafe.config.ConfigFactory;
 import play.libs.ws.ahc.AhcWSClient;
 import play.libs.ws.ahc.AhcWSClientConfigFactory;
@@ -22,12 +18,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static io.vavr.API.Set;
@@ -80,20 +74,9 @@ public class Sprint4 {
         final Path outputPath = Paths.get("postcode_restaurants.json");
         Integer parallelismLevel = 2; // Number of concurrent threads to use to query the Yelp API
 
-        Function<PostcodeRestaurants, ObjectNode> serializePostcodeRestaurant = postcodeRestaurants -> {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ObjectNode objectNode = objectMapper.createObjectNode();
-            objectNode.put("postcode", postcodeRestaurants.getPostcode());
-            objectNode.put("fetch_time", LocalDateTime.now().toString());
-            objectNode.put("data", objectMapper.valueToTree(postcodeRestaurants.getRestaurants().toJavaList()));
-
-            return objectNode;
-        };
-
         final Sink<PostcodeRestaurants, CompletionStage<IOResult>> postcodeResponseSerializer =
                 Flow.<PostcodeRestaurants>create()
-                        .map(serializePostcodeRestaurant::apply)
-                        .map(objNode -> ByteString.fromString(objNode.toString() + '\n'))
+                        .map(PostcodeRestaurants::serialize)
                         .toMat(FileIO.toPath(outputPath, options), Keep.right());
 
         // Load the list of postcodes to query
@@ -120,7 +103,7 @@ public class Sprint4 {
                         .via(StreamMonitor.monitor(5, count -> printf("Processed %s restaurants\n", count), system))
                         .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200)
                         .map(successfulResp -> {
-                            final List<JsonNode> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
+                            final List<Restaurant> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
                             return new PostcodeRestaurants(successfulResp._1, restaurants);
                         })
                         .runWith(postcodeResponseSerializer, mat)
@@ -6,13 +6,11 @@ import akka.stream.ActorMaterializer;
 import akka.stream.ActorMaterializerSettings;
 import akka.stream.IOResult;
 import akka.stream.javadsl.*;
-import akka.util.ByteString;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.typesafe.config.ConfigFactory;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
+import libs.CircuitBreaker;
+import libs.Flows;
 import play.libs.ws.WSResponse;
 import play.libs.ws.ahc.AhcWSClient;
 import play.libs.ws.ahc.AhcWSClientConfigFactory;
@@ -22,13 +20,12 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.time.LocalDateTime;
+import java.time.Duration;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -60,7 +57,12 @@ public class Sprint5 {
 
     private static final Path outputPath = Paths.get("postcode_restaurants.json");
     private static final Integer parallelismLevel = 8; // Number of concurrent threads to use to query the Yelp API
-    private static long maxErrors = 10; // Stop the stream after seeing this many error codes
+    // Stop querying for a minute when half of the last 20 responses are errors or take more than 10s, instead of
+    // stopping the stream
+    private static final CircuitBreaker breaker = new CircuitBreaker(name, 20, 10, 0.5,
+            Duration.ofSeconds(10), 0.5, Duration.ofMinutes(1), 2);
+    // A postcode whose call keeps failing stops the stream after this many attempts
+    private static final int maxAttempts = 5;
 
     private static final Set<StandardOpenOption> options = Set(CREATE, WRITE, APPEND).toJavaSet();
 
@@ -76,26 +78,11 @@ public class Sprint5 {
                         mat),
                 mat);
 
-        Function<PostcodeRestaurants, ObjectNode> serializePostcodeRestaurant = postcodeRestaurants -> {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ObjectNode objectNode = objectMapper.createObjectNode();
-            objectNode.put("postcode", postcodeRestaurants.getPostcode());
-            objectNode.put("fetch_time", LocalDateTime.now().toString());
-            objectNode.put("data", objectMapper.valueToTree(postcodeRestaurants.getRestaurants().toJavaList()));
-
-            return objectNode;
-        };
-
         final Sink<PostcodeRestaurants, CompletionStage<IOResult>> postcodeResponseSerializer =
                 Flow.<PostcodeRestaurants>create()
-                        .map(serializePostcodeRestaurant::apply)
-                        .map(objNode -> ByteString.fromString(objNode.toString() + '\n'))
+                        .map(PostcodeRestaurants::serialize)
                         .toMat(FileIO.toPath(outputPath, options), Keep.right());
 
-        final Flow<Tuple2<String, WSResponse>, Tuple2<String, WSResponse>, NotUsed> errorLimiter =
-                Flow.<Tuple2<String, WSResponse>>create().limitWeighted(maxErrors,
-                        postcodeWithResponse -> postcodeWithResponse._2.getStatus() == 200 ? Long.valueOf(0L) : Long.valueOf(1L));
-
         final Flow<Tuple2<String, WSResponse>, Tuple2<String, WSResponse>, NotUsed> errorLogger =
                 Flow.<Tuple2<String, WSResponse>>create().map(postcodeWithResponse -> {
                     if (postcodeWithResponse._2.getStatus() != 200) {
@@ -121,16 +108,16 @@ public class Sprint5 {
         final CompletableFuture<IOResult> ioResultCompletableFuture =
                 Source.from(remainingPostcodes)
                         .take(100)
-                        .mapAsync(parallelismLevel,
+                        .via(Flows.circuitBreaker(breaker, parallelismLevel, maxAttempts,
                                 postcode -> YelpApi.fetchPostcode(ws, postcode)
                                         .map(response -> Tuple(postcode, response))
-                                        .toCompletableFuture())
+                                        .toCompletableFuture(),
+                                postcodeWithResp -> postcodeWithResp._2.getStatus() != 200))
                         .via(StreamMonitor.monitor(5, count -> printf("Processed %s restaurants\n", count), system))
                         .via(errorLogger)
-                        .via(errorLimiter)
                         .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200)
                         .map(successfulResp -> {
-                            final List<JsonNode> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
+                            final List<Restaurant> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
                             return new PostcodeRestaurants(successfulResp._1, restaurants);
                         })
                         .runWith(postcodeResponseSerializer, mat)
@@ -138,6 +125,8 @@ public class Sprint5 {
 
         ioResultCompletableFuture.completeOnTimeout(ioResultCompletableFuture.join(), 10, MINUTES);
 
+        println(breaker);
+
         // clean up
         ws.close();
         mat.shutdown();
@@ -11,12 +11,11 @@ import akka.stream.javadsl.Flow;
 import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Sink;
 import akka.stream.javadsl.Source;
-import akka.util.ByteString;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.typesafe.config.ConfigFactory;
 import io.vavr.Tuple2;
+import libs.CircuitBreaker;
+import libs.Flows;
+import libs.metrics.BottleneckDetector;
 import play.libs.ws.WSResponse;
 import play.libs.ws.ahc.AhcWSClient;
 import play.libs.ws.ahc.AhcWSClientConfigFactory;
@@ -27,12 +26,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static akka.pattern.PatternsCS.ask;
@@ -64,7 +61,12 @@ public class Sprint6 {
 
     private static final Path outputPath = Paths.get("postcode_restaurants.json");
     private static final Integer parallelismLevel = 2; // Number of concurrent threads to use to query the Yelp API
-    private static long maxErrors = 10; // Stop the stream after seeing this many error codes
+    // Stop querying for a minute when half of the last 20 responses are errors or take more than 10s, instead of
+    // stopping the stream
+    private static final CircuitBreaker breaker = new CircuitBreaker(name, 20, 10, 0.5,
+            Duration.ofSeconds(10), 0.5, Duration.ofMinutes(1), 2);
+    // A postcode whose call keeps failing stops the stream after this many attempts
+    private static final int maxAttempts = 5;
 
     private static final Set<StandardOpenOption> options = Set(CREATE, WRITE, APPEND).toJavaSet();
 
@@ -80,29 +82,11 @@ public class Sprint6 {
                         mat),
                 mat);
 
-        Function<PostcodeRestaurants, ObjectNode> serializePostcodeRestaurant = postcodeRestaurants -> {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ObjectNode objectNode = objectMapper.createObjectNode();
-            objectNode.put("postcode", postcodeRestaurants.getPostcode());
-            objectNode.put("fetch_time", LocalDateTime.now().toString());
-            objectNode.put("data", objectMapper.valueToTree(postcodeRestaurants.getRestaurants().toJavaList()));
-
-            return objectNode;
-        };
-
         final Sink<PostcodeRestaurants, CompletionStage<IOResult>> postcodeResponseSerializer =
                 Flow.<PostcodeRestaurants>create()
-                        .map(serializePostcodeRestaurant::apply)
-                        .map(objNode -> ByteString.fromString(objNode.toString() + '\n'))
+                        .map(PostcodeRestaurants::serialize)
                         .toMat(FileIO.toPath(outputPath, options), Keep.right());
 
-        final Flow<Tuple2<String, WSResponse>, Tuple2<String, WSResponse>, NotUsed> errorLimiter =
-                Flow.<Tuple2<String, WSResponse>>create().limitWeighted(maxErrors,
-                        postcodeWithResponse ->
-                                (postcodeWithResponse._2.getStatus() == 200
-                                 || postcodeWithResponse._2.getStatus() == 429)
-                                        ? 0L : 1L);
-
         final Flow<Tuple2<String, WSResponse>, Tuple2<String, WSResponse>, NotUsed> errorLogger =
                 Flow.<Tuple2<String, WSResponse>>create().map(postcodeWithResponse -> {
                     if (postcodeWithResponse._2.getStatus() != 200) {
@@ -127,31 +111,41 @@ public class Sprint6 {
 
         final ActorRef throttler = system.actorOf(Throttler.props());
 
+        // Tells which of the API calls, the parsing or the file sink slows the stream down
+        final BottleneckDetector detector = new BottleneckDetector();
+        system.scheduler().schedule(Duration.ofMinutes(1), Duration.ofMinutes(1),
+                () -> println(detector.report()), system.dispatcher());
+
         // Use `remainingPostcodes` in our stream
         final CompletableFuture<IOResult> ioResultCompletableFuture =
                 Source.from(remainingPostcodes)
                         .take(30000)
-                        .mapAsync(parallelismLevel,
+                        .via(detector.probe("postcodes"))
+                        .via(detector.stage("fetch", Flows.circuitBreaker(breaker, parallelismLevel, maxAttempts,
                                 postcode -> {
                                     ask(throttler, Throttler.WantToPass.class, Duration.ofHours(2));
                                     return YelpApi.fetchPostcode(ws, postcode)
                                             .map(response -> Tuple(postcode, response))
                                             .toCompletableFuture();
-                                }
-                        )
+                                },
+                                // 429 responses are handled by the throttler
+                                postcodeWithResp -> postcodeWithResp._2.getStatus() != 200 && postcodeWithResp._2.getStatus() != 429)))
                         .via(throttlerNotifier(throttler))
                         .via(StreamMonitor.monitor(5, count -> printf("Processed %s restaurants\n", count), system))
                         .via(errorLogger)
-                        .via(errorLimiter)
-                        .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200)
-                        .map(successfulResp -> {
-                            final List<JsonNode> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
-                            return new PostcodeRestaurants(successfulResp._1, restaurants);
-                        })
+                        .via(detector.stage("parse", Flow.<Tuple2<String, WSResponse>>create()
+                                .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200)
+                                .map(successfulResp -> {
+                                    final List<Restaurant> restaurants = YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2);
+                                    return new PostcodeRestaurants(successfulResp._1, restaurants);
+                                })))
                         .runWith(postcodeResponseSerializer, mat).toCompletableFuture();
 
         ioResultCompletableFuture.completeOnTimeout(ioResultCompletableFuture.join(), 10, MINUTES);
 
+        println(breaker);
+        println(detector.report());
+
         // clean up
         ws.close();
         mat.shutdown();
@@ -13,9 +13,6 @@ import akka.stream.javadsl.Flow;
 import akka.stream.javadsl.Keep;
 import akka.stream.javadsl.Partition;
 import akka.stream.javadsl.Sink;
-import akka.util.ByteString;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.typesafe.config.ConfigFactory;
 import io.vavr.Tuple2;
 import play.libs.ws.WSResponse;
@@ -28,10 +25,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.Set;
 import java.util.concurrent.CompletionStage;
-import java.util.function.Function;
 
 import static akka.pattern.PatternsCS.ask;
 import static io.vavr.API.$;
@@ -73,20 +68,9 @@ public class Sprint7 {
                         mat),
                 mat);
 
-        Function<PostcodeRestaurants, ObjectNode> serializePostcodeRestaurant = postcodeRestaurants -> {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ObjectNode objectNode = objectMapper.createObjectNode();
-            objectNode.put("postcode", postcodeRestaurants.getPostcode());
-            objectNode.put("fetch_time", LocalDateTime.now().toString());
-            objectNode.put("data", objectMapper.valueToTree(postcodeRestaurants.getRestaurants().toJavaList()));
-
-            return objectNode;
-        };
-
         final Sink<PostcodeRestaurants, CompletionStage<IOResult>> postcodeResponseSerializer =
                 Flow.<PostcodeRestaurants>create()
-                        .map(serializePostcodeRestaurant::apply)
-                        .map(objNode -> ByteString.fromString(objNode.toString() + '\n'))
+                        .map(PostcodeRestaurants::serialize)
                         .toMat(FileIO.toPath(outputPath, options), Keep.right());
 
         final Flow<Tuple2<String, WSResponse>, Tuple2<String, WSResponse>, NotUsed> errorLogger =
@@ -1,12 +1,17 @@
 package yelp.scraping;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import io.vavr.concurrent.Future;
 import io.vavr.control.Option;
-import org.apache.commons.collections4.IteratorUtils;
+import io.vavr.control.Try;
+import play.libs.Json;
 import play.libs.ws.WSResponse;
 import play.libs.ws.ahc.AhcWSClient;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletionStage;
 
@@ -27,6 +32,11 @@ public class YelpApi {
 
     private static final String url = "https://api.yelp.com/v3/businesses/search";
 
+    // Maximum number of businesses returned by one search
+    public static final int limit = 50;
+
+    private static final JsonFactory factory = Json.mapper().getFactory();
+
     public static Future<WSResponse> fetchPostcode(AhcWSClient wsClient, String postcode) {
         return fromCompletableFuture(getWsResponse(wsClient, postcode).toCompletableFuture());
     }
@@ -36,18 +46,16 @@ public class YelpApi {
         return wsClient.url(url)
                 //.setRequestFilter(new AhcCurlRequestLogger())
                 .addQueryParameter("location", postcode)
-                .addQueryParameter("limit", "50")
+                .addQueryParameter("limit", String.valueOf(limit))
                 .addQueryParameter("sort_by", "distance")
                 .addHeader("Authorization", "Bearer " + token)
                 .get();
     }
 
-    public static List<JsonNode> parseSuccessfulResponse(String postcode, WSResponse response) {
-        final List<JsonNode> businesses = IteratorUtils.toList(response.asJson().findPath("businesses").elements());
-
-        return businesses.stream().filter(
+    public static List<Restaurant> parseSuccessfulResponse(String postcode, WSResponse response) {
+        return parseBusinesses(response).stream().filter(
                 business -> {
-                    Option<String> businessPostcode = Option(business.findPath("location").findPath("zip_code").asText());
+                    Option<String> businessPostcode = Option(business.getZipCode());
 
                     final boolean retVal = normalize(businessPostcode.get()).equalsIgnoreCase(normalize(postcode));
                     return Match(businessPostcode).of(
@@ -56,4 +64,33 @@ public class YelpApi {
                 }
         ).collect(toList());
     }
+
+    /**
+     * All the businesses of a successful response, including those which are not located in the postcode we queried.
+     */
+    public static List<Restaurant> parseBusinesses(WSResponse response) {
+        return Try.withResources(() -> factory.createParser(response.getBodyAsBytes().toArray()))
+                .of(YelpApi::readBusinesses)
+                .get();
+    }
+
+    /**
+     * Streams through the search response and reads the <code>businesses</code> array, skipping everything else.
+     */
+    private static List<Restaurant> readBusinesses(JsonParser p) throws IOException {
+        final List<Restaurant> businesses = new ArrayList<>();
+        p.nextToken();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = p.getCurrentName();
+            p.nextToken();
+            if (field.equals("businesses") && p.currentToken() == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    businesses.add(Restaurant.read(p));
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+        return businesses;
+    }
 }
@@ -0,0 +1,105 @@
+package yelp.scraping;
+
+import akka.Done;
+import akka.actor.ActorSystem;
+import akka.actor.CoordinatedShutdown;
+import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import libs.crawler.Crawler;
+import libs.crawler.CrawlerSettings;
+import libs.drain.DrainSwitch;
+import play.libs.ws.WSResponse;
+import play.libs.ws.ahc.AhcWSClient;
+import play.libs.ws.ahc.AhcWSClientConfigFactory;
+import play.libs.ws.ahc.StandaloneAhcWSClient;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import static io.vavr.API.println;
+
+/**
+ * The sprints' crawl, run by the {@link Crawler} engine: only the Yelp specific parts are defined here, all the
+ * tuning comes from the <code>crawler</code> section of the configuration, e.g.
+ * <pre>
+ *   -Dcrawler.write.path=postcode_restaurants.json -Dcrawler.fetch.parallelism=4 -Dcrawler.take=1000
+ * </pre>
+ * Stopping the JVM (Ctrl-C, SIGTERM) drains the crawl: the calls already paid for complete and are written before exit.
+ * The drain runs as a coordinated shutdown task, so the actor system is only terminated once it is done.
+ */
+public class YelpCrawl {
+
+    private static final String name = "YelpCrawl";
+    private static final CrawlerSettings crawlerSettings = CrawlerSettings.load();
+    // the drain task must be given the time to complete before the shutdown moves on
+    private static final ActorSystem system = ActorSystem.create(name, ConfigFactory.parseString(
+            "akka.coordinated-shutdown.phases.service-requests-done.timeout = "
+                    + (crawlerSettings.drainDeadline.toMillis() + 5000) + "ms")
+            .withFallback(ConfigFactory.load()));
+    private static final ActorMaterializerSettings settings = ActorMaterializerSettings.create(system);
+    private static final ActorMaterializer mat = ActorMaterializer.create(settings, system, name);
+
+    public static void main(String[] args) {
+
+        AhcWSClient ws = new AhcWSClient(
+                StandaloneAhcWSClient.create(
+                        AhcWSClientConfigFactory.forConfig(ConfigFactory.load(), system.getClass().getClassLoader()),
+                        mat),
+                mat);
+
+        final Crawler.Loader<String> loader = new Crawler.Loader<String>() {
+            @Override
+            public List<String> load() {
+                return PostcodeLoader.load();
+            }
+
+            @Override
+            public Set<String> alreadyDone() {
+                return ExistingPostcodes.load(crawlerSettings.writePath);
+            }
+        };
+
+        final Crawler.Fetcher<String, WSResponse> fetcher = new Crawler.Fetcher<String, WSResponse>() {
+            @Override
+            public CompletionStage<WSResponse> fetch(String postcode) {
+                return YelpApi.fetchPostcode(ws, postcode).toCompletableFuture();
+            }
+
+            @Override
+            public boolean isFailure(WSResponse response) {
+                return response.getStatus() != 200;
+            }
+        };
+
+        final Crawler.Parser<String, WSResponse, PostcodeRestaurants> parser = (postcode, response) -> {
+            if (response.getStatus() != 200) {
+                println("Non 200 response for postcode " + postcode + ": [status: " + response.getStatus() + "]");
+                return Option.none();
+            }
+            return Option.some(new PostcodeRestaurants(postcode, YelpApi.parseSuccessfulResponse(postcode, response)));
+        };
+
+        final DrainSwitch drainSwitch = DrainSwitch.create();
+        final CompletionStage<Crawler.Stats> crawl = Crawler.create(crawlerSettings, loader, fetcher, parser, PostcodeRestaurants::serialize)
+                .withDrainSwitch(drainSwitch)
+                .run(mat)
+                .whenComplete((stats, throwable) -> {
+                    println(stats);
+                    Try.run(ws::close);
+                    mat.shutdown();
+                    system.terminate();
+                });
+
+        CoordinatedShutdown.get(system).addTask(CoordinatedShutdown.PhaseServiceRequestsDone(), "drain-crawl", () ->
+                drainSwitch.drain(crawlerSettings.drainDeadline)
+                        .thenCompose(report -> {
+                            println(report);
+                            return crawl;
+                        })
+                        .handle((stats, throwable) -> Done.getInstance()));
+    }
+}
@@ -0,0 +1,103 @@
+package yelp.scraping;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
+import akka.stream.IOResult;
+import akka.stream.javadsl.FileIO;
+import akka.stream.javadsl.Flow;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import com.typesafe.config.ConfigFactory;
+import io.vavr.Tuple2;
+import io.vavr.control.Try;
+import play.libs.ws.WSResponse;
+import play.libs.ws.ahc.AhcWSClient;
+import play.libs.ws.ahc.AhcWSClientConfigFactory;
+import play.libs.ws.ahc.StandaloneAhcWSClient;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.vavr.API.Set;
+import static io.vavr.API.Tuple;
+import static io.vavr.API.printf;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Crawl under a fixed request quota, taking the postcodes from the {@link YieldScheduler} instead of in lexical
+ * order: the estimates start from the records already in the results file, and are refreshed by every response.
+ */
+public class YieldPrioritisedCrawl {
+
+    private static final String name = "YieldPrioritisedCrawl";
+    private static final ActorSystem system = ActorSystem.create(name);
+    private static final ActorMaterializerSettings settings = ActorMaterializerSettings.create(system);
+    private static final ActorMaterializer mat = ActorMaterializer.create(settings, system, name);
+
+    private static final Path outputPath = Paths.get("postcode_restaurants.json");
+    private static final Integer parallelismLevel = 2; // Number of concurrent threads to use to query the Yelp API
+    private static final Integer dailyQuota = 5000; // Number of requests we can make today
+
+    private static final Set<StandardOpenOption> options = Set(CREATE, WRITE, APPEND).toJavaSet();
+
+    public static void main(String[] args) {
+
+        AhcWSClient ws = new AhcWSClient(
+                StandaloneAhcWSClient.create(
+                        AhcWSClientConfigFactory.forConfig(ConfigFactory.load(), system.getClass().getClassLoader()),
+                        mat),
+                mat);
+
+        final Flow<String, Tuple2<String, WSResponse>, NotUsed> apiQuerier = Flow.<String>create()
+                .mapAsync(parallelismLevel,
+                        postcode -> YelpApi.fetchPostcode(ws, postcode)
+                                .map(response -> Tuple(postcode, response))
+                                .toCompletableFuture())
+                .filter(postcodeWithResp -> postcodeWithResp._2.getStatus() == 200);
+
+        final Sink<PostcodeRestaurants, CompletionStage<IOResult>> postcodeResponseSerializer =
+                Flow.<PostcodeRestaurants>create()
+                        .map(PostcodeRestaurants::serialize)
+                        .toMat(FileIO.toPath(outputPath, options), Keep.right());
+
+        // Load the list of postcodes to query, and the ones we have already processed
+        List<String> allPostcodes = PostcodeLoader.load();
+        Set<String> donePostcodes = ExistingPostcodes.load(outputPath);
+        List<String> remainingPostcodes = allPostcodes.stream().filter(postcode -> !donePostcodes.contains(postcode)).collect(toList());
+        printf("There are %s postcodes still to do.\n", remainingPostcodes.size());
+
+        final YieldScheduler scheduler = YieldScheduler.fromResults(remainingPostcodes, outputPath);
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger restaurants = new AtomicInteger();
+
+        scheduler.source()
+                .take(dailyQuota)
+                .via(apiQuerier)
+                .map(successfulResp -> {
+                    final PostcodeRestaurants postcodeRestaurants = new PostcodeRestaurants(successfulResp._1,
+                            YelpApi.parseSuccessfulResponse(successfulResp._1, successfulResp._2));
+                    scheduler.record(successfulResp._1, postcodeRestaurants.getRestaurants().size());
+                    requests.incrementAndGet();
+                    restaurants.addAndGet(postcodeRestaurants.getRestaurants().size());
+                    return postcodeRestaurants;
+                })
+                .runWith(postcodeResponseSerializer, mat)
+                .whenComplete((ioResult, throwable) -> {
+                    printf("%s restaurants found in %s requests, %s postcodes left.\n",
+                            restaurants.get(), requests.get(), scheduler.pending());
+                    Try.run(ws::close);
+                    mat.shutdown();
+                    system.terminate();
+                });
+    }
+}
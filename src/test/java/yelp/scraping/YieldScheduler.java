@@ -0,0 +1,226 @@
+package yelp.scraping;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+import static yelp.scraping.Postcode.isOutward;
+import static yelp.scraping.Postcode.outward;
+
+/**
+ * Hands out the pending postcodes most likely to return restaurants first, so that a limited number of
+ * requests gathers as many restaurants as possible.
+ * <p>
+ * The expected yield of a postcode is estimated from the postcodes already queried around it, from the closest
+ * to the widest: same sector ("ab101"), same district ("ab10"), same area ("ab").
+ * Each level is the mean number of restaurants per request at that level, shrunk towards the level above, so
+ * that a single lucky response does not outweigh a whole district. Estimates are refreshed as responses come in.
+ * <p>
+ * Pending postcodes are grouped in buckets of siblings sharing a sector, kept in a heap by expected yield.
+ * A response pushes the buckets of its district again with their new estimate, and the older entries of those
+ * buckets are skipped when they come up. A change at the area level is only checked when a bucket comes up,
+ * so a dequeue costs O(log n) amortized. Between equal estimates, the postcodes keep their original order.
+ */
+public class YieldScheduler {
+
+    // weight of the level above, in number of requests
+    private static final double smoothing = 2.0;
+
+    private static class Stats {
+        private int requests = 0;
+        private int restaurants = 0;
+    }
+
+    private static class Bucket {
+        private final String postcode;
+        private final int order;
+        private final ArrayDeque<String> postcodes = new ArrayDeque<>();
+        // only the last entry pushed in the heap for a bucket is valid
+        private int version = 0;
+
+        private Bucket(String postcode, int order) {
+            this.postcode = postcode;
+            this.order = order;
+        }
+    }
+
+    private static class Candidate {
+        private final Bucket bucket;
+        private final double priority;
+        private final int version;
+
+        private Candidate(Bucket bucket, double priority) {
+            this.bucket = bucket;
+            this.priority = priority;
+            this.version = ++bucket.version;
+        }
+    }
+
+    // from the closest level to the widest
+    private static final List<Function<String, String>> levels = List.of(
+            postcode -> isOutward(postcode) ? postcode + " " : postcode.substring(0, postcode.length() - 2),
+            Postcode::outward,
+            YieldScheduler::area
+    );
+
+    private final List<Map<String, Stats>> stats = new ArrayList<>();
+    private final Stats global = new Stats();
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    private final Map<String, List<Bucket>> bucketsByDistrict = new HashMap<>();
+    private final PriorityQueue<Candidate> heap = new PriorityQueue<>((a, b) -> a.priority != b.priority
+            ? Double.compare(b.priority, a.priority)
+            : Integer.compare(a.bucket.order, b.bucket.order));
+    private int pending = 0;
+
+    /**
+     * @param postcodes normalized postcodes still to query, in the order to use between equal estimates
+     */
+    public YieldScheduler(java.util.List<String> postcodes) {
+        levels.forEach(level -> stats.add(new HashMap<>()));
+        for (String postcode : postcodes) {
+            final String key = levels.get(0).apply(postcode);
+            final Bucket bucket = buckets.computeIfAbsent(key, __ -> {
+                final Bucket created = new Bucket(postcode, buckets.size());
+                bucketsByDistrict.computeIfAbsent(outward(postcode), ___ -> new ArrayList<>()).add(created);
+                return created;
+            });
+            bucket.postcodes.add(postcode);
+            pending += 1;
+        }
+        buckets.values().forEach(bucket -> heap.add(new Candidate(bucket, estimate(bucket.postcode))));
+    }
+
+    /**
+     * Same as the constructor, with the estimates initialized from the records of a results file.
+     */
+    public static YieldScheduler fromResults(java.util.List<String> postcodes, Path resultsPath) {
+        final java.util.List<PostcodeRestaurants> results = Try.of(() -> Files.readAllLines(resultsPath, StandardCharsets.UTF_8))
+                .getOrElse(new ArrayList<>())
+                .stream()
+                .map(PostcodeRestaurants::parse)
+                .collect(java.util.stream.Collectors.toList());
+        final YieldScheduler scheduler = new YieldScheduler(postcodes);
+        results.forEach(result -> scheduler.record(result.getPostcode(), result.getRestaurants().size()));
+        return scheduler;
+    }
+
+    /**
+     * Records the number of restaurants a postcode returned, and refreshes the estimates of its district.
+     */
+    public synchronized void record(String postcode, int restaurants) {
+        global.requests += 1;
+        global.restaurants += restaurants;
+        for (int i = 0; i < levels.size(); i++) {
+            final Stats level = stats.get(i).computeIfAbsent(levels.get(i).apply(postcode), __ -> new Stats());
+            level.requests += 1;
+            level.restaurants += restaurants;
+        }
+        for (Bucket bucket : bucketsByDistrict.getOrDefault(outward(postcode), List.of())) {
+            if (!bucket.postcodes.isEmpty()) {
+                heap.add(new Candidate(bucket, estimate(bucket.postcode)));
+            }
+        }
+        if (heap.size() > 4 * buckets.size()) {
+            // too many outdated entries: rebuild the heap from the buckets left
+            heap.clear();
+            buckets.values().stream()
+                    .filter(bucket -> !bucket.postcodes.isEmpty())
+                    .forEach(bucket -> heap.add(new Candidate(bucket, estimate(bucket.postcode))));
+        }
+    }
+
+    /**
+     * The pending postcode with the highest expected yield, if any is left.
+     */
+    public synchronized Option<String> poll() {
+        while (!heap.isEmpty()) {
+            final Candidate candidate = heap.poll();
+            final Bucket bucket = candidate.bucket;
+            if (candidate.version != bucket.version || bucket.postcodes.isEmpty()) {
+                continue;
+            }
+            final double current = estimate(bucket.postcode);
+            if (current < candidate.priority) {
+                // the estimate of the area went down since this entry was pushed
+                heap.add(new Candidate(bucket, current));
+                continue;
+            }
+            final String postcode = bucket.postcodes.poll();
+            pending -= 1;
+            if (!bucket.postcodes.isEmpty()) {
+                heap.add(new Candidate(bucket, current));
+            }
+            return Option.some(postcode);
+        }
+        return Option.none();
+    }
+
+    public synchronized int pending() {
+        return pending;
+    }
+
+    /**
+     * Expected number of restaurants for a postcode, given what we know so far.
+     */
+    public synchronized double estimate(String postcode) {
+        // before any response, every postcode is worth one restaurant
+        double estimate = global.requests == 0 ? 1.0 : (global.restaurants + smoothing) / (global.requests + smoothing);
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            final Stats level = stats.get(i).get(levels.get(i).apply(postcode));
+            if (level != null) {
+                estimate = (level.restaurants + smoothing * estimate) / (level.requests + smoothing);
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * The postcodes by decreasing expected yield. The source pulls ahead of the stream, so a response refreshes
+     * the order of the postcodes that have not been pulled yet.
+     */
+    public Source<String, NotUsed> source() {
+        return Source.fromIterator(() -> new Iterator<String>() {
+            private Option<String> next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = poll();
+                }
+                return next.isDefined();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final String current = next.get();
+                next = null;
+                return current;
+            }
+        });
+    }
+
+    private static String area(String postcode) {
+        int i = 0;
+        while (i < postcode.length() && Character.isLetter(postcode.charAt(i))) {
+            i++;
+        }
+        return postcode.substring(0, i);
+    }
+}
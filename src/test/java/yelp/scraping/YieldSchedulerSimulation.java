@@ -0,0 +1,66 @@
+package yelp.scraping;
+
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static io.vavr.API.printf;
+
+/**
+ * Replays the crawl on the postcodes of <code>postcode_restaurants.json</code>, using the recorded responses as
+ * the Yelp API, and compares the restaurants gathered for a given number of requests when the postcodes are
+ * taken in lexical order (what the sprints do) and when they are taken from the {@link YieldScheduler}, with
+ * a random share of the postcodes already crawled.
+ */
+public class YieldSchedulerSimulation {
+
+    private static final int runs = 20;
+
+    public static void main(String[] args) throws IOException {
+        final Path path = Paths.get(args.length > 0 ? args[0] : "postcode_restaurants.json");
+        final Map<String, Integer> responses = List.ofAll(Files.readAllLines(path, StandardCharsets.UTF_8))
+                .map(PostcodeRestaurants::parse)
+                .toMap(pr -> pr.getPostcode(), pr -> pr.getRestaurants().size());
+        final List<String> postcodes = responses.keySet().toList().sorted();
+        printf("%s postcodes, %s restaurants\n", postcodes.size(), responses.values().sum());
+
+        // a sample of the postcodes has been crawled already, the rest is still to do
+        for (double crawled : List.of(0.0, 0.1, 0.3)) {
+            for (int quota : List.of(50, 100, 200, 400)) {
+                int lexical = 0;
+                int prioritised = 0;
+                long elapsed = 0;
+                for (int run = 0; run < runs; run++) {
+                    final Random random = new Random(run);
+                    final List<String> history = postcodes.filter(__ -> random.nextDouble() < crawled);
+                    final List<String> remaining = postcodes.removeAll(history);
+
+                    lexical += remaining.take(quota).map(responses::apply).sum().intValue();
+
+                    final YieldScheduler scheduler = new YieldScheduler(remaining.toJavaList());
+                    history.forEach(postcode -> scheduler.record(postcode, responses.apply(postcode)));
+                    final long start = System.nanoTime();
+                    for (int i = 0; i < quota; i++) {
+                        final Option<String> postcode = scheduler.poll();
+                        if (postcode.isEmpty()) {
+                            break;
+                        }
+                        final int restaurants = responses.apply(postcode.get());
+                        scheduler.record(postcode.get(), restaurants);
+                        prioritised += restaurants;
+                    }
+                    elapsed += System.nanoTime() - start;
+                }
+                printf("%2.0f%% crawled, %3s requests: lexical %5.1f restaurants, prioritised %5.1f restaurants (%.1f µs per request)\n",
+                        crawled * 100, quota, lexical / (double) runs, prioritised / (double) runs, elapsed / 1e3 / quota / runs);
+            }
+        }
+    }
+}